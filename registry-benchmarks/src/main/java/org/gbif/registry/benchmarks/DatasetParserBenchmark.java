@@ -0,0 +1,138 @@
+/*
+ * Copyright 2020 Global Biodiversity Information Facility (GBIF)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gbif.registry.benchmarks;
+
+import org.gbif.api.model.registry.Dataset;
+import org.gbif.api.vocabulary.MetadataType;
+import org.gbif.registry.metadata.parse.DatasetParser;
+import org.gbif.registry.metadata.parse.DatasetWrapper;
+import org.gbif.registry.metadata.parse.DublinCoreRuleSet;
+import org.gbif.registry.metadata.parse.EMLRuleSet;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.beanutils.ConversionException;
+import org.apache.commons.digester3.Digester;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xml.sax.SAXException;
+
+import com.google.common.base.Strings;
+import com.google.common.io.ByteStreams;
+
+import static org.gbif.api.vocabulary.MetadataType.EML;
+
+/**
+ * Compares parsing metadata documents into datasets with the previous implementation, which read
+ * the entire document once to detect its type and then parsed it again with a new digester and
+ * new rules.
+ *
+ * <p>The large documents are built by repeating the contacts of the EML and all elements of the
+ * Dublin Core fixture up to a few megabytes. Run with {@code java -jar
+ * target/registry-benchmarks.jar DatasetParserBenchmark -prof gc} to compare allocations as well.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DatasetParserBenchmark {
+
+  private static final int LARGE_DOCUMENT_SIZE = 4_000_000;
+
+  @Param({"eml-small", "eml-medium", "eml-large", "dc-small", "dc-large"})
+  public String document;
+
+  private byte[] content;
+
+  @Setup
+  public void setup() throws IOException {
+    switch (document) {
+      case "eml-small":
+        content = load("eml/ipt_eml.xml");
+        break;
+      case "eml-medium":
+        content = load("eml/download_metadata.xml");
+        break;
+      case "eml-large":
+        content =
+            inflate(load("eml/download_metadata.xml"), "<associatedParty>", "</associatedParty>");
+        break;
+      case "dc-small":
+        content = load("dc/worms_dc.xml");
+        break;
+      case "dc-large":
+        content = inflate(load("dc/worms_dc.xml"), "<dc:title>", "</dc:license>");
+        break;
+      default:
+        throw new IllegalArgumentException("Unknown document " + document);
+    }
+  }
+
+  @Benchmark
+  public Dataset singlePass() throws IOException {
+    return DatasetParser.build(content);
+  }
+
+  @Benchmark
+  public Dataset twoPass() throws IOException {
+    MetadataType type = DatasetParser.detectParserType(new ByteArrayInputStream(content));
+
+    Digester digester = new Digester();
+    digester.setNamespaceAware(true);
+    digester.addRuleSet(type == EML ? new EMLRuleSet() : new DublinCoreRuleSet());
+    DatasetWrapper delegator = new DatasetWrapper();
+    digester.push(delegator);
+    try {
+      digester.parse(new ByteArrayInputStream(content));
+    } catch (ConversionException | SAXException e) {
+      // the fixtures are valid, a partially parsed dataset is fine here
+    }
+    delegator.postProcess();
+    return delegator.getTarget();
+  }
+
+  private byte[] load(String resource) throws IOException {
+    try (InputStream in = getClass().getClassLoader().getResourceAsStream(resource)) {
+      return ByteStreams.toByteArray(in);
+    }
+  }
+
+  /** Repeats the part of the document from the first start to the last end marker. */
+  private static byte[] inflate(byte[] source, String startMarker, String endMarker) {
+    String xml = new String(source, StandardCharsets.UTF_8);
+    int start = xml.indexOf(startMarker);
+    int end = xml.lastIndexOf(endMarker) + endMarker.length();
+    String repeated = xml.substring(start, end);
+    int copies = Math.max(1, LARGE_DOCUMENT_SIZE / repeated.length());
+    return (xml.substring(0, start) + Strings.repeat(repeated, copies) + xml.substring(end))
+        .getBytes(StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2020 Global Biodiversity Information Facility (GBIF)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gbif.registry.benchmarks;
+
+import org.gbif.api.model.common.DOI;
+import org.gbif.api.model.common.DoiData;
+import org.gbif.api.model.common.DoiStatus;
+import org.gbif.api.model.common.paging.Pageable;
+import org.gbif.registry.doi.DoiIssuingServiceImpl;
+import org.gbif.registry.doi.config.DoiConfigurationProperties;
+import org.gbif.registry.domain.doi.DoiType;
+import org.gbif.registry.persistence.mapper.DoiMapper;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.lang3.RandomStringUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares issuing download DOIs from the suffix sequence against the previous approach of
+ * inserting random suffixes and retrying on duplicate key exceptions.
+ *
+ * <p>The DOI table is simulated in memory: a configurable share of all suffixes is considered
+ * taken by DOIs issued earlier, so both approaches run into collisions. The benchmark measures the
+ * cost on the registry side only: the aborted statements the previous approach caused in the
+ * database are not part of the numbers. Run with {@code java -jar target/registry-benchmarks.jar
+ * DoiIssuingBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Threads(16)
+@Fork(1)
+public class DoiIssuingBenchmark {
+
+  private static final String PREFIX = "10.21373";
+  private static final String DOI_CHARACTERS = "23456789abcdefghjkmnpqrstuvwxyz";
+
+  /** Share of the suffixes taken by earlier DOIs, in permille. */
+  @Param({"0", "10", "100"})
+  public int takenPermille;
+
+  private InMemoryDoiMapper doiMapper;
+  private DoiIssuingServiceImpl service;
+
+  @Setup
+  public void setup() {
+    DoiConfigurationProperties properties = new DoiConfigurationProperties();
+    properties.setPrefix(PREFIX);
+    doiMapper = new InMemoryDoiMapper(takenPermille);
+    service = new DoiIssuingServiceImpl(doiMapper, properties);
+  }
+
+  @Benchmark
+  public DOI sequence() {
+    return service.newDownloadDOI();
+  }
+
+  @Benchmark
+  public DOI randomWithRetries() {
+    for (int x = 0; x < 1000; x++) {
+      DOI doi = new DOI(PREFIX, "dl." + RandomStringUtils.random(6, DOI_CHARACTERS));
+      try {
+        doiMapper.create(doi, DoiType.DOWNLOAD);
+        return doi;
+      } catch (Exception e) {
+        // might have hit a unique constraint, try another doi
+      }
+    }
+    throw new IllegalStateException("Tried 1000 random DOIs and none worked, giving up.");
+  }
+
+  private static class InMemoryDoiMapper implements DoiMapper {
+
+    private final AtomicLong sequence = new AtomicLong();
+    private final int takenPermille;
+
+    private InMemoryDoiMapper(int takenPermille) {
+      this.takenPermille = takenPermille;
+    }
+
+    // the issued DOIs are not kept, which would exhaust the heap over a run
+    private boolean insert(DOI doi, DoiType type) {
+      return Math.floorMod(doi.hashCode(), 1000) >= takenPermille;
+    }
+
+    @Override
+    public void create(DOI doi, DoiType type) {
+      if (!insert(doi, type)) {
+        throw new IllegalStateException("duplicate key value violates unique constraint");
+      }
+    }
+
+    @Override
+    public int createIfAbsent(DOI doi, DoiType type) {
+      return insert(doi, type) ? 1 : 0;
+    }
+
+    @Override
+    public long nextSuffixBlock() {
+      // the increment of the database sequence
+      return sequence.getAndAdd(50);
+    }
+
+    @Override
+    public DoiData get(DOI doi) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public DoiType getType(DOI doi) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public List<Map<String, Object>> list(DoiStatus status, DoiType type, Pageable page) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public String getMetadata(DOI doi) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void update(DOI doi, DoiData doiData, String xml) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void delete(DOI doi) {
+      throw new UnsupportedOperationException();
+    }
+  }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2020 Global Biodiversity Information Facility (GBIF)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gbif.registry.benchmarks;
+
+import org.gbif.api.model.common.DOI;
+import org.gbif.api.model.common.GbifUser;
+import org.gbif.api.model.occurrence.Download;
+import org.gbif.api.model.occurrence.DownloadFormat;
+import org.gbif.api.model.occurrence.PredicateDownloadRequest;
+import org.gbif.api.model.occurrence.predicate.EqualsPredicate;
+import org.gbif.api.model.occurrence.search.OccurrenceSearchParameter;
+import org.gbif.api.model.registry.DatasetOccurrenceDownloadUsage;
+import org.gbif.doi.metadata.datacite.DataCiteMetadata;
+import org.gbif.doi.service.InvalidMetadataException;
+import org.gbif.doi.service.datacite.DataCiteValidator;
+import org.gbif.registry.doi.converter.DownloadConverter;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares building the DataCite metadata of downloads with many constituent datasets within a
+ * size limit, against the previous approach of converting all usages, serializing the complete
+ * document and truncating it afterwards when it is too large.
+ *
+ * <p>The usages are synthetic and held in memory, so the benchmark leaves out loading them from the
+ * database, which the incremental builder also stops at the limit. Run with {@code java -Xmx4g
+ * -jar target/registry-benchmarks.jar DownloadMetadataBenchmark -prof gc} to compare allocations
+ * as well.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class DownloadMetadataBenchmark {
+
+  private static final int MAX_METADATA_SIZE = 1_000_000;
+  private static final URI TARGET = URI.create("https://www.gbif.org/occurrence/download/1");
+
+  @Param({"10000", "100000", "1000000"})
+  public int usages;
+
+  private Download download;
+  private GbifUser user;
+  private List<DatasetOccurrenceDownloadUsage> usedDatasets;
+
+  @Setup
+  public void setup() {
+    download = new Download();
+    download.setKey("0000001-200101000000000");
+    download.setDoi(new DOI("10.15468/dl.benchmark"));
+    download.setCreated(new Date());
+    download.setModified(new Date());
+    download.setNumberDatasets((long) usages);
+    download.setTotalRecords(usages * 1000L);
+    download.setSize(1_000_000_000L);
+    download.setStatus(Download.Status.SUCCEEDED);
+    PredicateDownloadRequest request = new PredicateDownloadRequest();
+    request.setCreator("benchmark");
+    // a query which is rendered without title lookups
+    request.setPredicate(new EqualsPredicate(OccurrenceSearchParameter.COUNTRY, "DK", false));
+    request.setFormat(DownloadFormat.DWCA);
+    download.setRequest(request);
+
+    user = new GbifUser();
+    user.setUserName("benchmark");
+    user.setLastName("GBIF.org");
+
+    usedDatasets = new ArrayList<>(usages);
+    for (int i = 0; i < usages; i++) {
+      DatasetOccurrenceDownloadUsage du = new DatasetOccurrenceDownloadUsage();
+      du.setDownloadKey(download.getKey());
+      du.setDatasetKey(UUID.randomUUID());
+      du.setDatasetTitle("Occurrences of a synthetic benchmark dataset number " + i);
+      du.setDatasetDOI(new DOI("10.15468/bench" + i));
+      du.setNumberRecords(1000);
+      usedDatasets.add(du);
+    }
+  }
+
+  @Benchmark
+  public String incremental() throws InvalidMetadataException {
+    DataCiteMetadata metadata =
+        DownloadConverter.convert(download, user, usedDatasets, null, MAX_METADATA_SIZE, TARGET);
+    return DataCiteValidator.toXml(download.getDoi(), metadata);
+  }
+
+  @Benchmark
+  public String completeThenTruncated() throws InvalidMetadataException {
+    DataCiteMetadata metadata =
+        DownloadConverter.convert(download, user, usedDatasets, null, Long.MAX_VALUE, null);
+    String xml = DataCiteValidator.toXml(download.getDoi(), metadata);
+    if (size(xml) > MAX_METADATA_SIZE) {
+      xml = DownloadConverter.truncateDescription(download.getDoi(), xml, TARGET);
+      if (size(xml) > MAX_METADATA_SIZE) {
+        xml = DownloadConverter.truncateConstituents(download.getDoi(), xml, TARGET);
+      }
+    }
+    return xml;
+  }
+
+  private static int size(String xml) {
+    return xml.getBytes(StandardCharsets.UTF_8).length;
+  }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2020 Global Biodiversity Information Facility (GBIF)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gbif.registry.benchmarks;
+
+import org.gbif.registry.search.dataset.indexing.FullTextExtractor;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xml.sax.Attributes;
+import org.xml.sax.helpers.DefaultHandler;
+
+import com.google.common.io.ByteStreams;
+
+/**
+ * Compares the full text extraction of metadata documents used for dataset indexing with the
+ * previous implementation, which buffered the raw text and normalised it with a regular
+ * expression afterwards.
+ *
+ * <p>Run with {@code java -jar target/registry-benchmarks.jar FullTextExtractionBenchmark -prof
+ * gc} to compare allocations as well.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FullTextExtractionBenchmark {
+
+  @Param({"ipt_eml.xml", "worms_eml2.1.xml", "download_metadata.xml", "sample-breaking.xml"})
+  public String document;
+
+  private byte[] content;
+
+  private final SAXParserFactory saxFactory = SAXParserFactory.newInstance();
+
+  private final FullTextExtractor extractor = new FullTextExtractor(1_000_000);
+
+  @Setup
+  public void setup() throws IOException {
+    try (InputStream in = getClass().getClassLoader().getResourceAsStream("eml/" + document)) {
+      content = ByteStreams.toByteArray(in);
+    }
+  }
+
+  @Benchmark
+  public String streaming() throws Exception {
+    return extractor.extract(new ByteArrayInputStream(content));
+  }
+
+  @Benchmark
+  public String buffered() throws Exception {
+    BufferedFullTextHandler handler = new BufferedFullTextHandler();
+    SAXParser parser = saxFactory.newSAXParser();
+    parser.parse(new ByteArrayInputStream(content), handler);
+    return handler.getFullText();
+  }
+
+  /** The previous FullTextSaxHandler. */
+  private static class BufferedFullTextHandler extends DefaultHandler {
+
+    private static final Pattern NORM_WHITESPACE = Pattern.compile("[\\s\n\r\t]+");
+
+    private final StringBuffer content = new StringBuffer(" ");
+
+    @Override
+    public void characters(char[] ch, int start, int length) {
+      content.append(ch, start, length);
+    }
+
+    @Override
+    public void startElement(String uri, String localName, String qName, Attributes attributes) {
+      content.append(" ");
+      for (int idx = attributes.getLength(); idx > 0; idx--) {
+        content.append(attributes.getValue(idx - 1));
+        content.append(" ");
+      }
+    }
+
+    String getFullText() {
+      return NORM_WHITESPACE.matcher(content.toString()).replaceAll(" ").trim();
+    }
+  }
+}
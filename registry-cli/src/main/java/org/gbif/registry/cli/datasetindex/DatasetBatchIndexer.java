@@ -23,17 +23,21 @@ import org.gbif.registry.search.dataset.indexing.es.EsClient;
 import org.gbif.registry.search.dataset.indexing.es.IndexingConstants;
 import org.gbif.registry.search.dataset.indexing.ws.GbifWsClient;
 
-import java.util.ArrayList;
+import java.nio.file.Paths;
 import java.util.Date;
 import java.util.List;
-import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
-import java.util.function.Consumer;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.bulk.BulkItemResponse;
 import org.elasticsearch.action.bulk.BulkRequest;
 import org.elasticsearch.action.bulk.BulkResponse;
 import org.elasticsearch.action.index.IndexRequest;
@@ -43,10 +47,22 @@ import org.springframework.beans.factory.annotation.Value;
 
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.google.common.base.Stopwatch;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 import lombok.extern.slf4j.Slf4j;
 
-/** A builder that will clear and build a new dataset index by paging over the given service. */
+/**
+ * A builder that will clear and build a new dataset index by paging over the given service.
+ *
+ * <p>Indexing runs as a pipeline: the calling thread pages over the datasets, converter threads
+ * turn each page into a bulk request and writer threads send the bulk requests. The queues
+ * between the stages are bounded and a full queue makes the previous stage do the work itself,
+ * which slows it down to the pace of the slowest stage.
+ *
+ * <p>The alias is only swapped to the new index if all pages have been written and the number of
+ * indexed documents matches the number of datasets. Otherwise the run fails, leaving the alias
+ * untouched, and can be resumed from its checkpoint.
+ */
 @Slf4j
 public class DatasetBatchIndexer {
 
@@ -78,106 +94,244 @@ public class DatasetBatchIndexer {
 
   /** Pages over all datasets and adds them to ElasticSearch. */
   public void run(DatasetBatchIndexerConfiguration config) {
-    log.info("Building a new Dataset index");
-
-    String indexName =
-        config.getDatasetEs().getIndex() != null
-            ? config.getDatasetEs().getIndex()
-            : "dataset_" + new Date().getTime();
     Stopwatch stopwatch = Stopwatch.createStarted();
-    esClient.createIndex(
-        indexName,
-        IndexingConstants.DATASET_RECORD_TYPE,
-        config.getIndexingSettings(),
-        IndexingConstants.MAPPING_FILE,
-        IndexingConstants.SETTINGS_FILE);
-
-    ExecutorService executor = Executors.newWorkStealingPool();
-
-    List<CompletableFuture<BulkResponse>> jobs = new ArrayList<>();
-
-    onAllDatasets(
-        gbifWsClient,
-        pagingResponse ->
-            jobs.add(
-                CompletableFuture.supplyAsync(
-                    () -> index(pagingResponse, datasetJsonConverter, indexName, esClient),
-                    executor)),
-        stopAfter,
-        pageSize);
-
-    CompletableFuture.allOf(jobs.toArray(new CompletableFuture[] {}));
-
-    logIndexingErrors(jobs);
-    executor.shutdown();
-    esClient.updateSettings(indexName, config.getSearchSettings());
-    esClient.swapAlias(config.getDatasetEs().getAlias(), indexName);
-    esClient.close();
+    IndexingCheckpoint checkpoint =
+        IndexingCheckpoint.load(
+            config.getCheckpointFile() != null ? Paths.get(config.getCheckpointFile()) : null,
+            config.getDatasetEs().getIndex() != null
+                ? config.getDatasetEs().getIndex()
+                : "dataset_" + new Date().getTime());
+    String indexName = checkpoint.getIndexName();
+    ExecutorService writers =
+        boundedExecutor(
+            "dataset-index-writer-%d", config.getWriterThreads(), config.getQueueCapacity());
+    ExecutorService converters =
+        boundedExecutor(
+            "dataset-index-converter-%d", config.getConverterThreads(), config.getQueueCapacity());
+    // converts the datasets of a page concurrently, bounded by the converters queue already
+    ExecutorService enrichers =
+        Executors.newFixedThreadPool(
+            config.getEnricherThreads(), threadFactory("dataset-index-enricher-%d"));
+
+    try {
+      if (checkpoint.isResumed()) {
+        log.info("Resuming Dataset index {} from offset {}", indexName, checkpoint.getOffset());
+      } else {
+        log.info("Building a new Dataset index {}", indexName);
+        esClient.createIndex(
+            indexName,
+            IndexingConstants.DATASET_RECORD_TYPE,
+            config.getIndexingSettings(),
+            IndexingConstants.MAPPING_FILE,
+            IndexingConstants.SETTINGS_FILE);
+        checkpoint.save();
+      }
+
+      // titles of installations and organizations are then looked up in memory
+      datasetJsonConverter.warmUp();
+
+      Progress progress =
+          new Progress(gbifWsClient.listDatasets(new PagingRequest(0, 0)).getCount(), stopwatch);
+
+      long datasetsRead =
+          onAllDatasets(
+              checkpoint.getOffset(),
+              (offset, datasets) ->
+                  converters.execute(
+                      () -> {
+                        BulkRequest bulk =
+                            toBulkRequest(datasets, indexName, enrichers, progress);
+                        if (bulk != null) {
+                          int size = datasets.size();
+                          writers.execute(() -> write(bulk, offset, size, checkpoint, progress));
+                        }
+                      }));
+
+      // converters hand their work to the writers, so they must be finished first
+      awaitTermination(converters);
+      enrichers.shutdown();
+      awaitTermination(writers);
+
+      verify(indexName, datasetsRead, progress, config.getMaxCountDeviation());
+      esClient.updateSettings(indexName, config.getSearchSettings());
+      esClient.swapAlias(config.getDatasetEs().getAlias(), indexName);
+      checkpoint.delete();
+    } finally {
+      // stops the remaining tasks of a failed run, a successful run has shut them down already
+      converters.shutdownNow();
+      enrichers.shutdownNow();
+      writers.shutdownNow();
+      esClient.close();
+    }
     log.info("Finished building Dataset index in {} secs", stopwatch.elapsed(TimeUnit.SECONDS));
   }
 
-  private BulkResponse index(
-      PagingResponse<Dataset> pagingResponse,
-      DatasetJsonConverter datasetJsonConverter,
-      String indexName,
-      EsClient esClient) {
+  private BulkRequest toBulkRequest(
+      List<Dataset> datasets, String indexName, Executor enrichers, Progress progress) {
     try {
       BulkRequest bulkRequest = new BulkRequest();
-      pagingResponse
-          .getResults()
-          .forEach(
-              dataset -> {
-                ObjectNode jsonNode = datasetJsonConverter.convert(dataset);
-                bulkRequest.add(
-                    new IndexRequest()
-                        .index(indexName)
-                        .source(jsonNode.toString(), XContentType.JSON)
-                        .opType(DocWriteRequest.OpType.INDEX)
-                        .id(dataset.getKey().toString()));
-              });
+      List<ObjectNode> jsonNodes = datasetJsonConverter.convert(datasets, enrichers);
+      for (int i = 0; i < datasets.size(); i++) {
+        bulkRequest.add(
+            new IndexRequest()
+                .index(indexName)
+                .source(jsonNodes.get(i).toString(), XContentType.JSON)
+                .opType(DocWriteRequest.OpType.INDEX)
+                .id(datasets.get(i).getKey().toString()));
+      }
+      return bulkRequest;
+    } catch (Exception ex) {
+      log.error("Error converting page", ex);
+      progress.failedPages.incrementAndGet();
+      return null;
+    }
+  }
+
+  private void write(
+      BulkRequest bulkRequest,
+      long offset,
+      int size,
+      IndexingCheckpoint checkpoint,
+      Progress progress) {
+    try {
       // Batching updates to Es proves quicker with batches of 100 - 1000 showing similar
       // performance
-      log.info(
-          "Indexing {} datasets until at offset {}",
-          pagingResponse.getLimit(),
-          pagingResponse.getOffset());
-      return esClient.bulk(bulkRequest);
+      BulkResponse bulkResponse = esClient.bulk(bulkRequest);
+      int failures = 0;
+      if (bulkResponse.hasFailures()) {
+        for (BulkItemResponse item : bulkResponse.getItems()) {
+          if (item.isFailed()) {
+            failures++;
+          }
+        }
+        log.error(
+            "Error indexing page at offset {}: {}", offset, bulkResponse.buildFailureMessage());
+      }
+      // failed documents are left to the final verification, retrying would fail again
+      checkpoint.pageIndexed(offset, size);
+      progress.pageWritten(size - failures, failures, checkpoint.getOffset());
     } catch (Exception ex) {
-      log.error("Error indexing page", ex);
-      throw new RuntimeException(ex);
+      log.error("Error indexing page at offset {}", offset, ex);
+      progress.failedPages.incrementAndGet();
     }
   }
 
-  private void onAllDatasets(
-      GbifWsClient gbifWsClient,
-      Consumer<PagingResponse<Dataset>> responseConsumer,
-      int stopAfter,
-      int datasetPageSize) {
-    int pageSize = stopAfter < 1 ? datasetPageSize : Math.min(datasetPageSize, stopAfter);
-    PagingRequest page = new PagingRequest(0, pageSize);
-    PagingResponse<Dataset> response = gbifWsClient.listDatasets(new PagingRequest(0, 0));
-    int datasetCount = 0;
+  /**
+   * Fails unless all pages have been written and the index holds as many documents as there are
+   * datasets, allowing for datasets created or deleted during the run.
+   */
+  private void verify(
+      String indexName, long datasetsRead, Progress progress, double maxCountDeviation) {
+    if (progress.failedPages.get() > 0) {
+      throw new IllegalStateException(
+          progress.failedPages.get()
+              + " pages could not be indexed into "
+              + indexName
+              + ", alias not swapped. Rerun to resume from the checkpoint");
+    }
+
+    // datasets indexed by previous runs are only counted by the index
+    long expected =
+        stopAfter > 0
+            ? datasetsRead
+            : gbifWsClient.listDatasets(new PagingRequest(0, 0)).getCount();
+    long indexed = esClient.countDocuments(indexName);
+    log.info("Index {} holds {} documents, expected {}", indexName, indexed, expected);
+    if (Math.abs(indexed - expected) > expected * maxCountDeviation) {
+      throw new IllegalStateException(
+          "Index "
+              + indexName
+              + " holds "
+              + indexed
+              + " documents but "
+              + expected
+              + " datasets exist, alias not swapped");
+    }
+  }
+
+  /**
+   * Pages over the datasets starting at the given offset.
+   *
+   * @return the number of datasets read
+   */
+  private long onAllDatasets(long startOffset, PageConsumer pageConsumer) {
+    int limit = stopAfter < 1 ? pageSize : Math.min(pageSize, stopAfter);
+    PagingRequest page = new PagingRequest(startOffset, limit);
+    long datasetCount = 0;
+    PagingResponse<Dataset> pagingResponse;
     do {
       log.debug("Requesting {} datasets starting at offset {}", page.getLimit(), page.getOffset());
-      PagingResponse<Dataset> pagingResponse = gbifWsClient.listDatasets(page);
-      response.setEndOfRecords(pagingResponse.isEndOfRecords());
+      pagingResponse = gbifWsClient.listDatasets(page);
       datasetCount += pagingResponse.getResults().size();
-      responseConsumer.accept(pagingResponse);
+      if (!pagingResponse.getResults().isEmpty()) {
+        pageConsumer.accept(page.getOffset(), pagingResponse.getResults());
+      }
       page.nextPage();
-    } while (!response.isEndOfRecords() && (stopAfter < 0 || stopAfter < datasetCount));
+    } while (!pagingResponse.isEndOfRecords() && (stopAfter < 0 || datasetCount < stopAfter));
+    return datasetCount;
   }
 
-  private static void logIndexingErrors(List<CompletableFuture<BulkResponse>> jobs) {
-    jobs.forEach(
-        job -> {
-          try {
-            BulkResponse bulkResponse = job.get();
-            if (bulkResponse.hasFailures()) {
-              log.error("Error in indexing job {}", bulkResponse.buildFailureMessage());
-            }
-          } catch (InterruptedException | ExecutionException ex) {
-            log.error("Error executing job", ex);
-          }
-        });
+  /**
+   * Executor with a bounded queue, running tasks in the submitting thread when the queue is full.
+   */
+  private static ExecutorService boundedExecutor(String nameFormat, int threads, int queueSize) {
+    return new ThreadPoolExecutor(
+        threads,
+        threads,
+        0L,
+        TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<>(queueSize),
+        threadFactory(nameFormat),
+        new ThreadPoolExecutor.CallerRunsPolicy());
+  }
+
+  /** Daemon threads, so a failing run never keeps the JVM alive. */
+  private static ThreadFactory threadFactory(String nameFormat) {
+    return new ThreadFactoryBuilder().setNameFormat(nameFormat).setDaemon(true).build();
+  }
+
+  private static void awaitTermination(ExecutorService executor) {
+    executor.shutdown();
+    try {
+      while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+        log.debug("Waiting for indexing tasks to finish");
+      }
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while indexing datasets", ex);
+    }
+  }
+
+  @FunctionalInterface
+  private interface PageConsumer {
+    void accept(long offset, List<Dataset> datasets);
+  }
+
+  /** Counts the indexed datasets and logs the progress. */
+  private static class Progress {
+
+    private final long total;
+    private final Stopwatch stopwatch;
+    private final AtomicLong indexed = new AtomicLong();
+    private final AtomicLong failedDocuments = new AtomicLong();
+    private final AtomicInteger failedPages = new AtomicInteger();
+
+    private Progress(long total, Stopwatch stopwatch) {
+      this.total = total;
+      this.stopwatch = stopwatch;
+    }
+
+    private void pageWritten(int indexedDocuments, int failedDocuments, long checkpointOffset) {
+      long indexedTotal = indexed.addAndGet(indexedDocuments);
+      long failedTotal = this.failedDocuments.addAndGet(failedDocuments);
+      long seconds = Math.max(1, stopwatch.elapsed(TimeUnit.SECONDS));
+      log.info(
+          "Indexed {} of {} datasets ({} failed, {} per sec), checkpoint at offset {}",
+          indexedTotal,
+          total,
+          failedTotal,
+          indexedTotal / seconds,
+          checkpointOffset);
+    }
   }
 }
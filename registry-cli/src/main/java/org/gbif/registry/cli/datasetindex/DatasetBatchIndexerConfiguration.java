@@ -41,6 +41,24 @@ public class DatasetBatchIndexerConfiguration {
 
   private Integer pageSize = 50;
 
+  // threads converting pages of datasets into bulk requests
+  private int converterThreads = 4;
+
+  // threads fetching the metadata documents and taxon keys of the datasets of a page concurrently
+  private int enricherThreads = 8;
+
+  // threads sending the bulk requests to Elasticsearch
+  private int writerThreads = 2;
+
+  // pages waiting for each of the converter and writer stages
+  private int queueCapacity = 10;
+
+  // file recording the progress of a run, an interrupted run is resumed from it if present
+  private String checkpointFile;
+
+  // accepted difference between indexed documents and datasets, relative to the datasets
+  private double maxCountDeviation = 0.001;
+
   private Map<String, Object> indexingSettings =
       new HashMap<>(IndexingConstants.DEFAULT_INDEXING_SETTINGS);
 
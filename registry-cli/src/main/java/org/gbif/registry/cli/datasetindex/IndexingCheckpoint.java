@@ -0,0 +1,129 @@
+/*
+ * Copyright 2020 Global Biodiversity Information Facility (GBIF)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gbif.registry.cli.datasetindex;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import javax.annotation.Nullable;
+
+/**
+ * Progress of a batch indexing run: the index being built and the offset below which all datasets
+ * have been written. It is saved to a file after every indexed page so an interrupted run can be
+ * resumed into the same index.
+ */
+class IndexingCheckpoint {
+
+  private static final String INDEX_NAME = "indexName";
+  private static final String OFFSET = "offset";
+
+  @Nullable private final Path file;
+  private final String indexName;
+  private final boolean resumed;
+  private long offset;
+
+  // pages indexed out of order, size by offset
+  private final Map<Long, Integer> indexedPages = new HashMap<>();
+
+  private IndexingCheckpoint(@Nullable Path file, String indexName, long offset, boolean resumed) {
+    this.file = file;
+    this.indexName = indexName;
+    this.offset = offset;
+    this.resumed = resumed;
+  }
+
+  /**
+   * Loads the checkpoint of an interrupted run from the given file or starts a new one.
+   *
+   * @param file checkpoint file, checkpoints are not saved if null
+   * @param newIndexName index to build if no run is resumed
+   */
+  static IndexingCheckpoint load(@Nullable Path file, String newIndexName) {
+    if (file == null || !Files.exists(file)) {
+      return new IndexingCheckpoint(file, newIndexName, 0, false);
+    }
+    Properties properties = new Properties();
+    try (InputStream in = Files.newInputStream(file)) {
+      properties.load(in);
+    } catch (IOException ex) {
+      throw new IllegalStateException("Cannot read checkpoint file " + file, ex);
+    }
+    return new IndexingCheckpoint(
+        file,
+        properties.getProperty(INDEX_NAME),
+        Long.parseLong(properties.getProperty(OFFSET)),
+        true);
+  }
+
+  String getIndexName() {
+    return indexName;
+  }
+
+  /** Whether an interrupted run is resumed, in which case the index already exists. */
+  boolean isResumed() {
+    return resumed;
+  }
+
+  /** Offset below which all datasets have been indexed. */
+  synchronized long getOffset() {
+    return offset;
+  }
+
+  /**
+   * Records an indexed page. The checkpoint only moves forward once all preceding pages are
+   * indexed as well, as pages are written concurrently.
+   */
+  synchronized void pageIndexed(long pageOffset, int pageSize) {
+    indexedPages.put(pageOffset, pageSize);
+    Integer size;
+    while ((size = indexedPages.remove(offset)) != null) {
+      offset += size;
+    }
+    save();
+  }
+
+  synchronized void save() {
+    if (file == null) {
+      return;
+    }
+    Properties properties = new Properties();
+    properties.setProperty(INDEX_NAME, indexName);
+    properties.setProperty(OFFSET, String.valueOf(offset));
+    try (OutputStream out = Files.newOutputStream(file)) {
+      properties.store(out, "Dataset batch indexing checkpoint");
+    } catch (IOException ex) {
+      throw new IllegalStateException("Cannot write checkpoint file " + file, ex);
+    }
+  }
+
+  /** Removes the checkpoint file once the run has completed. */
+  synchronized void delete() {
+    if (file == null) {
+      return;
+    }
+    try {
+      Files.deleteIfExists(file);
+    } catch (IOException ex) {
+      throw new IllegalStateException("Cannot delete checkpoint file " + file, ex);
+    }
+  }
+}
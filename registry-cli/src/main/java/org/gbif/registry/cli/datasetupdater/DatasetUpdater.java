@@ -23,6 +23,8 @@ import org.gbif.registry.cli.common.stubs.DoiIssuingServiceStub;
 import org.gbif.registry.cli.common.stubs.EditorAuthorizationServiceStub;
 import org.gbif.registry.cli.common.stubs.EventManagerStub;
 import org.gbif.registry.cli.common.stubs.SearchServiceStub;
+import org.gbif.registry.service.MetadataParsingExecutor;
+import org.gbif.registry.service.MetadataValidationServiceImpl;
 import org.gbif.registry.service.RegistryDatasetServiceImpl;
 import org.gbif.registry.ws.resources.DatasetResource;
 
@@ -71,7 +73,9 @@ public class DatasetUpdater {
             DataCiteMetadataBuilderServiceStub.class,
             EditorAuthorizationServiceStub.class,
             EventManagerStub.class,
+            MetadataParsingExecutor.class,
             RegistryDatasetServiceImpl.class,
+            MetadataValidationServiceImpl.class,
             DatasetResource.class)
         .build();
   }
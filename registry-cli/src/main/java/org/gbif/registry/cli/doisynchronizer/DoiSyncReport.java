@@ -0,0 +1,202 @@
+/*
+ * Copyright 2020 Global Biodiversity Information Facility (GBIF)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gbif.registry.cli.doisynchronizer;
+
+import org.gbif.api.model.common.DOI;
+import org.gbif.api.model.common.DoiData;
+import org.gbif.registry.cli.doisynchronizer.diagnostic.GbifDOIDiagnosticResult;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import javax.annotation.Nullable;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Machine readable report of a synchronization with one entry per DOI, written as CSV or as JSON
+ * lines. Entries are flushed as they are added, so the report of an interrupted run is complete up
+ * to the interruption. Thread safe.
+ */
+public class DoiSyncReport implements Closeable {
+
+  /** Format of the report file. */
+  public enum Format {
+    CSV,
+    JSON
+  }
+
+  private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+  private static final String[] COLUMNS = {
+    "doi", "result", "registryStatus", "dataciteStatus", "registryTarget", "dataciteTarget"
+  };
+
+  private final Writer writer;
+  private final Format format;
+
+  private DoiSyncReport(Writer writer, Format format) {
+    this.writer = writer;
+    this.format = format;
+  }
+
+  /**
+   * Opens a new report file, replacing any existing one.
+   *
+   * @param file report file
+   * @param format format of the report
+   */
+  public static DoiSyncReport open(Path file, Format format) throws IOException {
+    DoiSyncReport report =
+        new DoiSyncReport(Files.newBufferedWriter(file, StandardCharsets.UTF_8), format);
+    if (format == Format.CSV) {
+      report.writeLine(String.join(",", COLUMNS));
+    }
+    return report;
+  }
+
+  /**
+   * Opens the report of an interrupted run to add to it. Only the first entry of each of the given
+   * DOIs is kept, the entries of the other DOIs are removed as these are handled again, and so is
+   * an entry cut by the interruption.
+   *
+   * @param file report file
+   * @param format format of the report
+   * @param handledDois names of the DOIs handled before the checkpoint of the interrupted run
+   */
+  public static DoiSyncReport resume(Path file, Format format, Set<String> handledDois)
+      throws IOException {
+    if (!Files.exists(file) || Files.size(file) == 0) {
+      return open(file, format);
+    }
+
+    StringBuilder kept = new StringBuilder();
+    Set<String> keptDois = new HashSet<>();
+    List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+    for (int i = 0; i < lines.size(); i++) {
+      String line = lines.get(i);
+      // the CSV header
+      boolean keep = i == 0 && format == Format.CSV;
+      if (!keep) {
+        String doi = doiOf(line, format);
+        keep = doi != null && handledDois.contains(doi) && keptDois.add(doi);
+      }
+      if (keep) {
+        kept.append(line).append('\n');
+      }
+    }
+
+    // replaces the file in one step, so an interruption never loses the kept entries
+    Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+    Files.write(tmp, kept.toString().getBytes(StandardCharsets.UTF_8));
+    Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    return new DoiSyncReport(
+        Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.APPEND), format);
+  }
+
+  /** DOI name of a report entry, null if the entry can not be read. */
+  @Nullable
+  static String doiOf(String line, Format format) {
+    if (format == Format.JSON) {
+      try {
+        JsonNode doi = OBJECT_MAPPER.readTree(line).get(COLUMNS[0]);
+        return doi != null && doi.isTextual() ? doi.asText() : null;
+      } catch (IOException e) {
+        return null;
+      }
+    }
+    if (!line.startsWith("\"")) {
+      int end = line.indexOf(',');
+      return end > 0 ? line.substring(0, end) : null;
+    }
+    // quoted value, with its quotes doubled
+    StringBuilder doi = new StringBuilder();
+    for (int i = 1; i < line.length(); i++) {
+      char c = line.charAt(i);
+      if (c == '"') {
+        if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+          doi.append(c);
+          i++;
+        } else {
+          return i + 1 < line.length() && line.charAt(i + 1) == ',' ? doi.toString() : null;
+        }
+      } else {
+        doi.append(c);
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Adds the entry of a DOI.
+   *
+   * @param doi the DOI
+   * @param result outcome of the synchronization
+   * @param diagnostic diagnostic of the DOI, null if skipped or not available
+   */
+  public void add(DOI doi, DoiSyncResult result, @Nullable GbifDOIDiagnosticResult diagnostic)
+      throws IOException {
+    DoiData registry = diagnostic != null ? diagnostic.getDoiData() : null;
+    Map<String, Object> entry = new LinkedHashMap<>();
+    entry.put(COLUMNS[0], doi.getDoiName());
+    entry.put(COLUMNS[1], result);
+    entry.put(COLUMNS[2], registry != null ? registry.getStatus() : null);
+    entry.put(COLUMNS[3], diagnostic != null ? diagnostic.getDataciteDoiStatus() : null);
+    entry.put(COLUMNS[4], registry != null ? registry.getTarget() : null);
+    entry.put(COLUMNS[5], diagnostic != null ? diagnostic.getDataciteTarget() : null);
+
+    if (format == Format.JSON) {
+      writeLine(OBJECT_MAPPER.writeValueAsString(entry));
+    } else {
+      writeLine(
+          entry.values().stream().map(DoiSyncReport::toCsvValue).collect(Collectors.joining(",")));
+    }
+  }
+
+  private synchronized void writeLine(String line) throws IOException {
+    writer.write(line);
+    writer.write('\n');
+    writer.flush();
+  }
+
+  static String toCsvValue(@Nullable Object value) {
+    if (value == null) {
+      return "";
+    }
+    String s = value.toString();
+    if (s.contains(",") || s.contains("\"") || s.contains("\n")) {
+      return '"' + s.replace("\"", "\"\"") + '"';
+    }
+    return s;
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    writer.close();
+  }
+}
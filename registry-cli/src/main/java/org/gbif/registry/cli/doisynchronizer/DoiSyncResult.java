@@ -0,0 +1,73 @@
+/*
+ * Copyright 2020 Global Biodiversity Information Facility (GBIF)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gbif.registry.cli.doisynchronizer;
+
+import org.gbif.registry.cli.doisynchronizer.diagnostic.GbifDOIDiagnosticResult;
+
+import javax.annotation.Nullable;
+
+/** Outcome of the synchronization of a single DOI, as written to the report. */
+public enum DoiSyncResult {
+
+  /** Registry and DataCite agree on the status and the metadata. */
+  IN_SYNC,
+
+  /** Same status in the registry and at DataCite, but different metadata. */
+  METADATA_DIFFERS,
+
+  /** The registry and DataCite disagree on the status of the DOI. */
+  STATUS_DIFFERS,
+
+  /** The DOI is unknown to DataCite. */
+  MISSING_REMOTELY,
+
+  /** DataCite could not be queried, so the DOI must be checked again. */
+  DATACITE_UNAVAILABLE,
+
+  /** The DOI is not a GBIF DOI of the registry. */
+  UNKNOWN,
+
+  /** The diagnostic was skipped. */
+  NOT_CHECKED,
+
+  /** The DOI has been sent again to the doi-updater. */
+  FIXED,
+
+  /** The DOI needed a fix but could not be sent again. */
+  FIX_FAILED,
+
+  /** The DOI could not be handled, see the logs. */
+  ERROR;
+
+  /** Classifies the diagnostic of a DOI, null if the DOI is not in the registry. */
+  public static DoiSyncResult of(@Nullable GbifDOIDiagnosticResult diagnostic) {
+    if (diagnostic == null) {
+      return UNKNOWN;
+    }
+    // a failed request says nothing about the DOI at DataCite
+    if (diagnostic.isDataciteUnavailable()) {
+      return DATACITE_UNAVAILABLE;
+    }
+    if (!diagnostic.isDoiExistsAtDatacite()) {
+      return MISSING_REMOTELY;
+    }
+    if (diagnostic.getDoiData() == null
+        || diagnostic.getDoiData().getStatus() != diagnostic.getDataciteDoiStatus()) {
+      return STATUS_DIFFERS;
+    }
+    return diagnostic.isMetadataEquals() ? IN_SYNC : METADATA_DIFFERS;
+  }
+}
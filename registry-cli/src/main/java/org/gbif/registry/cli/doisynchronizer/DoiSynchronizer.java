@@ -24,6 +24,7 @@ import org.gbif.doi.service.DoiService;
 import org.gbif.registry.cli.common.SingleColumnFileReader;
 import org.gbif.registry.cli.common.spring.SpringContextBuilder;
 import org.gbif.registry.cli.doisynchronizer.diagnostic.DoiDiagnostician;
+import org.gbif.registry.cli.doisynchronizer.diagnostic.GbifDOIDiagnosticResult;
 import org.gbif.registry.doi.DatasetDoiDataCiteHandlingService;
 import org.gbif.registry.doi.DoiIssuingService;
 import org.gbif.registry.doi.DownloadDoiDataCiteHandlingService;
@@ -36,9 +37,18 @@ import org.gbif.registry.persistence.mapper.UserMapper;
 import java.io.File;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
 import java.text.MessageFormat;
 import java.util.List;
 import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import javax.annotation.Nullable;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.StringUtils;
@@ -46,11 +56,18 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.context.ApplicationContext;
 
+import com.google.common.util.concurrent.RateLimiter;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
 import static org.gbif.registry.doi.util.RegistryDoiUtils.isIdentifierDOIFound;
 
 /**
  * This service allows to print a report of DOI and/or try to fix them by synchronizing with
  * Datacite. This service is mainly design to be run manually and uses System.out.
+ *
+ * <p>The DOIs of a list are handled concurrently, with a bounded rate of DataCite requests, and the
+ * progress is checkpointed so an interrupted run can be resumed. The outcome of every DOI can be
+ * written to a machine readable report.
  */
 public class DoiSynchronizer {
 
@@ -90,30 +107,130 @@ public class DoiSynchronizer {
     this.userMapper = context.getBean(UserMapper.class);
     this.diagnostician =
         new DoiDiagnostician(
-            doiMapper, context.getBean(DoiService.class), datasetMapper, downloadMapper);
+            doiMapper,
+            context.getBean(DoiService.class),
+            datasetMapper,
+            downloadMapper,
+            RateLimiter.create(config.dataciteRate));
   }
 
   /** Handle a single DOI provided as String */
   public void handleDOI() {
+    DOI doi;
     try {
-      handleDOI(new DOI(config.doi));
+      doi = new DOI(config.doi);
     } catch (IllegalArgumentException iaEx) {
       System.out.println(config.doi + " is not a valid DOI");
+      return;
+    }
+
+    try (DoiSyncReport report = openReport()) {
+      handleDOI(doi, report);
+    } catch (IOException e) {
+      throw new IllegalStateException("Cannot write report " + config.report, e);
     }
   }
 
   /** Handle a list of DOIs provided as a file name */
   public void handleListDOI() {
-    SingleColumnFileReader.readFile(config.doiList, SingleColumnFileReader::toDoi)
-        .forEach(this::handleDOI);
+    List<DOI> dois = SingleColumnFileReader.readFile(config.doiList, SingleColumnFileReader::toDoi);
+    SynchronizationCheckpoint checkpoint =
+        SynchronizationCheckpoint.load(
+            StringUtils.isNotBlank(config.checkpointFile) ? Paths.get(config.checkpointFile) : null,
+            config.doiList);
+    if (checkpoint.isResumed()) {
+      System.out.println("Resuming after the first " + checkpoint.getHandled() + " DOIs");
+    }
+
+    // a full queue makes the reading thread handle DOIs itself, which slows the reading down
+    ExecutorService executor =
+        new ThreadPoolExecutor(
+            config.threads,
+            config.threads,
+            0L,
+            TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(config.threads * 2),
+            new ThreadFactoryBuilder().setNameFormat("doi-synchronizer-%d").build(),
+            new ThreadPoolExecutor.CallerRunsPolicy());
+
+    try (DoiSyncReport report = openReport(dois, checkpoint)) {
+      for (int i = checkpoint.getHandled(); i < dois.size(); i++) {
+        final int index = i;
+        executor.execute(
+            () -> {
+              handleDOI(dois.get(index), report);
+              checkpoint.handled(index);
+            });
+      }
+      awaitTermination(executor);
+    } catch (IOException e) {
+      throw new IllegalStateException("Cannot write report " + config.report, e);
+    }
+    checkpoint.delete();
+  }
+
+  @Nullable
+  private DoiSyncReport openReport() throws IOException {
+    if (StringUtils.isBlank(config.report)) {
+      return null;
+    }
+    return DoiSyncReport.open(Paths.get(config.report), config.reportFormat);
+  }
+
+  /**
+   * Opens the report of a DOI list. A resumed run keeps the entries of the DOIs before the
+   * checkpoint only, as the others are handled again.
+   */
+  @Nullable
+  private DoiSyncReport openReport(List<DOI> dois, SynchronizationCheckpoint checkpoint)
+      throws IOException {
+    if (StringUtils.isBlank(config.report) || !checkpoint.isResumed()) {
+      return openReport();
+    }
+    Set<String> handled =
+        dois.subList(0, checkpoint.getHandled()).stream()
+            .map(DOI::getDoiName)
+            .collect(Collectors.toSet());
+    return DoiSyncReport.resume(Paths.get(config.report), config.reportFormat, handled);
+  }
+
+  private static void awaitTermination(ExecutorService executor) {
+    executor.shutdown();
+    try {
+      while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+        LOG.debug("Waiting for DOIs to be handled");
+      }
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while handling DOIs", ex);
+    }
   }
 
-  /** Handle a single DOI */
-  private void handleDOI(DOI doi) {
-    if (!config.skipDiagnostic) {
-      diagnostician.reportDOIStatus(doi);
+  /** Handle a single DOI, adding its outcome to the report if any */
+  private void handleDOI(DOI doi, @Nullable DoiSyncReport report) {
+    GbifDOIDiagnosticResult diagnostic = null;
+    DoiSyncResult result;
+    try {
+      diagnostic = config.skipDiagnostic ? null : diagnostician.reportDOIStatus(doi);
+      result = synchronize(doi, diagnostic);
+    } catch (Exception e) {
+      LOG.error("Failed to handle DOI {}", doi, e);
+      result = DoiSyncResult.ERROR;
     }
 
+    if (report != null) {
+      try {
+        report.add(doi, result, diagnostic);
+      } catch (IOException e) {
+        throw new IllegalStateException("Cannot write report " + config.report, e);
+      }
+    }
+  }
+
+  private DoiSyncResult synchronize(DOI doi, @Nullable GbifDOIDiagnosticResult diagnostic) {
+    DoiSyncResult result =
+        config.skipDiagnostic ? DoiSyncResult.NOT_CHECKED : DoiSyncResult.of(diagnostic);
+
     if (config.export) {
       String registryDoiMetadata = doiMapper.getMetadata(doi);
       if (StringUtils.isNotEmpty(registryDoiMetadata)) {
@@ -128,10 +245,20 @@ public class DoiSynchronizer {
     }
 
     if (config.fixDOI) {
-      boolean result = tryFixDOI(doi);
-      System.out.println(
-          "Attempt to fix DOI " + doi.getDoiName() + " : " + (result ? "success" : "failed"));
+      // DOIs found in sync need no fix
+      if (result == DoiSyncResult.IN_SYNC) {
+        System.out.println("DOI " + doi.getDoiName() + " is in sync, no fix needed");
+      } else if (result == DoiSyncResult.DATACITE_UNAVAILABLE) {
+        // the state of the DOI at DataCite is unknown, it is fixed by a later run if needed
+        System.out.println("DataCite unavailable, DOI " + doi.getDoiName() + " not fixed");
+      } else {
+        boolean fixed = tryFixDOI(doi);
+        System.out.println(
+            "Attempt to fix DOI " + doi.getDoiName() + " : " + (fixed ? "success" : "failed"));
+        result = fixed ? DoiSyncResult.FIXED : DoiSyncResult.FIX_FAILED;
+      }
     }
+    return result;
   }
 
   /** Try to fix a DOI if possible */
@@ -22,6 +22,7 @@ import org.gbif.registry.cli.common.DbConfiguration;
 import java.util.StringJoiner;
 
 import javax.validation.Valid;
+import javax.validation.constraints.Min;
 import javax.validation.constraints.NotNull;
 
 import com.beust.jcommander.Parameter;
@@ -69,6 +70,25 @@ public class DoiSynchronizerConfiguration {
   @Parameter(names = {"--list-failed-doi"})
   public boolean listFailedDOI = false;
 
+  @Parameter(names = "--threads", description = "Number of DOIs of a list handled concurrently")
+  @Min(1)
+  public int threads = 4;
+
+  @Parameter(names = "--datacite-rate", description = "Maximum DataCite requests per second")
+  public double dataciteRate = 10;
+
+  @Parameter(
+      names = "--checkpoint-file",
+      description = "File storing the progress through the DOI list, to resume an interrupted run")
+  public String checkpointFile;
+
+  @Parameter(names = "--report", description = "File to write the outcome of every DOI to")
+  public String report;
+
+  @Parameter(names = "--report-format")
+  @NotNull
+  public DoiSyncReport.Format reportFormat = DoiSyncReport.Format.CSV;
+
   @Override
   public String toString() {
     return new StringJoiner(", ", DoiSynchronizerConfiguration.class.getSimpleName() + "[", "]")
@@ -84,6 +104,11 @@ public class DoiSynchronizerConfiguration {
         .add("skipDiagnostic=" + skipDiagnostic)
         .add("export=" + export)
         .add("listFailedDOI=" + listFailedDOI)
+        .add("threads=" + threads)
+        .add("dataciteRate=" + dataciteRate)
+        .add("checkpointFile='" + checkpointFile + "'")
+        .add("report='" + report + "'")
+        .add("reportFormat=" + reportFormat)
         .toString();
   }
 }
@@ -45,6 +45,10 @@ public final class DoiSynchronizerConfigurationValidator {
     } else if (config.export && StringUtils.isNotBlank(config.doiList)) {
       System.out.println(" --export can not be used with --doi-list");
       result = false;
+    } else if (StringUtils.isNotBlank(config.checkpointFile)
+        && StringUtils.isBlank(config.doiList)) {
+      System.out.println(" --checkpoint-file can only be used with --doi-list");
+      result = false;
     } else if (StringUtils.isNotBlank(config.doi)) {
       if (!DOI.isParsable(config.doi)) {
         System.out.println(config.doi + " is not a valid DOI");
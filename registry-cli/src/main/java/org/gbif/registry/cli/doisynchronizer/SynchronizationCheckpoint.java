@@ -0,0 +1,143 @@
+/*
+ * Copyright 2020 Global Biodiversity Information Facility (GBIF)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gbif.registry.cli.doisynchronizer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashSet;
+import java.util.Properties;
+import java.util.Set;
+
+import javax.annotation.Nullable;
+
+/**
+ * Progress of the synchronization of a DOI list: the number of DOIs at the start of the list which
+ * have all been handled. It is saved to a file after every handled DOI so an interrupted run can be
+ * resumed. DOIs handled out of order after that number are handled again by the resumed run.
+ */
+class SynchronizationCheckpoint {
+
+  private static final String DOI_LIST = "doiList";
+  private static final String HANDLED = "handled";
+
+  @Nullable private final Path file;
+  private final String doiList;
+  private final boolean resumed;
+  private int handled;
+
+  // indexes of the DOIs handled out of order
+  private final Set<Integer> handledAhead = new HashSet<>();
+
+  private SynchronizationCheckpoint(
+      @Nullable Path file, String doiList, int handled, boolean resumed) {
+    this.file = file;
+    this.doiList = doiList;
+    this.handled = handled;
+    this.resumed = resumed;
+  }
+
+  /**
+   * Loads the checkpoint of an interrupted run from the given file or starts a new one.
+   *
+   * @param file checkpoint file, checkpoints are not saved if null
+   * @param doiList the DOI list to synchronize, which must be the one of the interrupted run
+   */
+  static SynchronizationCheckpoint load(@Nullable Path file, String doiList) {
+    if (file == null || !Files.exists(file)) {
+      return new SynchronizationCheckpoint(file, doiList, 0, false);
+    }
+    Properties properties = new Properties();
+    try (InputStream in = Files.newInputStream(file)) {
+      properties.load(in);
+    } catch (IOException ex) {
+      throw new IllegalStateException("Cannot read checkpoint file " + file, ex);
+    }
+    if (!doiList.equals(properties.getProperty(DOI_LIST))) {
+      throw new IllegalStateException(
+          "Checkpoint file "
+              + file
+              + " belongs to the DOI list "
+              + properties.getProperty(DOI_LIST)
+              + ", not to "
+              + doiList);
+    }
+    return new SynchronizationCheckpoint(
+        file, doiList, Integer.parseInt(properties.getProperty(HANDLED)), true);
+  }
+
+  /** Whether an interrupted run is resumed. */
+  boolean isResumed() {
+    return resumed;
+  }
+
+  /** Number of DOIs at the start of the list which have all been handled. */
+  synchronized int getHandled() {
+    return handled;
+  }
+
+  /**
+   * Records a handled DOI. The checkpoint only moves forward once all preceding DOIs are handled as
+   * well, as DOIs are handled concurrently.
+   *
+   * @param index index of the DOI in the list
+   */
+  synchronized void handled(int index) {
+    handledAhead.add(index);
+    int before = handled;
+    while (handledAhead.remove(handled)) {
+      handled++;
+    }
+    if (handled != before) {
+      save();
+    }
+  }
+
+  synchronized void save() {
+    if (file == null) {
+      return;
+    }
+    Properties properties = new Properties();
+    properties.setProperty(DOI_LIST, doiList);
+    properties.setProperty(HANDLED, String.valueOf(handled));
+    // replaces the file in one step, so an interruption never leaves a truncated checkpoint
+    Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+    try {
+      try (OutputStream out = Files.newOutputStream(tmp)) {
+        properties.store(out, "DOI synchronization checkpoint");
+      }
+      Files.move(
+          tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException ex) {
+      throw new IllegalStateException("Cannot write checkpoint file " + file, ex);
+    }
+  }
+
+  /** Removes the checkpoint file once the run has completed. */
+  synchronized void delete() {
+    if (file == null) {
+      return;
+    }
+    try {
+      Files.deleteIfExists(file);
+    } catch (IOException ex) {
+      throw new IllegalStateException("Cannot delete checkpoint file " + file, ex);
+    }
+  }
+}
@@ -26,7 +26,8 @@ public class DoiDiagnosticPrinter {
     this.out = out;
   }
 
-  public void printReport(GbifDOIDiagnosticResult result) {
+  /** Prints a report, reports printed concurrently are not interleaved. */
+  public synchronized void printReport(GbifDOIDiagnosticResult result) {
     out.println("------ DOI: " + result.getDoi().getDoiName() + "------");
     out.println("DOI Status (GBIF Database): " + result.getDoiData().getStatus());
     out.println("------ Context -----");
@@ -36,6 +37,9 @@ public class DoiDiagnosticPrinter {
       }
     }
     out.println("------ Datacite -----");
+    if (result.isDataciteUnavailable()) {
+      out.println("Datacite could not be queried, see the logs");
+    }
     out.println("DOI found at Datacite?: " + result.isDoiExistsAtDatacite());
     if (result.isDoiExistsAtDatacite()) {
       out.println("DOI Status at Datacite?: " + result.getDataciteDoiStatus());
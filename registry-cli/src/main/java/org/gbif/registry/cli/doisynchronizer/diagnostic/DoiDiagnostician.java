@@ -27,9 +27,13 @@ import org.gbif.registry.persistence.mapper.DatasetMapper;
 import org.gbif.registry.persistence.mapper.DoiMapper;
 import org.gbif.registry.persistence.mapper.OccurrenceDownloadMapper;
 
+import javax.annotation.Nullable;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.util.concurrent.RateLimiter;
+
 public class DoiDiagnostician {
 
   private static final Logger LOG = LoggerFactory.getLogger(DoiDiagnostician.class);
@@ -40,20 +44,39 @@ public class DoiDiagnostician {
   private final DoiService dataCiteService;
   private final DatasetMapper datasetMapper;
   private final OccurrenceDownloadMapper downloadMapper;
+  @Nullable private final RateLimiter dataCiteRateLimiter;
 
   public DoiDiagnostician(
       DoiMapper doiMapper,
       DoiService dataCiteService,
       DatasetMapper datasetMapper,
       OccurrenceDownloadMapper downloadMapper) {
+    this(doiMapper, dataCiteService, datasetMapper, downloadMapper, null);
+  }
+
+  /**
+   * @param dataCiteRateLimiter limits the rate of the requests sent to DataCite, unlimited if null
+   */
+  public DoiDiagnostician(
+      DoiMapper doiMapper,
+      DoiService dataCiteService,
+      DatasetMapper datasetMapper,
+      OccurrenceDownloadMapper downloadMapper,
+      @Nullable RateLimiter dataCiteRateLimiter) {
     this.doiMapper = doiMapper;
     this.dataCiteService = dataCiteService;
     this.datasetMapper = datasetMapper;
     this.downloadMapper = downloadMapper;
+    this.dataCiteRateLimiter = dataCiteRateLimiter;
   }
 
-  /** Report the current status of a DOI */
-  public void reportDOIStatus(DOI doi) {
+  /**
+   * Report the current status of a DOI
+   *
+   * @return the diagnostic of the DOI, null if nothing was found for the DOI
+   */
+  @Nullable
+  public GbifDOIDiagnosticResult reportDOIStatus(DOI doi) {
     GbifDOIDiagnosticResult doiDiagnostic = generateGbifDOIDiagnostic(doi);
 
     if (doiDiagnostic != null) {
@@ -61,6 +84,7 @@ public class DoiDiagnostician {
     } else {
       System.out.println("No report can be generated. Nothing found for DOI " + doi);
     }
+    return doiDiagnostic;
   }
 
   /** Check the status of a DOI between GBIF and Datacite. */
@@ -84,9 +108,11 @@ public class DoiDiagnostician {
     doiGbifDataciteDiagnostic.setDoiData(doiData);
 
     try {
+      acquireDataCitePermit();
       doiGbifDataciteDiagnostic.setDoiExistsAtDatacite(dataCiteService.exists(doi));
     } catch (DoiException e) {
       LOG.warn("Can not check existence of DOI " + doi.getDoiName(), e);
+      doiGbifDataciteDiagnostic.setDataciteUnavailable(true);
     }
 
     if (doiGbifDataciteDiagnostic.isDoiExistsAtDatacite()) {
@@ -94,26 +120,36 @@ public class DoiDiagnostician {
       String registryDoiMetadataXml = doiMapper.getMetadata(doi);
       String dataCiteDoiMetadataXml;
       try {
+        acquireDataCitePermit();
         dataCiteDoiMetadataXml = dataCiteService.getMetadata(doi);
         metadataEquals =
             MetadataUtils.metadataEquals(registryDoiMetadataXml, dataCiteDoiMetadataXml);
       } catch (DoiException e) {
         LOG.error("Can't compare DOI metadata", e);
+        doiGbifDataciteDiagnostic.setDataciteUnavailable(true);
       }
 
       doiGbifDataciteDiagnostic.setMetadataEquals(metadataEquals);
 
       try {
+        acquireDataCitePermit();
         DoiData doiStatus = dataCiteService.resolve(doi);
         doiGbifDataciteDiagnostic.setDataciteDoiStatus(doiStatus.getStatus());
         doiGbifDataciteDiagnostic.setDataciteTarget(doiStatus.getTarget());
       } catch (DoiException e) {
-        LOG.error("Failed to resolve DOI {}", doi);
+        LOG.error("Failed to resolve DOI {}", doi, e);
+        doiGbifDataciteDiagnostic.setDataciteUnavailable(true);
       }
     }
     return doiGbifDataciteDiagnostic;
   }
 
+  private void acquireDataCitePermit() {
+    if (dataCiteRateLimiter != null) {
+      dataCiteRateLimiter.acquire();
+    }
+  }
+
   public GbifDOIDiagnosticResult createGbifDOIDatasetDiagnostic(DOI doi) {
     GbifDatasetDOIDiagnosticResult datasetDiagnosticResult =
         new GbifDatasetDOIDiagnosticResult(doi);
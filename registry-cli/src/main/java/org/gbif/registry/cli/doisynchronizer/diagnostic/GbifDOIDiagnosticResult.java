@@ -39,6 +39,7 @@ public abstract class GbifDOIDiagnosticResult {
   protected DoiStatus dataciteDoiStatus;
   protected URI dataciteTarget;
   protected boolean metadataEquals;
+  protected boolean dataciteUnavailable;
 
   /** Mechanism to let concrete classes provide contextual content to the diagnostic */
   public abstract List<String> getContextInformation();
@@ -75,6 +76,15 @@ public abstract class GbifDOIDiagnosticResult {
     this.metadataEquals = metadataEquals;
   }
 
+  /** Whether a DataCite request failed, leaving the DataCite side of the diagnostic incomplete. */
+  public boolean isDataciteUnavailable() {
+    return dataciteUnavailable;
+  }
+
+  public void setDataciteUnavailable(boolean dataciteUnavailable) {
+    this.dataciteUnavailable = dataciteUnavailable;
+  }
+
   public DoiStatus getDataciteDoiStatus() {
     return dataciteDoiStatus;
   }
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2020 Global Biodiversity Information Facility (GBIF)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gbif.registry.cli.doiupdater;
+
+import java.util.Random;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Exponential back-off between the attempts to send a DOI change to DataCite.
+ *
+ * <p>The delay doubles after every failed attempt up to a maximum. Half of it is randomised, so
+ * that the many DOIs failing during a DataCite outage are not all retried at the same time.
+ */
+public class DoiRetryPolicy {
+
+  private final long baseDelayMs;
+  private final long maxDelayMs;
+  private final int maxAttempts;
+  private final Random random;
+
+  /**
+   * @param baseDelayMs delay after the first failed attempt, in milliseconds
+   * @param maxDelayMs maximum delay between two attempts, in milliseconds
+   * @param maxAttempts number of attempts after which a change is given up
+   */
+  public DoiRetryPolicy(long baseDelayMs, long maxDelayMs, int maxAttempts) {
+    this(baseDelayMs, maxDelayMs, maxAttempts, new Random());
+  }
+
+  DoiRetryPolicy(long baseDelayMs, long maxDelayMs, int maxAttempts, Random random) {
+    Preconditions.checkArgument(baseDelayMs >= 0, "The base delay cannot be negative");
+    Preconditions.checkArgument(maxDelayMs >= baseDelayMs, "The max delay is below the base delay");
+    Preconditions.checkArgument(maxAttempts >= 1, "At least one attempt is needed");
+    this.baseDelayMs = baseDelayMs;
+    this.maxDelayMs = maxDelayMs;
+    this.maxAttempts = maxAttempts;
+    this.random = random;
+  }
+
+  /** Whether a change which failed the given number of times is given up. */
+  public boolean isExhausted(int attempts) {
+    return attempts >= maxAttempts;
+  }
+
+  /**
+   * Returns the delay before the next attempt of a change which failed the given number of times,
+   * between half and all of {@code min(maxDelay, baseDelay * 2^(attempts - 1))}.
+   */
+  public long delayMs(int attempts) {
+    Preconditions.checkArgument(attempts >= 1, "No attempt failed yet");
+    long delay = maxDelayMs;
+    // shifting beyond the leading zeros would overflow
+    if (attempts - 1 < Long.numberOfLeadingZeros(baseDelayMs) - 1) {
+      delay = Math.min(maxDelayMs, baseDelayMs << (attempts - 1));
+    }
+    long half = delay / 2;
+    return half + (long) (random.nextDouble() * (delay - half + 1));
+  }
+
+  public int getMaxAttempts() {
+    return maxAttempts;
+  }
+}
@@ -26,9 +26,17 @@ import org.gbif.doi.service.DoiHttpException;
 import org.gbif.doi.service.DoiService;
 import org.gbif.doi.service.InvalidMetadataException;
 import org.gbif.registry.doi.converter.DownloadConverter;
+import org.gbif.registry.domain.doi.DoiRetry;
 import org.gbif.registry.persistence.mapper.DoiMapper;
+import org.gbif.registry.persistence.mapper.DoiRetryMapper;
 
 import java.net.URI;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+
+import javax.annotation.Nullable;
 
 import org.apache.http.HttpStatus;
 import org.slf4j.Logger;
@@ -36,24 +44,91 @@ import org.slf4j.LoggerFactory;
 import org.slf4j.Marker;
 import org.slf4j.MarkerFactory;
 
+import com.google.common.util.concurrent.Striped;
+import com.yammer.metrics.core.Gauge;
+import com.yammer.metrics.core.Meter;
+import com.yammer.metrics.core.MetricsRegistry;
+
 /**
  * Message callback implementation to take DOI updates and send them to DataCite. Updates the status
  * of the DOI in the registry database.
+ *
+ * <p>A change is sent once per message. A change failing for a transient reason is stored in the
+ * doi_retry table and sent again by {@link #retryDue} with an exponential back-off, so a failing
+ * DOI never blocks the consumer. A change which failed too many times is marked as dead and kept
+ * for manual inspection. A newer change of the same DOI supersedes a pending retry.
+ *
+ * <p>Due retries are claimed in batches under a lease with a new owner token. The lease of a
+ * retry is renewed right before its change is sent, so it covers a single change however long
+ * the batch takes. A retry whose lease was lost, because it expired and another doi-updater took
+ * it or because a newer change superseded it, is skipped and its outcome is never stored.
  */
+@SuppressWarnings("UnstableApiUsage")
 public class DoiUpdateListener extends AbstractMessageCallback<ChangeDoiMessage> {
 
   private static final Logger LOG = LoggerFactory.getLogger(DoiUpdateListener.class);
   private static final Marker DOI_SMTP = MarkerFactory.getMarker("DOI_SMTP");
-  private static final int MAX_RETRY = 4;
-  private final long timeToRetryInMs;
+  // long enough to send a change, even with slow DataCite responses and truncated metadata. The
+  // lease is renewed for every retry of a batch, retries waiting too long in a batch whose lease
+  // expired can be taken by another doi-updater and are then skipped.
+  private static final long RETRY_LEASE_MS = TimeUnit.MINUTES.toMillis(5);
 
   private final DoiService doiService;
   private final DoiMapper doiMapper;
+  private final DoiRetryMapper doiRetryMapper;
+  private final DoiRetryPolicy retryPolicy;
+
+  // serialises the changes of a DOI handled by concurrent consumers and the retries
+  private final Striped<Lock> doiLocks = Striped.lock(64);
+
+  private final Meter attempts;
+  private final Meter successes;
+  private final Meter deadLettered;
 
-  public DoiUpdateListener(DoiService doiService, DoiMapper doiMapper, long timeToRetryInMs) {
+  public DoiUpdateListener(
+      DoiService doiService,
+      DoiMapper doiMapper,
+      DoiRetryMapper doiRetryMapper,
+      DoiRetryPolicy retryPolicy,
+      MetricsRegistry metrics) {
     this.doiService = doiService;
     this.doiMapper = doiMapper;
-    this.timeToRetryInMs = timeToRetryInMs;
+    this.doiRetryMapper = doiRetryMapper;
+    this.retryPolicy = retryPolicy;
+
+    attempts = metrics.newMeter(DoiUpdateListener.class, "attempts", "attempts", TimeUnit.MINUTES);
+    successes =
+        metrics.newMeter(DoiUpdateListener.class, "successes", "successes", TimeUnit.MINUTES);
+    deadLettered =
+        metrics.newMeter(DoiUpdateListener.class, "deadLettered", "DOIs", TimeUnit.MINUTES);
+    metrics.newGauge(
+        DoiUpdateListener.class,
+        "pendingRetries",
+        new Gauge<Long>() {
+          @Override
+          public Long value() {
+            return doiRetryMapper.count(DoiRetry.State.PENDING);
+          }
+        });
+    metrics.newGauge(
+        DoiUpdateListener.class,
+        "deadRetries",
+        new Gauge<Long>() {
+          @Override
+          public Long value() {
+            return doiRetryMapper.count(DoiRetry.State.DEAD);
+          }
+        });
+    metrics.newGauge(
+        DoiUpdateListener.class,
+        "retryLagMs",
+        new Gauge<Long>() {
+          @Override
+          public Long value() {
+            Long lag = doiRetryMapper.getDueLag();
+            return lag != null ? lag : 0L;
+          }
+        });
   }
 
   /**
@@ -64,6 +139,53 @@ public class DoiUpdateListener extends AbstractMessageCallback<ChangeDoiMessage>
    */
   @Override
   public void handleMessage(ChangeDoiMessage msg) {
+    Lock lock = doiLocks.get(msg.getDoi());
+    lock.lock();
+    try {
+      update(msg, 0, null);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Sends the due changes which failed before to DataCite again.
+   *
+   * @param limit maximum number of changes to send
+   * @return the number of due changes found, at most the limit
+   */
+  public int retryDue(int limit) {
+    String owner = UUID.randomUUID().toString();
+    List<DoiRetry> due = doiRetryMapper.claimDue(limit, owner, RETRY_LEASE_MS);
+    for (DoiRetry retry : due) {
+      Lock lock = doiLocks.get(retry.getDoi());
+      lock.lock();
+      try {
+        // a newer change supersedes the retry and gives its lease back
+        if (doiRetryMapper.renewLease(retry.getDoi(), owner, RETRY_LEASE_MS) == 0) {
+          LOG.debug("Retry of DOI {} superseded or taken over", retry.getDoi());
+          continue;
+        }
+        update(
+            new ChangeDoiMessage(
+                retry.getStatus(), retry.getDoi(), retry.getMetadata(), retry.getTarget()),
+            retry.getAttempts(),
+            owner);
+      } finally {
+        lock.unlock();
+      }
+    }
+    return due.size();
+  }
+
+  /**
+   * Sends a change to DataCite once, storing a retry if it fails.
+   *
+   * @param msg the change
+   * @param failedAttempts number of times the change failed before
+   * @param leaseOwner owner of the lease of the retry sent, null for a new change
+   */
+  private void update(ChangeDoiMessage msg, int failedAttempts, @Nullable String leaseOwner) {
     LOG.debug("Handling change DOI to {} message for {}", msg.getStatus(), msg.getDoi());
     final DoiData currState = doiMapper.get(msg.getDoi());
     if (currState == null) {
@@ -72,8 +194,11 @@ public class DoiUpdateListener extends AbstractMessageCallback<ChangeDoiMessage>
       return;
     }
 
+    final int attempt = failedAttempts + 1;
+    attempts.mark();
     boolean descriptionTruncated = false;
-    for (int retry = 1; retry <= MAX_RETRY; retry++) {
+    boolean constituentsTruncated = false;
+    while (true) {
       try {
         switch (msg.getStatus()) {
           case REGISTERED:
@@ -89,7 +214,9 @@ public class DoiUpdateListener extends AbstractMessageCallback<ChangeDoiMessage>
             LOG.warn("Cannot update {} to illegal state {}.", msg.getDoi(), msg.getStatus());
             break;
         }
-        break;
+        successes.mark();
+        removeRetry(msg.getDoi(), leaseOwner);
+        return;
 
       } catch (DoiExistsException e) {
         writeFailedStatus(msg.getDoi(), msg.getTarget(), msg.getMetadata());
@@ -99,18 +226,20 @@ public class DoiUpdateListener extends AbstractMessageCallback<ChangeDoiMessage>
             msg.getDoi(),
             msg.getStatus(),
             e);
-        break;
+        removeRetry(msg.getDoi(), leaseOwner);
+        return;
 
       } catch (DoiHttpException e) {
         writeFailedStatus(msg.getDoi(), msg.getTarget(), msg.getMetadata());
-        if (HttpStatus.SC_REQUEST_TOO_LONG == e.getStatus()) {
+        if (HttpStatus.SC_REQUEST_TOO_LONG == e.getStatus() && !constituentsTruncated) {
+          // truncating the metadata doesn't need to wait, so it is tried again right away
           LOG.warn(
               DOI_SMTP,
               "Metadata of length {} is exceeding max datacite limit in attempt #{} "
                   + "while updating {} to {} with target {}. "
                   + "Trying again {}",
               msg.getMetadata().length(),
-              retry,
+              attempt,
               msg.getDoi(),
               msg.getStatus(),
               msg.getTarget(),
@@ -127,6 +256,7 @@ public class DoiUpdateListener extends AbstractMessageCallback<ChangeDoiMessage>
               truncatedXml =
                   DownloadConverter.truncateConstituents(
                       msg.getDoi(), msg.getMetadata(), msg.getTarget());
+              constituentsTruncated = true;
             } else {
               LOG.debug("Original metadata for DOI {}:\n\n{}", msg.getDoi(), msg.getMetadata());
               truncatedXml =
@@ -138,6 +268,9 @@ public class DoiUpdateListener extends AbstractMessageCallback<ChangeDoiMessage>
                 new ChangeDoiMessage(msg.getStatus(), msg.getDoi(), truncatedXml, msg.getTarget());
           } catch (InvalidMetadataException e1) {
             LOG.warn("Failed to deserialize xml metadata for DOI {}", msg.getDoi(), e1);
+            // the same metadata would be rejected again
+            deadLetter(msg, attempt, e, leaseOwner);
+            return;
           }
         } else {
           LOG.warn(
@@ -147,9 +280,10 @@ public class DoiUpdateListener extends AbstractMessageCallback<ChangeDoiMessage>
               msg.getDoi(),
               msg.getStatus(),
               msg.getTarget(),
-              retry,
+              attempt,
               e);
-          sleep();
+          scheduleRetry(msg, attempt, e, leaseOwner);
+          return;
         }
 
       } catch (DoiException e) {
@@ -160,20 +294,82 @@ public class DoiUpdateListener extends AbstractMessageCallback<ChangeDoiMessage>
             msg.getDoi(),
             msg.getStatus(),
             msg.getTarget(),
-            retry,
+            attempt,
             e);
-        sleep();
+        scheduleRetry(msg, attempt, e, leaseOwner);
+        return;
       }
     }
   }
 
-  // sleep for some time
-  private void sleep() {
-    try {
-      Thread.sleep(timeToRetryInMs);
-    } catch (InterruptedException e1) {
-      LOG.info("Interrupted retries");
+  /** Stores the failed change to be sent again later, unless it failed too many times. */
+  private void scheduleRetry(
+      ChangeDoiMessage msg, int attempt, Exception cause, @Nullable String leaseOwner) {
+    if (retryPolicy.isExhausted(attempt)) {
+      deadLetter(msg, attempt, cause, leaseOwner);
+      return;
+    }
+    long delayMs = retryPolicy.delayMs(attempt);
+    if (storeRetry(toRetry(msg, attempt, DoiRetry.State.PENDING, cause), delayMs, leaseOwner)) {
+      LOG.info(
+          "Retrying change of DOI {} to {} in {} ms", msg.getDoi(), msg.getStatus(), delayMs);
+    }
+  }
+
+  /** Gives up a failed change, keeping it for manual inspection. */
+  private void deadLetter(
+      ChangeDoiMessage msg, int attempt, Exception cause, @Nullable String leaseOwner) {
+    if (!storeRetry(toRetry(msg, attempt, DoiRetry.State.DEAD, cause), 0, leaseOwner)) {
+      return;
+    }
+    deadLettered.mark();
+    LOG.error(
+        DOI_SMTP,
+        "Giving up changing DOI {} to {} with target {} after {} attempts",
+        msg.getDoi(),
+        msg.getStatus(),
+        msg.getTarget(),
+        attempt);
+  }
+
+  /**
+   * Stores the retry of a change. The retry of a new change supersedes any pending one, the retry
+   * of a retried change is only stored while its lease is held.
+   *
+   * @return true if the retry was stored
+   */
+  private boolean storeRetry(DoiRetry retry, long delayMs, @Nullable String leaseOwner) {
+    if (leaseOwner == null) {
+      doiRetryMapper.upsert(retry, delayMs);
+      return true;
+    }
+    if (doiRetryMapper.updateLeased(retry, delayMs, leaseOwner) == 0) {
+      LOG.warn("Lease of the retry of DOI {} lost, its outcome is dropped", retry.getDoi());
+      return false;
     }
+    return true;
+  }
+
+  /** Removes the retry of a change which succeeded or will never succeed. */
+  private void removeRetry(DOI doi, @Nullable String leaseOwner) {
+    if (leaseOwner == null) {
+      doiRetryMapper.delete(doi);
+    } else if (doiRetryMapper.deleteLeased(doi, leaseOwner) == 0) {
+      LOG.warn("Lease of the retry of DOI {} lost, a newer change is kept", doi);
+    }
+  }
+
+  private static DoiRetry toRetry(
+      ChangeDoiMessage msg, int attempts, DoiRetry.State state, Exception cause) {
+    DoiRetry retry = new DoiRetry();
+    retry.setDoi(msg.getDoi());
+    retry.setStatus(msg.getStatus());
+    retry.setTarget(msg.getTarget());
+    retry.setMetadata(msg.getMetadata());
+    retry.setAttempts(attempts);
+    retry.setState(state);
+    retry.setLastError(cause.toString());
+    return retry;
   }
 
   /**
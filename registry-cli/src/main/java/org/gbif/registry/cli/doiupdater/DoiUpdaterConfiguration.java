@@ -24,6 +24,7 @@ import java.util.StringJoiner;
 import java.util.concurrent.TimeUnit;
 
 import javax.validation.Valid;
+import javax.validation.constraints.Min;
 import javax.validation.constraints.NotNull;
 
 import com.beust.jcommander.Parameter;
@@ -46,9 +47,28 @@ public class DoiUpdaterConfiguration {
   @NotNull
   public String queueName;
 
-  @Parameter(names = "--retry-time")
+  @Parameter(names = "--consumers")
+  @Min(1)
+  public int consumers = 1;
+
+  @Parameter(names = "--retry-time", description = "Delay before the first retry of a change")
   public long timeToRetryInMs = TimeUnit.MINUTES.toMillis(5);
 
+  @Parameter(names = "--max-retry-time", description = "Maximum delay between two retries")
+  public long maxTimeToRetryInMs = TimeUnit.HOURS.toMillis(6);
+
+  @Parameter(names = "--max-attempts", description = "Attempts after which a change is given up")
+  @Min(1)
+  public int maxAttempts = 8;
+
+  @Parameter(names = "--retry-poll-interval")
+  @Min(1)
+  public long retryPollIntervalInMs = TimeUnit.SECONDS.toMillis(30);
+
+  @Parameter(names = "--retry-batch-size")
+  @Min(1)
+  public int retryBatchSize = 100;
+
   @Override
   public String toString() {
     return new StringJoiner(", ", DoiUpdaterConfiguration.class.getSimpleName() + "[", "]")
@@ -57,7 +77,12 @@ public class DoiUpdaterConfiguration {
         .add("registry=" + registry)
         .add("datacite=" + datacite)
         .add("queueName='" + queueName + "'")
+        .add("consumers=" + consumers)
         .add("timeToRetryInMs=" + timeToRetryInMs)
+        .add("maxTimeToRetryInMs=" + maxTimeToRetryInMs)
+        .add("maxAttempts=" + maxAttempts)
+        .add("retryPollIntervalInMs=" + retryPollIntervalInMs)
+        .add("retryBatchSize=" + retryBatchSize)
         .toString();
   }
 }
@@ -19,21 +19,35 @@ import org.gbif.common.messaging.MessageListener;
 import org.gbif.doi.service.DoiService;
 import org.gbif.registry.cli.common.spring.SpringContextBuilder;
 import org.gbif.registry.persistence.mapper.DoiMapper;
+import org.gbif.registry.persistence.mapper.DoiRetryMapper;
 
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.context.ApplicationContext;
 
 import com.google.common.util.concurrent.AbstractIdleService;
+import com.yammer.metrics.Metrics;
 
 /**
- * A CLI service that starts and stops a listener of DoiUpdate messages. Must always be only one
- * thread - multiple will introduce a possible race (e.g. delete before create).
+ * A CLI service that starts and stops a listener of DoiUpdate messages and the periodic retry of
+ * the changes which failed.
+ *
+ * <p>Changes of the same DOI are never sent concurrently, but with more than one consumer two
+ * messages of the same DOI might be handled in the reverse order (e.g. delete before create).
  */
 @SuppressWarnings("UnstableApiUsage")
 public class DoiUpdaterService extends AbstractIdleService {
 
+  private static final Logger LOG = LoggerFactory.getLogger(DoiUpdaterService.class);
+
   private final DoiUpdaterConfiguration config;
 
   private MessageListener listener;
+  private ScheduledExecutorService retryExecutor;
 
   public DoiUpdaterService(DoiUpdaterConfiguration config) {
     this.config = config;
@@ -46,12 +60,36 @@ public class DoiUpdaterService extends AbstractIdleService {
     ApplicationContext ctx =
         SpringContextBuilder.create().withDoiUpdaterConfiguration(config).build();
 
-    listener = new MessageListener(config.messaging.getConnectionParameters(), 1);
-    listener.listen(
-        config.queueName,
-        1,
+    DoiUpdateListener doiUpdateListener =
         new DoiUpdateListener(
-            ctx.getBean(DoiService.class), ctx.getBean(DoiMapper.class), config.timeToRetryInMs));
+            ctx.getBean(DoiService.class),
+            ctx.getBean(DoiMapper.class),
+            ctx.getBean(DoiRetryMapper.class),
+            new DoiRetryPolicy(
+                config.timeToRetryInMs, config.maxTimeToRetryInMs, config.maxAttempts),
+            Metrics.defaultRegistry());
+
+    listener = new MessageListener(config.messaging.getConnectionParameters(), 1);
+    listener.listen(config.queueName, config.consumers, doiUpdateListener);
+
+    retryExecutor = Executors.newSingleThreadScheduledExecutor();
+    retryExecutor.scheduleWithFixedDelay(
+        () -> retryDue(doiUpdateListener),
+        config.retryPollIntervalInMs,
+        config.retryPollIntervalInMs,
+        TimeUnit.MILLISECONDS);
+  }
+
+  private void retryDue(DoiUpdateListener doiUpdateListener) {
+    try {
+      // keep going while full batches are due
+      while (doiUpdateListener.retryDue(config.retryBatchSize) == config.retryBatchSize) {
+        LOG.debug("Retried a full batch of DOI changes, continuing");
+      }
+    } catch (Exception e) {
+      // an exception would cancel all the next runs
+      LOG.error("Failed to retry the due DOI changes", e);
+    }
   }
 
   @Override
@@ -59,5 +97,8 @@ public class DoiUpdaterService extends AbstractIdleService {
     if (listener != null) {
       listener.close();
     }
+    if (retryExecutor != null) {
+      retryExecutor.shutdownNow();
+    }
   }
 }
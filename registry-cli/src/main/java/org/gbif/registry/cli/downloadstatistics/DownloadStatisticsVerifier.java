@@ -0,0 +1,117 @@
+/*
+ * Copyright 2020 Global Biodiversity Information Facility (GBIF)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gbif.registry.cli.downloadstatistics;
+
+import org.gbif.registry.cli.common.spring.SpringContextBuilder;
+import org.gbif.registry.persistence.mapper.DownloadStatisticsRollupMapper;
+import org.gbif.registry.persistence.mapper.dto.DownloadStatisticsDifference;
+import org.gbif.registry.persistence.service.DownloadStatisticsRollup;
+
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationContext;
+
+/**
+ * Recomputes the daily download statistics of a range of days from the occurrence downloads and
+ * compares them with the rollup maintained by the registry. Nothing is modified unless a repair
+ * is requested, which rebuilds the rollup of these days from the downloads first.
+ *
+ * <p>Downloads which succeeded in the last minutes may not be rolled up yet, so differences on the
+ * current day are expected until the next rollup ran.
+ */
+public class DownloadStatisticsVerifier {
+
+  private static final Logger LOG = LoggerFactory.getLogger(DownloadStatisticsVerifier.class);
+
+  private final ApplicationContext context;
+  private final DownloadStatisticsRollupMapper rollupMapper;
+  private final DownloadStatisticsRollup rollup;
+  private final Date fromDay;
+  private final Date toDay;
+  private final boolean repair;
+  private final int batchSize;
+
+  public static DownloadStatisticsVerifier build(DownloadStatisticsVerifyConfiguration cfg) {
+    return new DownloadStatisticsVerifier(cfg);
+  }
+
+  private DownloadStatisticsVerifier(DownloadStatisticsVerifyConfiguration cfg) {
+    LOG.info(
+        "Connecting to registry {}.{} as user {}",
+        cfg.db.serverName,
+        cfg.db.databaseName,
+        cfg.db.user);
+    this.context = SpringContextBuilder.create().withDbConfiguration(cfg.db).build();
+    this.rollupMapper = context.getBean(DownloadStatisticsRollupMapper.class);
+    this.rollup = context.getBean(DownloadStatisticsRollup.class);
+    this.fromDay = toDate(LocalDate.parse(cfg.from));
+    this.toDay =
+        toDate(cfg.to != null ? LocalDate.parse(cfg.to) : LocalDate.now(ZoneOffset.UTC));
+    this.repair = cfg.repair;
+    this.batchSize = cfg.batchSize;
+  }
+
+  /**
+   * Compares the statistics by user country and by dataset with the rollup, after rebuilding the
+   * rollup if a repair was requested.
+   *
+   * @return the days which differ, by user country first and then by dataset
+   */
+  public List<DownloadStatisticsDifference> verify() {
+    if (repair) {
+      int downloads = rollup.rebuild(fromDay, toDay, batchSize);
+      LOG.info(
+          "Rebuilt the download statistics from {} to {} from {} downloads",
+          fromDay,
+          toDay,
+          downloads);
+    }
+
+    List<DownloadStatisticsDifference> differences = new ArrayList<>();
+
+    List<DownloadStatisticsDifference> byUserCountry =
+        rollupMapper.diffUserStatistics(fromDay, toDay);
+    byUserCountry.forEach(d -> LOG.warn("User country statistics differ: {}", d));
+    differences.addAll(byUserCountry);
+
+    List<DownloadStatisticsDifference> byDataset =
+        rollupMapper.diffDatasetStatistics(fromDay, toDay);
+    byDataset.forEach(d -> LOG.warn("Dataset statistics differ: {}", d));
+    differences.addAll(byDataset);
+
+    LOG.info(
+        "Verified download statistics from {} to {}: {} user country and {} dataset differences",
+        fromDay,
+        toDay,
+        byUserCountry.size(),
+        byDataset.size());
+    return differences;
+  }
+
+  public ApplicationContext getContext() {
+    return context;
+  }
+
+  private static Date toDate(LocalDate day) {
+    return Date.from(day.atStartOfDay(ZoneOffset.UTC).toInstant());
+  }
+}
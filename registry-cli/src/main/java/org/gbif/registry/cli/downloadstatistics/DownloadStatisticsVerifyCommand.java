@@ -0,0 +1,65 @@
+/*
+ * Copyright 2020 Global Biodiversity Information Facility (GBIF)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gbif.registry.cli.downloadstatistics;
+
+import org.gbif.cli.BaseCommand;
+import org.gbif.cli.Command;
+import org.gbif.registry.persistence.mapper.dto.DownloadStatisticsDifference;
+
+import java.util.List;
+
+import org.kohsuke.MetaInfServices;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * This command recomputes the download statistics of a range of days from the downloads and
+ * reports where the incrementally maintained rollup differs from them.
+ */
+@MetaInfServices(Command.class)
+public class DownloadStatisticsVerifyCommand extends BaseCommand {
+
+  private static final Logger LOG = LoggerFactory.getLogger(DownloadStatisticsVerifyCommand.class);
+
+  private final DownloadStatisticsVerifyConfiguration config;
+  private List<DownloadStatisticsDifference> differences;
+
+  public DownloadStatisticsVerifyCommand() {
+    super("download-statistics-verify");
+    config = new DownloadStatisticsVerifyConfiguration();
+  }
+
+  // constructor for tests
+  public DownloadStatisticsVerifyCommand(DownloadStatisticsVerifyConfiguration config) {
+    super("download-statistics-verify");
+    this.config = config;
+  }
+
+  @Override
+  protected Object getConfigurationObject() {
+    return config;
+  }
+
+  @Override
+  protected void doRun() {
+    differences = DownloadStatisticsVerifier.build(config).verify();
+    LOG.info("{} days of the download statistics differ", differences.size());
+  }
+
+  public List<DownloadStatisticsDifference> getDifferences() {
+    return differences;
+  }
+}
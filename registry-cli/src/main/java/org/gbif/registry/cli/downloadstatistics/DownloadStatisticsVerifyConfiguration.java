@@ -0,0 +1,68 @@
+/*
+ * Copyright 2020 Global Biodiversity Information Facility (GBIF)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gbif.registry.cli.downloadstatistics;
+
+import org.gbif.registry.cli.common.DbConfiguration;
+
+import java.util.StringJoiner;
+
+import javax.validation.Valid;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Pattern;
+
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.ParametersDelegate;
+
+/** A configuration exclusively for DownloadStatisticsVerifier. */
+public class DownloadStatisticsVerifyConfiguration {
+
+  private static final String DAY_PATTERN = "\\d{4}-\\d{2}-\\d{2}";
+
+  @ParametersDelegate @Valid @NotNull public DbConfiguration db = new DbConfiguration();
+
+  @Parameter(names = "--from", description = "First UTC day verified, as yyyy-MM-dd")
+  @NotNull
+  @Pattern(regexp = DAY_PATTERN)
+  public String from;
+
+  @Parameter(
+      names = "--to",
+      description = "Day after the last UTC day verified, as yyyy-MM-dd. Defaults to today")
+  @Pattern(regexp = DAY_PATTERN)
+  public String to;
+
+  @Parameter(
+      names = "--repair",
+      description = "Rebuild the statistics of the days from the downloads before verifying them")
+  public boolean repair;
+
+  @Parameter(names = "--batch-size", description = "Number of downloads rebuilt at once")
+  @Min(1)
+  public int batchSize = 1000;
+
+  @Override
+  public String toString() {
+    return new StringJoiner(
+            ", ", DownloadStatisticsVerifyConfiguration.class.getSimpleName() + "[", "]")
+        .add("db=" + db)
+        .add("from=" + from)
+        .add("to=" + to)
+        .add("repair=" + repair)
+        .add("batchSize=" + batchSize)
+        .toString();
+  }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2020 Global Biodiversity Information Facility (GBIF)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gbif.registry.cli.metadatahash;
+
+import org.gbif.registry.cli.common.spring.SpringContextBuilder;
+import org.gbif.registry.persistence.mapper.MetadataMapper;
+import org.gbif.registry.persistence.mapper.handler.MetadataDocument;
+
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationContext;
+
+/**
+ * Computes the content hash of all metadata documents stored before hashes were recorded on
+ * insert. Documents are loaded in batches ordered by key and each hash is stored on its own, so an
+ * interrupted run can simply be started again.
+ */
+public class MetadataContentHashBackfill {
+
+  private static final Logger LOG = LoggerFactory.getLogger(MetadataContentHashBackfill.class);
+
+  private final ApplicationContext context;
+  private final MetadataMapper metadataMapper;
+  private final int batchSize;
+
+  public static MetadataContentHashBackfill build(MetadataContentHashConfiguration cfg) {
+    return new MetadataContentHashBackfill(cfg);
+  }
+
+  private MetadataContentHashBackfill(MetadataContentHashConfiguration cfg) {
+    LOG.info(
+        "Connecting to registry {}.{} as user {}",
+        cfg.db.serverName,
+        cfg.db.databaseName,
+        cfg.db.user);
+    this.context = SpringContextBuilder.create().withDbConfiguration(cfg.db).build();
+    this.metadataMapper = context.getBean(MetadataMapper.class);
+    this.batchSize = cfg.batchSize;
+  }
+
+  /**
+   * Stores the content hash of every metadata document that has none yet.
+   *
+   * @return the number of documents hashed
+   */
+  public int backfill() {
+    int hashed = 0;
+    Integer afterKey = null;
+    List<MetadataDocument> batch;
+    do {
+      batch = metadataMapper.listUnhashedDocumentsAfter(afterKey, batchSize);
+      for (MetadataDocument document : batch) {
+        metadataMapper.updateContentHash(
+            document.getKey(), MetadataDocument.contentHash(document.getData()));
+        afterKey = document.getKey();
+      }
+      hashed += batch.size();
+      LOG.info("Hashed {} metadata documents so far", hashed);
+    } while (batch.size() == batchSize);
+    return hashed;
+  }
+
+  public ApplicationContext getContext() {
+    return context;
+  }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2020 Global Biodiversity Information Facility (GBIF)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gbif.registry.cli.metadatahash;
+
+import org.gbif.cli.BaseCommand;
+import org.gbif.cli.Command;
+
+import org.kohsuke.MetaInfServices;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * This command backfills the content hash of the metadata documents stored before the hash was
+ * recorded on insert, so duplicate uploads of them are detected by the hash lookup.
+ */
+@MetaInfServices(Command.class)
+public class MetadataContentHashCommand extends BaseCommand {
+
+  private static final Logger LOG = LoggerFactory.getLogger(MetadataContentHashCommand.class);
+
+  private final MetadataContentHashConfiguration config;
+  private MetadataContentHashBackfill backfill;
+
+  public MetadataContentHashCommand() {
+    super("metadata-content-hash");
+    config = new MetadataContentHashConfiguration();
+  }
+
+  // constructor for tests
+  public MetadataContentHashCommand(MetadataContentHashConfiguration config) {
+    super("metadata-content-hash");
+    this.config = config;
+  }
+
+  @Override
+  protected Object getConfigurationObject() {
+    return config;
+  }
+
+  @Override
+  protected void doRun() {
+    backfill = MetadataContentHashBackfill.build(config);
+    LOG.info("{} metadata documents were hashed", backfill.backfill());
+  }
+
+  public MetadataContentHashBackfill getBackfill() {
+    return backfill;
+  }
+}
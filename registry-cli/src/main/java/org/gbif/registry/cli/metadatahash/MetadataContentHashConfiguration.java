@@ -0,0 +1,46 @@
+/*
+ * Copyright 2020 Global Biodiversity Information Facility (GBIF)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gbif.registry.cli.metadatahash;
+
+import org.gbif.registry.cli.common.DbConfiguration;
+
+import java.util.StringJoiner;
+
+import javax.validation.Valid;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.ParametersDelegate;
+
+/** A configuration exclusively for MetadataContentHashBackfill. */
+public class MetadataContentHashConfiguration {
+
+  @ParametersDelegate @Valid @NotNull public DbConfiguration db = new DbConfiguration();
+
+  @Parameter(names = "--batch-size", description = "Number of documents loaded per query")
+  @Min(1)
+  public int batchSize = 100;
+
+  @Override
+  public String toString() {
+    return new StringJoiner(
+            ", ", MetadataContentHashConfiguration.class.getSimpleName() + "[", "]")
+        .add("db=" + db)
+        .add("batchSize=" + batchSize)
+        .toString();
+  }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright 2020 Global Biodiversity Information Facility (GBIF)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gbif.registry.cli.datasetindex;
+
+import org.gbif.api.model.common.paging.PagingRequest;
+import org.gbif.api.model.common.paging.PagingResponse;
+import org.gbif.api.model.registry.Dataset;
+import org.gbif.registry.search.dataset.indexing.DatasetJsonConverter;
+import org.gbif.registry.search.dataset.indexing.es.EsClient;
+import org.gbif.registry.search.dataset.indexing.ws.GbifWsClient;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executor;
+import java.util.stream.Collectors;
+
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/** Checks that a failed run leaves the alias on the previous index. */
+public class DatasetBatchIndexerTest {
+
+  private static final String INDEX = "dataset_test";
+  private static final String ALIAS = "dataset";
+
+  private final List<Dataset> datasets = new ArrayList<>();
+  private GbifWsClient gbifWsClient;
+  private EsClient esClient;
+  private DatasetJsonConverter converter;
+
+  @BeforeEach
+  public void setUp() throws Exception {
+    for (int i = 0; i < 3; i++) {
+      Dataset dataset = new Dataset();
+      dataset.setKey(UUID.randomUUID());
+      datasets.add(dataset);
+    }
+
+    gbifWsClient = mock(GbifWsClient.class);
+    when(gbifWsClient.listDatasets(any(PagingRequest.class)))
+        .thenAnswer(
+            invocation -> {
+              PagingRequest page = invocation.getArgument(0);
+              List<Dataset> results =
+                  datasets.stream()
+                      .skip(page.getOffset())
+                      .limit(page.getLimit())
+                      .collect(Collectors.toList());
+              PagingResponse<Dataset> response =
+                  new PagingResponse<>(page, (long) datasets.size(), results);
+              response.setEndOfRecords(page.getOffset() + page.getLimit() >= datasets.size());
+              return response;
+            });
+
+    converter = mock(DatasetJsonConverter.class);
+    when(converter.convert(anyList(), any(Executor.class)))
+        .thenAnswer(
+            invocation -> {
+              List<Dataset> page = invocation.getArgument(0);
+              List<ObjectNode> nodes = new ArrayList<>();
+              for (int i = 0; i < page.size(); i++) {
+                nodes.add(JsonNodeFactory.instance.objectNode());
+              }
+              return nodes;
+            });
+
+    esClient = mock(EsClient.class);
+    when(esClient.bulk(any(BulkRequest.class)))
+        .thenReturn(new BulkResponse(new BulkItemResponse[0], 1));
+  }
+
+  @Test
+  public void testMissingDocumentsKeepTheAlias() {
+    // a document went missing
+    when(esClient.countDocuments(INDEX)).thenReturn((long) datasets.size() - 1);
+
+    assertThrows(IllegalStateException.class, () -> newIndexer().run(newConfiguration()));
+
+    verify(esClient, never()).swapAlias(anyString(), anyString());
+    verify(esClient).close();
+    assertNoIndexerThreads();
+  }
+
+  @Test
+  public void testFailedPageKeepsTheAlias() {
+    when(converter.convert(anyList(), any(Executor.class)))
+        .thenThrow(new IllegalStateException("Metadata document unavailable"));
+    when(esClient.countDocuments(INDEX)).thenReturn((long) datasets.size());
+
+    assertThrows(IllegalStateException.class, () -> newIndexer().run(newConfiguration()));
+
+    verify(esClient, never()).swapAlias(anyString(), anyString());
+    verify(esClient).close();
+    assertNoIndexerThreads();
+  }
+
+  @Test
+  public void testCompleteIndexSwapsTheAlias() {
+    when(esClient.countDocuments(INDEX)).thenReturn((long) datasets.size());
+
+    newIndexer().run(newConfiguration());
+
+    verify(esClient).swapAlias(ALIAS, INDEX);
+    assertNoIndexerThreads();
+  }
+
+  private DatasetBatchIndexer newIndexer() {
+    return new DatasetBatchIndexer(gbifWsClient, esClient, converter, -1, 2);
+  }
+
+  private static DatasetBatchIndexerConfiguration newConfiguration() {
+    DatasetBatchIndexerConfiguration configuration = new DatasetBatchIndexerConfiguration();
+    ElasticsearchConfig datasetEs = new ElasticsearchConfig();
+    datasetEs.setIndex(INDEX);
+    datasetEs.setAlias(ALIAS);
+    configuration.setDatasetEs(datasetEs);
+    configuration.setConverterThreads(1);
+    configuration.setEnricherThreads(1);
+    configuration.setWriterThreads(1);
+    configuration.setIndexingSettings(Collections.emptyMap());
+    configuration.setSearchSettings(Collections.emptyMap());
+    return configuration;
+  }
+
+  /** The executors of the run are shut down, whatever its outcome. */
+  private static void assertNoIndexerThreads() {
+    long deadline = System.currentTimeMillis() + 5_000;
+    while (indexerThreadsAlive() && System.currentTimeMillis() < deadline) {
+      Thread.yield();
+    }
+    assertFalse(indexerThreadsAlive());
+  }
+
+  private static boolean indexerThreadsAlive() {
+    return Thread.getAllStackTraces().keySet().stream()
+        .anyMatch(t -> t.isAlive() && t.getName().startsWith("dataset-index-"));
+  }
+}
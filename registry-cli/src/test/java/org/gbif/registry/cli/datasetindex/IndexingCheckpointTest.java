@@ -0,0 +1,75 @@
+/*
+ * Copyright 2020 Global Biodiversity Information Facility (GBIF)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gbif.registry.cli.datasetindex;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class IndexingCheckpointTest {
+
+  @TempDir Path tempDir;
+
+  @Test
+  public void testOffsetOnlyMovesOverContiguousPages() {
+    // given
+    IndexingCheckpoint checkpoint = IndexingCheckpoint.load(null, "dataset_1");
+
+    // when
+    checkpoint.pageIndexed(10, 10);
+    checkpoint.pageIndexed(20, 10);
+
+    // then
+    assertEquals(0, checkpoint.getOffset());
+
+    // when
+    checkpoint.pageIndexed(0, 10);
+
+    // then
+    assertEquals(30, checkpoint.getOffset());
+  }
+
+  @Test
+  public void testResume() {
+    // given
+    Path file = tempDir.resolve("checkpoint.properties");
+    IndexingCheckpoint checkpoint = IndexingCheckpoint.load(file, "dataset_1");
+    assertFalse(checkpoint.isResumed());
+    checkpoint.save();
+    checkpoint.pageIndexed(0, 50);
+    checkpoint.pageIndexed(100, 50);
+
+    // when
+    IndexingCheckpoint resumed = IndexingCheckpoint.load(file, "dataset_2");
+
+    // then
+    assertTrue(resumed.isResumed());
+    assertEquals("dataset_1", resumed.getIndexName());
+    assertEquals(50, resumed.getOffset());
+
+    // when
+    resumed.delete();
+
+    // then
+    assertFalse(Files.exists(file));
+  }
+}
@@ -170,4 +170,18 @@ public class DoiSynchronizerConfigurationValidatorTest {
     // then
     assertFalse(result);
   }
+
+  @Test
+  public void testConfigurationCheckpointFileRequiresDoiList() {
+    // given
+    DoiSynchronizerConfiguration configuration = new DoiSynchronizerConfiguration();
+    configuration.doi = "10.21373/abc";
+    configuration.checkpointFile = "checkpoint.properties";
+
+    // when
+    boolean result = isConfigurationValid(configuration);
+
+    // then
+    assertFalse(result);
+  }
 }
@@ -15,11 +15,15 @@
  */
 package org.gbif.registry.cli.doisynchronizer;
 
+import org.gbif.api.model.common.DOI;
+import org.gbif.api.model.common.DoiData;
 import org.gbif.api.model.common.DoiStatus;
+import org.gbif.doi.service.DoiException;
 import org.gbif.doi.service.DoiService;
 import org.gbif.registry.doi.DatasetDoiDataCiteHandlingService;
 import org.gbif.registry.doi.DoiIssuingService;
 import org.gbif.registry.doi.DownloadDoiDataCiteHandlingService;
+import org.gbif.registry.domain.doi.DoiType;
 import org.gbif.registry.persistence.mapper.DatasetMapper;
 import org.gbif.registry.persistence.mapper.DoiMapper;
 import org.gbif.registry.persistence.mapper.OccurrenceDownloadMapper;
@@ -27,21 +31,34 @@ import org.gbif.registry.persistence.mapper.UserMapper;
 
 import java.io.ByteArrayOutputStream;
 import java.io.PrintStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.context.ApplicationContext;
 
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 
+import static org.gbif.registry.cli.util.RegistryCliUtils.getFileData;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -58,6 +75,13 @@ public class DoiSynchronizerTest {
   @Mock private UserMapper userMapperMock;
   @Mock private DoiService doiServiceMock;
 
+  private static final DOI DOI1 = new DOI("10.21373/100");
+  private static final DOI DOI2 = new DOI("10.21373/101");
+  private static final DOI DOI3 = new DOI("10.21373/102");
+  private static final URI TARGET = URI.create("http://www.gbif.org");
+
+  @TempDir Path tempDir;
+
   private final ByteArrayOutputStream outContent = new ByteArrayOutputStream();
   private final PrintStream originalOut = System.out;
 
@@ -115,4 +139,130 @@ public class DoiSynchronizerTest {
     verify(doiMapperMock, atLeastOnce()).list(DoiStatus.FAILED, null, null);
     assertEquals("10.21373/1000 (DATASET)\n" + "10.21373/1001 (DOWNLOAD)\n", outContent.toString());
   }
+
+  @Test
+  public void testHandleListDOIWritesReport() throws Exception {
+    // given
+    stubDoi(DOI1, DoiStatus.REGISTERED, DoiStatus.REGISTERED);
+    stubDoi(DOI2, DoiStatus.REGISTERED, DoiStatus.RESERVED);
+    stubDoi(DOI3, DoiStatus.REGISTERED, null);
+    // DOI4 is unknown to the registry
+
+    DoiSynchronizerConfiguration configuration = listConfiguration();
+    DoiSynchronizer doiSynchronizer = new DoiSynchronizer(configuration, contextMock);
+
+    // when
+    doiSynchronizer.handleListDOI();
+
+    // then
+    List<String> lines = Files.readAllLines(Paths.get(configuration.report));
+    assertEquals(
+        "doi,result,registryStatus,dataciteStatus,registryTarget,dataciteTarget", lines.get(0));
+    assertEquals(
+        ImmutableSet.of(
+            "10.21373/100,IN_SYNC,REGISTERED,REGISTERED," + TARGET + "," + TARGET,
+            "10.21373/101,STATUS_DIFFERS,REGISTERED,RESERVED," + TARGET + "," + TARGET,
+            "10.21373/102,MISSING_REMOTELY,REGISTERED,," + TARGET + ",",
+            "10.21373/103,UNKNOWN,,,,"),
+        new HashSet<>(lines.subList(1, lines.size())));
+    assertFalse(Files.exists(Paths.get(configuration.checkpointFile)));
+  }
+
+  @Test
+  public void testHandleListDOIResumesFromCheckpoint() throws Exception {
+    // given
+    DoiSynchronizerConfiguration configuration = listConfiguration();
+    configuration.reportFormat = DoiSyncReport.Format.JSON;
+    // the first 2 DOIs were handled by an interrupted run, which handled the third ahead of the
+    // checkpoint and was interrupted while writing the entry of the fourth
+    SynchronizationCheckpoint checkpoint =
+        SynchronizationCheckpoint.load(
+            Paths.get(configuration.checkpointFile), configuration.doiList);
+    checkpoint.handled(1);
+    checkpoint.handled(0);
+    Files.write(
+        Paths.get(configuration.report),
+        Arrays.asList(
+            unknownEntry(DOI2),
+            unknownEntry(DOI3),
+            unknownEntry(DOI1),
+            unknownEntry(DOI2),
+            "{\"doi\":\"10.21373/1"));
+
+    stubDoi(DOI3, DoiStatus.REGISTERED, null);
+    DoiSynchronizer doiSynchronizer = new DoiSynchronizer(configuration, contextMock);
+
+    // when
+    doiSynchronizer.handleListDOI();
+
+    // then
+    verify(doiMapperMock, never()).getType(DOI1);
+    verify(doiMapperMock, never()).getType(DOI2);
+    // one entry per DOI, the DOI handled ahead of the checkpoint with the outcome of the new run
+    List<String> lines = Files.readAllLines(Paths.get(configuration.report));
+    assertEquals(4, lines.size());
+    assertEquals(Arrays.asList(unknownEntry(DOI2), unknownEntry(DOI1)), lines.subList(0, 2));
+    assertTrue(lines.contains(unknownEntry(new DOI("10.21373/103"))));
+    assertTrue(
+        lines.contains(
+            "{\"doi\":\"10.21373/102\",\"result\":\"MISSING_REMOTELY\",\"registryStatus\":"
+                + "\"REGISTERED\",\"dataciteStatus\":null,\"registryTarget\":\""
+                + TARGET
+                + "\",\"dataciteTarget\":null}"));
+    assertFalse(Files.exists(Paths.get(configuration.checkpointFile)));
+  }
+
+  @Test
+  public void testDataCiteFailureIsNotAMissingDoi() throws Exception {
+    // given
+    when(doiMapperMock.getType(DOI1)).thenReturn(DoiType.DOWNLOAD);
+    when(doiMapperMock.get(DOI1)).thenReturn(new DoiData(DoiStatus.REGISTERED, TARGET));
+    when(doiServiceMock.exists(DOI1)).thenThrow(new DoiException("DataCite unavailable"));
+
+    DoiSynchronizerConfiguration configuration = listConfiguration();
+    configuration.fixDOI = true;
+    DoiSynchronizer doiSynchronizer = new DoiSynchronizer(configuration, contextMock);
+
+    // when
+    doiSynchronizer.handleListDOI();
+
+    // then the DOI is reported as not checked and is not sent again
+    List<String> lines = Files.readAllLines(Paths.get(configuration.report));
+    assertTrue(lines.contains("10.21373/100,DATACITE_UNAVAILABLE,REGISTERED,," + TARGET + ","));
+    verify(downloadDoiDataCiteHandlingServiceMock, never()).downloadChanged(any(), any(), any());
+  }
+
+  private DoiSynchronizerConfiguration listConfiguration() {
+    DoiSynchronizerConfiguration configuration = new DoiSynchronizerConfiguration();
+    configuration.doiList = ClassLoader.getSystemClassLoader().getResource("dois.txt").getFile();
+    configuration.threads = 2;
+    configuration.checkpointFile = tempDir.resolve("checkpoint.properties").toString();
+    configuration.report = tempDir.resolve("report.csv").toString();
+    return configuration;
+  }
+
+  private static String unknownEntry(DOI doi) {
+    return "{\"doi\":\""
+        + doi.getDoiName()
+        + "\",\"result\":\"UNKNOWN\",\"registryStatus\":null,"
+        + "\"dataciteStatus\":null,\"registryTarget\":null,\"dataciteTarget\":null}";
+  }
+
+  /** Stubs a download DOI, missing at DataCite if the DataCite status is null. */
+  private void stubDoi(DOI doi, DoiStatus registryStatus, DoiStatus dataciteStatus)
+      throws Exception {
+    when(doiMapperMock.getType(doi)).thenReturn(DoiType.DOWNLOAD);
+    when(doiMapperMock.get(doi)).thenReturn(new DoiData(registryStatus, TARGET));
+    when(doiServiceMock.exists(doi)).thenReturn(dataciteStatus != null);
+    if (dataciteStatus != null) {
+      when(doiMapperMock.getMetadata(doi)).thenReturn(metadata(doi));
+      when(doiServiceMock.getMetadata(doi)).thenReturn(metadata(doi));
+      when(doiServiceMock.resolve(doi)).thenReturn(new DoiData(dataciteStatus, TARGET));
+    }
+  }
+
+  private static String metadata(DOI doi) throws Exception {
+    return getFileData("doisynchronizer/minimal-metadata.xml")
+        .replace("10.21373/gbif.1584932725458", doi.getDoiName());
+  }
 }
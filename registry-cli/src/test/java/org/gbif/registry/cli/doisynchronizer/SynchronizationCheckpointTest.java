@@ -0,0 +1,78 @@
+/*
+ * Copyright 2020 Global Biodiversity Information Facility (GBIF)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gbif.registry.cli.doisynchronizer;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SynchronizationCheckpointTest {
+
+  @TempDir Path tempDir;
+
+  @Test
+  public void testOnlyMovesOverContiguousDois() {
+    // given
+    SynchronizationCheckpoint checkpoint = SynchronizationCheckpoint.load(null, "dois.txt");
+
+    // when
+    checkpoint.handled(1);
+    checkpoint.handled(2);
+
+    // then
+    assertEquals(0, checkpoint.getHandled());
+
+    // when
+    checkpoint.handled(0);
+
+    // then
+    assertEquals(3, checkpoint.getHandled());
+  }
+
+  @Test
+  public void testResume() {
+    // given
+    Path file = tempDir.resolve("checkpoint.properties");
+    SynchronizationCheckpoint checkpoint = SynchronizationCheckpoint.load(file, "dois.txt");
+    assertFalse(checkpoint.isResumed());
+    checkpoint.handled(0);
+    checkpoint.handled(2);
+
+    // when
+    SynchronizationCheckpoint resumed = SynchronizationCheckpoint.load(file, "dois.txt");
+
+    // then
+    assertTrue(resumed.isResumed());
+    assertEquals(1, resumed.getHandled());
+    // the checkpoint is written to a temporary file moved over the previous checkpoint
+    assertFalse(Files.exists(tempDir.resolve("checkpoint.properties.tmp")));
+    assertThrows(
+        IllegalStateException.class, () -> SynchronizationCheckpoint.load(file, "other.txt"));
+
+    // when
+    resumed.delete();
+
+    // then
+    assertFalse(Files.exists(file));
+  }
+}
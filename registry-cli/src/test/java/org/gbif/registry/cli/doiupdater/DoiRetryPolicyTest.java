@@ -0,0 +1,66 @@
+/*
+ * Copyright 2020 Global Biodiversity Information Facility (GBIF)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gbif.registry.cli.doiupdater;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class DoiRetryPolicyTest {
+
+  @Test
+  public void testDelayDoublesUpToMax() {
+    DoiRetryPolicy policy = new DoiRetryPolicy(1000, 5000, 10, new Random(42));
+
+    for (int i = 0; i < 100; i++) {
+      assertBetween(500, 1000, policy.delayMs(1));
+      assertBetween(1000, 2000, policy.delayMs(2));
+      assertBetween(2000, 4000, policy.delayMs(3));
+      assertBetween(2500, 5000, policy.delayMs(4));
+      assertBetween(2500, 5000, policy.delayMs(Integer.MAX_VALUE));
+    }
+  }
+
+  @Test
+  public void testNoDelay() {
+    DoiRetryPolicy policy = new DoiRetryPolicy(0, 0, 3);
+    assertEquals(0, policy.delayMs(1));
+    assertEquals(0, policy.delayMs(3));
+  }
+
+  @Test
+  public void testExhausted() {
+    DoiRetryPolicy policy = new DoiRetryPolicy(1000, 5000, 3);
+    assertFalse(policy.isExhausted(1));
+    assertFalse(policy.isExhausted(2));
+    assertTrue(policy.isExhausted(3));
+  }
+
+  @Test
+  public void testInvalidPolicy() {
+    assertThrows(IllegalArgumentException.class, () -> new DoiRetryPolicy(1000, 500, 3));
+    assertThrows(IllegalArgumentException.class, () -> new DoiRetryPolicy(1000, 5000, 0));
+  }
+
+  private static void assertBetween(long min, long max, long actual) {
+    assertTrue(actual >= min && actual <= max, actual + " is not within " + min + "-" + max);
+  }
+}
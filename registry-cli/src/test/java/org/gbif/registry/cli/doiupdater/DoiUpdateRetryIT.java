@@ -0,0 +1,268 @@
+/*
+ * Copyright 2020 Global Biodiversity Information Facility (GBIF)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gbif.registry.cli.doiupdater;
+
+import org.gbif.api.model.common.DOI;
+import org.gbif.api.model.common.DoiData;
+import org.gbif.common.messaging.api.messages.ChangeDoiMessage;
+import org.gbif.doi.service.DoiException;
+import org.gbif.doi.service.DoiHttpException;
+import org.gbif.registry.cli.common.spring.SpringContextBuilder;
+import org.gbif.registry.cli.util.InMemoryDataCite;
+import org.gbif.registry.cli.util.RegistryCliUtils;
+import org.gbif.registry.domain.doi.DoiRetry;
+import org.gbif.registry.domain.doi.DoiType;
+import org.gbif.registry.persistence.mapper.DoiMapper;
+import org.gbif.registry.persistence.mapper.DoiRetryMapper;
+
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.springframework.context.ApplicationContext;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.yammer.metrics.core.Meter;
+import com.yammer.metrics.core.MetricName;
+import com.yammer.metrics.core.MetricsRegistry;
+
+import io.zonky.test.db.postgres.embedded.LiquibasePreparer;
+import io.zonky.test.db.postgres.junit5.EmbeddedPostgresExtension;
+import io.zonky.test.db.postgres.junit5.PreparedDbExtension;
+
+import static org.gbif.api.model.common.DoiStatus.DELETED;
+import static org.gbif.api.model.common.DoiStatus.FAILED;
+import static org.gbif.api.model.common.DoiStatus.REGISTERED;
+import static org.gbif.registry.cli.util.EmbeddedPostgresTestUtils.LIQUIBASE_MASTER_FILE;
+import static org.gbif.registry.cli.util.EmbeddedPostgresTestUtils.toDbConfig;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/** Tests the retries of the DoiUpdateListener against an in-memory DataCite. */
+public class DoiUpdateRetryIT {
+
+  private static final int MAX_ATTEMPTS = 3;
+  private static final URI TARGET = URI.create("http://www.gbif.org/occurrence/download/1");
+  private static final URI OTHER_TARGET = URI.create("http://www.gbif.org/occurrence/download/2");
+  private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+  @RegisterExtension
+  public static PreparedDbExtension database =
+      EmbeddedPostgresExtension.preparedDatabase(
+          LiquibasePreparer.forClasspathLocation(LIQUIBASE_MASTER_FILE));
+
+  private static DoiMapper doiMapper;
+  private static DoiRetryMapper doiRetryMapper;
+  private static String rawMessage;
+
+  private InMemoryDataCite dataCite;
+  private MetricsRegistry metrics;
+  private DoiUpdateListener listener;
+
+  @BeforeAll
+  public static void setup() throws Exception {
+    ApplicationContext context =
+        SpringContextBuilder.create().withDbConfiguration(toDbConfig(database)).build();
+    doiMapper = context.getBean(DoiMapper.class);
+    doiRetryMapper = context.getBean(DoiRetryMapper.class);
+    rawMessage = RegistryCliUtils.getFileData("doiupdater/test-send-rabbit.json");
+  }
+
+  @BeforeEach
+  public void before() {
+    dataCite = new InMemoryDataCite();
+    metrics = new MetricsRegistry();
+    // retries are due right away
+    listener = newListener(0);
+  }
+
+  @Test
+  public void testFailureIsRetriedLater() throws Exception {
+    DOI doi = newDoi();
+    dataCite.failNext(new DoiException("DataCite unavailable"));
+
+    listener.handleMessage(message(doi, TARGET));
+
+    // a single attempt, the change waits in the retry table
+    assertEquals(1, dataCite.getChanges());
+    assertEquals(new DoiData(FAILED, TARGET), doiMapper.get(doi));
+    DoiRetry retry = doiRetryMapper.get(doi);
+    assertEquals(DoiRetry.State.PENDING, retry.getState());
+    assertEquals(1, retry.getAttempts());
+
+    assertEquals(1, listener.retryDue(10));
+
+    assertEquals(new DoiData(REGISTERED, TARGET), doiMapper.get(doi));
+    assertEquals(new DoiData(REGISTERED, TARGET), dataCite.resolve(doi));
+    assertNull(doiRetryMapper.get(doi));
+    assertEquals(2, meter("attempts").count());
+    assertEquals(1, meter("successes").count());
+    assertEquals(0, listener.retryDue(10));
+  }
+
+  @Test
+  public void testRetryIsNotDueBeforeBackOff() throws Exception {
+    listener = newListener(TimeUnit.HOURS.toMillis(1));
+    DOI doi = newDoi();
+    dataCite.failNext(new DoiHttpException(503));
+
+    listener.handleMessage(message(doi, TARGET));
+
+    assertEquals(0, listener.retryDue(10));
+    assertEquals(DoiRetry.State.PENDING, doiRetryMapper.get(doi).getState());
+    assertEquals(1, dataCite.getChanges());
+  }
+
+  @Test
+  public void testDeadLetterAfterMaxAttempts() throws Exception {
+    DOI doi = newDoi();
+    dataCite.failNext(
+        new DoiHttpException(500), new DoiHttpException(500), new DoiHttpException(500));
+
+    listener.handleMessage(message(doi, TARGET));
+    assertEquals(1, listener.retryDue(10));
+    assertEquals(1, listener.retryDue(10));
+
+    DoiRetry retry = doiRetryMapper.get(doi);
+    assertEquals(DoiRetry.State.DEAD, retry.getState());
+    assertEquals(MAX_ATTEMPTS, retry.getAttempts());
+    assertEquals(MAX_ATTEMPTS, dataCite.getChanges());
+    assertEquals(1, meter("deadLettered").count());
+    assertEquals(0, meter("successes").count());
+
+    // dead changes are not retried anymore
+    assertEquals(0, listener.retryDue(10));
+    assertEquals(new DoiData(FAILED, TARGET), doiMapper.get(doi));
+  }
+
+  @Test
+  public void testNewerChangeSupersedesRetry() throws Exception {
+    DOI doi = newDoi();
+    dataCite.failNext(new DoiException("DataCite unavailable"));
+
+    listener.handleMessage(message(doi, TARGET));
+    listener.handleMessage(message(doi, OTHER_TARGET));
+
+    assertNull(doiRetryMapper.get(doi));
+    assertEquals(0, listener.retryDue(10));
+    assertEquals(new DoiData(REGISTERED, OTHER_TARGET), dataCite.resolve(doi));
+    assertEquals(new DoiData(REGISTERED, OTHER_TARGET), doiMapper.get(doi));
+  }
+
+  @Test
+  public void testRetryLeasedByAnotherUpdaterIsLeftAlone() throws Exception {
+    DOI doi = newDoi();
+    dataCite.failNext(new DoiException("DataCite unavailable"));
+    listener.handleMessage(message(doi, TARGET));
+
+    // another doi-updater took the retry
+    assertEquals(1, doiRetryMapper.claimDue(10, "other", TimeUnit.HOURS.toMillis(1)).size());
+    assertEquals(0, listener.retryDue(10));
+    assertEquals(1, dataCite.getChanges());
+    assertEquals(1, doiRetryMapper.get(doi).getAttempts());
+  }
+
+  @Test
+  public void testOutcomeOfLostLeaseIsDropped() throws Exception {
+    DOI doi = newDoi();
+    dataCite.failNext(new DoiException("DataCite unavailable"));
+    listener.handleMessage(message(doi, TARGET));
+    DoiRetry retry = doiRetryMapper.get(doi);
+
+    // the lease of a stalled doi-updater expired and was taken over
+    assertEquals(1, doiRetryMapper.claimDue(10, "stalled", 0).size());
+    assertEquals(1, doiRetryMapper.claimDue(10, "other", TimeUnit.HOURS.toMillis(1)).size());
+
+    assertEquals(0, doiRetryMapper.renewLease(doi, "stalled", 0));
+    retry.setAttempts(2);
+    assertEquals(0, doiRetryMapper.updateLeased(retry, 0, "stalled"));
+    assertEquals(0, doiRetryMapper.deleteLeased(doi, "stalled"));
+    assertEquals(1, doiRetryMapper.get(doi).getAttempts());
+
+    // a newer change supersedes the retry and its lease
+    listener.handleMessage(message(doi, OTHER_TARGET));
+    assertNull(doiRetryMapper.get(doi));
+    assertEquals(new DoiData(REGISTERED, OTHER_TARGET), doiMapper.get(doi));
+  }
+
+  @Test
+  public void testTooLongMetadataIsTruncatedWithoutWaiting() throws Exception {
+    DOI doi = newDoi();
+    dataCite.failNext(new DoiHttpException(413), new DoiHttpException(413));
+
+    listener.handleMessage(message(doi, TARGET));
+
+    // description, then constituents truncated within the same attempt
+    assertEquals(3, dataCite.getChanges());
+    assertEquals(1, meter("attempts").count());
+    assertEquals(new DoiData(REGISTERED, TARGET), doiMapper.get(doi));
+    assertNull(doiRetryMapper.get(doi));
+  }
+
+  @Test
+  public void testDeletedDoiDropsRetry() throws Exception {
+    DOI doi = newDoi();
+    dataCite.failNext(new DoiException("DataCite unavailable"));
+    listener.handleMessage(message(doi, TARGET));
+
+    // the retry goes with the DOI
+    doiMapper.delete(doi);
+
+    assertNull(doiRetryMapper.get(doi));
+    assertEquals(0, listener.retryDue(10));
+  }
+
+  @Test
+  public void testDeleteRegisteredDoi() throws Exception {
+    DOI doi = newDoi();
+    listener.handleMessage(message(doi, TARGET));
+
+    listener.handleMessage(new ChangeDoiMessage(DELETED, doi, null, TARGET));
+
+    assertEquals(new DoiData(DELETED, TARGET), doiMapper.get(doi));
+    assertEquals(new DoiData(REGISTERED, TARGET), dataCite.resolve(doi));
+  }
+
+  private DoiUpdateListener newListener(long baseDelayMs) {
+    return new DoiUpdateListener(
+        dataCite.asService(),
+        doiMapper,
+        doiRetryMapper,
+        new DoiRetryPolicy(baseDelayMs, baseDelayMs, MAX_ATTEMPTS),
+        metrics);
+  }
+
+  private Meter meter(String name) {
+    return (Meter) metrics.allMetrics().get(new MetricName(DoiUpdateListener.class, name));
+  }
+
+  private static DOI newDoi() {
+    DOI doi = new DOI("10.21373", "dl." + System.nanoTime());
+    doiMapper.create(doi, DoiType.DOWNLOAD);
+    return doi;
+  }
+
+  private static ChangeDoiMessage message(DOI doi, URI target) throws Exception {
+    ChangeDoiMessage msg =
+        OBJECT_MAPPER.readValue(
+            rawMessage.replace("${doi}", doi.getDoiName()).replace("${status}", "REGISTERED"),
+            ChangeDoiMessage.class);
+    return new ChangeDoiMessage(msg.getStatus(), doi, msg.getMetadata(), target);
+  }
+}
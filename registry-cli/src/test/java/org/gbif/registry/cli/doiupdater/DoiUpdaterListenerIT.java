@@ -27,8 +27,10 @@ import org.gbif.registry.cli.common.CommonBuilder;
 import org.gbif.registry.cli.common.spring.SpringContextBuilder;
 import org.gbif.registry.cli.util.RegistryCliUtils;
 import org.gbif.registry.doi.converter.DownloadConverter;
+import org.gbif.registry.domain.doi.DoiRetry;
 import org.gbif.registry.domain.doi.DoiType;
 import org.gbif.registry.persistence.mapper.DoiMapper;
+import org.gbif.registry.persistence.mapper.DoiRetryMapper;
 
 import java.io.IOException;
 import java.net.URI;
@@ -42,6 +44,7 @@ import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.context.ApplicationContext;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.yammer.metrics.core.MetricsRegistry;
 
 import io.zonky.test.db.postgres.embedded.LiquibasePreparer;
 import io.zonky.test.db.postgres.junit5.EmbeddedPostgresExtension;
@@ -73,6 +76,7 @@ public class DoiUpdaterListenerIT {
 
   private static DoiUpdateListener doiUpdateListener;
   private static DoiMapper doiMapper;
+  private static DoiRetryMapper doiRetryMapper;
   private static DoiService doiService;
   private static DoiService doiServiceSpy;
   private static DoiUpdateListener doiUpdateListenerWithSpyService;
@@ -101,8 +105,15 @@ public class DoiUpdaterListenerIT {
         CommonBuilder.createRestJsonApiDataCiteService(
             prepareClientConfig(doiUpdaterConfiguration));
     doiServiceSpy = spy(doiService);
-    doiUpdateListener = new DoiUpdateListener(doiService, doiMapper, 1000L);
-    doiUpdateListenerWithSpyService = new DoiUpdateListener(doiServiceSpy, doiMapper, 1000L);
+    doiRetryMapper = context.getBean(DoiRetryMapper.class);
+    // retries are due right away
+    DoiRetryPolicy retryPolicy = new DoiRetryPolicy(0, 0, ATTEMPTS);
+    doiUpdateListener =
+        new DoiUpdateListener(
+            doiService, doiMapper, doiRetryMapper, retryPolicy, new MetricsRegistry());
+    doiUpdateListenerWithSpyService =
+        new DoiUpdateListener(
+            doiServiceSpy, doiMapper, doiRetryMapper, retryPolicy, new MetricsRegistry());
 
     rawMessage = RegistryCliUtils.getFileData("doiupdater/test-send-rabbit.json");
   }
@@ -299,6 +310,7 @@ public class DoiUpdaterListenerIT {
 
     // when
     doiUpdateListenerWithSpyService.handleMessage(msg);
+    retryAll();
 
     // then
     // should retry 4 times
@@ -359,9 +371,12 @@ public class DoiUpdaterListenerIT {
 
     // when
     doiUpdateListenerWithSpyService.handleMessage(msg);
+    assertEquals(DoiRetry.State.PENDING, doiRetryMapper.get(doi).getState());
+    retryAll();
 
     // then
     verify(doiServiceSpy, times(2)).register(doi, TEST_TARGET, msg.getMetadata());
+    assertNull(doiRetryMapper.get(doi));
 
     assertEquals(new DoiData(REGISTERED, TEST_TARGET), getActualInDb(doi));
     assertEquals(new DoiData(REGISTERED, TEST_TARGET), getActualInDataCite(doi));
@@ -382,14 +397,23 @@ public class DoiUpdaterListenerIT {
 
     // when
     doiUpdateListenerWithSpyService.handleMessage(msg);
+    retryAll();
 
     // then
     verify(doiServiceSpy, times(ATTEMPTS)).register(doi, TEST_TARGET, msg.getMetadata());
+    assertEquals(DoiRetry.State.DEAD, doiRetryMapper.get(doi).getState());
+    assertEquals(ATTEMPTS, doiRetryMapper.get(doi).getAttempts());
 
     assertEquals(new DoiData(FAILED, TEST_TARGET), getActualInDb(doi));
     assertEquals(new DoiData(NEW), getActualInDataCite(doi));
   }
 
+  private void retryAll() {
+    while (doiUpdateListenerWithSpyService.retryDue(10) > 0) {
+      // retries failing again are due right away
+    }
+  }
+
   private void prepareFailedDoiMissingInDataCite(DOI doi) {
     doiMapper.create(doi, DoiType.DOWNLOAD);
     doiMapper.update(doi, new DoiData(FAILED), null);
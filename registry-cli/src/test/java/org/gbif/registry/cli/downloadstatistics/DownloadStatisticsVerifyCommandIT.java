@@ -0,0 +1,182 @@
+/*
+ * Copyright 2020 Global Biodiversity Information Facility (GBIF)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gbif.registry.cli.downloadstatistics;
+
+import org.gbif.registry.persistence.mapper.dto.DownloadStatisticsDifference;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+import io.zonky.test.db.postgres.embedded.LiquibasePreparer;
+import io.zonky.test.db.postgres.junit5.EmbeddedPostgresExtension;
+import io.zonky.test.db.postgres.junit5.PreparedDbExtension;
+
+import static org.gbif.registry.cli.util.EmbeddedPostgresTestUtils.LIQUIBASE_MASTER_FILE;
+import static org.gbif.registry.cli.util.EmbeddedPostgresTestUtils.toDbConfig;
+import static org.gbif.registry.cli.util.RegistryCliUtils.getFileData;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class DownloadStatisticsVerifyCommandIT {
+
+  private static final String DATASET_KEY = "38f06820-08c5-42b2-94f6-47cc3e83a54a";
+
+  @RegisterExtension
+  public static PreparedDbExtension database =
+      EmbeddedPostgresExtension.preparedDatabase(
+          LiquibasePreparer.forClasspathLocation(LIQUIBASE_MASTER_FILE));
+
+  @BeforeEach
+  public void prepareDatabase() throws Exception {
+    execute(getFileData("datasetupdater/prepare_dataset.sql"));
+    // two successful downloads and a failed one of the same day, which is not counted
+    insertDownload("0000001-200301000000000", "SUCCEEDED", 10);
+    insertDownload("0000002-200301000000000", "FILE_ERASED", 5);
+    insertDownload("0000003-200301000000000", "FAILED", 100);
+  }
+
+  @AfterEach
+  public void after() throws Exception {
+    execute("DELETE FROM occurrence_download");
+    execute("DELETE FROM download_daily_user_statistics");
+    execute(getFileData("datasetupdater/clean_dataset.sql"));
+  }
+
+  @Test
+  public void testVerify() throws Exception {
+    DownloadStatisticsVerifyConfiguration cfg = new DownloadStatisticsVerifyConfiguration();
+    cfg.db = toDbConfig(database);
+    cfg.from = "2020-03-01";
+    cfg.to = "2020-03-02";
+
+    // nothing was rolled up
+    DownloadStatisticsVerifyCommand command = new DownloadStatisticsVerifyCommand(cfg);
+    command.doRun();
+    List<DownloadStatisticsDifference> differences = command.getDifferences();
+    assertEquals(2, differences.size());
+    assertEquals("ZZ", differences.get(0).getDimension());
+    assertEquals(15L, differences.get(0).getExpectedRecords().longValue());
+    assertEquals(2, differences.get(0).getExpectedDownloads().intValue());
+    assertEquals(null, differences.get(0).getActualRecords());
+    assertEquals(DATASET_KEY, differences.get(1).getDimension());
+    assertEquals(15L, differences.get(1).getExpectedRecords().longValue());
+
+    execute(
+        "INSERT INTO download_daily_user_statistics "
+            + "(day, user_country, total_records, number_downloads) "
+            + "VALUES ('2020-03-01', 'ZZ', 15, 2)");
+    execute(
+        "INSERT INTO download_daily_statistics (day, dataset_key, "
+            + "publishing_organization_country, total_records, number_downloads) "
+            + "VALUES ('2020-03-01', '"
+            + DATASET_KEY
+            + "', 'GB', 15, 2)");
+    command.doRun();
+    assertTrue(command.getDifferences().isEmpty());
+
+    // days outside of the range are not compared
+    execute("UPDATE download_daily_user_statistics SET day = '2020-03-02'");
+    command.doRun();
+    assertEquals(1, command.getDifferences().size());
+  }
+
+  @Test
+  public void testRepair() throws Exception {
+    DownloadStatisticsVerifyConfiguration cfg = new DownloadStatisticsVerifyConfiguration();
+    cfg.db = toDbConfig(database);
+    cfg.from = "2020-03-01";
+    cfg.to = "2020-03-02";
+    cfg.repair = true;
+    cfg.batchSize = 1;
+
+    // wrong statistics of the repaired day and statistics of the next day
+    execute(
+        "INSERT INTO download_daily_user_statistics "
+            + "(day, user_country, total_records, number_downloads) "
+            + "VALUES ('2020-03-01', 'DK', 1, 1), ('2020-03-02', 'DK', 7, 1)");
+
+    DownloadStatisticsVerifyCommand command = new DownloadStatisticsVerifyCommand(cfg);
+    command.doRun();
+    assertTrue(command.getDifferences().isEmpty());
+    assertEquals(
+        15L,
+        queryLong(
+            "SELECT total_records FROM download_daily_statistics "
+                + "WHERE day = '2020-03-01' AND dataset_key = '"
+                + DATASET_KEY
+                + "'"));
+
+    // the rebuilt days replace the previous rebuild instead of adding to it
+    command.doRun();
+    assertTrue(command.getDifferences().isEmpty());
+    assertEquals(
+        2L,
+        queryLong(
+            "SELECT number_downloads FROM download_daily_user_statistics "
+                + "WHERE day = '2020-03-01' AND user_country = 'ZZ'"));
+
+    // the other days are left alone
+    assertEquals(
+        7L,
+        queryLong(
+            "SELECT total_records FROM download_daily_user_statistics WHERE day = '2020-03-02'"));
+  }
+
+  private static void insertDownload(String key, String status, int records) throws Exception {
+    execute(
+        "INSERT INTO occurrence_download (key, status, download_link, created_by, created, "
+            + "format, total_records) VALUES ('"
+            + key
+            + "', '"
+            + status
+            + "', 'http://www.example.org', 'WS TEST', '2020-03-01 12:00:00+00', "
+            + "'SIMPLE_CSV', "
+            + records
+            + ")");
+    execute(
+        "INSERT INTO dataset_occurrence_download (download_key, dataset_key, number_records) "
+            + "VALUES ('"
+            + key
+            + "', '"
+            + DATASET_KEY
+            + "', "
+            + records
+            + ")");
+  }
+
+  private static long queryLong(String sql) throws Exception {
+    try (Connection con = database.getTestDatabase().getConnection();
+        PreparedStatement stmt = con.prepareStatement(sql);
+        ResultSet rs = stmt.executeQuery()) {
+      assertTrue(rs.next());
+      return rs.getLong(1);
+    }
+  }
+
+  private static void execute(String sql) throws Exception {
+    try (Connection con = database.getTestDatabase().getConnection();
+        PreparedStatement stmt = con.prepareStatement(sql)) {
+      stmt.executeUpdate();
+    }
+  }
+}
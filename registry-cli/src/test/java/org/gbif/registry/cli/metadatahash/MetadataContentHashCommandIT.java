@@ -0,0 +1,83 @@
+/*
+ * Copyright 2020 Global Biodiversity Information Facility (GBIF)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gbif.registry.cli.metadatahash;
+
+import org.gbif.registry.persistence.mapper.handler.MetadataDocument;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+import io.zonky.test.db.postgres.embedded.LiquibasePreparer;
+import io.zonky.test.db.postgres.junit5.EmbeddedPostgresExtension;
+import io.zonky.test.db.postgres.junit5.PreparedDbExtension;
+
+import static org.gbif.registry.cli.util.EmbeddedPostgresTestUtils.LIQUIBASE_MASTER_FILE;
+import static org.gbif.registry.cli.util.EmbeddedPostgresTestUtils.toDbConfig;
+import static org.gbif.registry.cli.util.RegistryCliUtils.getFileData;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class MetadataContentHashCommandIT {
+
+  @RegisterExtension
+  public static PreparedDbExtension database =
+      EmbeddedPostgresExtension.preparedDatabase(
+          LiquibasePreparer.forClasspathLocation(LIQUIBASE_MASTER_FILE));
+
+  @BeforeEach
+  public void prepareDatabase() throws Exception {
+    // a dataset with a metadata document stored without content hash
+    execute(getFileData("datasetupdater/prepare_dataset.sql"));
+  }
+
+  @AfterEach
+  public void after() throws Exception {
+    execute(getFileData("datasetupdater/clean_dataset.sql"));
+  }
+
+  @Test
+  public void testBackfill() throws Exception {
+    MetadataContentHashConfiguration cfg = new MetadataContentHashConfiguration();
+    cfg.db = toDbConfig(database);
+    cfg.batchSize = 1;
+
+    MetadataContentHashCommand command = new MetadataContentHashCommand(cfg);
+    command.doRun();
+
+    try (Connection con = database.getTestDatabase().getConnection();
+        PreparedStatement stmt = con.prepareStatement("SELECT content, content_hash FROM metadata");
+        ResultSet rs = stmt.executeQuery()) {
+      assertTrue(rs.next());
+      assertEquals(MetadataDocument.contentHash(rs.getBytes(1)), rs.getString(2));
+    }
+
+    // hashed documents are not loaded again
+    assertEquals(0, command.getBackfill().backfill());
+  }
+
+  private static void execute(String sql) throws Exception {
+    try (Connection con = database.getTestDatabase().getConnection();
+        PreparedStatement stmt = con.prepareStatement(sql)) {
+      stmt.executeUpdate();
+    }
+  }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2020 Global Biodiversity Information Facility (GBIF)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gbif.registry.cli.util;
+
+import org.gbif.api.model.common.DOI;
+import org.gbif.api.model.common.DoiData;
+import org.gbif.api.model.common.DoiStatus;
+import org.gbif.doi.service.DoiException;
+import org.gbif.doi.service.DoiService;
+
+import java.net.URI;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.mockito.AdditionalAnswers;
+import org.mockito.Mockito;
+
+/**
+ * In-memory stand-in for DataCite, keeping the status, target and metadata of every DOI.
+ *
+ * <p>Failures are scripted with {@link #failNext}: the next changes throw the given exceptions in
+ * order, which allows testing failure sequences deterministically.
+ */
+public class InMemoryDataCite {
+
+  private final Map<DOI, Entry> dois = new ConcurrentHashMap<>();
+  private final Queue<DoiException> failures = new ArrayDeque<>();
+  private final AtomicInteger changes = new AtomicInteger();
+
+  /** Returns a {@link DoiService} delegating to this stand-in. */
+  public DoiService asService() {
+    return Mockito.mock(DoiService.class, AdditionalAnswers.delegatesTo(this));
+  }
+
+  /** The next changes throw the given exceptions, one per change. */
+  public synchronized void failNext(DoiException... exceptions) {
+    for (DoiException e : exceptions) {
+      failures.add(e);
+    }
+  }
+
+  /** Number of changes attempted so far, failed ones included. */
+  public int getChanges() {
+    return changes.get();
+  }
+
+  public DoiData resolve(DOI doi) {
+    Entry entry = dois.get(doi);
+    return entry != null ? new DoiData(entry.status, entry.target) : new DoiData(DoiStatus.NEW);
+  }
+
+  public boolean exists(DOI doi) {
+    return dois.containsKey(doi);
+  }
+
+  public String getMetadata(DOI doi) {
+    Entry entry = dois.get(doi);
+    return entry != null ? entry.metadata : null;
+  }
+
+  public void reserve(DOI doi, String metadata) throws DoiException {
+    change();
+    Entry entry = dois.get(doi);
+    if (entry != null && entry.status == DoiStatus.REGISTERED) {
+      throw new DoiException("DOI " + doi + " is registered already");
+    }
+    dois.put(doi, new Entry(DoiStatus.RESERVED, null, metadata));
+  }
+
+  public void register(DOI doi, URI target, String metadata) throws DoiException {
+    change();
+    dois.put(doi, new Entry(DoiStatus.REGISTERED, target, metadata));
+  }
+
+  public void update(DOI doi, String metadata) throws DoiException {
+    change();
+    Entry entry = existing(doi);
+    dois.put(doi, new Entry(entry.status, entry.target, metadata));
+  }
+
+  public void update(DOI doi, URI target) throws DoiException {
+    change();
+    Entry entry = existing(doi);
+    dois.put(doi, new Entry(entry.status, target, entry.metadata));
+  }
+
+  public boolean delete(DOI doi) throws DoiException {
+    change();
+    Entry entry = dois.get(doi);
+    if (entry != null && entry.status == DoiStatus.REGISTERED) {
+      throw new DoiException("Registered DOI " + doi + " cannot be deleted");
+    }
+    return dois.remove(doi) != null;
+  }
+
+  private void change() throws DoiException {
+    changes.incrementAndGet();
+    DoiException failure;
+    synchronized (this) {
+      failure = failures.poll();
+    }
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+  private Entry existing(DOI doi) throws DoiException {
+    Entry entry = dois.get(doi);
+    if (entry == null) {
+      throw new DoiException("DOI " + doi + " not found");
+    }
+    return entry;
+  }
+
+  private static class Entry {
+    private final DoiStatus status;
+    private final URI target;
+    private final String metadata;
+
+    private Entry(DoiStatus status, URI target, String metadata) {
+      this.status = status;
+      this.target = target;
+      this.metadata = metadata;
+    }
+  }
+}
@@ -17,12 +17,10 @@ package org.gbif.registry.doi;
 
 import org.gbif.api.model.common.DOI;
 import org.gbif.api.model.common.GbifUser;
-import org.gbif.api.model.common.paging.PagingRequest;
 import org.gbif.api.model.occurrence.Download;
 import org.gbif.api.model.registry.Dataset;
 import org.gbif.api.model.registry.DatasetOccurrenceDownloadUsage;
 import org.gbif.api.model.registry.Organization;
-import org.gbif.api.service.registry.OccurrenceDownloadService;
 import org.gbif.doi.metadata.datacite.DataCiteMetadata;
 import org.gbif.doi.metadata.datacite.RelatedIdentifierType;
 import org.gbif.doi.metadata.datacite.RelationType;
@@ -31,33 +29,45 @@ import org.gbif.registry.doi.converter.DatasetConverter;
 import org.gbif.registry.doi.converter.DerivedDatasetConverter;
 import org.gbif.registry.doi.converter.DownloadConverter;
 import org.gbif.registry.domain.ws.DerivedDataset;
+import org.gbif.registry.persistence.mapper.DatasetOccurrenceDownloadMapper;
 import org.gbif.registry.persistence.mapper.OrganizationMapper;
 
+import java.net.URI;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.UUID;
 
 import javax.annotation.Nullable;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-import com.google.common.collect.Lists;
+import com.google.common.collect.AbstractIterator;
 
 @Service
 public class DataCiteMetadataBuilderServiceImpl implements DataCiteMetadataBuilderService {
 
   // Page size to iterate over dataset usages
-  private static final int USAGES_PAGE_SIZE = 400;
+  private static final int USAGES_PAGE_SIZE = 1000;
 
   private final OrganizationMapper organizationMapper;
-  private final OccurrenceDownloadService occurrenceDownloadService;
+  private final DatasetOccurrenceDownloadMapper datasetOccurrenceDownloadMapper;
   private final TitleLookupService titleLookupService;
+  private final URI downloadTarget;
+  private final long maxDownloadMetadataSize;
 
   public DataCiteMetadataBuilderServiceImpl(
       OrganizationMapper organizationMapper,
-      OccurrenceDownloadService occurrenceDownloadService,
-      TitleLookupService titleLookupService) {
+      DatasetOccurrenceDownloadMapper datasetOccurrenceDownloadMapper,
+      TitleLookupService titleLookupService,
+      @Value("${portal.url}") URI portal,
+      @Value("${doi.download.maxMetadataSize:1000000}") long maxDownloadMetadataSize) {
     this.organizationMapper = organizationMapper;
-    this.occurrenceDownloadService = occurrenceDownloadService;
+    this.datasetOccurrenceDownloadMapper = datasetOccurrenceDownloadMapper;
     this.titleLookupService = titleLookupService;
+    this.downloadTarget = portal.resolve("occurrence/download/");
+    this.maxDownloadMetadataSize = maxDownloadMetadataSize;
   }
 
   @Override
@@ -65,22 +75,47 @@ public class DataCiteMetadataBuilderServiceImpl implements DataCiteMetadataBuild
     return DerivedDatasetConverter.convert(derivedDataset);
   }
 
+  /**
+   * Builds the metadata of a download, listing as many constituent datasets as fit within the
+   * configured maximum metadata size. Usages are loaded page by page and no further pages are
+   * loaded once the limit is reached.
+   */
   @Override
   public DataCiteMetadata buildMetadata(Download download, GbifUser user) {
-    List<DatasetOccurrenceDownloadUsage> response = null;
-    List<DatasetOccurrenceDownloadUsage> usages = Lists.newArrayList();
-    PagingRequest pagingRequest = new PagingRequest(0, USAGES_PAGE_SIZE);
+    return DownloadConverter.convert(
+        download,
+        user,
+        () -> datasetUsages(download.getKey()),
+        titleLookupService,
+        maxDownloadMetadataSize,
+        downloadTarget.resolve(download.getKey()));
+  }
 
-    while (response == null || !response.isEmpty()) {
-      response =
-          occurrenceDownloadService
-              .listDatasetUsages(download.getKey(), pagingRequest)
-              .getResults();
-      usages.addAll(response);
-      pagingRequest.nextPage();
-    }
+  private Iterator<DatasetOccurrenceDownloadUsage> datasetUsages(String downloadKey) {
+    return new AbstractIterator<DatasetOccurrenceDownloadUsage>() {
+      private Iterator<DatasetOccurrenceDownloadUsage> page = Collections.emptyIterator();
+      private UUID lastDatasetKey;
+      private boolean lastPage;
 
-    return DownloadConverter.convert(download, user, usages, titleLookupService);
+      @Override
+      protected DatasetOccurrenceDownloadUsage computeNext() {
+        if (!page.hasNext()) {
+          if (lastPage) {
+            return endOfData();
+          }
+          List<DatasetOccurrenceDownloadUsage> usages =
+              datasetOccurrenceDownloadMapper.listByDownloadAfter(
+                  downloadKey, lastDatasetKey, USAGES_PAGE_SIZE);
+          lastPage = usages.size() < USAGES_PAGE_SIZE;
+          if (usages.isEmpty()) {
+            return endOfData();
+          }
+          lastDatasetKey = usages.get(usages.size() - 1).getDatasetKey();
+          page = usages.iterator();
+        }
+        return page.next();
+      }
+    };
   }
 
   @Override
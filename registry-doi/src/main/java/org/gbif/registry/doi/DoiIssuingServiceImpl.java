@@ -17,20 +17,16 @@ package org.gbif.registry.doi;
 
 import org.gbif.api.model.common.DOI;
 import org.gbif.registry.doi.config.DoiConfigurationProperties;
+import org.gbif.registry.doi.util.DoiSuffixEncoder;
 import org.gbif.registry.domain.doi.DoiType;
 import org.gbif.registry.persistence.mapper.DoiMapper;
 
-import javax.annotation.Nullable;
-
-import org.apache.commons.lang3.RandomStringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
-import com.google.common.base.Strings;
-
 import static com.google.common.base.Preconditions.checkArgument;
 
 @Service
@@ -38,15 +34,16 @@ public class DoiIssuingServiceImpl implements DoiIssuingService {
 
   private static final Logger LOG = LoggerFactory.getLogger(DoiIssuingServiceImpl.class);
 
-  private static final int RANDOM_LENGTH = 6;
-  private static final String DOI_CHARACTERS = "23456789abcdefghjkmnpqrstuvwxyz"; // Exclude 0o 1il
+  private static final int MAX_ATTEMPTS = 1000;
 
   private final DoiMapper doiMapper;
+  private final DoiSuffixAllocator suffixAllocator;
   private final String prefix;
 
   public DoiIssuingServiceImpl(
       DoiMapper doiMapper, DoiConfigurationProperties doiConfigProperties) {
     this.doiMapper = doiMapper;
+    this.suffixAllocator = new DoiSuffixAllocator(doiMapper);
     prefix = doiConfigProperties.getPrefix();
     checkArgument(prefix.startsWith("10."), "DOI prefix must begin with '10.'");
   }
@@ -73,35 +70,18 @@ public class DoiIssuingServiceImpl implements DoiIssuingService {
   }
 
   private DOI newDOI(final String shoulder, DoiType type) {
-    // try a thousand times then fail
-    for (int x = 0; x < 1000; x++) {
-      DOI doi = random(shoulder);
-      try {
-        doiMapper.create(doi, type);
-        if (x > 100) {
-          LOG.warn("Had to search {} times to find the available {} DOI {}.", x, type, doi);
+    // the suffixes are unique, but a few were taken already by the random DOIs issued before
+    for (int x = 0; x < MAX_ATTEMPTS; x++) {
+      DOI doi = new DOI(prefix, shoulder + DoiSuffixEncoder.encode(suffixAllocator.next()));
+      if (doiMapper.createIfAbsent(doi, type) == 1) {
+        if (x > 0) {
+          LOG.debug("Skipped {} existing {} DOIs before issuing {}", x, type, doi);
         }
         return doi;
-      } catch (Exception e) {
-        // might have hit a unique constraint, try another doi
-        if (x <= 100) {
-          LOG.debug("Random {} DOI {} already exists at attempt {}", type, doi, x);
-        } else {
-          LOG.info("Random {} DOI {} already exists at attempt {}", type, doi, x);
-        }
       }
     }
-    throw new IllegalStateException("Tried 1000 random DOIs and none worked, giving up.");
-  }
-
-  /**
-   * @return a random DOI with the given prefix. It is not guaranteed to be unique and might exist
-   *     already
-   */
-  private DOI random(@Nullable String shoulder) {
-    String suffix =
-        Strings.nullToEmpty(shoulder) + RandomStringUtils.random(RANDOM_LENGTH, DOI_CHARACTERS);
-    return new DOI(prefix, suffix);
+    throw new IllegalStateException(
+        "Tried " + MAX_ATTEMPTS + " DOIs and none was available, giving up.");
   }
 
   @Override
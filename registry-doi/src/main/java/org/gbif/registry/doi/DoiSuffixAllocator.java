@@ -0,0 +1,49 @@
+/*
+ * Copyright 2020 Global Biodiversity Information Facility (GBIF)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gbif.registry.doi;
+
+import org.gbif.registry.persistence.mapper.DoiMapper;
+
+/**
+ * Hands out the unique numbers the suffixes of new DOIs are encoded from.
+ *
+ * <p>The numbers are reserved from a database sequence in blocks, which keeps them unique across
+ * registry instances while most DOIs are issued without a round trip to the sequence. Numbers of a
+ * block left unused by a restart are lost, which the suffix space easily affords. Thread safe.
+ */
+class DoiSuffixAllocator {
+
+  /** Size of the blocks, which must match the increment of the gbif_doi_suffix_seq sequence. */
+  static final int BLOCK_SIZE = 50;
+
+  private final DoiMapper doiMapper;
+
+  private long next;
+  private long blockEnd;
+
+  DoiSuffixAllocator(DoiMapper doiMapper) {
+    this.doiMapper = doiMapper;
+  }
+
+  /** Returns a number never handed out before. */
+  synchronized long next() {
+    if (next >= blockEnd) {
+      next = doiMapper.nextSuffixBlock();
+      blockEnd = next + BLOCK_SIZE;
+    }
+    return next++;
+  }
+}
@@ -54,6 +54,7 @@ import org.gbif.occurrence.query.TitleLookupService;
 import java.net.URI;
 import java.util.List;
 
+import javax.annotation.Nullable;
 import javax.xml.bind.JAXBException;
 
 import org.apache.commons.lang3.StringUtils;
@@ -73,6 +74,15 @@ import static org.gbif.registry.doi.util.RegistryDoiUtils.getYear;
 
 public final class DownloadConverter {
 
+  // Upper bound of the serialized document without the texts depending on the download
+  private static final int BASE_DOCUMENT_SIZE = 4096;
+  // Serialized relatedIdentifier element without its DOI, including indentation and line break
+  private static final int RELATED_IDENTIFIER_SIZE = 105;
+  private static final String TRUNCATION_NOTE =
+      "Please see %s for full list of all constituents.\n";
+  // Allows for a target URL of up to 200 bytes
+  private static final int TRUNCATION_NOTE_SIZE = TRUNCATION_NOTE.length() + 200;
+
   private DownloadConverter() {}
 
   /** Convert a download and its dataset usages into a datacite metadata instance. */
@@ -81,6 +91,28 @@ public final class DownloadConverter {
       GbifUser creator,
       List<DatasetOccurrenceDownloadUsage> usedDatasets,
       TitleLookupService titleLookup) {
+    return convert(download, creator, usedDatasets, titleLookup, Long.MAX_VALUE, null);
+  }
+
+  /**
+   * Convert a download and its dataset usages into a datacite metadata instance whose serialized
+   * size stays within the given limit. Constituent datasets are added to the description and the
+   * related identifiers in the iteration order of the usages, keeping a running estimate of the
+   * serialized size. Once the next constituent would exceed the limit, the usages are no longer
+   * iterated and the description refers to the target for the full list of constituents.
+   *
+   * @param usedDatasets usages of the download, iterated lazily and at most once
+   * @param maxSize maximum size in bytes of the serialized metadata
+   * @param target landing page of the download listing all constituents, required if the
+   *     constituents may not fit within the limit
+   */
+  public static DataCiteMetadata convert(
+      Download download,
+      GbifUser creator,
+      Iterable<DatasetOccurrenceDownloadUsage> usedDatasets,
+      TitleLookupService titleLookup,
+      long maxSize,
+      @Nullable URI target) {
     Preconditions.checkNotNull(
         download.getDoi(), "Download DOI required to build valid DOI metadata");
     Preconditions.checkNotNull(
@@ -101,9 +133,24 @@ public final class DownloadConverter {
 
     // Optional and recommended fields
     convertDates(builder, download);
-    convertDescriptions(builder, download, usedDatasets, titleLookup);
+    String query = getQueryDescription(download, titleLookup);
+    String constituentsIntro = getConstituentsIntroDescription(download);
+    Constituents constituents =
+        new Constituents(
+            maxSize,
+            BASE_DOCUMENT_SIZE
+                + xmlSize(creator.getName())
+                + xmlSize(query)
+                + xmlSize(constituentsIntro));
+    for (DatasetOccurrenceDownloadUsage du : usedDatasets) {
+      if (!constituents.add(du)) {
+        Preconditions.checkNotNull(target, "Download target required to truncate constituents");
+        break;
+      }
+    }
+    convertDescriptions(builder, query, constituentsIntro, constituents.description(target));
     convertAlternateIdentifiers(builder, download);
-    convertRelatedIdentifiers(builder, usedDatasets);
+    builder.withRelatedIdentifiers(constituents.relatedIdentifiers.build());
     convertRightsList(builder, download);
     convertSubjects(builder);
     convertFormats(builder);
@@ -136,12 +183,6 @@ public final class DownloadConverter {
             .build());
   }
 
-  private static void convertRelatedIdentifiers(
-      DataCiteMetadata.Builder<Void> builder, List<DatasetOccurrenceDownloadUsage> usedDatasets) {
-    builder.withRelatedIdentifiers(
-        getRelatedIdentifiersDatasetOccurrenceDownloadUsage(usedDatasets));
-  }
-
   private static void convertAlternateIdentifiers(
       DataCiteMetadata.Builder<Void> builder, Download download) {
     builder.withAlternateIdentifiers(
@@ -177,28 +218,34 @@ public final class DownloadConverter {
 
   private static void convertDescriptions(
       DataCiteMetadata.Builder<Void> builder,
-      Download download,
-      List<DatasetOccurrenceDownloadUsage> usedDatasets,
-      TitleLookupService titleLookup) {
+      String query,
+      String constituentsIntro,
+      String constituents) {
     builder.withDescriptions(
         Descriptions.builder()
             .addDescription(
                 Description.builder()
                     .withDescriptionType(DescriptionType.ABSTRACT)
                     .withLang(ENGLISH)
-                    .addContent(
-                        String.format(
-                            "A dataset containing %s species occurrences available in GBIF matching the query:\n%s\n\n",
-                            download.getTotalRecords(), getFilterQuery(download, titleLookup)))
-                    .addContent(
-                        String.format(
-                            "The dataset includes %s records from %s constituent datasets:\n",
-                            download.getTotalRecords(), download.getNumberDatasets()))
-                    .addContent(getDescriptionDatasetOccurrenceDownloadUsage(usedDatasets))
+                    .addContent(query)
+                    .addContent(constituentsIntro)
+                    .addContent(constituents)
                     .build())
             .build());
   }
 
+  private static String getQueryDescription(Download download, TitleLookupService titleLookup) {
+    return String.format(
+        "A dataset containing %s species occurrences available in GBIF matching the query:\n%s\n\n",
+        download.getTotalRecords(), getFilterQuery(download, titleLookup));
+  }
+
+  private static String getConstituentsIntroDescription(Download download) {
+    return String.format(
+        "The dataset includes %s records from %s constituent datasets:\n",
+        download.getTotalRecords(), download.getNumberDatasets());
+  }
+
   private static void convertDates(DataCiteMetadata.Builder<Void> builder, Download download) {
     builder.withDates(
         DataCiteMetadata.Dates.builder()
@@ -303,45 +350,99 @@ public final class DownloadConverter {
     return DataCiteValidator.toXml(doi, dm);
   }
 
-  private static String getDescriptionDatasetOccurrenceDownloadUsage(
-      List<DatasetOccurrenceDownloadUsage> usedDatasets) {
-    final StringBuilder result = new StringBuilder();
-
-    if (!usedDatasets.isEmpty()) {
-      for (DatasetOccurrenceDownloadUsage du : usedDatasets) {
-        if (!Strings.isNullOrEmpty(du.getDatasetTitle())) {
-          result
-              .append(" ")
-              .append(du.getNumberRecords())
-              .append(" records from ")
-              .append(du.getDatasetTitle())
-              .append(".\n");
-        }
+  /**
+   * Estimates the number of bytes a text takes once serialized as escaped UTF-8 XML content. The
+   * estimate is exact for text content and errs on the larger side for attribute values.
+   */
+  static int xmlSize(@Nullable String text) {
+    if (text == null) {
+      return 0;
+    }
+    int size = 0;
+    for (int i = 0; i < text.length(); i++) {
+      char c = text.charAt(i);
+      if (c == '&') {
+        size += 5; // &amp;
+      } else if (c == '<' || c == '>') {
+        size += 4; // &lt; &gt;
+      } else if (c == '"' || c == '\r') {
+        size += 6; // &quot; &#xD;
+      } else if (c < 0x80) {
+        size++;
+      } else if (c < 0x800) {
+        size += 2;
+      } else if (Character.isSurrogate(c)) {
+        size += 2; // 4 bytes per surrogate pair
+      } else {
+        size += 3;
       }
-      result.append("\n");
-      result.append(LICENSE_INFO);
     }
-
-    return result.toString();
+    return size;
   }
 
-  private static RelatedIdentifiers getRelatedIdentifiersDatasetOccurrenceDownloadUsage(
-      List<DatasetOccurrenceDownloadUsage> usedDatasets) {
-    final RelatedIdentifiers.Builder relatedIdentifiersBuilder = RelatedIdentifiers.builder();
-    if (!usedDatasets.isEmpty()) {
-      for (DatasetOccurrenceDownloadUsage du : usedDatasets) {
-        if (du.getDatasetDOI() != null) {
-          relatedIdentifiersBuilder.addRelatedIdentifier(
-              RelatedIdentifier.builder()
-                  .withRelationType(RelationType.REFERENCES)
-                  .withValue(du.getDatasetDOI().getDoiName())
-                  .withRelatedIdentifierType(RelatedIdentifierType.DOI)
-                  .build());
-        }
+  /**
+   * Accumulates the constituent datasets of a download into the description and the related
+   * identifiers, as long as the estimated size of the document stays within the limit.
+   */
+  private static class Constituents {
+
+    private final long maxSize;
+    private final StringBuilder description = new StringBuilder();
+    private final RelatedIdentifiers.Builder<Void> relatedIdentifiers =
+        RelatedIdentifiers.builder();
+    private long size;
+    private boolean empty = true;
+    private boolean truncated;
+
+    private Constituents(long maxSize, long baseSize) {
+      this.maxSize = maxSize;
+      // the closing paragraphs are always written
+      this.size = baseSize + 1 + xmlSize(LICENSE_INFO) + TRUNCATION_NOTE_SIZE;
+    }
+
+    /**
+     * Adds a constituent dataset unless it does not fit within the size limit anymore.
+     *
+     * @return false if the constituent was not added and no more constituents should be added
+     */
+    private boolean add(DatasetOccurrenceDownloadUsage du) {
+      String line =
+          !Strings.isNullOrEmpty(du.getDatasetTitle())
+              ? " " + du.getNumberRecords() + " records from " + du.getDatasetTitle() + ".\n"
+              : null;
+      String doi = du.getDatasetDOI() != null ? du.getDatasetDOI().getDoiName() : null;
+      long constituentSize =
+          xmlSize(line) + (doi != null ? RELATED_IDENTIFIER_SIZE + xmlSize(doi) : 0);
+
+      if (size + constituentSize > maxSize) {
+        truncated = true;
+        return false;
+      }
+
+      if (line != null) {
+        description.append(line);
+      }
+      if (doi != null) {
+        relatedIdentifiers.addRelatedIdentifier(
+            RelatedIdentifier.builder()
+                .withRelationType(RelationType.REFERENCES)
+                .withValue(doi)
+                .withRelatedIdentifierType(RelatedIdentifierType.DOI)
+                .build());
       }
+      size += constituentSize;
+      empty = false;
+      return true;
     }
 
-    return relatedIdentifiersBuilder.build();
+    private String description(@Nullable URI target) {
+      if (truncated) {
+        description.append(String.format(TRUNCATION_NOTE, target));
+      } else if (empty) {
+        return "";
+      }
+      return description.append("\n").append(LICENSE_INFO).toString();
+    }
   }
 
   /**
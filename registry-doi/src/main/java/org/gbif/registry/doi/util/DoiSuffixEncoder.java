@@ -0,0 +1,67 @@
+/*
+ * Copyright 2020 Global Biodiversity Information Facility (GBIF)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gbif.registry.doi.util;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Encodes numbers into DOI suffixes, so that unique numbers, e.g. from a database sequence, give
+ * unique suffixes.
+ *
+ * <p>The numbers below {@link #SPACE} are permuted before being encoded into {@value #LENGTH}
+ * characters, so that consecutive numbers don't give similar suffixes. Larger numbers get extra
+ * characters. The characters are digits and lower case letters without the look-alikes 0, 1, i, l
+ * and o, the ones used by the random suffixes issued before.
+ */
+public final class DoiSuffixEncoder {
+
+  public static final String ALPHABET = "23456789abcdefghjkmnpqrstuvwxyz";
+  public static final int LENGTH = 6;
+
+  private static final int BASE = ALPHABET.length();
+
+  /** Number of suffixes of {@value #LENGTH} characters, 31^6. */
+  public static final long SPACE = 887_503_681L;
+
+  // coprime with the space, which makes the multiplication modulo the space a permutation
+  private static final long MULTIPLIER = 387_420_489L;
+  private static final long OFFSET = 123_456_789L;
+
+  private DoiSuffixEncoder() {}
+
+  /**
+   * Encodes a number into a suffix. Different numbers always give different suffixes.
+   *
+   * @param number a positive number
+   */
+  public static String encode(long number) {
+    checkArgument(number >= 0, "Only positive numbers can be encoded");
+    long permuted = ((number % SPACE) * MULTIPLIER + OFFSET) % SPACE;
+    long extra = number / SPACE;
+
+    StringBuilder suffix = new StringBuilder(LENGTH + 2);
+    for (int i = 0; i < LENGTH; i++) {
+      suffix.append(ALPHABET.charAt((int) (permuted % BASE)));
+      permuted /= BASE;
+    }
+    // a suffix of more characters never equals one of LENGTH characters
+    while (extra > 0) {
+      suffix.append(ALPHABET.charAt((int) (extra % BASE)));
+      extra /= BASE;
+    }
+    return suffix.toString();
+  }
+}
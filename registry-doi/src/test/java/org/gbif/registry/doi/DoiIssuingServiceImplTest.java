@@ -0,0 +1,186 @@
+/*
+ * Copyright 2020 Global Biodiversity Information Facility (GBIF)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gbif.registry.doi;
+
+import org.gbif.api.model.common.DOI;
+import org.gbif.api.model.common.DoiData;
+import org.gbif.api.model.common.DoiStatus;
+import org.gbif.api.model.common.paging.Pageable;
+import org.gbif.registry.doi.config.DoiConfigurationProperties;
+import org.gbif.registry.doi.util.DoiSuffixEncoder;
+import org.gbif.registry.domain.doi.DoiType;
+import org.gbif.registry.persistence.mapper.DoiMapper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DoiIssuingServiceImplTest {
+
+  private static final String PREFIX = "10.21373";
+
+  private InMemoryDoiMapper doiMapper;
+  private DoiIssuingServiceImpl service;
+
+  @Before
+  public void setUp() {
+    DoiConfigurationProperties properties = new DoiConfigurationProperties();
+    properties.setPrefix(PREFIX);
+    doiMapper = new InMemoryDoiMapper();
+    service = new DoiIssuingServiceImpl(doiMapper, properties);
+  }
+
+  @Test
+  public void testNewDOIs() {
+    DOI dataset = service.newDatasetDOI();
+    DOI download = service.newDownloadDOI();
+
+    assertEquals(PREFIX, dataset.getPrefix());
+    assertEquals(DoiSuffixEncoder.LENGTH, dataset.getSuffix().length());
+    assertTrue(download.getSuffix().startsWith("dl."));
+    assertEquals(DoiType.DATASET, doiMapper.getType(dataset));
+    assertEquals(DoiType.DOWNLOAD, doiMapper.getType(download));
+  }
+
+  @Test
+  public void testSkipsExistingDOIs() {
+    // DOIs issued randomly before, which happen to match the next suffixes
+    DOI taken1 = new DOI(PREFIX, DoiSuffixEncoder.encode(0));
+    DOI taken2 = new DOI(PREFIX, DoiSuffixEncoder.encode(1));
+    doiMapper.create(taken1, DoiType.DATASET);
+    doiMapper.create(taken2, DoiType.DATASET);
+
+    DOI doi = service.newDatasetDOI();
+
+    assertEquals(new DOI(PREFIX, DoiSuffixEncoder.encode(2)), doi);
+    assertEquals(3, doiMapper.size());
+  }
+
+  @Test
+  public void testConcurrentDOIsAreUnique() throws Exception {
+    int threads = 16;
+    int perThread = 6_250;
+    // a few DOIs issued randomly before, which the sequence runs into
+    for (int n = 0; n < 100_000; n += 997) {
+      doiMapper.create(new DOI(PREFIX, "dl." + DoiSuffixEncoder.encode(n)), DoiType.DOWNLOAD);
+    }
+    int seeded = doiMapper.size();
+
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      List<Future<List<DOI>>> futures = new ArrayList<>();
+      for (int t = 0; t < threads; t++) {
+        futures.add(
+            executor.submit(
+                () -> {
+                  List<DOI> issued = new ArrayList<>(perThread);
+                  for (int i = 0; i < perThread; i++) {
+                    issued.add(service.newDownloadDOI());
+                  }
+                  return issued;
+                }));
+      }
+
+      Set<DOI> all = ConcurrentHashMap.newKeySet();
+      for (Future<List<DOI>> future : futures) {
+        for (DOI doi : future.get()) {
+          assertTrue("Duplicate DOI " + doi, all.add(doi));
+        }
+      }
+
+      assertEquals(threads * perThread, all.size());
+      assertEquals(seeded + threads * perThread, doiMapper.size());
+      // one sequence call per block, not per DOI
+      int maxBlocks = (all.size() + seeded) / DoiSuffixAllocator.BLOCK_SIZE + 1;
+      assertTrue(doiMapper.blocks.get() <= maxBlocks);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /** Stands in for the database, with the same semantics as the DOI table and the sequence. */
+  private static class InMemoryDoiMapper implements DoiMapper {
+
+    private final Map<DOI, DoiType> dois = new ConcurrentHashMap<>();
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicInteger blocks = new AtomicInteger();
+
+    int size() {
+      return dois.size();
+    }
+
+    @Override
+    public DoiData get(DOI doi) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public DoiType getType(DOI doi) {
+      return dois.get(doi);
+    }
+
+    @Override
+    public List<Map<String, Object>> list(DoiStatus status, DoiType type, Pageable page) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public String getMetadata(DOI doi) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void create(DOI doi, DoiType type) {
+      if (dois.putIfAbsent(doi, type) != null) {
+        throw new IllegalStateException("Duplicate key " + doi);
+      }
+    }
+
+    @Override
+    public int createIfAbsent(DOI doi, DoiType type) {
+      return dois.putIfAbsent(doi, type) == null ? 1 : 0;
+    }
+
+    @Override
+    public long nextSuffixBlock() {
+      blocks.incrementAndGet();
+      return sequence.getAndAdd(DoiSuffixAllocator.BLOCK_SIZE);
+    }
+
+    @Override
+    public void update(DOI doi, DoiData doiData, String xml) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void delete(DOI doi) {
+      dois.remove(doi);
+    }
+  }
+}
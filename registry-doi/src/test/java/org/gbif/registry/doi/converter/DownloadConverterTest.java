@@ -25,11 +25,16 @@ import org.gbif.occurrence.query.TitleLookupService;
 
 import java.net.URI;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.Test;
 import org.xmlunit.matchers.CompareMatcher;
 
+import com.google.common.collect.Iterators;
 import com.google.common.io.Resources;
 
 import static org.gbif.registry.doi.converter.DataCiteConverterTestCommon.getXmlMetadataFromFile;
@@ -73,6 +78,69 @@ public class DownloadConverterTest {
     verify(tl, atLeastOnce()).getSpeciesName(anyString());
   }
 
+  @Test
+  public void testConvertDownloadWithinSizeLimit() throws Exception {
+    // given
+    Download download = prepareDownload();
+    download.setNumberDatasets(5000L);
+    TitleLookupService tl = mock(TitleLookupService.class);
+    when(tl.getSpeciesName(anyString())).thenReturn("Abies alba Mill.");
+    List<DatasetOccurrenceDownloadUsage> usages = new ArrayList<>();
+    for (int i = 0; i < 5000; i++) {
+      DatasetOccurrenceDownloadUsage du = new DatasetOccurrenceDownloadUsage();
+      du.setDatasetKey(UUID.randomUUID());
+      du.setDatasetTitle("Dataset <" + i + "> & \u00fcn\u00efc\u00f8d\u00e9");
+      du.setDatasetDOI(new DOI("10.1234/dataset-" + i));
+      du.setNumberRecords(i);
+      usages.add(du);
+    }
+    AtomicInteger iterated = new AtomicInteger();
+    Iterable<DatasetOccurrenceDownloadUsage> usedDatasets =
+        () ->
+            Iterators.transform(
+                usages.iterator(),
+                du -> {
+                  iterated.incrementAndGet();
+                  return du;
+                });
+
+    // when
+    DataCiteMetadata metadata =
+        DownloadConverter.convert(
+            download,
+            prepareUser(),
+            usedDatasets,
+            tl,
+            20_000,
+            URI.create("https://www.gbif.org/occurrence/download/1"));
+    String xml = DataCiteValidator.toXml(download.getDoi(), metadata);
+
+    // then
+    DataCiteValidator.validateMetadata(xml);
+    assertTrue(xml.getBytes(StandardCharsets.UTF_8).length <= 20_000);
+    assertTrue(
+        xml.contains(
+            "Please see https://www.gbif.org/occurrence/download/1 for full list of all "
+                + "constituents."));
+    assertTrue(xml.contains("Dataset &lt;0&gt; &amp; \u00fcn\u00efc\u00f8d\u00e9"));
+    assertTrue(xml.contains("10.1234/dataset-0<"));
+    assertFalse(xml.contains("10.1234/dataset-4999<"));
+    // the usages beyond the limit are not loaded
+    assertTrue(iterated.get() < 5000);
+    int constituents = metadata.getRelatedIdentifiers().getRelatedIdentifier().size();
+    assertEquals(iterated.get() - 1, constituents);
+  }
+
+  @Test
+  public void testXmlSize() {
+    assertEquals(0, DownloadConverter.xmlSize(null));
+    assertEquals(3, DownloadConverter.xmlSize("abc"));
+    assertEquals(15, DownloadConverter.xmlSize("<a&b>"));
+    String text = "\u00fcn\u00ef\u20ac";
+    assertEquals(text.getBytes(StandardCharsets.UTF_8).length, DownloadConverter.xmlSize(text));
+    assertEquals(4, DownloadConverter.xmlSize("\uD83D\uDE00"));
+  }
+
   @Test
   public void testTruncateDescription() throws Exception {
     // given
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2020 Global Biodiversity Information Facility (GBIF)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gbif.registry.doi.util;
+
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DoiSuffixEncoderTest {
+
+  @Test
+  public void testEncodeIsUniqueAndWellFormed() {
+    Set<String> suffixes = new HashSet<>();
+    for (long n = 0; n < 1_000_000; n++) {
+      String suffix = DoiSuffixEncoder.encode(n);
+      assertEquals(DoiSuffixEncoder.LENGTH, suffix.length());
+      for (char c : suffix.toCharArray()) {
+        assertTrue(suffix, DoiSuffixEncoder.ALPHABET.indexOf(c) >= 0);
+      }
+      assertTrue("Duplicate suffix " + suffix, suffixes.add(suffix));
+    }
+  }
+
+  @Test
+  public void testEncodeIsBijectiveOverTheSpace() {
+    // decodes the suffixes of a sample spread over the whole space and checks none repeats
+    BitSet seen = new BitSet((int) DoiSuffixEncoder.SPACE);
+    for (long n = 0; n < DoiSuffixEncoder.SPACE; n += 97) {
+      int value = decode(DoiSuffixEncoder.encode(n));
+      assertFalse("Duplicate suffix for " + n, seen.get(value));
+      seen.set(value);
+    }
+  }
+
+  @Test
+  public void testConsecutiveNumbersDoNotLookSequential() {
+    String first = DoiSuffixEncoder.encode(1000);
+    String second = DoiSuffixEncoder.encode(1001);
+    assertNotEquals(first.substring(0, 5), second.substring(0, 5));
+  }
+
+  @Test
+  public void testEncodeBeyondTheSpace() {
+    String suffix = DoiSuffixEncoder.encode(DoiSuffixEncoder.SPACE);
+    assertEquals(DoiSuffixEncoder.LENGTH + 1, suffix.length());
+    assertEquals(DoiSuffixEncoder.encode(0), suffix.substring(0, DoiSuffixEncoder.LENGTH));
+    assertNotEquals(DoiSuffixEncoder.encode(0), suffix);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testEncodeNegative() {
+    DoiSuffixEncoder.encode(-1);
+  }
+
+  private static int decode(String suffix) {
+    String alphabet = DoiSuffixEncoder.ALPHABET;
+    int value = 0;
+    for (int i = DoiSuffixEncoder.LENGTH - 1; i >= 0; i--) {
+      value = value * alphabet.length() + alphabet.indexOf(suffix.charAt(i));
+    }
+    return value;
+  }
+}
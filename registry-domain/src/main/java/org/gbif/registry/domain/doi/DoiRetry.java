@@ -0,0 +1,148 @@
+/*
+ * Copyright 2020 Global Biodiversity Information Facility (GBIF)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gbif.registry.domain.doi;
+
+import org.gbif.api.model.common.DOI;
+import org.gbif.api.model.common.DoiStatus;
+
+import java.io.Serializable;
+import java.net.URI;
+import java.util.Date;
+import java.util.StringJoiner;
+
+/**
+ * A change of a DOI which could not be sent to DataCite and is retried later.
+ *
+ * <p>There is at most one retry per DOI: a newer change of the same DOI replaces the pending one. A
+ * retry which failed too many times is kept as {@link State#DEAD} for manual inspection.
+ */
+public class DoiRetry implements Serializable {
+
+  /** State of a retry. */
+  public enum State {
+    PENDING,
+    DEAD
+  }
+
+  private DOI doi;
+  private DoiStatus status;
+  private URI target;
+  private String metadata;
+  private int attempts;
+  private State state;
+  private Date nextAttempt;
+  private String lastError;
+  private Date created;
+  private Date modified;
+
+  public DOI getDoi() {
+    return doi;
+  }
+
+  public void setDoi(DOI doi) {
+    this.doi = doi;
+  }
+
+  /** Status the DOI is changed to. */
+  public DoiStatus getStatus() {
+    return status;
+  }
+
+  public void setStatus(DoiStatus status) {
+    this.status = status;
+  }
+
+  public URI getTarget() {
+    return target;
+  }
+
+  public void setTarget(URI target) {
+    this.target = target;
+  }
+
+  public String getMetadata() {
+    return metadata;
+  }
+
+  public void setMetadata(String metadata) {
+    this.metadata = metadata;
+  }
+
+  /** Number of failed attempts so far. */
+  public int getAttempts() {
+    return attempts;
+  }
+
+  public void setAttempts(int attempts) {
+    this.attempts = attempts;
+  }
+
+  public State getState() {
+    return state;
+  }
+
+  public void setState(State state) {
+    this.state = state;
+  }
+
+  public Date getNextAttempt() {
+    return nextAttempt;
+  }
+
+  public void setNextAttempt(Date nextAttempt) {
+    this.nextAttempt = nextAttempt;
+  }
+
+  public String getLastError() {
+    return lastError;
+  }
+
+  public void setLastError(String lastError) {
+    this.lastError = lastError;
+  }
+
+  public Date getCreated() {
+    return created;
+  }
+
+  public void setCreated(Date created) {
+    this.created = created;
+  }
+
+  /** Last time the retry was replaced or rescheduled. */
+  public Date getModified() {
+    return modified;
+  }
+
+  public void setModified(Date modified) {
+    this.modified = modified;
+  }
+
+  @Override
+  public String toString() {
+    return new StringJoiner(", ", DoiRetry.class.getSimpleName() + "[", "]")
+        .add("doi=" + doi)
+        .add("status=" + status)
+        .add("target=" + target)
+        .add("attempts=" + attempts)
+        .add("state=" + state)
+        .add("nextAttempt=" + nextAttempt)
+        .add("lastError='" + lastError + "'")
+        .add("created=" + created)
+        .add("modified=" + modified)
+        .toString();
+  }
+}
@@ -0,0 +1,225 @@
+/*
+ * Copyright 2020 Global Biodiversity Information Facility (GBIF)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gbif.registry.domain.pipelines;
+
+import org.gbif.api.model.pipelines.StepType;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.StringJoiner;
+import java.util.UUID;
+
+/**
+ * A persistent job rerunning the last attempt of many datasets, e.g. all datasets of the registry.
+ *
+ * <p>Datasets are processed in the order of their keys and the key of the last dataset processed is
+ * stored as a cursor, so that a job continues where it stopped after a pause or a restart.
+ */
+public class RerunJob implements Serializable {
+
+  /** Status of a rerun job. */
+  public enum Status {
+    RUNNING,
+    PAUSED,
+    CANCELLED,
+    COMPLETED;
+
+    /** Whether no further transition is possible from this status. */
+    public boolean isFinal() {
+      return this == CANCELLED || this == COMPLETED;
+    }
+  }
+
+  private Long key;
+  private Status status;
+  private List<StepType> steps = new ArrayList<>();
+  private String reason;
+  private String prefix;
+  private boolean useLastSuccessful;
+  private List<UUID> datasetsToInclude = new ArrayList<>();
+  private List<UUID> datasetsToExclude = new ArrayList<>();
+  private UUID cursor;
+  private long submitted;
+  private long skipped;
+  private long failed;
+  private String createdBy;
+  private Date created;
+  private Date modified;
+  private Date finished;
+
+  public Long getKey() {
+    return key;
+  }
+
+  public void setKey(Long key) {
+    this.key = key;
+  }
+
+  public Status getStatus() {
+    return status;
+  }
+
+  public void setStatus(Status status) {
+    this.status = status;
+  }
+
+  /** Steps to rerun on every dataset. */
+  public List<StepType> getSteps() {
+    return steps;
+  }
+
+  public void setSteps(List<StepType> steps) {
+    this.steps = steps;
+  }
+
+  public String getReason() {
+    return reason;
+  }
+
+  public void setReason(String reason) {
+    this.reason = reason;
+  }
+
+  /** Prefix used to reset the indices of the interpreted and indexed steps. */
+  public String getPrefix() {
+    return prefix;
+  }
+
+  public void setPrefix(String prefix) {
+    this.prefix = prefix;
+  }
+
+  public boolean isUseLastSuccessful() {
+    return useLastSuccessful;
+  }
+
+  public void setUseLastSuccessful(boolean useLastSuccessful) {
+    this.useLastSuccessful = useLastSuccessful;
+  }
+
+  /** Datasets to rerun, all datasets of the registry if empty. */
+  public List<UUID> getDatasetsToInclude() {
+    return datasetsToInclude;
+  }
+
+  public void setDatasetsToInclude(List<UUID> datasetsToInclude) {
+    this.datasetsToInclude = datasetsToInclude;
+  }
+
+  /** Datasets to skip. */
+  public List<UUID> getDatasetsToExclude() {
+    return datasetsToExclude;
+  }
+
+  public void setDatasetsToExclude(List<UUID> datasetsToExclude) {
+    this.datasetsToExclude = datasetsToExclude;
+  }
+
+  /** Key of the last dataset processed, null if no dataset has been processed yet. */
+  public UUID getCursor() {
+    return cursor;
+  }
+
+  public void setCursor(UUID cursor) {
+    this.cursor = cursor;
+  }
+
+  /** Number of datasets whose rerun messages have been published. */
+  public long getSubmitted() {
+    return submitted;
+  }
+
+  public void setSubmitted(long submitted) {
+    this.submitted = submitted;
+  }
+
+  /**
+   * Number of datasets skipped because they are excluded, have never been processed or are
+   * already running in pipelines.
+   */
+  public long getSkipped() {
+    return skipped;
+  }
+
+  public void setSkipped(long skipped) {
+    this.skipped = skipped;
+  }
+
+  /** Number of datasets whose rerun failed. */
+  public long getFailed() {
+    return failed;
+  }
+
+  public void setFailed(long failed) {
+    this.failed = failed;
+  }
+
+  public String getCreatedBy() {
+    return createdBy;
+  }
+
+  public void setCreatedBy(String createdBy) {
+    this.createdBy = createdBy;
+  }
+
+  public Date getCreated() {
+    return created;
+  }
+
+  public void setCreated(Date created) {
+    this.created = created;
+  }
+
+  public Date getModified() {
+    return modified;
+  }
+
+  public void setModified(Date modified) {
+    this.modified = modified;
+  }
+
+  public Date getFinished() {
+    return finished;
+  }
+
+  public void setFinished(Date finished) {
+    this.finished = finished;
+  }
+
+  @Override
+  public String toString() {
+    return new StringJoiner(", ", RerunJob.class.getSimpleName() + "[", "]")
+        .add("key=" + key)
+        .add("status=" + status)
+        .add("steps=" + steps)
+        .add("reason='" + reason + "'")
+        .add("prefix='" + prefix + "'")
+        .add("useLastSuccessful=" + useLastSuccessful)
+        .add("datasetsToInclude=" + datasetsToInclude)
+        .add("datasetsToExclude=" + datasetsToExclude)
+        .add("cursor=" + cursor)
+        .add("submitted=" + submitted)
+        .add("skipped=" + skipped)
+        .add("failed=" + failed)
+        .add("createdBy='" + createdBy + "'")
+        .add("created=" + created)
+        .add("modified=" + modified)
+        .add("finished=" + finished)
+        .toString();
+  }
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright 2020 Global Biodiversity Information Facility (GBIF)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gbif.registry.events;
+
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.google.common.eventbus.AsyncEventBus;
+import com.google.common.eventbus.EventBus;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * An {@link EventManager} dispatching events asynchronously, off the thread posting them.
+ *
+ * <p>Every registered listener gets its own event bus backed by its own bounded thread pool, so a
+ * slow listener, e.g. one issuing remote HTTP calls, only delays its own events and never the other
+ * listeners. With a single thread per listener, the default, a listener receives events in the
+ * order they were posted.
+ *
+ * <p>Events posted within a transaction are dispatched once it has been committed, as listeners
+ * running on other threads would not see the uncommitted changes otherwise. Events of rolled back
+ * transactions are dropped.
+ *
+ * <p>When a listener queue is full, the {@link RejectionPolicy} decides between slowing down the
+ * posting thread and dropping the event.
+ */
+@SuppressWarnings("UnstableApiUsage")
+public class AsyncEventManager implements EventManager {
+
+  private static final Logger LOG = LoggerFactory.getLogger(AsyncEventManager.class);
+
+  private static final long SHUTDOWN_TIMEOUT_SECONDS = 30;
+
+  /** What happens to an event posted while the queue of a listener is full. */
+  public enum RejectionPolicy {
+    /** The posting thread delivers the event itself, which slows down the producer. */
+    CALLER_RUNS,
+    /** The event is logged and dropped for that listener. */
+    DISCARD
+  }
+
+  private final Map<Object, ListenerDispatcher> dispatchers = new ConcurrentHashMap<>();
+  private final int threadsPerListener;
+  private final int queueCapacity;
+  private final RejectionPolicy rejectionPolicy;
+  private final MeterRegistry meterRegistry;
+
+  /**
+   * @param threadsPerListener threads delivering the events of each listener, more than one does
+   *     not preserve the order of the events
+   * @param queueCapacity maximum number of events waiting for each listener
+   * @param rejectionPolicy what to do with events posted while a listener queue is full
+   * @param meterRegistry optional registry exposing the queue sizes, the listener latencies and the
+   *     rejected events
+   */
+  public AsyncEventManager(
+      int threadsPerListener,
+      int queueCapacity,
+      RejectionPolicy rejectionPolicy,
+      @Nullable MeterRegistry meterRegistry) {
+    this.threadsPerListener = threadsPerListener;
+    this.queueCapacity = queueCapacity;
+    this.rejectionPolicy = rejectionPolicy;
+    this.meterRegistry = meterRegistry;
+    LOG.info(
+        "Asynchronous event dispatch with {} thread(s) and {} queued events per listener, {}",
+        threadsPerListener,
+        queueCapacity,
+        rejectionPolicy);
+  }
+
+  @Override
+  public void post(Object object) {
+    if (TransactionSynchronizationManager.isSynchronizationActive()) {
+      TransactionSynchronizationManager.registerSynchronization(
+          new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+              dispatch(object);
+            }
+          });
+    } else {
+      dispatch(object);
+    }
+  }
+
+  private void dispatch(Object object) {
+    for (ListenerDispatcher dispatcher : dispatchers.values()) {
+      dispatcher.eventBus.post(object);
+    }
+  }
+
+  @Override
+  public void register(Object object) {
+    dispatchers.computeIfAbsent(object, ListenerDispatcher::new);
+  }
+
+  @Override
+  public void unregister(Object object) {
+    ListenerDispatcher dispatcher = dispatchers.remove(object);
+    if (dispatcher != null) {
+      dispatcher.shutdown();
+    }
+  }
+
+  /** Stops accepting events and waits for the queued ones to be delivered. */
+  public void close() {
+    dispatchers.keySet().forEach(this::unregister);
+  }
+
+  /** Delivers the events of a single listener. */
+  private class ListenerDispatcher {
+
+    private final String name;
+    private final ThreadPoolExecutor executor;
+    private final EventBus eventBus;
+
+    private ListenerDispatcher(Object listener) {
+      name = listener.getClass().getSimpleName();
+      executor =
+          new ThreadPoolExecutor(
+              threadsPerListener,
+              threadsPerListener,
+              0L,
+              TimeUnit.MILLISECONDS,
+              new ArrayBlockingQueue<>(queueCapacity),
+              new ThreadFactoryBuilder()
+                  .setNameFormat("event-" + name + "-%d")
+                  .setDaemon(true)
+                  .build(),
+              rejectionHandler());
+
+      Executor dispatchExecutor = executor;
+      if (meterRegistry != null) {
+        Gauge.builder("registry.events.queue.size", executor, e -> e.getQueue().size())
+            .description("Events waiting to be delivered to a listener")
+            .tag("listener", name)
+            .register(meterRegistry);
+        Timer latency =
+            Timer.builder("registry.events.dispatch")
+                .description("Time taken by a listener to handle an event")
+                .tag("listener", name)
+                .register(meterRegistry);
+        dispatchExecutor = command -> executor.execute(latency.wrap(command));
+      }
+
+      eventBus = new AsyncEventBus(name, dispatchExecutor);
+      eventBus.register(listener);
+    }
+
+    private RejectedExecutionHandler rejectionHandler() {
+      Counter rejected =
+          meterRegistry == null
+              ? null
+              : Counter.builder("registry.events.rejected")
+                  .description("Events posted while the queue of a listener was full")
+                  .tag("listener", name)
+                  .tag("policy", rejectionPolicy.name())
+                  .register(meterRegistry);
+      RejectedExecutionHandler policy =
+          rejectionPolicy == RejectionPolicy.CALLER_RUNS
+              ? new ThreadPoolExecutor.CallerRunsPolicy()
+              : (r, e) -> LOG.warn("Event queue of listener {} is full, event dropped", name);
+      return (r, e) -> {
+        if (rejected != null) {
+          rejected.increment();
+        }
+        policy.rejectedExecution(r, e);
+      };
+    }
+
+    private void shutdown() {
+      executor.shutdown();
+      try {
+        if (!executor.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+          LOG.warn("{} events of listener {} not delivered", executor.getQueue().size(), name);
+          executor.shutdownNow();
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        executor.shutdownNow();
+      }
+    }
+  }
+}
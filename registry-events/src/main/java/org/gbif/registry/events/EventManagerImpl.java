@@ -15,11 +15,13 @@
  */
 package org.gbif.registry.events;
 
-import org.springframework.stereotype.Service;
-
 import com.google.common.eventbus.EventBus;
 
-@Service
+/**
+ * An {@link EventManager} delivering events synchronously, on the thread posting them.
+ *
+ * @see org.gbif.registry.events.config.EventConfiguration
+ */
 public class EventManagerImpl implements EventManager {
 
   private EventBus eventBus;
@@ -33,15 +33,12 @@ import org.gbif.registry.events.collections.ChangedCollectionEntityComponentEven
 import org.gbif.registry.events.collections.CreateCollectionEntityEvent;
 import org.gbif.registry.events.collections.DeleteCollectionEntityEvent;
 import org.gbif.registry.events.collections.UpdateCollectionEntityEvent;
-import org.gbif.varnish.VarnishPurger;
 
-import java.net.URI;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.UUID;
 
-import org.apache.http.impl.client.CloseableHttpClient;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -57,6 +54,9 @@ import com.google.common.eventbus.Subscribe;
  * can banRegex entire subresources from being served. BANs do not remove the object from the
  * varnish memory though.
  *
+ * <p>Requests are sent through a {@link VarnishPurgePipeline} which coalesces the requests of bulk
+ * changes.
+ *
  * @see <h ref="https://www.varnish-software.com/static/book/Cache_invalidation.html">Varnish
  *     Book</h>
  *     <h3>Purging cascade logic</h3>
@@ -111,19 +111,19 @@ public class VarnishPurgeListener {
   private final InstitutionService institutionService;
   private final CollectionService collectionService;
   private final PersonService personService;
-  private final VarnishPurger purger;
+  private final VarnishPurgePipeline purger;
   private static final Joiner PATH_JOINER = Joiner.on("/").skipNulls();
 
   public VarnishPurgeListener(
-      CloseableHttpClient client,
+      VarnishPurgePipeline purger,
       EventManager eventManager,
-      URI apiBaseUrl,
       OrganizationService organizationService,
       InstallationService installationService,
       DatasetService datasetService,
       InstitutionService institutionService,
       CollectionService collectionService,
       PersonService personService) {
+    this.purger = purger;
     this.organizationService = organizationService;
     this.installationService = installationService;
     this.datasetService = datasetService;
@@ -131,8 +131,6 @@ public class VarnishPurgeListener {
     this.collectionService = collectionService;
     this.personService = personService;
     eventManager.register(this);
-
-    purger = new VarnishPurger(client, apiBaseUrl);
   }
 
   @Subscribe
@@ -259,14 +257,14 @@ public class VarnishPurgeListener {
         purger.purge(path("dataset", d.getParentDatasetKey()));
       }
     }
-    purger.ban(String.format("dataset/%s/constituents", purger.anyKey(parentKeys)));
+    purger.ban("dataset/%s/constituents", parentKeys);
     // /installation/{d.installationKey}/dataset BAN
-    purger.ban(String.format("installation/%s/dataset", purger.anyKey(instKeys)));
+    purger.ban("installation/%s/dataset", instKeys);
     // /organization/{d.publishingOrganizationKey}/publishedDataset BAN
     // /organization/{d.installation.organizationKey}/hostedDataset BAN
-    purger.ban(String.format("organization/%s/(published|hosted)Dataset", purger.anyKey(orgKeys)));
+    purger.ban("organization/%s/(published|hosted)Dataset", orgKeys);
     // /node/{d.publishingOrganization.endorsingNodeKey}/dataset BAN
-    purger.ban(String.format("node/%s/dataset", purger.anyKey(nodeKeys)));
+    purger.ban("node/%s/dataset", nodeKeys);
     // /network/{any UUID}/constituents BAN
     purger.ban("network/.+/constituents");
   }
@@ -277,7 +275,7 @@ public class VarnishPurgeListener {
     for (Organization o : orgs) {
       nodeKeys.add(o.getEndorsingNodeKey());
     }
-    purger.ban(String.format("node/%s/organization", purger.anyKey(nodeKeys)));
+    purger.ban("node/%s/organization", nodeKeys);
   }
 
   private void cascadeInstallationChange(Installation... installations) {
@@ -286,7 +284,7 @@ public class VarnishPurgeListener {
     for (Installation i : installations) {
       keys.add(i.getOrganizationKey());
     }
-    purger.ban(String.format("organization/%s/installation", purger.anyKey(keys)));
+    purger.ban("organization/%s/installation", keys);
 
     // /node/{i.organization.endorsingNodeKey}/installation BAN
     Set<UUID> nodekeys = new UUIDHashSet();
@@ -294,7 +292,7 @@ public class VarnishPurgeListener {
       Organization o = organizationService.get(orgKey);
       nodekeys.add(o.getEndorsingNodeKey());
     }
-    purger.ban(String.format("%node/%s/organization", purger.anyKey(nodekeys)));
+    purger.ban("node/%s/installation", nodekeys);
   }
 
   private void cascadePersonChange(Person... persons) {
@@ -313,9 +311,9 @@ public class VarnishPurgeListener {
     }
 
     // /collection/{collectionKey}/contact BAN
-    purger.ban(String.format("grscicoll/collection/%s/contact", purger.anyKey(collectionKeys)));
+    purger.ban("grscicoll/collection/%s/contact", collectionKeys);
     // /institution/{institutionKey}/contact BAN
-    purger.ban(String.format("grscicoll/institution/%s/contact", purger.anyKey(institutionKeys)));
+    purger.ban("grscicoll/institution/%s/contact", institutionKeys);
   }
 
   /**
@@ -0,0 +1,236 @@
+/*
+ * Copyright 2020 Global Biodiversity Information Facility (GBIF)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gbif.registry.events;
+
+import org.gbif.varnish.VarnishPurger;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Iterables;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Buffers the PURGE and BAN requests of the {@link VarnishPurgeListener} for a short window before
+ * sending them to varnish.
+ *
+ * <p>A bulk change such as a crawl or an IPT publishing many datasets triggers many near identical
+ * requests within seconds. Within a window identical purges and bans are sent only once and the
+ * keys of bans with the same pattern, e.g. {@code installation/%s/dataset}, are merged into a
+ * single regular expression matching any of them. The requests of a window are then sent
+ * concurrently, by a configurable number of threads.
+ */
+public class VarnishPurgePipeline {
+
+  private static final Logger LOG = LoggerFactory.getLogger(VarnishPurgePipeline.class);
+
+  private static final String PURGE = "purge";
+  private static final String BAN = "ban";
+  private static final String REQUESTED = "registry.varnish.purge.requested";
+  private static final String SENT = "registry.varnish.purge.sent";
+
+  private final VarnishPurger purger;
+  private final long windowMillis;
+  private final int maxKeysPerBan;
+  private final ExecutorService senders;
+  private final ScheduledExecutorService scheduler;
+
+  // metrics are optional, the counters are null without a meter registry
+  private final Counter requestedPurges;
+  private final Counter requestedBans;
+  private final Counter sentPurges;
+  private final Counter sentBans;
+
+  // requests of the current window, guarded by this
+  private Set<String> purges = new LinkedHashSet<>();
+  private Set<String> bans = new LinkedHashSet<>();
+  private Map<String, Set<UUID>> keyedBans = new LinkedHashMap<>();
+
+  /**
+   * @param purger sends the requests to varnish
+   * @param windowMillis time requests are buffered for, requests are sent immediately if not
+   *     positive
+   * @param maxKeysPerBan maximum number of keys merged into the regular expression of a single BAN
+   * @param threads number of requests sent concurrently
+   * @param meterRegistry optional registry exposing the requested and the actually sent purges and
+   *     bans
+   */
+  public VarnishPurgePipeline(
+      VarnishPurger purger,
+      long windowMillis,
+      int maxKeysPerBan,
+      int threads,
+      @Nullable MeterRegistry meterRegistry) {
+    this.purger = purger;
+    this.windowMillis = windowMillis;
+    this.maxKeysPerBan = maxKeysPerBan;
+    this.senders =
+        Executors.newFixedThreadPool(
+            threads,
+            new ThreadFactoryBuilder().setNameFormat("varnish-purge-%d").setDaemon(true).build());
+    this.requestedPurges = counter(meterRegistry, REQUESTED, PURGE);
+    this.requestedBans = counter(meterRegistry, REQUESTED, BAN);
+    this.sentPurges = counter(meterRegistry, SENT, PURGE);
+    this.sentBans = counter(meterRegistry, SENT, BAN);
+
+    if (windowMillis > 0) {
+      scheduler =
+          Executors.newSingleThreadScheduledExecutor(
+              new ThreadFactoryBuilder()
+                  .setNameFormat("varnish-purge-flush")
+                  .setDaemon(true)
+                  .build());
+      scheduler.scheduleWithFixedDelay(
+          this::flush, windowMillis, windowMillis, TimeUnit.MILLISECONDS);
+    } else {
+      scheduler = null;
+    }
+  }
+
+  @Nullable
+  private static Counter counter(@Nullable MeterRegistry meterRegistry, String name, String type) {
+    return meterRegistry != null
+        ? Counter.builder(name).tag("type", type).register(meterRegistry)
+        : null;
+  }
+
+  private static void increment(@Nullable Counter counter) {
+    if (counter != null) {
+      counter.increment();
+    }
+  }
+
+  /** Purges a single resource, e.g. {@code dataset/{key}}. */
+  public void purge(String path) {
+    increment(requestedPurges);
+    synchronized (this) {
+      purges.add(path);
+    }
+    flushIfUnbuffered();
+  }
+
+  /** Bans all resources matching the given regular expression. */
+  public void ban(String regex) {
+    increment(requestedBans);
+    synchronized (this) {
+      bans.add(regex);
+    }
+    flushIfUnbuffered();
+  }
+
+  /**
+   * Bans all resources matching the pattern for any of the given keys.
+   *
+   * @param pattern regular expression with a single {@code %s} placeholder for the keys, e.g.
+   *     {@code installation/%s/dataset}
+   * @param keys keys to ban, nothing is banned if empty
+   */
+  public void ban(String pattern, Set<UUID> keys) {
+    if (keys.isEmpty()) {
+      return;
+    }
+    increment(requestedBans);
+    synchronized (this) {
+      keyedBans.computeIfAbsent(pattern, p -> new LinkedHashSet<>()).addAll(keys);
+    }
+    flushIfUnbuffered();
+  }
+
+  private void flushIfUnbuffered() {
+    if (windowMillis <= 0) {
+      flush();
+    }
+  }
+
+  /** Sends the buffered requests and waits for them to be sent. */
+  public void flush() {
+    Set<String> purgesToSend;
+    Set<String> bansToSend;
+    Map<String, Set<UUID>> keyedBansToSend;
+    synchronized (this) {
+      if (purges.isEmpty() && bans.isEmpty() && keyedBans.isEmpty()) {
+        return;
+      }
+      purgesToSend = purges;
+      bansToSend = bans;
+      keyedBansToSend = keyedBans;
+      purges = new LinkedHashSet<>();
+      bans = new LinkedHashSet<>();
+      keyedBans = new LinkedHashMap<>();
+    }
+
+    List<Callable<Void>> requests = new ArrayList<>();
+    for (String path : purgesToSend) {
+      requests.add(request(() -> purger.purge(path), sentPurges));
+    }
+    for (String regex : bansToSend) {
+      requests.add(request(() -> purger.ban(regex), sentBans));
+    }
+    keyedBansToSend.forEach(
+        (pattern, keys) -> {
+          for (List<UUID> batch : Iterables.partition(keys, maxKeysPerBan)) {
+            String regex = String.format(pattern, purger.anyKey(new LinkedHashSet<>(batch)));
+            requests.add(request(() -> purger.ban(regex), sentBans));
+          }
+        });
+
+    try {
+      senders.invokeAll(requests);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      LOG.warn("Interrupted while sending {} varnish requests", requests.size());
+    }
+  }
+
+  private static Callable<Void> request(Runnable request, @Nullable Counter sent) {
+    return () -> {
+      try {
+        request.run();
+        increment(sent);
+      } catch (RuntimeException e) {
+        LOG.error("Failed to send varnish request", e);
+      }
+      return null;
+    };
+  }
+
+  /** Sends the buffered requests and stops the pipeline. */
+  public void close() {
+    if (scheduler != null) {
+      scheduler.shutdown();
+    }
+    flush();
+    senders.shutdown();
+  }
+}
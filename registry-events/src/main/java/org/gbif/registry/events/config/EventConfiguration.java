@@ -15,16 +15,42 @@
  */
 package org.gbif.registry.events.config;
 
+import org.gbif.registry.events.AsyncEventManager;
+import org.gbif.registry.events.EventManager;
+import org.gbif.registry.events.EventManagerImpl;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
 import com.google.common.eventbus.EventBus;
 
+import io.micrometer.core.instrument.MeterRegistry;
+
 @Configuration
 public class EventConfiguration {
 
+  /** How events are delivered to the listeners. */
+  public enum DispatchMode {
+    /** On the thread posting the event, before {@link EventManager#post} returns. */
+    SYNC,
+    /** By the {@link AsyncEventManager}. */
+    ASYNC
+  }
+
   @Bean
-  public EventBus eventBus() {
-    return new EventBus();
+  public EventManager eventManager(
+      @Value("${events.dispatch.mode:SYNC}") DispatchMode mode,
+      @Value("${events.dispatch.threadsPerListener:1}") int threadsPerListener,
+      @Value("${events.dispatch.queueCapacity:10000}") int queueCapacity,
+      @Value("${events.dispatch.rejectionPolicy:CALLER_RUNS}")
+          AsyncEventManager.RejectionPolicy rejectionPolicy,
+      ObjectProvider<MeterRegistry> meterRegistry) {
+    if (mode == DispatchMode.ASYNC) {
+      return new AsyncEventManager(
+          threadsPerListener, queueCapacity, rejectionPolicy, meterRegistry.getIfAvailable());
+    }
+    return new EventManagerImpl(new EventBus());
   }
 }
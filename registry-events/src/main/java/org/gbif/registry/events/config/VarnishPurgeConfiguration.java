@@ -23,14 +23,19 @@ import org.gbif.api.service.registry.InstallationService;
 import org.gbif.api.service.registry.OrganizationService;
 import org.gbif.registry.events.EventManager;
 import org.gbif.registry.events.VarnishPurgeListener;
+import org.gbif.registry.events.VarnishPurgePipeline;
 import org.gbif.utils.HttpUtil;
+import org.gbif.varnish.VarnishPurger;
 
 import java.net.URI;
 
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import io.micrometer.core.instrument.MeterRegistry;
+
 @Configuration
 public class VarnishPurgeConfiguration {
 
@@ -38,16 +43,34 @@ public class VarnishPurgeConfiguration {
 
   private final URI purgeUrl;
   private final Integer purgingThreads;
+  private final long windowMillis;
+  private final int maxKeysPerBan;
 
   public VarnishPurgeConfiguration(
       @Value("${api.cache.purge.url}") String purgeUrl,
-      @Value("${api.cache.purge.threads}") Integer purgingThreads) {
+      @Value("${api.cache.purge.threads}") Integer purgingThreads,
+      @Value("${api.cache.purge.windowMs:1000}") long windowMillis,
+      @Value("${api.cache.purge.maxKeysPerBan:100}") int maxKeysPerBan) {
     this.purgeUrl = URI.create(purgeUrl);
     this.purgingThreads = purgingThreads;
+    this.windowMillis = windowMillis;
+    this.maxKeysPerBan = maxKeysPerBan;
+  }
+
+  @Bean(destroyMethod = "close")
+  public VarnishPurgePipeline varnishPurgePipeline(ObjectProvider<MeterRegistry> meterRegistry) {
+    VarnishPurger purger =
+        new VarnishPurger(
+            HttpUtil.newMultithreadedClient(
+                DEFAULT_HTTP_TIMEOUT_MSECS, purgingThreads, purgingThreads),
+            purgeUrl);
+    return new VarnishPurgePipeline(
+        purger, windowMillis, maxKeysPerBan, purgingThreads, meterRegistry.getIfAvailable());
   }
 
   @Bean
   public VarnishPurgeListener varnishPurgeListener(
+      VarnishPurgePipeline varnishPurgePipeline,
       EventManager eventManager,
       OrganizationService organizationService,
       InstallationService installationService,
@@ -56,9 +79,8 @@ public class VarnishPurgeConfiguration {
       CollectionService collectionService,
       PersonService personService) {
     return new VarnishPurgeListener(
-        HttpUtil.newMultithreadedClient(DEFAULT_HTTP_TIMEOUT_MSECS, purgingThreads, purgingThreads),
+        varnishPurgePipeline,
         eventManager,
-        purgeUrl,
         organizationService,
         installationService,
         datasetService,
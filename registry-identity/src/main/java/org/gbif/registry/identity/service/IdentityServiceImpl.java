@@ -41,6 +41,7 @@ import javax.validation.groups.Default;
 import org.apache.commons.lang3.Range;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.annotation.Primary;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -64,6 +65,7 @@ public class IdentityServiceImpl extends BaseIdentityAccessService implements Id
   private final UserMapper userMapper;
   private final UserSuretyDelegate userSuretyDelegate;
   private final Validator validator;
+  private final ApplicationEventPublisher eventPublisher;
 
   private static final Range<Integer> PASSWORD_LENGTH_RANGE = Range.between(6, 256);
 
@@ -71,11 +73,15 @@ public class IdentityServiceImpl extends BaseIdentityAccessService implements Id
 
   @Autowired
   public IdentityServiceImpl(
-      UserMapper userMapper, UserSuretyDelegate userSuretyDelegate, Validator validator) {
+      UserMapper userMapper,
+      UserSuretyDelegate userSuretyDelegate,
+      Validator validator,
+      ApplicationEventPublisher eventPublisher) {
     super(userMapper);
     this.userMapper = userMapper;
     this.userSuretyDelegate = userSuretyDelegate;
     this.validator = validator;
+    this.eventPublisher = eventPublisher;
   }
 
   @Override
@@ -135,6 +141,8 @@ public class IdentityServiceImpl extends BaseIdentityAccessService implements Id
       }
 
       userMapper.update(user);
+      // roles may have changed
+      publishUserChanged(currentUser);
       return UserModelMutationResult.onSuccess(user.getUserName(), user.getEmail());
     }
 
@@ -157,12 +165,15 @@ public class IdentityServiceImpl extends BaseIdentityAccessService implements Id
 
   @Override
   public void delete(int userKey) {
+    GbifUser user = userMapper.getByKey(userKey);
     userMapper.deleteByKey(userKey);
+    publishUserChanged(user);
   }
 
   @Override
   public void delete(GbifUser userBefore, GbifUser user, List<Download> downloads) {
     userMapper.delete(user);
+    publishUserChanged(userBefore);
     userSuretyDelegate.onDeleteUser(userBefore, downloads);
   }
 
@@ -284,6 +295,7 @@ public class IdentityServiceImpl extends BaseIdentityAccessService implements Id
       if (user != null) {
         user.setEmail(newEmail);
         userMapper.update(user);
+        publishUserChanged(user);
         userSuretyDelegate.onEmailChanged(user, oldEmail);
 
         return UserModelMutationResult.onSuccess();
@@ -321,6 +333,7 @@ public class IdentityServiceImpl extends BaseIdentityAccessService implements Id
 
       user.setPasswordHash(PASSWORD_ENCODER.encode(newPassword));
       userMapper.update(user);
+      publishUserChanged(user);
       userSuretyDelegate.onPasswordChanged(user);
 
       return UserModelMutationResult.onSuccess();
@@ -329,6 +342,12 @@ public class IdentityServiceImpl extends BaseIdentityAccessService implements Id
     return withSingleConstraintViolation("user", PropertyConstants.CONSTRAINT_UNKNOWN);
   }
 
+  private void publishUserChanged(@Nullable GbifUser user) {
+    if (user != null) {
+      eventPublisher.publishEvent(new UserChangedEvent(user.getUserName()));
+    }
+  }
+
   /**
    * The main purpose of this method is to normalize the content of some fields from a {@link
    * GbifUser}. The goal is to ensure we can query this object in the same way we handle
@@ -361,10 +380,12 @@ public class IdentityServiceImpl extends BaseIdentityAccessService implements Id
   @Override
   public void addEditorRight(String userName, UUID key) {
     userMapper.addEditorRight(userName, key);
+    eventPublisher.publishEvent(new UserChangedEvent(userName));
   }
 
   @Override
   public void deleteEditorRight(String userName, UUID key) {
     userMapper.deleteEditorRight(userName, key);
+    eventPublisher.publishEvent(new UserChangedEvent(userName));
   }
 }
@@ -61,6 +61,8 @@ public class DatabaseInitializer implements BeforeEachCallback {
       connection.prepareStatement("DELETE FROM node_tag").execute();
       connection.prepareStatement("DELETE FROM node_comment").execute();
       connection.prepareStatement("DELETE FROM occurrence_download").execute();
+      connection.prepareStatement("DELETE FROM download_daily_user_statistics").execute();
+      connection.prepareStatement("DELETE FROM download_statistics_high_water_mark").execute();
       connection.prepareStatement("DELETE FROM organization_contact").execute();
       connection.prepareStatement("DELETE FROM organization_endpoint").execute();
       connection.prepareStatement("DELETE FROM organization_machine_tag").execute();
@@ -107,6 +109,7 @@ public class DatabaseInitializer implements BeforeEachCallback {
       connection.prepareStatement("DELETE FROM pipeline_step").executeUpdate();
       connection.prepareStatement("DELETE FROM pipeline_process").executeUpdate();
       connection.prepareStatement("DELETE FROM pipeline_execution").executeUpdate();
+      connection.prepareStatement("DELETE FROM pipelines_rerun_job").executeUpdate();
       connection.prepareStatement("DELETE FROM derived_dataset").executeUpdate();
 
       connection
@@ -16,6 +16,9 @@
 package org.gbif.registry.doi;
 
 import org.gbif.api.model.common.DOI;
+import org.gbif.registry.doi.config.DoiConfigurationProperties;
+import org.gbif.registry.domain.doi.DoiType;
+import org.gbif.registry.persistence.mapper.DoiMapper;
 import org.gbif.registry.search.test.EsManageServer;
 import org.gbif.registry.ws.it.BaseItTest;
 import org.gbif.ws.client.filter.SimplePrincipalProvider;
@@ -30,9 +33,12 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.SpringBootConfiguration;
 import org.springframework.context.annotation.Import;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import com.beust.jcommander.internal.Nullable;
 
+import static org.gbif.registry.doi.util.DoiSuffixEncoder.encode;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
@@ -44,14 +50,23 @@ import static org.junit.Assert.assertTrue;
 public class DoiIssuingServiceIT extends BaseItTest {
 
   private final DoiIssuingService doiIssuingService;
+  private final DoiMapper doiMapper;
+  private final DoiConfigurationProperties doiConfigProperties;
+  private final TransactionTemplate transactionTemplate;
 
   @Autowired
   public DoiIssuingServiceIT(
       DoiIssuingService doiIssuingService,
+      DoiMapper doiMapper,
+      DoiConfigurationProperties doiConfigProperties,
+      PlatformTransactionManager transactionManager,
       @Nullable SimplePrincipalProvider simplePrincipalProvider,
       EsManageServer esServer) {
     super(simplePrincipalProvider, esServer);
     this.doiIssuingService = doiIssuingService;
+    this.doiMapper = doiMapper;
+    this.doiConfigProperties = doiConfigProperties;
+    this.transactionTemplate = new TransactionTemplate(transactionManager);
   }
 
   @SpringBootConfiguration
@@ -71,4 +86,49 @@ public class DoiIssuingServiceIT extends BaseItTest {
       assertEquals(x, dois.size());
     }
   }
+
+  @Test
+  public void testSuffixesFromSequence() {
+    // every call reserves a new block of the sequence
+    long block = doiMapper.nextSuffixBlock();
+    assertEquals(block + DoiSuffixAllocator.BLOCK_SIZE, doiMapper.nextSuffixBlock());
+
+    // a new service reserves the following blocks, the suffixes follow its numbers
+    DoiIssuingService issuingService =
+        new DoiIssuingServiceImpl(doiMapper, doiConfigProperties);
+    long first = block + 2L * DoiSuffixAllocator.BLOCK_SIZE;
+    for (int i = 0; i <= DoiSuffixAllocator.BLOCK_SIZE; i++) {
+      DOI doi = issuingService.newDownloadDOI();
+      assertEquals(new DOI(DOI.TEST_PREFIX, "dl." + encode(first + i)), doi);
+      assertEquals(DoiType.DOWNLOAD, doiMapper.getType(doi));
+    }
+  }
+
+  @Test
+  public void testTakenSuffixesSkipped() {
+    DoiIssuingService issuingService =
+        new DoiIssuingServiceImpl(doiMapper, doiConfigProperties);
+    long next = doiMapper.nextSuffixBlock() + DoiSuffixAllocator.BLOCK_SIZE;
+    // the next suffixes were taken by DOIs issued randomly before
+    DOI taken1 = new DOI(DOI.TEST_PREFIX, encode(next));
+    DOI taken2 = new DOI(DOI.TEST_PREFIX, encode(next + 1));
+    doiMapper.create(taken1, DoiType.DATASET);
+    doiMapper.create(taken2, DoiType.DOWNLOAD);
+    assertEquals(0, doiMapper.createIfAbsent(taken2, DoiType.DATASET));
+
+    DOI doi =
+        transactionTemplate.execute(
+            status -> {
+              DOI issued = issuingService.newDatasetDOI();
+              // the conflicts did not abort the transaction
+              assertEquals(DoiType.DATASET, doiMapper.getType(issued));
+              return issued;
+            });
+
+    assertEquals(new DOI(DOI.TEST_PREFIX, encode(next + 2)), doi);
+    assertEquals(DoiType.DATASET, doiMapper.getType(doi));
+    // the taken DOIs are left as they were
+    assertEquals(DoiType.DATASET, doiMapper.getType(taken1));
+    assertEquals(DoiType.DOWNLOAD, doiMapper.getType(taken2));
+  }
 }
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2020 Global Biodiversity Information Facility (GBIF)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gbif.registry.events;
+
+import org.gbif.registry.events.AsyncEventManager.RejectionPolicy;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import com.google.common.eventbus.Subscribe;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SuppressWarnings("UnstableApiUsage")
+public class AsyncEventManagerTest {
+
+  private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+  private AsyncEventManager eventManager;
+
+  @AfterEach
+  public void tearDown() {
+    eventManager.close();
+  }
+
+  @Test
+  public void testSlowListenerDoesNotStallOthers() throws Exception {
+    eventManager = new AsyncEventManager(1, 10, RejectionPolicy.DISCARD, meterRegistry);
+    BlockingListener slow = new BlockingListener();
+    RecordingListener fast = new RecordingListener(3);
+    eventManager.register(slow);
+    eventManager.register(fast);
+
+    for (int i = 0; i < 3; i++) {
+      eventManager.post(i);
+    }
+
+    // the slow listener is still blocked on the first event
+    assertTrue(fast.received.await(5, TimeUnit.SECONDS));
+    slow.release.countDown();
+  }
+
+  @Test
+  public void testEventsDeliveredInOrder() throws Exception {
+    eventManager = new AsyncEventManager(1, 1000, RejectionPolicy.CALLER_RUNS, meterRegistry);
+    RecordingListener listener = new RecordingListener(100);
+    eventManager.register(listener);
+
+    for (int i = 0; i < 100; i++) {
+      eventManager.post(i);
+    }
+
+    assertTrue(listener.received.await(5, TimeUnit.SECONDS));
+    for (int i = 0; i < 100; i++) {
+      assertEquals(i, (int) listener.events.get(i));
+    }
+    assertEquals(
+        100,
+        meterRegistry
+            .get("registry.events.dispatch")
+            .tag("listener", "RecordingListener")
+            .timer()
+            .count());
+  }
+
+  @Test
+  public void testFullQueueDiscardsEvents() throws Exception {
+    eventManager = new AsyncEventManager(1, 1, RejectionPolicy.DISCARD, meterRegistry);
+    BlockingListener listener = new BlockingListener();
+    eventManager.register(listener);
+
+    // one event being handled, one queued and the last one rejected
+    eventManager.post(0);
+    assertTrue(listener.started.await(5, TimeUnit.SECONDS));
+    eventManager.post(1);
+    eventManager.post(2);
+
+    assertEquals(
+        1,
+        meterRegistry
+            .get("registry.events.rejected")
+            .tag("listener", "BlockingListener")
+            .counter()
+            .count());
+    listener.release.countDown();
+  }
+
+  public static class RecordingListener {
+    private final List<Integer> events = new CopyOnWriteArrayList<>();
+    private final CountDownLatch received;
+
+    RecordingListener(int expected) {
+      received = new CountDownLatch(expected);
+    }
+
+    @Subscribe
+    public void on(Integer event) {
+      events.add(event);
+      received.countDown();
+    }
+  }
+
+  public static class BlockingListener {
+    private final CountDownLatch started = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @Subscribe
+    public void on(Integer event) throws InterruptedException {
+      started.countDown();
+      release.await(5, TimeUnit.SECONDS);
+    }
+  }
+}
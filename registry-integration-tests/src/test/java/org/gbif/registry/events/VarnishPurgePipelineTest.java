@@ -0,0 +1,110 @@
+/*
+ * Copyright 2020 Global Biodiversity Information Facility (GBIF)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gbif.registry.events;
+
+import org.gbif.varnish.VarnishPurger;
+
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.google.common.collect.ImmutableSet;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.anySet;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class VarnishPurgePipelineTest {
+
+  private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+  private VarnishPurger purger;
+
+  @BeforeEach
+  @SuppressWarnings("unchecked")
+  public void setUp() {
+    purger = mock(VarnishPurger.class);
+    when(purger.anyKey(anySet()))
+        .thenAnswer(
+            invocation ->
+                ((Set<UUID>) invocation.getArgument(0)).stream()
+                    .map(UUID::toString)
+                    .sorted()
+                    .collect(Collectors.joining("|", "(", ")")));
+  }
+
+  @Test
+  public void testIdenticalRequestsAreSentOnce() {
+    // a window longer than the test, requests are only sent when flushing explicitly
+    VarnishPurgePipeline pipeline = new VarnishPurgePipeline(purger, 60000, 100, 2, meterRegistry);
+    for (int i = 0; i < 5; i++) {
+      pipeline.purge("dataset/1");
+      pipeline.ban("dataset(/search|/suggest)?[^/]*$");
+    }
+    verify(purger, never()).purge(anyString());
+
+    pipeline.close();
+
+    verify(purger).purge("dataset/1");
+    verify(purger).ban("dataset(/search|/suggest)?[^/]*$");
+    assertEquals(10, count("registry.varnish.purge.requested"));
+    assertEquals(2, count("registry.varnish.purge.sent"));
+  }
+
+  @Test
+  public void testKeysAreMergedPerPattern() {
+    UUID k1 = UUID.fromString("00000000-0000-0000-0000-000000000001");
+    UUID k2 = UUID.fromString("00000000-0000-0000-0000-000000000002");
+    UUID k3 = UUID.fromString("00000000-0000-0000-0000-000000000003");
+    VarnishPurgePipeline pipeline = new VarnishPurgePipeline(purger, 60000, 2, 1, meterRegistry);
+
+    pipeline.ban("installation/%s/dataset", ImmutableSet.of(k1, k2));
+    pipeline.ban("installation/%s/dataset", ImmutableSet.of(k2, k3));
+    pipeline.ban("node/%s/dataset", ImmutableSet.of());
+    pipeline.close();
+
+    // three distinct keys split into bans of at most two keys
+    verify(purger).ban("installation/(" + k1 + "|" + k2 + ")/dataset");
+    verify(purger).ban("installation/(" + k3 + ")/dataset");
+    verify(purger, times(2)).ban(anyString());
+    assertEquals(2, count("registry.varnish.purge.requested"));
+    assertEquals(2, count("registry.varnish.purge.sent"));
+  }
+
+  @Test
+  public void testWithoutWindowRequestsAreSentImmediately() {
+    VarnishPurgePipeline pipeline = new VarnishPurgePipeline(purger, 0, 100, 1, null);
+    pipeline.purge("organization/1");
+    pipeline.purge("organization/1");
+
+    verify(purger, times(2)).purge("organization/1");
+    pipeline.close();
+  }
+
+  private double count(String name) {
+    return meterRegistry.find(name).counters().stream().mapToDouble(Counter::count).sum();
+  }
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright 2020 Global Biodiversity Information Facility (GBIF)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gbif.registry.search.dataset.indexing;
+
+import org.gbif.api.model.checklistbank.DatasetMetrics;
+import org.gbif.api.model.checklistbank.search.NameUsageSearchParameter;
+import org.gbif.api.model.checklistbank.search.NameUsageSearchRequest;
+import org.gbif.api.model.common.search.Facet;
+import org.gbif.api.model.common.search.SearchParameter;
+import org.gbif.api.model.common.search.SearchResponse;
+import org.gbif.api.model.occurrence.search.OccurrenceSearchParameter;
+import org.gbif.api.model.occurrence.search.OccurrenceSearchRequest;
+import org.gbif.api.model.registry.Dataset;
+import org.gbif.api.vocabulary.DatasetType;
+import org.gbif.registry.search.dataset.indexing.ws.GbifWsClient;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.atLeast;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/** Tests the counts of pages of datasets fetched by the {@link DatasetJsonConverter}. */
+public class DatasetJsonConverterTest {
+
+  private static final long OCCURRENCES = 1000;
+  private static final long NAME_USAGES = 100;
+
+  private final ExecutorService executor = Executors.newFixedThreadPool(4);
+  private GbifWsClient gbifWsClient;
+  private DatasetJsonConverter converter;
+
+  @BeforeEach
+  public void setUp() {
+    gbifWsClient = mock(GbifWsClient.class);
+    when(gbifWsClient.getOccurrenceRecordCount()).thenReturn(OCCURRENCES);
+    converter = DatasetJsonConverter.create(gbifWsClient, null, null, "occurrence");
+  }
+
+  @AfterEach
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void testPageCountsFromFacets() {
+    List<Dataset> datasets = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      datasets.add(newDataset(i % 2 == 0 ? DatasetType.OCCURRENCE : DatasetType.CHECKLIST));
+    }
+    // counts of the occurrence datasets, except the first which has no occurrences
+    List<Facet.Count> occurrenceCounts = new ArrayList<>();
+    // counts of the checklists
+    List<Facet.Count> nameUsageCounts = new ArrayList<>();
+    for (int i = 1; i < datasets.size(); i++) {
+      String key = datasets.get(i).getKey().toString();
+      if (i % 2 == 0) {
+        occurrenceCounts.add(new Facet.Count(key, (long) i * 10));
+      } else {
+        nameUsageCounts.add(new Facet.Count(key, (long) i));
+      }
+    }
+    when(gbifWsClient.occurrenceSearch(any(OccurrenceSearchRequest.class)))
+        .thenReturn(facetResponse(OccurrenceSearchParameter.DATASET_KEY, 0, occurrenceCounts));
+    when(gbifWsClient.speciesSearch(any(NameUsageSearchRequest.class)))
+        .thenAnswer(
+            invocation -> {
+              NameUsageSearchRequest request = invocation.getArgument(0);
+              // the total of all name usages has no facets
+              return request.getFacets().isEmpty()
+                  ? facetResponse(
+                      NameUsageSearchParameter.DATASET_KEY, NAME_USAGES, Collections.emptyList())
+                  : facetResponse(NameUsageSearchParameter.DATASET_KEY, 0, nameUsageCounts);
+            });
+
+    List<ObjectNode> nodes = converter.convert(datasets, executor);
+
+    assertEquals(datasets.size(), nodes.size());
+    for (int i = 0; i < datasets.size(); i++) {
+      ObjectNode node = nodes.get(i);
+      assertEquals(datasets.get(i).getKey().toString(), node.get("key").asText());
+      long occurrences = i % 2 == 0 ? i * 10 : 0;
+      long nameUsages = i % 2 == 0 ? 0 : i;
+      assertEquals(occurrences, node.get("occurrenceCount").asLong());
+      assertEquals(nameUsages, node.get("nameUsagesCount").asLong());
+      assertEquals(
+          (double) occurrences / OCCURRENCES, node.get("occurrencePercentage").asDouble(), 1e-9);
+      assertEquals(
+          (double) nameUsages / NAME_USAGES, node.get("nameUsagesPercentage").asDouble(), 1e-9);
+    }
+
+    // one search for the page, the species search only filters by the checklists and the total
+    // of all name usages may be fetched concurrently by several conversions
+    ArgumentCaptor<OccurrenceSearchRequest> occurrenceSearch =
+        ArgumentCaptor.forClass(OccurrenceSearchRequest.class);
+    verify(gbifWsClient).occurrenceSearch(occurrenceSearch.capture());
+    assertEquals(
+        datasets.size(),
+        occurrenceSearch.getValue().getParameters().get(OccurrenceSearchParameter.DATASET_KEY)
+            .size());
+    ArgumentCaptor<NameUsageSearchRequest> speciesSearch =
+        ArgumentCaptor.forClass(NameUsageSearchRequest.class);
+    verify(gbifWsClient, atLeast(2)).speciesSearch(speciesSearch.capture());
+    assertTrue(
+        speciesSearch.getAllValues().stream()
+            .anyMatch(
+                r ->
+                    r.getParameters().get(NameUsageSearchParameter.DATASET_KEY).size()
+                        == datasets.size() / 2));
+    verify(gbifWsClient, never()).getDatasetRecordCount(anyString());
+    verify(gbifWsClient, never()).getDatasetSpeciesMetrics(anyString());
+  }
+
+  @Test
+  public void testNoSpeciesSearchWithoutChecklists() {
+    List<Dataset> datasets = Collections.singletonList(newDataset(DatasetType.OCCURRENCE));
+    when(gbifWsClient.occurrenceSearch(any(OccurrenceSearchRequest.class)))
+        .thenReturn(
+            facetResponse(
+                OccurrenceSearchParameter.DATASET_KEY,
+                5,
+                Collections.singletonList(
+                    new Facet.Count(datasets.get(0).getKey().toString(), 5L))));
+
+    List<ObjectNode> nodes = converter.convert(datasets, executor);
+
+    assertEquals(5, nodes.get(0).get("occurrenceCount").asLong());
+    assertEquals(0, nodes.get(0).get("nameUsagesCount").asLong());
+    // a species search without dataset keys would count the name usages of all datasets
+    verify(gbifWsClient, never()).speciesSearch(any(NameUsageSearchRequest.class));
+  }
+
+  @Test
+  public void testFallbackToCountsPerDataset() {
+    List<Dataset> datasets = Collections.singletonList(newDataset(DatasetType.CHECKLIST));
+    String key = datasets.get(0).getKey().toString();
+    when(gbifWsClient.occurrenceSearch(any(OccurrenceSearchRequest.class)))
+        .thenThrow(new IllegalStateException("Occurrence search unavailable"));
+    when(gbifWsClient.speciesSearch(any(NameUsageSearchRequest.class)))
+        .thenReturn(
+            facetResponse(
+                NameUsageSearchParameter.DATASET_KEY, NAME_USAGES, Collections.emptyList()));
+    when(gbifWsClient.getDatasetRecordCount(key)).thenReturn(7L);
+    DatasetMetrics metrics = new DatasetMetrics();
+    metrics.setUsagesCount(3);
+    when(gbifWsClient.getDatasetSpeciesMetrics(key)).thenReturn(metrics);
+
+    List<ObjectNode> nodes = converter.convert(datasets, executor);
+
+    assertEquals(7, nodes.get(0).get("occurrenceCount").asLong());
+    assertEquals(3, nodes.get(0).get("nameUsagesCount").asLong());
+  }
+
+  private static Dataset newDataset(DatasetType type) {
+    Dataset dataset = new Dataset();
+    dataset.setKey(UUID.randomUUID());
+    dataset.setType(type);
+    dataset.setTitle("Dataset " + dataset.getKey());
+    return dataset;
+  }
+
+  private static <T, P extends SearchParameter> SearchResponse<T, P> facetResponse(
+      P parameter, long count, List<Facet.Count> counts) {
+    SearchResponse<T, P> response = new SearchResponse<>();
+    response.setCount(count);
+    response.setFacets(Collections.singletonList(new Facet<>(parameter, counts)));
+    return response;
+  }
+}
@@ -0,0 +1,242 @@
+/*
+ * Copyright 2020 Global Biodiversity Information Facility (GBIF)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gbif.registry.search.dataset.indexing;
+
+import org.gbif.api.model.registry.Dataset;
+import org.gbif.registry.search.dataset.indexing.ws.GbifWsClient;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.stream.Collectors;
+
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.delete.DeleteRequest;
+import org.elasticsearch.action.index.IndexRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/** Tests the batching and failure handling of the {@link EsDatasetRealtimeIndexer}. */
+public class EsDatasetRealtimeIndexerTest {
+
+  // long enough for the scheduled flush never to run during a test
+  private static final long NO_FLUSH_MS = TimeUnit.MINUTES.toMillis(10);
+
+  private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+  private final RecordingBulkConsumer bulkConsumer = new RecordingBulkConsumer();
+  private DatasetJsonConverter converter;
+  private EsDatasetRealtimeIndexer indexer;
+
+  @BeforeEach
+  public void setUp() {
+    converter = mock(DatasetJsonConverter.class);
+    when(converter.convertAsJsonString(any(Dataset.class))).thenReturn("{}");
+  }
+
+  @AfterEach
+  public void tearDown() {
+    if (indexer != null) {
+      indexer.close();
+    }
+  }
+
+  @Test
+  public void testChangesOfADatasetAreSentOnce() {
+    indexer = newIndexer(NO_FLUSH_MS, 100);
+    Dataset changed = newDataset();
+    Dataset deleted = newDataset();
+
+    indexer.index(changed);
+    indexer.index(changed);
+    indexer.index(deleted);
+    indexer.delete(deleted);
+    assertEquals(2, indexer.getPendingUpdates());
+    assertTrue(bulkConsumer.requests.isEmpty());
+
+    indexer.close();
+
+    assertEquals(1, bulkConsumer.requests.size());
+    List<DocWriteRequest<?>> requests = bulkConsumer.requests.get(0).requests();
+    assertEquals(2, requests.size());
+    for (DocWriteRequest<?> request : requests) {
+      if (request.id().equals(changed.getKey().toString())) {
+        assertTrue(request instanceof IndexRequest);
+      } else {
+        assertEquals(deleted.getKey().toString(), request.id());
+        assertTrue(request instanceof DeleteRequest);
+      }
+    }
+    assertEquals(0, indexer.getPendingUpdates());
+  }
+
+  @Test
+  public void testDatasetsAreSentInBulksOfBulkActions() {
+    indexer = newIndexer(NO_FLUSH_MS, 2);
+    List<Dataset> datasets = new ArrayList<>();
+    for (int i = 0; i < 5; i++) {
+      datasets.add(newDataset());
+    }
+
+    indexer.index(datasets);
+
+    // full bulks are sent while iterating, the remaining change waits for the next flush
+    assertEquals(2, bulkConsumer.requests.size());
+    assertEquals(1, indexer.getPendingUpdates());
+
+    indexer.close();
+
+    assertEquals(
+        Arrays.asList(2, 2, 1),
+        bulkConsumer.requests.stream()
+            .map(BulkRequest::numberOfActions)
+            .collect(Collectors.toList()));
+    assertEquals(0, indexer.getPendingUpdates());
+  }
+
+  @Test
+  public void testScheduledFlush() throws Exception {
+    bulkConsumer.sent = new CountDownLatch(1);
+    indexer = newIndexer(50, 100);
+
+    indexer.index(newDataset());
+
+    assertTrue(bulkConsumer.sent.await(5, TimeUnit.SECONDS));
+    assertEquals(1, bulkConsumer.requests.get(0).numberOfActions());
+    assertEquals(0, indexer.getPendingUpdates());
+  }
+
+  @Test
+  public void testFailedBulkRequest() {
+    bulkConsumer.failure = new IOException("Elasticsearch unavailable");
+    indexer = newIndexer(NO_FLUSH_MS, 100);
+
+    indexer.index(newDataset());
+    indexer.index(newDataset());
+    indexer.close();
+
+    assertEquals(2, failedCount());
+    assertEquals(0, indexer.getPendingUpdates());
+  }
+
+  @Test
+  public void testFailedBulkItems() {
+    bulkConsumer.failedItems = 1;
+    indexer = newIndexer(NO_FLUSH_MS, 100);
+
+    indexer.index(newDataset());
+    indexer.index(newDataset());
+    indexer.close();
+
+    // the failure is not a rejection, so it is not retried
+    assertEquals(1, bulkConsumer.requests.size());
+    assertEquals(1, failedCount());
+    assertEquals(0, indexer.getPendingUpdates());
+  }
+
+  @Test
+  public void testFailedConversion() {
+    Dataset invalid = newDataset();
+    when(converter.convertAsJsonString(invalid)).thenThrow(new IllegalStateException("invalid"));
+    indexer = newIndexer(NO_FLUSH_MS, 100);
+
+    indexer.index(invalid);
+    indexer.index(newDataset());
+    assertEquals(2, indexer.getPendingUpdates());
+    indexer.close();
+
+    assertEquals(1, bulkConsumer.requests.get(0).numberOfActions());
+    assertEquals(1, failedCount());
+    assertEquals(0, indexer.getPendingUpdates());
+  }
+
+  private EsDatasetRealtimeIndexer newIndexer(long debounceMillis, int bulkActions) {
+    // no concurrent requests, so bulk requests are executed on the calling thread
+    return new EsDatasetRealtimeIndexer(
+        bulkConsumer,
+        converter,
+        mock(GbifWsClient.class),
+        debounceMillis,
+        bulkActions,
+        5,
+        0,
+        10,
+        3,
+        meterRegistry);
+  }
+
+  private long failedCount() {
+    return (long) meterRegistry.get("registry.search.realtime.failed").counter().count();
+  }
+
+  private static Dataset newDataset() {
+    Dataset dataset = new Dataset();
+    dataset.setKey(UUID.randomUUID());
+    return dataset;
+  }
+
+  /** Records the bulk requests and answers them straight away. */
+  private static class RecordingBulkConsumer
+      implements BiConsumer<BulkRequest, ActionListener<BulkResponse>> {
+
+    private final List<BulkRequest> requests = new CopyOnWriteArrayList<>();
+    private volatile CountDownLatch sent = new CountDownLatch(0);
+    private volatile Exception failure;
+    private volatile int failedItems;
+
+    @Override
+    public void accept(BulkRequest request, ActionListener<BulkResponse> listener) {
+      requests.add(request);
+      if (failure != null) {
+        listener.onFailure(failure);
+      } else {
+        BulkItemResponse[] items = new BulkItemResponse[failedItems];
+        for (int i = 0; i < failedItems; i++) {
+          DocWriteRequest<?> item = request.requests().get(i);
+          items[i] =
+              BulkItemResponse.failure(
+                  i,
+                  item.opType(),
+                  new BulkItemResponse.Failure(
+                      item.index(),
+                      item.type(),
+                      item.id(),
+                      new IllegalArgumentException("mapping error")));
+        }
+        listener.onResponse(new BulkResponse(items, 1));
+      }
+      sent.countDown();
+    }
+  }
+}
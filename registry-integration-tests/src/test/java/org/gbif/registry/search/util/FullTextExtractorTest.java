@@ -0,0 +1,60 @@
+/*
+ * Copyright 2020 Global Biodiversity Information Facility (GBIF)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gbif.registry.search.util;
+
+import org.gbif.registry.search.dataset.indexing.FullTextExtractor;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class FullTextExtractorTest {
+
+  private static final String EML =
+      "<eml packageId=\"1234\" system=\"http://gbif.org\">\n"
+          + "  <dataset>\n"
+          + "    <title xml:lang=\"en\">Birds   of\tthe\n  Pyrenees</title>\n"
+          + "    <abstract><para>Counts</para><para>of birds</para></abstract>\n"
+          + "  </dataset>\n"
+          + "</eml>";
+
+  @Test
+  public void testWhitespaceIsNormalised() throws Exception {
+    FullTextExtractor extractor = new FullTextExtractor(Integer.MAX_VALUE);
+
+    // attributes are added in reverse order
+    assertEquals(
+        "http://gbif.org 1234 en Birds of the Pyrenees Counts of birds",
+        extractor.extract(stream(EML)));
+  }
+
+  @Test
+  public void testTextIsCut() throws Exception {
+    FullTextExtractor extractor = new FullTextExtractor(24);
+
+    assertEquals("http://gbif.org 1234 en", extractor.extract(stream(EML)));
+    // the parser of the thread is reused after an aborted document
+    assertEquals("http://gbif.org 1234 en", extractor.extract(stream(EML)));
+  }
+
+  private static InputStream stream(String xml) {
+    return new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8));
+  }
+}
@@ -15,11 +15,11 @@
  */
 package org.gbif.registry.test.mocks;
 
-import org.gbif.common.messaging.api.MessagePublisher;
 import org.gbif.occurrence.query.TitleLookupService;
 import org.gbif.registry.directory.Augmenter;
 import org.gbif.registry.mail.EmailSender;
 import org.gbif.registry.mail.config.OrganizationSuretyMailConfigurationProperties;
+import org.gbif.registry.messaging.InMemoryMessagePublisher;
 import org.gbif.registry.search.dataset.indexing.checklistbank.ChecklistbankPersistenceService;
 
 import org.slf4j.Logger;
@@ -43,12 +43,12 @@ public class TestMocksConfiguration {
     return new InMemoryEmailSender();
   }
 
-  // use stub instead of rabbit MQ if message is disabled
+  // keep the messages in memory instead of sending them to rabbit MQ if message is disabled
   @Bean
   @ConditionalOnProperty(value = "message.enabled", havingValue = "false")
-  public MessagePublisher testMessagePublisher() {
-    LOG.info("MessagePublisherStub activated");
-    return new MessagePublisherStub();
+  public InMemoryMessagePublisher testMessagePublisher() {
+    LOG.info("InMemoryMessagePublisher activated");
+    return new InMemoryMessagePublisher();
   }
 
   @Bean
@@ -69,13 +69,17 @@ import javax.validation.ValidationException;
 import org.apache.commons.beanutils.BeanUtils;
 import org.apache.ibatis.io.Resources;
 import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.RegisterExtension;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.EnumSource;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.http.HttpHeaders;
 import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 
 import com.google.common.base.Charsets;
 import com.google.common.io.CharStreams;
@@ -88,6 +92,10 @@ import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 /**
  * This is parameterized to run the same test routines for the following:
@@ -114,6 +122,7 @@ public class DatasetIT extends NetworkEntityIT<Dataset> {
 
   private final DatasetRealtimeIndexer datasetRealtimeIndexer;
   private final TestDataFactory testDataFactory;
+  private final MockMvc mockMvc;
 
   @RegisterExtension
   ElasticsearchInitializer elasticsearchInitializer = new ElasticsearchInitializer(esServer);
@@ -130,6 +139,7 @@ public class DatasetIT extends NetworkEntityIT<Dataset> {
       TestDataFactory testDataFactory,
       EsManageServer esServer,
       KeyStore keyStore,
+      MockMvc mockMvc,
       @LocalServerPort int localServerPort) {
     super(
         service,
@@ -148,6 +158,7 @@ public class DatasetIT extends NetworkEntityIT<Dataset> {
     this.installationClient = prepareClient(localServerPort, keyStore, InstallationClient.class);
     this.datasetRealtimeIndexer = datasetRealtimeIndexer;
     this.testDataFactory = testDataFactory;
+    this.mockMvc = mockMvc;
   }
 
   @ParameterizedTest
@@ -1122,6 +1133,39 @@ public class DatasetIT extends NetworkEntityIT<Dataset> {
         "Dataset metadata should not have changed after same metadata document was uploaded");
   }
 
+  @Test
+  public void testMetadataDocumentConditionalRequests() throws Exception {
+    DatasetService service = (DatasetService) getService(ServiceType.RESOURCE);
+    Dataset dataset = newAndCreate(1, ServiceType.RESOURCE);
+    service.insertMetadata(dataset.getKey(), FileUtils.classpathStream("metadata/sample.xml"));
+    int metadataKey = service.listMetadata(dataset.getKey(), MetadataType.EML).get(0).getKey();
+    String path = "/dataset/metadata/" + metadataKey + "/document";
+
+    MvcResult result =
+        mockMvc
+            .perform(get(path))
+            .andExpect(status().isOk())
+            .andExpect(header().exists(HttpHeaders.ETAG))
+            .andReturn();
+    String etag = result.getResponse().getHeader(HttpHeaders.ETAG);
+    assertTrue(result.getResponse().getContentAsByteArray().length > 0);
+
+    // a client holding the current version gets no content back
+    mockMvc
+        .perform(get(path).header(HttpHeaders.IF_NONE_MATCH, etag))
+        .andExpect(status().isNotModified())
+        .andExpect(header().string(HttpHeaders.ETAG, etag))
+        .andExpect(content().bytes(new byte[0]));
+
+    // an outdated version is answered with the full document
+    mockMvc
+        .perform(get(path).header(HttpHeaders.IF_NONE_MATCH, "\"" + metadataKey + "-0\""))
+        .andExpect(status().isOk())
+        .andExpect(header().string(HttpHeaders.ETAG, etag));
+
+    mockMvc.perform(get("/dataset/metadata/-1/document")).andExpect(status().isNotFound());
+  }
+
   @ParameterizedTest
   @EnumSource(ServiceType.class)
   public void testByCountry(ServiceType serviceType) {
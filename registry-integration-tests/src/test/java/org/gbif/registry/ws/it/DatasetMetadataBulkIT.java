@@ -0,0 +1,119 @@
+/*
+ * Copyright 2020 Global Biodiversity Information Facility (GBIF)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gbif.registry.ws.it;
+
+import org.gbif.api.model.common.paging.PagingResponse;
+import org.gbif.api.model.registry.Dataset;
+import org.gbif.api.model.registry.Installation;
+import org.gbif.api.model.registry.Metadata;
+import org.gbif.api.model.registry.Organization;
+import org.gbif.api.vocabulary.MetadataType;
+import org.gbif.registry.persistence.mapper.MetadataMapper;
+import org.gbif.registry.persistence.mapper.handler.MetadataDocument;
+import org.gbif.registry.search.test.EsManageServer;
+import org.gbif.registry.service.RegistryDatasetService;
+import org.gbif.registry.test.TestDataFactory;
+import org.gbif.registry.ws.it.fixtures.StatementCounter;
+import org.gbif.ws.client.filter.SimplePrincipalProvider;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Guards the number of statements issued to augment a page of datasets with their metadata
+ * documents, which are looked up with one statement and loaded in chunks rather than one by one.
+ */
+public class DatasetMetadataBulkIT extends BaseItTest {
+
+  // documents missing from the parsed metadata cache are loaded in chunks of this size
+  private static final int LOAD_CHUNK_SIZE = 8;
+  private static final int DATASETS = 2 * LOAD_CHUNK_SIZE + 1;
+
+  private final RegistryDatasetService registryDatasetService;
+  private final MetadataMapper metadataMapper;
+  private final TestDataFactory testDataFactory;
+  private final StatementCounter statementCounter = new StatementCounter();
+
+  @Autowired
+  public DatasetMetadataBulkIT(
+      RegistryDatasetService registryDatasetService,
+      MetadataMapper metadataMapper,
+      TestDataFactory testDataFactory,
+      SqlSessionFactory sqlSessionFactory,
+      SimplePrincipalProvider principalProvider,
+      EsManageServer esServer) {
+    super(principalProvider, esServer);
+    this.registryDatasetService = registryDatasetService;
+    this.metadataMapper = metadataMapper;
+    this.testDataFactory = testDataFactory;
+    sqlSessionFactory.getConfiguration().addInterceptor(statementCounter);
+  }
+
+  @Test
+  public void testAugmentWithMetadata() {
+    Organization organization = testDataFactory.newPersistedOrganization();
+    Installation installation = testDataFactory.newPersistedInstallation(organization.getKey());
+    List<Dataset> datasets = new ArrayList<>();
+    for (int i = 0; i < DATASETS; i++) {
+      Dataset dataset =
+          testDataFactory.newPersistedDataset(organization.getKey(), installation.getKey());
+      insertMetadata(dataset, "Title " + i);
+      datasets.add(dataset);
+    }
+    // loads the organization and the network caches used for the citations, and caches the first
+    // document
+    augment(datasets.subList(0, 1));
+    List<Dataset> page = datasets.subList(1, DATASETS);
+
+    statementCounter.reset();
+    assertEquals(DATASETS - 1, augment(page).size());
+    // preferred metadata, then the documents in chunks
+    assertEquals(1 + (DATASETS - 1) / LOAD_CHUNK_SIZE, statementCounter.reset());
+
+    // the parsed documents are cached, leaving only the lookup of the preferred metadata
+    assertEquals(DATASETS, augment(datasets).size());
+    assertEquals(1, statementCounter.reset());
+  }
+
+  private List<Dataset> augment(List<Dataset> datasets) {
+    int size = datasets.size();
+    PagingResponse<Dataset> page =
+        new PagingResponse<>(0L, size, (long) size, new ArrayList<>(datasets));
+    return registryDatasetService.augmentWithMetadata(page).getResults();
+  }
+
+  private void insertMetadata(Dataset dataset, String title) {
+    byte[] document =
+        ("<eml:eml xmlns:eml=\"eml://ecoinformatics.org/eml-2.1.1\" packageId=\""
+                + dataset.getKey()
+                + "\" system=\"http://gbif.org\"><dataset><title>"
+                + title
+                + "</title></dataset></eml:eml>")
+            .getBytes(StandardCharsets.UTF_8);
+    Metadata metadata = new Metadata();
+    metadata.setDatasetKey(dataset.getKey());
+    metadata.setType(MetadataType.EML);
+    metadata.setCreatedBy("WS TEST");
+    metadataMapper.create(metadata, document, MetadataDocument.contentHash(document));
+  }
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright 2020 Global Biodiversity Information Facility (GBIF)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gbif.registry.ws.it;
+
+import org.gbif.api.model.occurrence.Download;
+import org.gbif.api.model.registry.Dataset;
+import org.gbif.api.model.registry.Installation;
+import org.gbif.api.model.registry.Organization;
+import org.gbif.api.service.registry.OccurrenceDownloadService;
+import org.gbif.registry.persistence.mapper.DatasetOccurrenceDownloadMapper;
+import org.gbif.registry.persistence.service.DatasetOccurrenceDownloadUsageLoader;
+import org.gbif.registry.search.test.EsManageServer;
+import org.gbif.registry.test.TestDataFactory;
+import org.gbif.ws.client.filter.SimplePrincipalProvider;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import com.google.common.collect.Iterators;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Records how long storing the dataset usages of a download takes with batched insert statements
+ * and with the COPY based loader, for several numbers of usages.
+ *
+ * <p>The datasets are cloned from a persisted one with a single statement. Creating a million of
+ * them takes a while, so the largest size only runs if requested, e.g. with {@code
+ * -Dbenchmark.usages=1000,100000,1000000}.
+ */
+public class DatasetOccurrenceDownloadBenchmarkIT extends BaseItTest {
+
+  private static final Logger LOG =
+      LoggerFactory.getLogger(DatasetOccurrenceDownloadBenchmarkIT.class);
+
+  private static final String USAGES_PROPERTY = "benchmark.usages";
+  private static final String DEFAULT_USAGES = "1000,100000";
+  // the statement size of the batched inserts, as used by the previous implementation
+  private static final int BATCH_SIZE = 5_000;
+
+  private final OccurrenceDownloadService occurrenceDownloadResource;
+  private final DatasetOccurrenceDownloadMapper datasetOccurrenceDownloadMapper;
+  private final DatasetOccurrenceDownloadUsageLoader datasetUsageLoader;
+  private final TestDataFactory testDataFactory;
+
+  @Autowired
+  public DatasetOccurrenceDownloadBenchmarkIT(
+      OccurrenceDownloadService occurrenceDownloadResource,
+      DatasetOccurrenceDownloadMapper datasetOccurrenceDownloadMapper,
+      DatasetOccurrenceDownloadUsageLoader datasetUsageLoader,
+      SimplePrincipalProvider principalProvider,
+      EsManageServer esServer,
+      TestDataFactory testDataFactory) {
+    super(principalProvider, esServer);
+    this.occurrenceDownloadResource = occurrenceDownloadResource;
+    this.datasetOccurrenceDownloadMapper = datasetOccurrenceDownloadMapper;
+    this.datasetUsageLoader = datasetUsageLoader;
+    this.testDataFactory = testDataFactory;
+  }
+
+  @Test
+  public void createUsagesTest() throws SQLException {
+    int[] sizes =
+        Arrays.stream(System.getProperty(USAGES_PROPERTY, DEFAULT_USAGES).split(","))
+            .mapToInt(s -> Integer.parseInt(s.trim()))
+            .toArray();
+    Map<UUID, Long> usages = createDatasets(Arrays.stream(sizes).max().orElse(0));
+
+    for (int size : sizes) {
+      Map<UUID, Long> downloadUsages =
+          usages.entrySet().stream()
+              .limit(size)
+              .collect(
+                  Collectors.toMap(
+                      Map.Entry::getKey, Map.Entry::getValue, (a, b) -> a, LinkedHashMap::new));
+
+      String batchedKey = newDownload();
+      long start = System.nanoTime();
+      Iterators.partition(downloadUsages.entrySet().iterator(), BATCH_SIZE)
+          .forEachRemaining(
+              batch ->
+                  datasetOccurrenceDownloadMapper.createUsages(
+                      batchedKey,
+                      batch.stream()
+                          .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue))));
+      long batchedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+      String copiedKey = newDownload();
+      start = System.nanoTime();
+      int copied = datasetUsageLoader.load(copiedKey, downloadUsages.entrySet().iterator());
+      long copiedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+      LOG.info(
+          "{} usages: batched inserts {} ms, copy {} ms", size, batchedMillis, copiedMillis);
+
+      assertEquals(size, copied);
+      assertEquals(size, countUsages(batchedKey));
+      assertEquals(size, countUsages(copiedKey));
+    }
+  }
+
+  private String newDownload() {
+    Download download = OccurrenceDownloadIT.getTestInstancePredicateDownload();
+    occurrenceDownloadResource.create(download);
+    return download.getKey();
+  }
+
+  /** Creates the given number of datasets and returns a number of records for each of them. */
+  private Map<UUID, Long> createDatasets(int count) throws SQLException {
+    Organization organization = testDataFactory.newPersistedOrganization();
+    Installation installation = testDataFactory.newPersistedInstallation(organization.getKey());
+    Dataset template =
+        testDataFactory.newPersistedDataset(organization.getKey(), installation.getKey());
+    Map<UUID, Long> usages = new LinkedHashMap<>();
+    try (Connection c = database.getTestDatabase().getConnection()) {
+      // clones the template, replacing its key and title
+      try (PreparedStatement ps =
+          c.prepareStatement(
+              "INSERT INTO dataset SELECT (jsonb_populate_record(d, jsonb_build_object("
+                  + "'key', md5(d.key::text || i)::uuid, 'title', d.title || ' ' || i))).* "
+                  + "FROM dataset d, generate_series(2, ?) i WHERE d.key = ?")) {
+        ps.setInt(1, count);
+        ps.setObject(2, template.getKey());
+        ps.executeUpdate();
+      }
+      try (PreparedStatement ps = c.prepareStatement("SELECT key FROM dataset");
+          ResultSet rs = ps.executeQuery()) {
+        long records = 1;
+        while (rs.next()) {
+          usages.put((UUID) rs.getObject(1), records++);
+        }
+      }
+    }
+    return usages;
+  }
+
+  private int countUsages(String downloadKey) {
+    return Math.toIntExact(occurrenceDownloadResource.get(downloadKey).getNumberDatasets());
+  }
+}
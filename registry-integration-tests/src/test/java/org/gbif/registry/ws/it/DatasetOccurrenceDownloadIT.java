@@ -18,6 +18,7 @@ package org.gbif.registry.ws.it;
 import org.gbif.api.model.common.paging.PagingRequest;
 import org.gbif.api.model.occurrence.Download;
 import org.gbif.api.model.registry.Dataset;
+import org.gbif.api.model.registry.DatasetOccurrenceDownloadUsage;
 import org.gbif.api.model.registry.Installation;
 import org.gbif.api.model.registry.Organization;
 import org.gbif.api.service.registry.DatasetOccurrenceDownloadUsageService;
@@ -26,6 +27,9 @@ import org.gbif.api.service.registry.InstallationService;
 import org.gbif.api.service.registry.NodeService;
 import org.gbif.api.service.registry.OccurrenceDownloadService;
 import org.gbif.api.service.registry.OrganizationService;
+import org.gbif.registry.persistence.mapper.dto.DownloadRollupPosition;
+import org.gbif.registry.persistence.service.DatasetOccurrenceDownloadUsageLoader;
+import org.gbif.registry.persistence.service.DownloadStatisticsRollup;
 import org.gbif.registry.search.test.EsManageServer;
 import org.gbif.registry.test.TestDataFactory;
 import org.gbif.registry.ws.client.DatasetOccurrenceDownloadUsageClient;
@@ -33,15 +37,27 @@ import org.gbif.registry.ws.client.OccurrenceDownloadClient;
 import org.gbif.ws.client.filter.SimplePrincipalProvider;
 import org.gbif.ws.security.KeyStore;
 
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Calendar;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.TimeZone;
 import java.util.UUID;
 
+import javax.sql.DataSource;
+
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.EnumSource;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.web.server.LocalServerPort;
 
+import com.google.common.collect.Maps;
+
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
 /**
@@ -68,6 +84,10 @@ public class DatasetOccurrenceDownloadIT extends BaseItTest {
   private final NodeService nodeService;
   private final InstallationService installationService;
 
+  private final DownloadStatisticsRollup downloadStatisticsRollup;
+  private final DatasetOccurrenceDownloadUsageLoader datasetUsageLoader;
+  private final DataSource dataSource;
+
   @Autowired
   public DatasetOccurrenceDownloadIT(
       OccurrenceDownloadService occurrenceDownloadResource,
@@ -78,6 +98,9 @@ public class DatasetOccurrenceDownloadIT extends BaseItTest {
       SimplePrincipalProvider simplePrincipalProvider,
       DatasetOccurrenceDownloadUsageService datasetOccurrenceDownloadUsageResource,
       TestDataFactory testDataFactory,
+      DownloadStatisticsRollup downloadStatisticsRollup,
+      DatasetOccurrenceDownloadUsageLoader datasetUsageLoader,
+      DataSource dataSource,
       EsManageServer esServer,
       @LocalServerPort int localServerPort,
       KeyStore keyStore) {
@@ -93,6 +116,9 @@ public class DatasetOccurrenceDownloadIT extends BaseItTest {
     this.datasetOccurrenceDownloadUsageClient =
         prepareClient(localServerPort, keyStore, DatasetOccurrenceDownloadUsageClient.class);
     this.testDataFactory = testDataFactory;
+    this.downloadStatisticsRollup = downloadStatisticsRollup;
+    this.datasetUsageLoader = datasetUsageLoader;
+    this.dataSource = dataSource;
   }
 
   /**
@@ -198,4 +224,273 @@ public class DatasetOccurrenceDownloadIT extends BaseItTest {
     Download occDownload2 = occurrenceDownloadService.get(occurrenceDownload.getKey());
     assertEquals(3, occDownload2.getNumberDatasets());
   }
+
+  /**
+   * Tests that the usages keep the title and DOI their datasets had when the usages were created,
+   * so the citation of a download doesn't change with its datasets. The client posts the usages,
+   * which are copied in through the staging table, the resource inserts them in a batch.
+   */
+  @ParameterizedTest
+  @EnumSource(ServiceType.class)
+  public void testUsagesKeepDatasetTitleOfTheDownload(ServiceType serviceType) {
+    OccurrenceDownloadService occurrenceDownloadService =
+        getService(serviceType, occurrenceDownloadResource, occurrenceDownloadClient);
+    Download occurrenceDownload = OccurrenceDownloadIT.getTestInstancePredicateDownload();
+    final Dataset testDataset = createTestDataset();
+
+    occurrenceDownloadService.create(occurrenceDownload);
+    Map<UUID, Long> datasetCitation = new HashMap<>();
+    datasetCitation.put(testDataset.getKey(), 1000L);
+    // an unknown dataset is left out
+    datasetCitation.put(UUID.randomUUID(), 10L);
+    occurrenceDownloadService.createUsages(occurrenceDownload.getKey(), datasetCitation);
+
+    Dataset dataset = datasetService.get(testDataset.getKey());
+    String title = dataset.getTitle();
+    dataset.setTitle("Renamed " + title);
+    datasetService.update(dataset);
+
+    List<DatasetOccurrenceDownloadUsage> usages =
+        occurrenceDownloadService
+            .listDatasetUsages(occurrenceDownload.getKey(), new PagingRequest(0, 10))
+            .getResults();
+    assertEquals(1, usages.size());
+    assertEquals(title, usages.get(0).getDatasetTitle());
+    assertEquals(dataset.getDoi(), usages.get(0).getDatasetDOI());
+    assertEquals(1000L, usages.get(0).getNumberRecords());
+  }
+
+  /**
+   * Tests that a dataset repeated in streamed usages keeps its last number instead of failing the
+   * merge, and that each download keeps the title its datasets had when its usages were stored.
+   */
+  @Test
+  public void testStreamedUsagesOfRepeatedDataset() {
+    final Dataset testDataset = createTestDataset();
+    Download first = OccurrenceDownloadIT.getTestInstancePredicateDownload();
+    Download second = OccurrenceDownloadIT.getTestInstancePredicateDownload();
+    occurrenceDownloadResource.create(first);
+    occurrenceDownloadResource.create(second);
+
+    assertEquals(
+        1,
+        datasetUsageLoader.load(
+            first.getKey(),
+            Arrays.asList(
+                    Maps.immutableEntry(testDataset.getKey(), 10L),
+                    Maps.immutableEntry(testDataset.getKey(), 20L))
+                .iterator()));
+
+    Dataset dataset = datasetService.get(testDataset.getKey());
+    String title = dataset.getTitle();
+    dataset.setTitle("Renamed " + title);
+    datasetService.update(dataset);
+    datasetUsageLoader.load(
+        second.getKey(),
+        Arrays.asList(Maps.immutableEntry(testDataset.getKey(), 30L)).iterator());
+
+    List<DatasetOccurrenceDownloadUsage> usages =
+        occurrenceDownloadResource
+            .listDatasetUsages(first.getKey(), new PagingRequest(0, 10))
+            .getResults();
+    assertEquals(1, usages.size());
+    assertEquals(20L, usages.get(0).getNumberRecords());
+    assertEquals(title, usages.get(0).getDatasetTitle());
+    usages =
+        occurrenceDownloadResource
+            .listDatasetUsages(second.getKey(), new PagingRequest(0, 10))
+            .getResults();
+    assertEquals(1, usages.size());
+    assertEquals(dataset.getTitle(), usages.get(0).getDatasetTitle());
+  }
+
+  /**
+   * Tests that successful downloads are rolled up into the download statistics exactly once, even
+   * when a rollup reads them again.
+   */
+  @ParameterizedTest
+  @EnumSource(ServiceType.class)
+  public void testStatisticsRollUp(ServiceType serviceType) {
+    OccurrenceDownloadService occurrenceDownloadService =
+        getService(serviceType, occurrenceDownloadResource, occurrenceDownloadClient);
+    Download occurrenceDownload = OccurrenceDownloadIT.getTestInstancePredicateDownload();
+    final Dataset testDataset = createTestDataset();
+
+    occurrenceDownloadService.create(occurrenceDownload);
+    Map<UUID, Long> datasetCitation = new HashMap<>();
+    datasetCitation.put(testDataset.getKey(), 1000L);
+    occurrenceDownloadService.createUsages(occurrenceDownload.getKey(), datasetCitation);
+
+    // the download is not counted before it succeeded
+    rollUp();
+    assertEquals(
+        0,
+        occurrenceDownloadService
+            .getDownloadedRecordsByDataset(null, null, null, testDataset.getKey())
+            .size());
+
+    occurrenceDownload = occurrenceDownloadService.get(occurrenceDownload.getKey());
+    occurrenceDownload.setStatus(Download.Status.SUCCEEDED);
+    occurrenceDownload.setTotalRecords(1000L);
+    occurrenceDownloadService.update(occurrenceDownload);
+
+    // the second rollup reads the download again within the overlap of the high-water mark
+    rollUp();
+    rollUp();
+
+    Calendar created = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+    created.setTime(occurrenceDownload.getCreated());
+    int year = created.get(Calendar.YEAR);
+    int month = created.get(Calendar.MONTH) + 1;
+
+    Map<Integer, Map<Integer, Long>> recordsByDataset =
+        occurrenceDownloadService.getDownloadedRecordsByDataset(
+            null, null, null, testDataset.getKey());
+    assertEquals(1000L, recordsByDataset.get(year).get(month));
+
+    // counted once whatever the country of the user is
+    Map<Integer, Map<Integer, Long>> downloadsByUserCountry =
+        occurrenceDownloadService.getDownloadsByUserCountry(null, null, null);
+    assertEquals(1L, downloadsByUserCountry.get(year).get(month));
+  }
+
+  /**
+   * Tests that usages stored after their download was rolled up and corrections of the download are
+   * added to the statistics later, without counting the download twice.
+   */
+  @ParameterizedTest
+  @EnumSource(ServiceType.class)
+  public void testLateUsagesRolledUp(ServiceType serviceType) {
+    OccurrenceDownloadService occurrenceDownloadService =
+        getService(serviceType, occurrenceDownloadResource, occurrenceDownloadClient);
+    Download occurrenceDownload = OccurrenceDownloadIT.getTestInstancePredicateDownload();
+    final Dataset testDataset = createTestDataset();
+
+    occurrenceDownloadService.create(occurrenceDownload);
+    occurrenceDownload = occurrenceDownloadService.get(occurrenceDownload.getKey());
+    occurrenceDownload.setStatus(Download.Status.SUCCEEDED);
+    occurrenceDownload.setTotalRecords(1000L);
+    occurrenceDownloadService.update(occurrenceDownload);
+
+    // the download is counted before its usages are stored
+    rollUp();
+    Calendar created = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+    created.setTime(occurrenceDownload.getCreated());
+    int year = created.get(Calendar.YEAR);
+    int month = created.get(Calendar.MONTH) + 1;
+    assertEquals(
+        1L,
+        occurrenceDownloadService
+            .getDownloadsByUserCountry(null, null, null)
+            .get(year)
+            .get(month));
+    assertEquals(
+        0,
+        occurrenceDownloadService
+            .getDownloadedRecordsByDataset(null, null, null, testDataset.getKey())
+            .size());
+
+    Map<UUID, Long> datasetCitation = new HashMap<>();
+    datasetCitation.put(testDataset.getKey(), 1000L);
+    occurrenceDownloadService.createUsages(occurrenceDownload.getKey(), datasetCitation);
+    occurrenceDownload = occurrenceDownloadService.get(occurrenceDownload.getKey());
+    occurrenceDownload.setTotalRecords(1200L);
+    occurrenceDownloadService.update(occurrenceDownload);
+    rollUp();
+
+    assertEquals(
+        1000L,
+        occurrenceDownloadService
+            .getDownloadedRecordsByDataset(null, null, null, testDataset.getKey())
+            .get(year)
+            .get(month));
+    assertEquals(
+        1L,
+        occurrenceDownloadService
+            .getDownloadsByUserCountry(null, null, null)
+            .get(year)
+            .get(month));
+  }
+
+  /**
+   * Tests that a counted download is subtracted from the statistics once it is no longer successful
+   * or deleted.
+   */
+  @Test
+  public void testStatisticsOfRemovedDownloads() throws SQLException {
+    Download failed = createSucceededDownload();
+    Download deleted = createSucceededDownload();
+    final Dataset testDataset = createTestDataset();
+    Map<UUID, Long> datasetCitation = new HashMap<>();
+    datasetCitation.put(testDataset.getKey(), 1000L);
+    occurrenceDownloadResource.createUsages(failed.getKey(), datasetCitation);
+    occurrenceDownloadResource.createUsages(deleted.getKey(), datasetCitation);
+    rollUp();
+
+    Calendar created = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+    created.setTime(failed.getCreated());
+    int year = created.get(Calendar.YEAR);
+    int month = created.get(Calendar.MONTH) + 1;
+    assertEquals(
+        2000L,
+        occurrenceDownloadResource
+            .getDownloadedRecordsByDataset(null, null, null, testDataset.getKey())
+            .get(year)
+            .get(month));
+    long downloads =
+        occurrenceDownloadResource.getDownloadsByUserCountry(null, null, null).get(year).get(month);
+
+    failed = occurrenceDownloadResource.get(failed.getKey());
+    failed.setStatus(Download.Status.FAILED);
+    occurrenceDownloadResource.update(failed);
+    rollUp();
+    assertEquals(
+        1000L,
+        occurrenceDownloadResource
+            .getDownloadedRecordsByDataset(null, null, null, testDataset.getKey())
+            .get(year)
+            .get(month));
+    assertEquals(
+        downloads - 1,
+        occurrenceDownloadResource
+            .getDownloadsByUserCountry(null, null, null)
+            .get(year)
+            .get(month));
+
+    // downloads are only deleted in the database
+    try (Connection connection = dataSource.getConnection();
+        PreparedStatement statement =
+            connection.prepareStatement("DELETE FROM occurrence_download WHERE key = ?")) {
+      statement.setString(1, deleted.getKey());
+      statement.executeUpdate();
+    }
+    assertEquals(
+        0,
+        occurrenceDownloadResource
+            .getDownloadedRecordsByDataset(null, null, null, testDataset.getKey())
+            .size());
+    assertEquals(
+        downloads - 2,
+        occurrenceDownloadResource
+            .getDownloadsByUserCountry(null, null, null)
+            .getOrDefault(year, new HashMap<>())
+            .getOrDefault(month, 0L));
+  }
+
+  private Download createSucceededDownload() {
+    Download download = OccurrenceDownloadIT.getTestInstancePredicateDownload();
+    occurrenceDownloadResource.create(download);
+    download = occurrenceDownloadResource.get(download.getKey());
+    download.setStatus(Download.Status.SUCCEEDED);
+    download.setTotalRecords(1000L);
+    occurrenceDownloadResource.update(download);
+    return download;
+  }
+
+  private void rollUp() {
+    DownloadRollupPosition position = downloadStatisticsRollup.start(600_000);
+    while (position != null) {
+      position = downloadStatisticsRollup.rollUp(position, 10);
+    }
+  }
 }
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2020 Global Biodiversity Information Facility (GBIF)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gbif.registry.ws.it;
+
+import org.gbif.api.model.registry.Dataset;
+import org.gbif.api.model.registry.Installation;
+import org.gbif.api.model.registry.Organization;
+import org.gbif.api.service.registry.DatasetService;
+import org.gbif.registry.metadata.EMLProfileVersion;
+import org.gbif.registry.search.test.EsManageServer;
+import org.gbif.registry.test.TestDataFactory;
+import org.gbif.ws.client.filter.SimplePrincipalProvider;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import static org.gbif.registry.ws.it.fixtures.TestConstants.TEST_ADMIN;
+import static org.gbif.registry.ws.it.fixtures.TestConstants.TEST_PASSWORD;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.httpBasic;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/** Tests the rejection of invalid metadata documents when the schema validation is strict. */
+@TestPropertySource(properties = "metadata.validation.mode=STRICT")
+public class MetadataValidationIT extends BaseItTest {
+
+  // a GBIF profile 1.1 document without the required elements of a dataset
+  private static final String INVALID_EML =
+      "<eml:eml xmlns:eml=\"eml://ecoinformatics.org/eml-2.1.1\"\n"
+          + "    xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\"\n"
+          + "    xsi:schemaLocation=\"eml://ecoinformatics.org/eml-2.1.1"
+          + " http://rs.gbif.org/schema/eml-gbif-profile/1.1/eml.xsd\"\n"
+          + "    packageId=\"invalid\" system=\"http://gbif.org\" scope=\"system\">\n"
+          + "  <dataset>\n"
+          + "    <title>Invalid</title>\n"
+          + "    <unknownElement/>\n"
+          + "  </dataset>\n"
+          + "</eml:eml>";
+
+  private final MockMvc mockMvc;
+  private final DatasetService datasetService;
+  private final TestDataFactory testDataFactory;
+  private final ObjectMapper objectMapper = new ObjectMapper();
+
+  @Autowired
+  public MetadataValidationIT(
+      MockMvc mockMvc,
+      DatasetService datasetService,
+      TestDataFactory testDataFactory,
+      SimplePrincipalProvider principalProvider,
+      EsManageServer esServer) {
+    super(principalProvider, esServer);
+    this.mockMvc = mockMvc;
+    this.datasetService = datasetService;
+    this.testDataFactory = testDataFactory;
+  }
+
+  @Test
+  public void testInvalidDocumentRejected() throws Exception {
+    Organization organization = testDataFactory.newPersistedOrganization();
+    Installation installation = testDataFactory.newPersistedInstallation(organization.getKey());
+    Dataset dataset =
+        testDataFactory.newPersistedDataset(organization.getKey(), installation.getKey());
+
+    MvcResult result =
+        mockMvc
+            .perform(
+                post("/dataset/" + dataset.getKey() + "/document")
+                    .content(INVALID_EML.getBytes(StandardCharsets.UTF_8))
+                    .contentType(MediaType.APPLICATION_XML)
+                    .with(httpBasic(TEST_ADMIN, TEST_PASSWORD)))
+            .andExpect(status().isBadRequest())
+            .andReturn();
+
+    // the body lists the violations with their position in the document
+    JsonNode body = objectMapper.readTree(result.getResponse().getContentAsString());
+    assertEquals(
+        EMLProfileVersion.GBIF_1_1.getSchemaLocation(), body.get("schemaLocation").asText());
+    assertFalse(body.get("valid").asBoolean());
+    assertFalse(body.get("truncated").asBoolean());
+    JsonNode errors = body.get("errors");
+    assertTrue(errors.size() > 0);
+    for (JsonNode error : errors) {
+      assertTrue(error.get("line").asInt() > 0);
+      assertTrue(error.get("column").asInt() > 0);
+      assertFalse(error.get("message").asText().isEmpty());
+    }
+
+    // the document is not stored
+    assertTrue(datasetService.listMetadata(dataset.getKey(), null).isEmpty());
+  }
+}
@@ -0,0 +1,279 @@
+/*
+ * Copyright 2020 Global Biodiversity Information Facility (GBIF)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gbif.registry.ws.it.collections;
+
+import org.gbif.api.model.collections.Collection;
+import org.gbif.api.model.collections.CollectionEntity;
+import org.gbif.api.model.collections.Institution;
+import org.gbif.api.model.registry.Identifier;
+import org.gbif.api.service.collections.CollectionService;
+import org.gbif.api.service.collections.InstitutionService;
+import org.gbif.api.vocabulary.IdentifierType;
+import org.gbif.registry.persistence.mapper.collections.CollectionMapper;
+import org.gbif.registry.persistence.mapper.collections.InstitutionMapper;
+import org.gbif.registry.search.test.EsManageServer;
+import org.gbif.registry.service.collections.lookup.index.LookupIndex;
+import org.gbif.registry.service.collections.lookup.index.LookupIndexConsistency;
+import org.gbif.registry.ws.it.BaseItTest;
+import org.gbif.ws.client.filter.SimplePrincipalProvider;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests the {@link LookupIndex} against the lookup queries of the mappers, which it replaces when
+ * enabled.
+ */
+public class LookupIndexIT extends BaseItTest {
+
+  private final Institution i1 = new Institution();
+  private final Institution i2 = new Institution();
+  private final Collection c1 = new Collection();
+
+  private final InstitutionService institutionService;
+  private final CollectionService collectionService;
+  private final InstitutionMapper institutionMapper;
+  private final CollectionMapper collectionMapper;
+
+  @Autowired
+  public LookupIndexIT(
+      SimplePrincipalProvider simplePrincipalProvider,
+      EsManageServer esServer,
+      InstitutionService institutionService,
+      CollectionService collectionService,
+      InstitutionMapper institutionMapper,
+      CollectionMapper collectionMapper) {
+    super(simplePrincipalProvider, esServer);
+    this.institutionService = institutionService;
+    this.collectionService = collectionService;
+    this.institutionMapper = institutionMapper;
+    this.collectionMapper = collectionMapper;
+  }
+
+  @BeforeEach
+  public void loadData() {
+    i1.setCode(" I1");
+    i1.setName("Institución   Número 1");
+    i1.getIdentifiers().add(new Identifier(IdentifierType.URI, "http://example.org/i1"));
+    institutionService.create(i1);
+
+    i2.setCode("I2");
+    i2.setName("Institution 2");
+    i2.setAlternativeCodes(Collections.singletonMap("II2", "test"));
+    i2.getIdentifiers().add(new Identifier(IdentifierType.LSID, "urn:lsid:inst"));
+    i2.getIdentifiers().add(new Identifier(IdentifierType.UNKNOWN, "urn:uuid:inst2"));
+    institutionService.create(i2);
+
+    c1.setCode("I1");
+    c1.setName("Collection 1");
+    c1.setInstitutionKey(i1.getKey());
+    c1.setAlternativeCodes(Collections.singletonMap("CC1", "test"));
+    collectionService.create(c1);
+  }
+
+  @Test
+  public void sameResultsAsQueriesTest() {
+    LookupIndex institutionIndex = new LookupIndex();
+    institutionIndex.rebuild(institutionMapper.listLookupEntries(null));
+    LookupIndex collectionIndex = new LookupIndex();
+    collectionIndex.rebuild(collectionMapper.listLookupEntries(null));
+
+    for (String value :
+        Arrays.asList(
+            "I1",
+            " I1 ",
+            "i1",
+            "I2",
+            "II2",
+            "CC1",
+            "institucion numero 1",
+            "Institution 2",
+            "Collection 1",
+            "example.org/i1",
+            "https://example.org/i1",
+            "inst",
+            "urn:lsid:inst",
+            "inst2",
+            "unknown")) {
+      assertEquals(
+          keys(institutionMapper.lookup(value, null, null, null)),
+          new HashSet<>(institutionIndex.findByCode(value)),
+          "code " + value);
+      assertEquals(
+          keys(institutionMapper.lookup(null, value, null, null)),
+          new HashSet<>(institutionIndex.findByIdentifier(value)),
+          "identifier " + value);
+      assertEquals(
+          keys(institutionMapper.lookup(null, null, value, null)),
+          new HashSet<>(institutionIndex.findByName(value)),
+          "name " + value);
+      assertEquals(
+          keys(institutionMapper.lookup(null, null, null, value)),
+          new HashSet<>(institutionIndex.findByAlternativeCode(value)),
+          "alternative code " + value);
+      assertEquals(
+          keys(collectionMapper.lookup(value, null, null, null)),
+          new HashSet<>(collectionIndex.findByCode(value)),
+          "collection code " + value);
+      assertEquals(
+          keys(collectionMapper.lookup(null, null, value, null)),
+          new HashSet<>(collectionIndex.findByName(value)),
+          "collection name " + value);
+      assertEquals(
+          keys(collectionMapper.lookup(null, null, null, value)),
+          new HashSet<>(collectionIndex.findByAlternativeCode(value)),
+          "collection alternative code " + value);
+    }
+
+    assertEquals(
+        keys(institutionMapper.lookup("I1", "example.org/i1", null, null)),
+        new HashSet<>(institutionIndex.findByCodeAndIdentifier("I1", "example.org/i1")));
+    assertTrue(institutionIndex.findByCodeAndIdentifier("I2", "example.org/i1").isEmpty());
+  }
+
+  @Test
+  public void accentedNamesTest() {
+    List<String> names =
+        Arrays.asList(
+            "Muséum national d'Histoire naturelle",
+            "Universität Zürich",
+            "Københavns Universitet",
+            "Cæsar Institut",
+            "Œuvre Botanique",
+            "Straße der Natur",
+            "Łódź University",
+            "Háskóli Íslands",
+            "Jardín Botánico Nacional");
+    for (String name : names) {
+      Institution institution = new Institution();
+      institution.setCode(UUID.randomUUID().toString());
+      institution.setName(name);
+      institutionService.create(institution);
+    }
+    LookupIndex index = new LookupIndex();
+    index.rebuild(institutionMapper.listLookupEntries(null));
+
+    for (String value :
+        Arrays.asList(
+            "museum national d'histoire naturelle",
+            "MUSÉUM NATIONAL D'HISTOIRE NATURELLE",
+            "universitat zurich",
+            "kobenhavns universitet",
+            "caesar institut",
+            "oeuvre botanique",
+            "strasse der natur",
+            "lodz university",
+            "haskoli islands",
+            "jardin botanico nacional",
+            "jardín  botánico  nacional")) {
+      List<UUID> fromQuery =
+          new ArrayList<>(keys(institutionMapper.lookup(null, null, value, null)));
+      assertEquals(1, fromQuery.size(), "name " + value);
+      assertEquals(fromQuery, index.findByName(value), "name " + value);
+    }
+  }
+
+  @Test
+  public void sameOrderAndLimitAsQueriesTest() {
+    for (int i = 0; i < 25; i++) {
+      Institution institution = new Institution();
+      institution.setCode("SHARED");
+      institution.setName("Institution with a shared code " + i);
+      institutionService.create(institution);
+    }
+    LookupIndex index = new LookupIndex();
+    index.rebuild(institutionMapper.listLookupEntries(null));
+
+    List<UUID> fromQuery =
+        institutionMapper.lookup("SHARED", null, null, null).stream()
+            .map(Institution::getKey)
+            .collect(Collectors.toList());
+    List<UUID> fromIndex = index.findByCode("SHARED");
+    assertEquals(20, fromIndex.size());
+    assertEquals(fromQuery, fromIndex);
+
+    // the entities found in the index are loaded at once, in the same order
+    assertEquals(
+        fromIndex,
+        institutionMapper.getByKeys(fromIndex).stream()
+            .map(Institution::getKey)
+            .collect(Collectors.toList()));
+
+    // removing an entity keeps the order of the remaining ones
+    index.remove(fromIndex.get(0));
+    assertEquals(fromQuery.subList(1, 20), index.findByCode("SHARED").subList(0, 19));
+  }
+
+  @Test
+  public void consistencyTest() {
+    LookupIndex index = new LookupIndex();
+    assertFalse(
+        index
+            .checkConsistency("Institution", institutionMapper.listLookupEntries(null))
+            .isReady());
+
+    index.rebuild(institutionMapper.listLookupEntries(null));
+    LookupIndexConsistency consistency =
+        index.checkConsistency("Institution", institutionMapper.listLookupEntries(null));
+    assertTrue(consistency.isConsistent());
+    assertEquals(2, consistency.getIndexedCount());
+    assertEquals(2, consistency.getDatabaseCount());
+
+    // changes not applied to the index yet
+    i2.setCode("I3");
+    institutionService.update(i2);
+    institutionService.delete(i1.getKey());
+    Institution i3 = new Institution();
+    i3.setCode("I3");
+    i3.setName("Institution 3");
+    UUID i3Key = institutionService.create(i3);
+
+    consistency = index.checkConsistency("Institution", institutionMapper.listLookupEntries(null));
+    assertFalse(consistency.isConsistent());
+    assertEquals(Collections.singletonList(i3Key), consistency.getMissing());
+    assertEquals(Collections.singletonList(i1.getKey()), consistency.getStale());
+    assertEquals(Collections.singletonList(i2.getKey()), consistency.getOutdated());
+
+    // apply the changes as the event listener does
+    index.remove(i1.getKey());
+    institutionMapper.listLookupEntries(i2.getKey()).forEach(index::put);
+    institutionMapper.listLookupEntries(i3Key).forEach(index::put);
+
+    consistency = index.checkConsistency("Institution", institutionMapper.listLookupEntries(null));
+    assertTrue(consistency.isConsistent());
+    assertTrue(index.findByCode("I1").isEmpty());
+    assertEquals(
+        new HashSet<>(Arrays.asList(i2.getKey(), i3Key)), new HashSet<>(index.findByCode("I3")));
+  }
+
+  private static <T extends CollectionEntity> Set<UUID> keys(List<T> entities) {
+    return entities.stream().map(T::getKey).collect(Collectors.toSet());
+  }
+}
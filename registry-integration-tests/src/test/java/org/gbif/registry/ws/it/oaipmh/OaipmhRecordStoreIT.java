@@ -0,0 +1,243 @@
+/*
+ * Copyright 2020 Global Biodiversity Information Facility (GBIF)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gbif.registry.ws.it.oaipmh;
+
+import org.gbif.api.model.registry.Dataset;
+import org.gbif.api.model.registry.Installation;
+import org.gbif.api.model.registry.Organization;
+import org.gbif.api.service.registry.DatasetService;
+import org.gbif.api.service.registry.InstallationService;
+import org.gbif.api.service.registry.NodeService;
+import org.gbif.api.service.registry.OrganizationService;
+import org.gbif.api.vocabulary.Country;
+import org.gbif.api.vocabulary.DatasetType;
+import org.gbif.registry.oaipmh.OaipmhCursor;
+import org.gbif.registry.oaipmh.OaipmhRecordStore;
+import org.gbif.registry.oaipmh.OaipmhRenderer;
+import org.gbif.registry.persistence.mapper.OaipmhRecordMapper;
+import org.gbif.registry.persistence.mapper.dto.OaipmhRecord;
+import org.gbif.registry.search.test.EsManageServer;
+import org.gbif.registry.test.TestDataFactory;
+import org.gbif.ws.client.filter.SimplePrincipalProvider;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/** Tests the pre-rendered records of the OaipmhRecordStore and their keyset paging. */
+public class OaipmhRecordStoreIT extends AbstractOaipmhEndpointIT {
+
+  private final OaipmhRecordStore recordStore;
+  private final OaipmhRecordMapper recordMapper;
+
+  @Autowired
+  public OaipmhRecordStoreIT(
+      SimplePrincipalProvider principalProvider,
+      Environment environment,
+      NodeService nodeService,
+      OrganizationService organizationService,
+      InstallationService installationService,
+      DatasetService datasetService,
+      TestDataFactory testDataFactory,
+      EsManageServer esServer,
+      OaipmhRecordStore recordStore,
+      OaipmhRecordMapper recordMapper) {
+    super(
+        principalProvider,
+        environment,
+        nodeService,
+        organizationService,
+        installationService,
+        datasetService,
+        testDataFactory,
+        esServer);
+    this.recordStore = recordStore;
+    this.recordMapper = recordMapper;
+  }
+
+  @Test
+  public void testKeysetPaging() throws Exception {
+    Organization orgIceland = createOrganization(Country.ICELAND);
+    Installation installation = createInstallation(orgIceland.getKey());
+    Organization orgZambia = createOrganization(Country.ZAMBIA);
+
+    Calendar calendar = Calendar.getInstance();
+    calendar.set(2015, Calendar.OCTOBER, 16);
+    List<Dataset> datasets = new ArrayList<>();
+    for (int i = 0; i < 5; i++) {
+      // some datasets share the same datestamp, so pages must be split on the key too
+      calendar.add(Calendar.DAY_OF_YEAR, i % 2);
+      datasets.add(
+          createDataset(
+              i < 3 ? orgIceland.getKey() : orgZambia.getKey(),
+              installation.getKey(),
+              DatasetType.CHECKLIST,
+              calendar.getTime()));
+    }
+    datasets.forEach(d -> recordStore.refresh(d.getKey()));
+
+    // all records in (datestamp, key) order, each once
+    List<OaipmhRecord> expected =
+        recordStore.list(OaipmhRenderer.EML_PREFIX, null, null, null, null, 0, 10, false);
+    assertEquals(5, expected.size());
+    List<OaipmhRecord> sorted = new ArrayList<>(expected);
+    sorted.sort(
+        Comparator.comparing(OaipmhRecord::getDatestamp)
+            .thenComparing(OaipmhRecord::getDatasetKey));
+    assertEquals(keys(sorted), keys(expected));
+
+    List<OaipmhRecord> paged = new ArrayList<>();
+    OaipmhCursor cursor = null;
+    List<OaipmhRecord> page;
+    do {
+      page =
+          recordStore.list(
+              OaipmhRenderer.EML_PREFIX, null, null, null, cursor, paged.size(), 2, true);
+      paged.addAll(page);
+      if (!page.isEmpty()) {
+        OaipmhRecord last = page.get(page.size() - 1);
+        cursor = new OaipmhCursor(paged.size(), last.getDatestamp(), last.getDatasetKey());
+      }
+    } while (page.size() == 2);
+    assertEquals(keys(expected), keys(paged));
+    paged.forEach(r -> assertTrue(r.getMetadata().contains("<eml>")));
+
+    // offset paging gives the same pages
+    assertEquals(
+        keys(expected.subList(2, 4)),
+        keys(recordStore.list(OaipmhRenderer.EML_PREFIX, null, null, null, null, 2, 2, false)));
+
+    // sets
+    List<OaipmhRecord> iceland =
+        recordStore.list(OaipmhRenderer.OAI_DC_PREFIX, "country:IS", null, null, null, 0, 10, true);
+    assertEquals(3, iceland.size());
+    iceland.forEach(r -> assertTrue(r.getMetadata().contains("<oaidc>")));
+    assertEquals(
+        5,
+        recordStore
+            .list(
+                OaipmhRenderer.OAI_DC_PREFIX,
+                "installation:" + installation.getKey(),
+                null,
+                null,
+                null,
+                0,
+                10,
+                false)
+            .size());
+  }
+
+  @Test
+  public void testRefreshDeletedDataset() throws Exception {
+    Organization organization = createOrganization(Country.DENMARK);
+    Installation installation = createInstallation(organization.getKey());
+    Dataset dataset =
+        createDataset(
+            organization.getKey(),
+            installation.getKey(),
+            DatasetType.OCCURRENCE,
+            Calendar.getInstance().getTime());
+
+    recordStore.refresh(dataset.getKey());
+    OaipmhRecord record = recordStore.get(dataset.getKey(), OaipmhRenderer.OAI_DC_PREFIX);
+    assertNotNull(record);
+    assertTrue(record.getSetSpecs().contains("country:DK"));
+    assertTrue(record.getSetSpecs().contains("dataset_type:OCCURRENCE"));
+
+    deleteDataset(dataset.getKey());
+    recordStore.refresh(dataset.getKey());
+    assertNull(recordStore.get(dataset.getKey(), OaipmhRenderer.OAI_DC_PREFIX));
+    assertNull(recordStore.get(dataset.getKey(), OaipmhRenderer.EML_PREFIX));
+  }
+
+  @Test
+  public void testPublishedByMarkedStale() throws Exception {
+    Organization organization = createOrganization(Country.NORWAY);
+    Installation installation = createInstallation(organization.getKey());
+    Dataset dataset =
+        createDataset(
+            organization.getKey(),
+            installation.getKey(),
+            DatasetType.OCCURRENCE,
+            Calendar.getInstance().getTime());
+    recordStore.refresh(dataset.getKey());
+    assertFalse(staleKeys().contains(dataset.getKey()));
+
+    // the records stay served until the reconciliation renders them again
+    recordStore.markPublishedByStale(organization.getKey());
+    assertTrue(staleKeys().contains(dataset.getKey()));
+    assertNotNull(recordStore.get(dataset.getKey(), OaipmhRenderer.OAI_DC_PREFIX));
+
+    recordStore.refresh(dataset.getKey());
+    assertFalse(staleKeys().contains(dataset.getKey()));
+  }
+
+  @Test
+  public void testFailingDatasetBackedOff() throws Exception {
+    Organization organization = createOrganization(Country.DENMARK);
+    Installation installation = createInstallation(organization.getKey());
+    Dataset dataset =
+        createDataset(
+            organization.getKey(),
+            installation.getKey(),
+            DatasetType.OCCURRENCE,
+            Calendar.getInstance().getTime());
+    assertTrue(staleKeys().contains(dataset.getKey()));
+
+    // left out of the reconciliation until the backoff, doubled by every failure, has passed
+    recordMapper.recordFailure(dataset.getKey());
+    assertFalse(staleKeys(TimeUnit.HOURS.toMillis(1)).contains(dataset.getKey()));
+    assertTrue(staleKeys(0).contains(dataset.getKey()));
+    recordMapper.recordFailure(dataset.getKey());
+    assertFalse(staleKeys(TimeUnit.HOURS.toMillis(1)).contains(dataset.getKey()));
+
+    // rendered, the failures are forgotten
+    recordStore.refresh(dataset.getKey());
+    assertEquals(0, recordMapper.clearFailure(dataset.getKey()));
+    assertFalse(staleKeys().contains(dataset.getKey()));
+  }
+
+  private List<UUID> staleKeys() {
+    return staleKeys(0);
+  }
+
+  private List<UUID> staleKeys(long backoffMs) {
+    return recordMapper.listStaleDatasetKeys(
+        Arrays.asList(OaipmhRenderer.OAI_DC_PREFIX, OaipmhRenderer.EML_PREFIX),
+        2,
+        backoffMs,
+        Integer.MAX_VALUE);
+  }
+
+  private static List<UUID> keys(List<OaipmhRecord> records) {
+    return records.stream().map(OaipmhRecord::getDatasetKey).collect(Collectors.toList());
+  }
+}
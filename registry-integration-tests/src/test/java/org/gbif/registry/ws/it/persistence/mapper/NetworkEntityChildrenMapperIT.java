@@ -0,0 +1,266 @@
+/*
+ * Copyright 2020 Global Biodiversity Information Facility (GBIF)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gbif.registry.ws.it.persistence.mapper;
+
+import org.gbif.api.model.collections.Address;
+import org.gbif.api.model.collections.Collection;
+import org.gbif.api.model.collections.Institution;
+import org.gbif.api.model.collections.Person;
+import org.gbif.api.model.common.paging.PagingRequest;
+import org.gbif.api.model.registry.Dataset;
+import org.gbif.api.model.registry.Installation;
+import org.gbif.api.model.registry.Organization;
+import org.gbif.api.service.collections.CollectionService;
+import org.gbif.api.service.collections.InstitutionService;
+import org.gbif.api.service.collections.PersonService;
+import org.gbif.api.service.registry.DatasetService;
+import org.gbif.api.service.registry.NetworkEntityService;
+import org.gbif.api.service.registry.OrganizationService;
+import org.gbif.registry.persistence.mapper.DatasetMapper;
+import org.gbif.registry.persistence.mapper.OrganizationMapper;
+import org.gbif.registry.persistence.mapper.collections.CollectionMapper;
+import org.gbif.registry.persistence.mapper.collections.InstitutionMapper;
+import org.gbif.registry.persistence.service.NetworkEntityChildrenLoader;
+import org.gbif.registry.search.test.EsManageServer;
+import org.gbif.registry.test.TestDataFactory;
+import org.gbif.registry.ws.it.BaseItTest;
+import org.gbif.registry.ws.it.fixtures.StatementCounter;
+import org.gbif.ws.client.filter.SimplePrincipalProvider;
+
+import java.util.List;
+import java.util.UUID;
+
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Compares list pages loaded with the nested selects of the result maps with pages loaded in bulk
+ * by the {@link NetworkEntityChildrenLoader}, and guards the number of statements issued per page.
+ * Covers network entities as well as GrSciColl institutions and collections.
+ */
+public class NetworkEntityChildrenMapperIT extends BaseItTest {
+
+  private static final int PAGE_SIZE = 3;
+  // page, contacts, endpoints, machine tags, tags, identifiers, comments, endpoint machine tags
+  private static final int BULK_STATEMENTS = 8;
+  // per entity: count, contacts, endpoints, machine tags, tags, identifiers, comments and the
+  // machine tags of its single endpoint
+  private static final int NESTED_STATEMENTS_PER_ENTITY = 8;
+  // page, contacts, tags, identifiers, machine tags and comments of the entities and of their
+  // contacts, the addresses of the entities and the mailing addresses of the contacts
+  private static final int COLLECTION_BULK_STATEMENTS = 12;
+
+  private final DatasetMapper datasetMapper;
+  private final OrganizationMapper organizationMapper;
+  private final NetworkEntityChildrenLoader childrenLoader;
+  private final DatasetService datasetService;
+  private final OrganizationService organizationService;
+  private final InstitutionMapper institutionMapper;
+  private final CollectionMapper collectionMapper;
+  private final InstitutionService institutionService;
+  private final CollectionService collectionService;
+  private final PersonService personService;
+  private final TestDataFactory testDataFactory;
+  private final StatementCounter statementCounter = new StatementCounter();
+
+  @Autowired
+  public NetworkEntityChildrenMapperIT(
+      DatasetMapper datasetMapper,
+      OrganizationMapper organizationMapper,
+      NetworkEntityChildrenLoader childrenLoader,
+      DatasetService datasetService,
+      OrganizationService organizationService,
+      InstitutionMapper institutionMapper,
+      CollectionMapper collectionMapper,
+      InstitutionService institutionService,
+      CollectionService collectionService,
+      PersonService personService,
+      SqlSessionFactory sqlSessionFactory,
+      SimplePrincipalProvider principalProvider,
+      EsManageServer esServer,
+      TestDataFactory testDataFactory) {
+    super(principalProvider, esServer);
+    this.datasetMapper = datasetMapper;
+    this.organizationMapper = organizationMapper;
+    this.childrenLoader = childrenLoader;
+    this.datasetService = datasetService;
+    this.organizationService = organizationService;
+    this.institutionMapper = institutionMapper;
+    this.collectionMapper = collectionMapper;
+    this.institutionService = institutionService;
+    this.collectionService = collectionService;
+    this.personService = personService;
+    this.testDataFactory = testDataFactory;
+    sqlSessionFactory.getConfiguration().addInterceptor(statementCounter);
+  }
+
+  @Test
+  public void testListDatasets() {
+    Organization organization = testDataFactory.newPersistedOrganization();
+    Installation installation = testDataFactory.newPersistedInstallation(organization.getKey());
+    for (int i = 0; i < PAGE_SIZE; i++) {
+      Dataset dataset =
+          testDataFactory.newPersistedDataset(organization.getKey(), installation.getKey());
+      addChildren(datasetService, dataset.getKey());
+    }
+    PagingRequest page = new PagingRequest(0, PAGE_SIZE);
+
+    statementCounter.reset();
+    List<Dataset> nested = datasetMapper.list(page);
+    int nestedStatements = statementCounter.reset();
+    List<Dataset> bulk = childrenLoader.loadDatasetChildren(datasetMapper.listLight(page));
+    int bulkStatements = statementCounter.reset();
+
+    assertEquals(PAGE_SIZE, nested.size());
+    assertFalse(bulk.get(0).getEndpoints().get(0).getMachineTags().isEmpty());
+    assertEquals(nested, bulk);
+    assertEquals(1 + PAGE_SIZE * NESTED_STATEMENTS_PER_ENTITY, nestedStatements);
+    assertEquals(BULK_STATEMENTS, bulkStatements);
+
+    // the statements of the bulk mode do not depend on the page size
+    childrenLoader.loadDatasetChildren(datasetMapper.listLight(new PagingRequest(0, 1)));
+    assertEquals(BULK_STATEMENTS, statementCounter.reset());
+  }
+
+  @Test
+  public void testListOrganizations() {
+    for (int i = 0; i < PAGE_SIZE; i++) {
+      Organization organization = testDataFactory.newPersistedOrganization();
+      Installation installation = testDataFactory.newPersistedInstallation(organization.getKey());
+      testDataFactory.newPersistedDataset(organization.getKey(), installation.getKey());
+      addChildren(organizationService, organization.getKey());
+    }
+    PagingRequest page = new PagingRequest(0, PAGE_SIZE);
+
+    statementCounter.reset();
+    List<Organization> nested = organizationMapper.list(page);
+    int nestedStatements = statementCounter.reset();
+    List<Organization> bulk =
+        childrenLoader.loadOrganizationChildren(organizationMapper.listLight(page));
+    int bulkStatements = statementCounter.reset();
+
+    assertEquals(PAGE_SIZE, nested.size());
+    assertEquals(1, bulk.get(0).getNumPublishedDatasets());
+    assertEquals(nested, bulk);
+    assertEquals(1 + PAGE_SIZE * NESTED_STATEMENTS_PER_ENTITY, nestedStatements);
+    assertEquals(BULK_STATEMENTS, bulkStatements);
+
+    List<Organization> nestedSearch = organizationMapper.search(null, null, null, page);
+    List<Organization> bulkSearch =
+        childrenLoader.loadOrganizationChildren(
+            organizationMapper.searchLight(null, null, null, page));
+    assertEquals(nestedSearch, bulkSearch);
+  }
+
+  @Test
+  public void testListInstitutions() {
+    for (int i = 0; i < PAGE_SIZE; i++) {
+      Institution institution = new Institution();
+      institution.setCode("I" + i);
+      institution.setName("Institution " + i);
+      institution.setAddress(newAddress());
+      institution.setMailingAddress(newAddress());
+      UUID key = institutionService.create(institution);
+      institutionService.addContact(key, newPersistedPerson());
+      institutionService.addTag(key, "tag");
+      institutionService.addIdentifier(key, testDataFactory.newIdentifier());
+      institutionService.addMachineTag(key, testDataFactory.newMachineTag());
+      institutionService.addComment(key, testDataFactory.newComment());
+    }
+    PagingRequest page = new PagingRequest(0, PAGE_SIZE);
+
+    statementCounter.reset();
+    List<Institution> nested = institutionMapper.list(null, null, null, null, null, page);
+    int nestedStatements = statementCounter.reset();
+    List<Institution> bulk =
+        childrenLoader.loadInstitutionChildren(
+            institutionMapper.listLight(null, null, null, null, null, page));
+    int bulkStatements = statementCounter.reset();
+
+    assertEquals(PAGE_SIZE, nested.size());
+    assertFalse(bulk.get(0).getContacts().get(0).getTags().isEmpty());
+    assertEquals(nested, bulk);
+    assertTrue(nestedStatements > bulkStatements);
+    assertEquals(COLLECTION_BULK_STATEMENTS, bulkStatements);
+  }
+
+  @Test
+  public void testListCollections() {
+    for (int i = 0; i < PAGE_SIZE; i++) {
+      Collection collection = new Collection();
+      collection.setCode("C" + i);
+      collection.setName("Collection " + i);
+      collection.setAddress(newAddress());
+      UUID key = collectionService.create(collection);
+      collectionService.addContact(key, newPersistedPerson());
+      collectionService.addTag(key, "tag");
+      collectionService.addIdentifier(key, testDataFactory.newIdentifier());
+      collectionService.addMachineTag(key, testDataFactory.newMachineTag());
+      collectionService.addComment(key, testDataFactory.newComment());
+    }
+    PagingRequest page = new PagingRequest(0, PAGE_SIZE);
+
+    statementCounter.reset();
+    List<Collection> nested = collectionMapper.list(null, null, null, null, null, null, page);
+    int nestedStatements = statementCounter.reset();
+    List<Collection> bulk =
+        childrenLoader.loadCollectionChildren(
+            collectionMapper.listLight(null, null, null, null, null, null, page));
+    int bulkStatements = statementCounter.reset();
+
+    assertEquals(PAGE_SIZE, nested.size());
+    // collections without mailing address keep it null
+    assertNull(bulk.get(0).getMailingAddress());
+    assertEquals(nested, bulk);
+    assertTrue(nestedStatements > bulkStatements);
+    assertEquals(COLLECTION_BULK_STATEMENTS, bulkStatements);
+  }
+
+  private Address newAddress() {
+    Address address = new Address();
+    address.setAddress("Universitetsparken 15");
+    address.setCity("Copenhagen");
+    return address;
+  }
+
+  private UUID newPersistedPerson() {
+    Person person = new Person();
+    person.setFirstName("First");
+    person.setLastName("Last");
+    person.setMailingAddress(newAddress());
+    UUID key = personService.create(person);
+    personService.addTag(key, "tag");
+    personService.addComment(key, testDataFactory.newComment());
+    return key;
+  }
+
+  private void addChildren(NetworkEntityService<?> service, UUID key) {
+    // two contacts to verify the ordering within an entity
+    service.addContact(key, testDataFactory.newContact());
+    service.addContact(key, testDataFactory.newContact());
+    service.addEndpoint(key, testDataFactory.newEndpoint());
+    service.addMachineTag(key, testDataFactory.newMachineTag());
+    service.addTag(key, "tag");
+    service.addIdentifier(key, testDataFactory.newIdentifier());
+    service.addComment(key, testDataFactory.newComment());
+  }
+}
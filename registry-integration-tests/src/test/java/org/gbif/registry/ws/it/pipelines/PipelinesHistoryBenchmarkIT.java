@@ -0,0 +1,213 @@
+/*
+ * Copyright 2020 Global Biodiversity Information Facility (GBIF)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gbif.registry.ws.it.pipelines;
+
+import org.gbif.api.model.common.paging.PagingRequest;
+import org.gbif.api.model.common.paging.PagingResponse;
+import org.gbif.api.model.pipelines.PipelineExecution;
+import org.gbif.api.model.pipelines.PipelineProcess;
+import org.gbif.api.model.pipelines.PipelineStep;
+import org.gbif.api.model.pipelines.StepRunner;
+import org.gbif.api.model.pipelines.StepType;
+import org.gbif.api.model.pipelines.ws.SearchResult;
+import org.gbif.api.model.registry.Dataset;
+import org.gbif.api.model.registry.Installation;
+import org.gbif.api.model.registry.Organization;
+import org.gbif.registry.persistence.mapper.pipelines.PipelineProcessMapper;
+import org.gbif.registry.pipelines.RegistryPipelinesHistoryTrackingService;
+import org.gbif.registry.search.test.EsManageServer;
+import org.gbif.registry.test.TestDataFactory;
+import org.gbif.registry.ws.it.BaseItTest;
+import org.gbif.registry.ws.it.fixtures.StatementCounter;
+import org.gbif.ws.client.filter.SimplePrincipalProvider;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Records the number of statements and the latency of the pipelines history pages polled by the
+ * monitoring UI for several page sizes, and guards that a page is loaded with a single statement
+ * whatever its size.
+ */
+public class PipelinesHistoryBenchmarkIT extends BaseItTest {
+
+  private static final Logger LOG = LoggerFactory.getLogger(PipelinesHistoryBenchmarkIT.class);
+
+  private static final int DATASETS = 10;
+  private static final int ATTEMPTS_PER_DATASET = 20;
+  private static final int EXECUTIONS_PER_PROCESS = 2;
+  private static final int STEPS_PER_EXECUTION = 3;
+  private static final int[] PAGE_SIZES = {10, 50, 200};
+  private static final int ITERATIONS = 5;
+
+  private final RegistryPipelinesHistoryTrackingService historyService;
+  private final PipelineProcessMapper pipelineProcessMapper;
+  private final TestDataFactory testDataFactory;
+  private final StatementCounter statementCounter = new StatementCounter();
+
+  @Autowired
+  public PipelinesHistoryBenchmarkIT(
+      RegistryPipelinesHistoryTrackingService historyService,
+      PipelineProcessMapper pipelineProcessMapper,
+      SqlSessionFactory sqlSessionFactory,
+      SimplePrincipalProvider principalProvider,
+      EsManageServer esServer,
+      TestDataFactory testDataFactory) {
+    super(principalProvider, esServer);
+    this.historyService = historyService;
+    this.pipelineProcessMapper = pipelineProcessMapper;
+    this.testDataFactory = testDataFactory;
+    sqlSessionFactory.getConfiguration().addInterceptor(statementCounter);
+  }
+
+  @Test
+  public void historyPagesTest() {
+    Map<UUID, String> titles = createProcesses();
+    int total = DATASETS * ATTEMPTS_PER_DATASET;
+
+    for (int pageSize : PAGE_SIZES) {
+      PagingRequest page = new PagingRequest(0, pageSize);
+      statementCounter.reset();
+      long start = System.nanoTime();
+      PagingResponse<PipelineProcess> response = null;
+      for (int i = 0; i < ITERATIONS; i++) {
+        response = historyService.history(page);
+      }
+      long micros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start) / ITERATIONS;
+      int statements = statementCounter.reset() / ITERATIONS;
+      LOG.info(
+          "History page of {} processes: {} statement(s), {} us", pageSize, statements, micros);
+
+      assertEquals(1, statements);
+      assertEquals(total, response.getCount().intValue());
+      assertEquals(Math.min(pageSize, total), response.getResults().size());
+      for (PipelineProcess process : response.getResults()) {
+        assertEquals(titles.get(process.getDatasetKey()), process.getDatasetTitle());
+        assertEquals(EXECUTIONS_PER_PROCESS, process.getExecutions().size());
+        process
+            .getExecutions()
+            .forEach(e -> assertEquals(STEPS_PER_EXECUTION, e.getSteps().size()));
+      }
+    }
+
+    // the history of a single dataset is loaded the same way
+    UUID datasetKey = titles.keySet().iterator().next();
+    statementCounter.reset();
+    PagingResponse<PipelineProcess> datasetHistory =
+        historyService.history(datasetKey, new PagingRequest(0, 5));
+    assertEquals(1, statementCounter.reset());
+    assertEquals(ATTEMPTS_PER_DATASET, datasetHistory.getCount().intValue());
+    assertEquals(5, datasetHistory.getResults().size());
+
+    // a page past the last process has no row to carry the total, which is counted separately
+    statementCounter.reset();
+    PagingResponse<PipelineProcess> pastLast = historyService.history(new PagingRequest(total, 10));
+    assertEquals(2, statementCounter.reset());
+    assertEquals(total, pastLast.getCount().intValue());
+    assertTrue(pastLast.getResults().isEmpty());
+
+    // the detail of a process is loaded in a single statement too
+    statementCounter.reset();
+    PipelineProcess process = historyService.get(datasetKey, 1);
+    assertEquals(1, statementCounter.reset());
+    assertEquals(titles.get(datasetKey), process.getDatasetTitle());
+    assertEquals(EXECUTIONS_PER_PROCESS, process.getExecutions().size());
+  }
+
+  @Test
+  public void searchPagesTest() {
+    createProcesses();
+    int total = DATASETS * ATTEMPTS_PER_DATASET * EXECUTIONS_PER_PROCESS * STEPS_PER_EXECUTION;
+
+    for (int pageSize : PAGE_SIZES) {
+      PagingRequest page = new PagingRequest(0, pageSize);
+      statementCounter.reset();
+      long start = System.nanoTime();
+      PagingResponse<SearchResult> response = null;
+      for (int i = 0; i < ITERATIONS; i++) {
+        response =
+            historyService.search(null, null, null, null, null, null, null, null, null, page);
+      }
+      long micros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start) / ITERATIONS;
+      int statements = statementCounter.reset() / ITERATIONS;
+      LOG.info("Search page of {} steps: {} statement(s), {} us", pageSize, statements, micros);
+
+      assertEquals(1, statements);
+      assertEquals(total, response.getCount().intValue());
+      assertEquals(pageSize, response.getResults().size());
+    }
+  }
+
+  /** Creates the processes of all datasets and returns the dataset titles by key. */
+  private Map<UUID, String> createProcesses() {
+    Organization organization = testDataFactory.newPersistedOrganization();
+    Installation installation = testDataFactory.newPersistedInstallation(organization.getKey());
+    Map<UUID, String> titles = new HashMap<>();
+    for (int d = 0; d < DATASETS; d++) {
+      Dataset dataset =
+          testDataFactory.newPersistedDataset(organization.getKey(), installation.getKey());
+      titles.put(dataset.getKey(), dataset.getTitle());
+      for (int attempt = 1; attempt <= ATTEMPTS_PER_DATASET; attempt++) {
+        PipelineProcess process =
+            new PipelineProcess()
+                .setDatasetKey(dataset.getKey())
+                .setAttempt(attempt)
+                .setCreatedBy("benchmark");
+        pipelineProcessMapper.createIfNotExists(process);
+        for (int e = 0; e < EXECUTIONS_PER_PROCESS; e++) {
+          addExecution(process.getKey());
+        }
+      }
+    }
+    return titles;
+  }
+
+  private void addExecution(long processKey) {
+    PipelineExecution execution =
+        new PipelineExecution()
+            .setCreatedBy("benchmark")
+            .setStepsToRun(
+                Arrays.asList(
+                    StepType.DWCA_TO_VERBATIM,
+                    StepType.VERBATIM_TO_INTERPRETED,
+                    StepType.INTERPRETED_TO_INDEX));
+    pipelineProcessMapper.addPipelineExecution(processKey, execution);
+    for (StepType type : execution.getStepsToRun()) {
+      PipelineStep step =
+          new PipelineStep()
+              .setType(type)
+              .setRunner(StepRunner.STANDALONE)
+              .setState(PipelineStep.Status.COMPLETED)
+              .setStarted(LocalDateTime.now().minusMinutes(1))
+              .setFinished(LocalDateTime.now())
+              .setCreatedBy("benchmark");
+      pipelineProcessMapper.addPipelineStep(execution.getKey(), step);
+    }
+  }
+}
@@ -0,0 +1,288 @@
+/*
+ * Copyright 2020 Global Biodiversity Information Facility (GBIF)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gbif.registry.ws.it.pipelines;
+
+import org.gbif.api.model.common.paging.PagingRequest;
+import org.gbif.api.model.pipelines.PipelineExecution;
+import org.gbif.api.model.pipelines.PipelineProcess;
+import org.gbif.api.model.pipelines.PipelineStep;
+import org.gbif.api.model.pipelines.RunPipelineResponse;
+import org.gbif.api.model.pipelines.StepRunner;
+import org.gbif.api.model.pipelines.StepType;
+import org.gbif.api.model.registry.Installation;
+import org.gbif.api.model.registry.Organization;
+import org.gbif.common.messaging.api.messages.PipelinesDwcaMessage;
+import org.gbif.registry.domain.pipelines.RerunJob;
+import org.gbif.registry.messaging.InMemoryMessagePublisher;
+import org.gbif.registry.persistence.mapper.pipelines.PipelineProcessMapper;
+import org.gbif.registry.persistence.mapper.pipelines.RerunJobMapper;
+import org.gbif.registry.pipelines.PipelinesRerunJobService;
+import org.gbif.registry.pipelines.RegistryPipelinesHistoryTrackingService;
+import org.gbif.registry.search.test.EsManageServer;
+import org.gbif.registry.test.TestDataFactory;
+import org.gbif.registry.ws.it.BaseItTest;
+import org.gbif.ws.client.filter.SimplePrincipalProvider;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests the jobs rerunning many datasets with the {@link PipelinesRerunJobService}, using the
+ * {@link InMemoryMessagePublisher} instead of a broker.
+ */
+public class PipelinesRerunJobIT extends BaseItTest {
+
+  private static final String USER = "rerun-job-it";
+  private static final String DWCA_MESSAGE =
+      "{\"datasetUuid\":\"418a6571-b6c1-4db0-b90e-8f36bde4c80e\","
+          + "\"datasetType\":\"SAMPLING_EVENT\",\"attempt\":1,"
+          + "\"source\":\"http://gbif.vm.ntnu.no/ipt/archive.do?r=setesdal_veg_data\","
+          + "\"validationReport\":{\"datasetKey\":\"418a6571-b6c1-4db0-b90e-8f36bde4c80e\","
+          + "\"occurrenceReport\":{\"checkedRecords\":11961,\"uniqueTriplets\":0,"
+          + "\"allRecordsChecked\":true,\"recordsWithInvalidTriplets\":11961,"
+          + "\"uniqueOccurrenceIds\":11961,\"recordsMissingOccurrenceId\":0,"
+          + "\"invalidationReason\":null,\"valid\":true},\"genericReport\":null,"
+          + "\"invalidationReason\":null,\"valid\":true},"
+          + "\"pipelineSteps\":[\"DWCA_TO_VERBATIM\"],\"endpointType\":\"DWC_ARCHIVE\","
+          + "\"platform\":\"ALL\"}";
+  private static final long TIMEOUT_MS = 30_000;
+  private static final String STOPPED_RUNNER = "stopped-runner";
+
+  private final PipelinesRerunJobService rerunJobService;
+  private final RegistryPipelinesHistoryTrackingService historyTrackingService;
+  private final RerunJobMapper rerunJobMapper;
+  private final PipelineProcessMapper pipelineProcessMapper;
+  private final InMemoryMessagePublisher messagePublisher;
+  private final TestDataFactory testDataFactory;
+
+  @Autowired
+  public PipelinesRerunJobIT(
+      PipelinesRerunJobService rerunJobService,
+      RegistryPipelinesHistoryTrackingService historyTrackingService,
+      RerunJobMapper rerunJobMapper,
+      PipelineProcessMapper pipelineProcessMapper,
+      InMemoryMessagePublisher messagePublisher,
+      SimplePrincipalProvider principalProvider,
+      EsManageServer esServer,
+      TestDataFactory testDataFactory) {
+    super(principalProvider, esServer);
+    this.rerunJobService = rerunJobService;
+    this.historyTrackingService = historyTrackingService;
+    this.rerunJobMapper = rerunJobMapper;
+    this.pipelineProcessMapper = pipelineProcessMapper;
+    this.messagePublisher = messagePublisher;
+    this.testDataFactory = testDataFactory;
+  }
+
+  @BeforeEach
+  public void clearMessages() {
+    messagePublisher.clear();
+  }
+
+  @Test
+  public void runAllTest() throws Exception {
+    List<UUID> datasetKeys = createDatasets(4);
+    // the last dataset has never been processed by pipelines
+    for (UUID datasetKey : datasetKeys.subList(0, 3)) {
+      addProcessedAttempt(datasetKey);
+    }
+
+    RunPipelineResponse response =
+        historyTrackingService.runLastAttempt(
+            Collections.singleton(StepType.DWCA_TO_VERBATIM),
+            "rerun all",
+            USER,
+            Collections.singletonList(datasetKeys.get(0)),
+            datasetKeys,
+            false);
+    assertEquals(RunPipelineResponse.ResponseStatus.OK, response.getResponseStatus());
+
+    RerunJob job = rerunJobService.list(new PagingRequest()).getResults().get(0);
+    assertTrue(response.getMessage().contains(String.valueOf(job.getKey())));
+
+    job = awaitStatus(job.getKey(), RerunJob.Status.COMPLETED);
+    assertEquals(2, job.getSubmitted());
+    // one excluded and one never processed
+    assertEquals(2, job.getSkipped());
+    assertEquals(0, job.getFailed());
+    assertEquals(datasetKeys.get(datasetKeys.size() - 1), job.getCursor());
+    assertNotNull(job.getFinished());
+    assertEquals(2, messagePublisher.getMessages(PipelinesDwcaMessage.class).size());
+
+    // the reruns are recorded in the history of the datasets
+    PipelineProcess process = historyTrackingService.get(datasetKeys.get(1), 1);
+    assertEquals(2, process.getExecutions().size());
+    process = historyTrackingService.get(datasetKeys.get(0), 1);
+    assertEquals(1, process.getExecutions().size());
+  }
+
+  @Test
+  public void pauseResumeTest() throws Exception {
+    List<UUID> datasetKeys = createDatasets(4);
+    datasetKeys.forEach(this::addProcessedAttempt);
+
+    // a job left running by a stopped instance, which had processed the first dataset
+    RerunJob job = newJob(datasetKeys);
+    rerunJobMapper.create(job);
+    rerunJobMapper.claim(job.getKey(), STOPPED_RUNNER, 0);
+    rerunJobMapper.checkpoint(job.getKey(), STOPPED_RUNNER, datasetKeys.get(0), 1, 0, 0, 0);
+
+    job = rerunJobService.pause(job.getKey());
+    assertEquals(RerunJob.Status.PAUSED, job.getStatus());
+    // pausing twice is harmless
+    assertEquals(RerunJob.Status.PAUSED, rerunJobService.pause(job.getKey()).getStatus());
+
+    rerunJobService.resume(job.getKey());
+    job = awaitStatus(job.getKey(), RerunJob.Status.COMPLETED);
+    assertEquals(4, job.getSubmitted());
+    // the first dataset is not rerun again
+    assertEquals(3, messagePublisher.getMessages(PipelinesDwcaMessage.class).size());
+
+    long key = job.getKey();
+    assertThrows(IllegalArgumentException.class, () -> rerunJobService.pause(key));
+    assertThrows(IllegalArgumentException.class, () -> rerunJobService.cancel(key));
+    assertNull(rerunJobService.pause(-1));
+  }
+
+  @Test
+  public void cancelTest() {
+    List<UUID> datasetKeys = createDatasets(1);
+    RerunJob job = newJob(datasetKeys);
+    rerunJobMapper.create(job);
+
+    job = rerunJobService.cancel(job.getKey());
+    assertEquals(RerunJob.Status.CANCELLED, job.getStatus());
+    assertNotNull(job.getFinished());
+
+    long key = job.getKey();
+    assertThrows(IllegalArgumentException.class, () -> rerunJobService.resume(key));
+
+    // cancelled jobs are not taken over
+    rerunJobService.resumeAbandonedJobs();
+    assertEquals(RerunJob.Status.CANCELLED, rerunJobService.get(key).getStatus());
+    assertTrue(messagePublisher.getMessages().isEmpty());
+  }
+
+  @Test
+  public void takeOverTest() throws Exception {
+    List<UUID> datasetKeys = createDatasets(3);
+    datasetKeys.forEach(this::addProcessedAttempt);
+
+    // a running job whose lease is free, as after the restart of its instance
+    RerunJob job = newJob(datasetKeys);
+    rerunJobMapper.create(job);
+
+    rerunJobService.resumeAbandonedJobs();
+    job = awaitStatus(job.getKey(), RerunJob.Status.COMPLETED);
+    assertEquals(3, job.getSubmitted());
+    assertEquals(3, messagePublisher.getMessages(PipelinesDwcaMessage.class).size());
+  }
+
+  @Test
+  public void leaseOwnerTest() {
+    List<UUID> datasetKeys = createDatasets(1);
+    RerunJob job = newJob(datasetKeys);
+    rerunJobMapper.create(job);
+    long key = job.getKey();
+
+    // the lease of a stopped runner expired and was taken over
+    assertEquals(1, rerunJobMapper.claim(key, STOPPED_RUNNER, 0));
+    assertEquals(1, rerunJobMapper.claim(key, "new-runner", TIMEOUT_MS));
+    assertEquals(0, rerunJobMapper.claim(key, STOPPED_RUNNER, 0));
+
+    // the stopped runner neither stores its progress nor releases the lease of the new one
+    assertEquals(0, rerunJobMapper.checkpoint(key, STOPPED_RUNNER, datasetKeys.get(0), 1, 0, 0, 0));
+    rerunJobMapper.release(key, STOPPED_RUNNER);
+    assertNull(rerunJobMapper.get(key).getCursor());
+    assertTrue(rerunJobMapper.listClaimable().stream().noneMatch(k -> k == key));
+
+    assertEquals(1, rerunJobMapper.checkpoint(key, "new-runner", datasetKeys.get(0), 1, 0, 0, 0));
+    assertEquals(datasetKeys.get(0), rerunJobMapper.get(key).getCursor());
+    rerunJobService.cancel(key);
+  }
+
+  private RerunJob newJob(List<UUID> datasetKeys) {
+    RerunJob job = new RerunJob();
+    job.setSteps(Collections.singletonList(StepType.DWCA_TO_VERBATIM));
+    job.setReason("rerun");
+    job.setCreatedBy(USER);
+    job.setDatasetsToInclude(datasetKeys);
+    return job;
+  }
+
+  /** Creates datasets and returns their keys in the order they are processed by the jobs. */
+  private List<UUID> createDatasets(int count) {
+    Organization organization = testDataFactory.newPersistedOrganization();
+    Installation installation = testDataFactory.newPersistedInstallation(organization.getKey());
+    List<UUID> datasetKeys = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      datasetKeys.add(
+          testDataFactory
+              .newPersistedDataset(organization.getKey(), installation.getKey())
+              .getKey());
+    }
+    Collections.sort(datasetKeys);
+    return datasetKeys;
+  }
+
+  /** Adds a first attempt with a completed DWCA_TO_VERBATIM step to the dataset. */
+  private void addProcessedAttempt(UUID datasetKey) {
+    PipelineProcess process =
+        new PipelineProcess().setDatasetKey(datasetKey).setAttempt(1).setCreatedBy(USER);
+    pipelineProcessMapper.createIfNotExists(process);
+
+    PipelineExecution execution =
+        new PipelineExecution()
+            .setCreatedBy(USER)
+            .setStepsToRun(Collections.singletonList(StepType.DWCA_TO_VERBATIM));
+    pipelineProcessMapper.addPipelineExecution(process.getKey(), execution);
+
+    PipelineStep step =
+        new PipelineStep()
+            .setType(StepType.DWCA_TO_VERBATIM)
+            .setRunner(StepRunner.STANDALONE)
+            .setState(PipelineStep.Status.COMPLETED)
+            .setStarted(LocalDateTime.now())
+            .setFinished(LocalDateTime.now())
+            .setMessage(DWCA_MESSAGE)
+            .setCreatedBy(USER);
+    pipelineProcessMapper.addPipelineStep(execution.getKey(), step);
+  }
+
+  private RerunJob awaitStatus(long key, RerunJob.Status status) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+    RerunJob job = rerunJobService.get(key);
+    while (job.getStatus() != status && System.currentTimeMillis() < deadline) {
+      Thread.sleep(100);
+      job = rerunJobService.get(key);
+    }
+    assertEquals(status, job.getStatus());
+    return job;
+  }
+}
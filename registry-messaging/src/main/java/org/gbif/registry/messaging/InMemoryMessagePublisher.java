@@ -0,0 +1,76 @@
+/*
+ * Copyright 2020 Global Biodiversity Information Facility (GBIF)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gbif.registry.messaging;
+
+import org.gbif.common.messaging.api.Message;
+import org.gbif.common.messaging.api.MessagePublisher;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Collectors;
+
+/**
+ * {@link MessagePublisher} keeping the published messages in memory instead of sending them to a
+ * broker, for tests and local runs without RabbitMQ.
+ */
+public class InMemoryMessagePublisher implements MessagePublisher {
+
+  private final List<Object> messages = new CopyOnWriteArrayList<>();
+
+  @Override
+  public void send(Message message) {
+    messages.add(message);
+  }
+
+  @Override
+  public void send(Message message, boolean persistent) {
+    messages.add(message);
+  }
+
+  @Override
+  public void send(Message message, String exchange) {
+    messages.add(message);
+  }
+
+  @Override
+  public void send(Object message, String exchange, String routingKey) {
+    messages.add(message);
+  }
+
+  @Override
+  public void send(Object message, String exchange, String routingKey, boolean persistent) {
+    messages.add(message);
+  }
+
+  /** Returns the messages published so far, in publication order. */
+  public List<Object> getMessages() {
+    return new ArrayList<>(messages);
+  }
+
+  /** Returns the messages of the given type published so far, in publication order. */
+  public <T> List<T> getMessages(Class<T> type) {
+    return messages.stream().filter(type::isInstance).map(type::cast).collect(Collectors.toList());
+  }
+
+  /** Forgets the messages published so far. */
+  public void clear() {
+    messages.clear();
+  }
+
+  @Override
+  public void close() {}
+}
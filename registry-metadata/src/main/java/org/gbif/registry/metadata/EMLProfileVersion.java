@@ -15,6 +15,8 @@
  */
 package org.gbif.registry.metadata;
 
+import javax.annotation.Nullable;
+
 /** Enum of all GBIF Metadata Profile versions. */
 public enum EMLProfileVersion {
   GBIF_1_0("1.0", "http://rs.gbif.org/schema/eml-gbif-profile/1.0/eml.xsd"),
@@ -39,4 +41,22 @@ public enum EMLProfileVersion {
   public String getSchemaLocation() {
     return schemaLocation;
   }
+
+  /**
+   * @param schemaLocation location of the profile schema or of another schema of the profile, over
+   *     http or https
+   * @return the version with the given schema location or null if there is none
+   */
+  @Nullable
+  public static EMLProfileVersion fromSchemaLocation(String schemaLocation) {
+    String location = schemaLocation.replaceFirst("^https://", "http://");
+    for (EMLProfileVersion version : values()) {
+      String folder =
+          version.schemaLocation.substring(0, version.schemaLocation.lastIndexOf('/') + 1);
+      if (location.startsWith(folder)) {
+        return version;
+      }
+    }
+    return null;
+  }
 }
@@ -15,6 +15,8 @@
  */
 package org.gbif.registry.metadata;
 
+import org.gbif.registry.metadata.validation.SchemaResourceResolver;
+
 import java.io.ByteArrayInputStream;
 import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
@@ -27,12 +29,18 @@ import javax.xml.validation.Validator;
 
 import org.xml.sax.SAXException;
 
-/** GBIF Metadata Profile schema validator utility. */
+/**
+ * GBIF Metadata Profile schema validator utility. Schemas are read from their bundled copies when
+ * available, see {@link SchemaResourceResolver}. Use {@link
+ * org.gbif.registry.metadata.validation.MetadataValidator} to validate concurrently.
+ */
 @NotThreadSafe
 public class EmlValidator {
 
   private static final String SCHEMA_LANG = "http://www.w3.org/2001/XMLSchema";
 
+  private static final SchemaResourceResolver RESOLVER = new SchemaResourceResolver(null, false);
+
   private final Validator validator;
 
   /**
@@ -45,7 +53,8 @@ public class EmlValidator {
    */
   public static EmlValidator newValidator(EMLProfileVersion version) throws SAXException {
     SchemaFactory factory = SchemaFactory.newInstance(SCHEMA_LANG);
-    Schema schema = factory.newSchema(new StreamSource(version.getSchemaLocation()));
+    factory.setResourceResolver(RESOLVER);
+    Schema schema = factory.newSchema(RESOLVER.resolve(version.getSchemaLocation()));
     return new EmlValidator(schema.newValidator());
   }
 
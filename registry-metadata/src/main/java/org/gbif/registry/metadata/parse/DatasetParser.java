@@ -18,24 +18,27 @@ package org.gbif.registry.metadata.parse;
 import org.gbif.api.model.registry.Dataset;
 import org.gbif.api.vocabulary.MetadataType;
 
+import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.LinkedList;
 
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+
 import org.apache.commons.beanutils.ConversionException;
 import org.apache.commons.digester3.Digester;
+import org.apache.commons.digester3.RuleSet;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.xml.sax.Attributes;
-import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
-import org.xml.sax.XMLReader;
 import org.xml.sax.helpers.DefaultHandler;
-import org.xml.sax.helpers.XMLReaderFactory;
 
 import com.google.common.collect.Lists;
-import com.google.common.io.ByteStreams;
 import com.google.common.io.Closeables;
 
 import static org.gbif.api.vocabulary.MetadataType.DC;
@@ -48,20 +51,46 @@ import static org.gbif.api.vocabulary.MetadataType.EML;
  *
  * <p>This parser and its digester rules use the DatasetDelegator class to wrap a dataset and set
  * complex bean components.
+ *
+ * <p>Digesters keep parsing state in their rules and cannot be shared, so every thread reuses its
+ * own digester per parser type instead of building the rules again for each document.
  */
 public class DatasetParser {
 
   private static final Logger LOG = LoggerFactory.getLogger(DatasetParser.class);
 
+  private static final SAXParserFactory SAX_FACTORY = newSaxFactory();
+
+  private static final ThreadLocal<SAXParser> DETECTION_PARSERS =
+      ThreadLocal.withInitial(
+          () -> {
+            try {
+              return SAX_FACTORY.newSAXParser();
+            } catch (ParserConfigurationException | SAXException e) {
+              throw new IllegalStateException("XML Parser not working on this system", e);
+            }
+          });
+
+  private static final ThreadLocal<Digester> EML_DIGESTERS =
+      ThreadLocal.withInitial(() -> newDigester(new EMLRuleSet()));
+
+  private static final ThreadLocal<Digester> DC_DIGESTERS =
+      ThreadLocal.withInitial(() -> newDigester(new DublinCoreRuleSet()));
+
   private DatasetParser() {
     // empty constructor
   }
 
   private static class ParserDetectionHandler extends DefaultHandler {
     private static final String DC_NAMESPACE = "http://purl.org/dc/terms/";
+    private final boolean stopOnDetection;
     private MetadataType parserType;
     private LinkedList<String> path = Lists.newLinkedList();
 
+    private ParserDetectionHandler(boolean stopOnDetection) {
+      this.stopOnDetection = stopOnDetection;
+    }
+
     @Override
     public void startElement(String uri, String localName, String qName, Attributes attributes)
         throws SAXException {
@@ -76,6 +105,12 @@ public class DatasetParser {
       }
 
       path.add(localName);
+
+      // EML wins over DC elements found before, but it needs an eml root element
+      if (stopOnDetection
+          && (parserType == EML || (parserType == DC && !path.getFirst().equals("eml")))) {
+        throw new DetectionCompleteException();
+      }
     }
 
     @Override
@@ -87,17 +122,50 @@ public class DatasetParser {
     }
   }
 
+  /** Thrown to stop parsing once the parser type cannot change anymore. */
+  private static class DetectionCompleteException extends SAXException {
+    private DetectionCompleteException() {
+      super("Parser type detected");
+    }
+  }
+
+  /** Keeps the detection parser from closing a stream that is read again afterwards. */
+  private static class UnclosableInputStream extends FilterInputStream {
+    private UnclosableInputStream(InputStream in) {
+      super(in);
+    }
+
+    @Override
+    public void close() {
+      // the stream is closed by the digester
+    }
+  }
+
   /**
+   * Detects the parser type reading the entire document, so documents that are not well formed
+   * are rejected too.
+   *
    * @return the detected parser type or null
    * @throws java.lang.IllegalArgumentException in case no parser exists for this document
    */
   public static MetadataType detectParserType(InputStream xml) {
+    return detectParserType(xml, false);
+  }
+
+  /**
+   * Detects the parser type reading only the beginning of the document, up to the first element
+   * that determines it. Documents that are not well formed further down are rejected when they
+   * are parsed.
+   */
+  private static MetadataType detectParserType(InputStream xml, boolean stopOnDetection) {
+    ParserDetectionHandler handler = new ParserDetectionHandler(stopOnDetection);
+    SAXParser parser = DETECTION_PARSERS.get();
     try {
-      XMLReader xmlReader = XMLReaderFactory.createXMLReader();
-      ParserDetectionHandler handler = new ParserDetectionHandler();
-      xmlReader.setContentHandler(handler);
-      InputSource inputSource = new InputSource(xml);
-      xmlReader.parse(inputSource);
+      try {
+        parser.parse(xml, handler);
+      } catch (DetectionCompleteException e) {
+        // the remaining document is skipped
+      }
       if (handler.parserType != null) {
         return handler.parserType;
       }
@@ -106,6 +174,8 @@ public class DatasetParser {
       LOG.error("Failed to SAX parse a document for parser type detection", e);
     } catch (IOException e) {
       LOG.warn("Failed to read metadata document for parser type detection", e);
+    } finally {
+      parser.reset();
     }
     throw new IllegalArgumentException(
         "No parser found for this metadata document. Only EML or DC supported");
@@ -121,10 +191,18 @@ public class DatasetParser {
    * @throws IllegalArgumentException If the XML is not well formed or is not understood
    */
   public static Dataset build(InputStream xml) throws IOException {
-    // buffer entire stream first. We need it several times
-    final byte[] data = ByteStreams.toByteArray(xml);
-    // detect the parser type
-    return parse(detectParserType(new ByteArrayInputStream(data)), new ByteArrayInputStream(data));
+    // only the beginning of the document read to detect the parser type is kept to read it again
+    BufferedInputStream buffered = new BufferedInputStream(xml);
+    buffered.mark(Integer.MAX_VALUE);
+    MetadataType type;
+    try {
+      type = detectParserType(new UnclosableInputStream(buffered), true);
+    } catch (IllegalArgumentException e) {
+      Closeables.closeQuietly(buffered);
+      throw e;
+    }
+    buffered.reset();
+    return parse(type, buffered);
   }
 
   // TODO: 05/04/2020 remove another one
@@ -138,29 +216,31 @@ public class DatasetParser {
    */
   public static Dataset build(byte[] data) throws IOException {
     // detect the parser type
-    return parse(detectParserType(new ByteArrayInputStream(data)), new ByteArrayInputStream(data));
+    return parse(
+        detectParserType(new ByteArrayInputStream(data), true), new ByteArrayInputStream(data));
   }
 
   public static Dataset parse(MetadataType type, InputStream xml) throws IOException {
-    Digester digester = new Digester();
-    digester.setNamespaceAware(true);
-
     // add digester rules based on parser type
+    ThreadLocal<Digester> digesters = null;
     if (type == EML) {
       LOG.debug("Parsing EML document");
-      digester.addRuleSet(new EMLRuleSet());
+      digesters = EML_DIGESTERS;
     } else if (type == DC) {
       LOG.debug("Parsing DC document");
-      digester.addRuleSet(new DublinCoreRuleSet());
+      digesters = DC_DIGESTERS;
     }
+    Digester digester = digesters != null ? digesters.get() : newDigester(null);
 
     // push the Delegating object onto the stack
     DatasetWrapper delegator = new DatasetWrapper();
     digester.push(delegator);
 
     // now parse and return the dataset
+    boolean completed = false;
     try {
       digester.parse(xml);
+      completed = true;
     } catch (ConversionException e) {
       // swallow
     } catch (SAXException e) {
@@ -172,8 +252,32 @@ public class DatasetParser {
     } finally {
       delegator.postProcess();
       Closeables.closeQuietly(xml);
+      if (digesters != null) {
+        if (completed) {
+          digester.clear();
+          digester.resetRoot();
+        } else {
+          // an interrupted parse can leave state behind in the rules, start over with new ones
+          digesters.remove();
+        }
+      }
     }
 
     return delegator.getTarget();
   }
+
+  private static Digester newDigester(RuleSet ruleSet) {
+    Digester digester = new Digester();
+    digester.setNamespaceAware(true);
+    if (ruleSet != null) {
+      digester.addRuleSet(ruleSet);
+    }
+    return digester;
+  }
+
+  private static SAXParserFactory newSaxFactory() {
+    SAXParserFactory factory = SAXParserFactory.newInstance();
+    factory.setNamespaceAware(true);
+    return factory;
+  }
 }
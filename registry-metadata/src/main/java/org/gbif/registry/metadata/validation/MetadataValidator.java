@@ -0,0 +1,257 @@
+/*
+ * Copyright 2020 Global Biodiversity Information Facility (GBIF)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gbif.registry.metadata.validation;
+
+import org.gbif.registry.metadata.EMLProfileVersion;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+import javax.xml.XMLConstants;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.transform.stream.StreamSource;
+import javax.xml.validation.Schema;
+import javax.xml.validation.SchemaFactory;
+import javax.xml.validation.Validator;
+
+import org.xml.sax.ErrorHandler;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXNotRecognizedException;
+import org.xml.sax.SAXNotSupportedException;
+import org.xml.sax.SAXParseException;
+
+/**
+ * Validates metadata documents against their XML schemas. This class is thread safe.
+ *
+ * <p>Each schema is compiled once, with its imports resolved by a {@link SchemaResourceResolver},
+ * and shared by all threads. Validators are not thread safe, so every thread keeps its own
+ * validator per schema. A schema which cannot be loaded is not tried again for a minute, so a
+ * missing schema does not cause a download attempt for every document.
+ */
+public class MetadataValidator {
+
+  private static final EMLProfileVersion LATEST_EML_PROFILE =
+      EMLProfileVersion.values()[EMLProfileVersion.values().length - 1];
+
+  private static final XMLInputFactory XML_INPUT_FACTORY = newXmlInputFactory();
+
+  private static final long RETRY_FAILED_MS = TimeUnit.MINUTES.toMillis(1);
+
+  private final SchemaResourceResolver resolver;
+  private final int maxErrors;
+  private final Map<String, LoadedSchema> schemas = new ConcurrentHashMap<>();
+  private final ThreadLocal<Map<String, Validator>> validators =
+      ThreadLocal.withInitial(HashMap::new);
+
+  /**
+   * @param resolver resolves the schemas and their imports
+   * @param maxErrors number of errors after which validation of a document stops
+   */
+  public MetadataValidator(SchemaResourceResolver resolver, int maxErrors) {
+    this.resolver = resolver;
+    this.maxErrors = maxErrors;
+  }
+
+  /**
+   * Validates an EML document against the GBIF metadata profile version given in its
+   * xsi:schemaLocation, or the latest version if it does not declare a known one.
+   *
+   * @throws IllegalStateException if the schema cannot be loaded
+   */
+  public ValidationResult validateEml(byte[] document) {
+    return validate(detectEmlProfileVersion(document).getSchemaLocation(), document);
+  }
+
+  /**
+   * Validates a document against the schema at the given location.
+   *
+   * @throws IllegalStateException if the schema cannot be loaded
+   */
+  public ValidationResult validate(String schemaLocation, byte[] document) {
+    Validator validator =
+        validators.get().computeIfAbsent(schemaLocation, l -> newValidator(getSchema(l)));
+    ErrorCollector errors = new ErrorCollector(maxErrors);
+    validator.setErrorHandler(errors);
+    try {
+      validator.validate(new StreamSource(new ByteArrayInputStream(document)));
+    } catch (ErrorCollector.LimitReachedException e) {
+      // the remaining document is skipped
+    } catch (SAXException e) {
+      // fatal errors are collected already
+    } catch (IOException e) {
+      errors.errors.add(new ValidationError(-1, -1, e.getMessage()));
+    } finally {
+      validator.setErrorHandler(null);
+    }
+    return new ValidationResult(schemaLocation, errors.errors, errors.truncated);
+  }
+
+  /**
+   * @return the GBIF metadata profile version given in the xsi:schemaLocation of the root element,
+   *     or the latest version if there is none
+   */
+  static EMLProfileVersion detectEmlProfileVersion(byte[] document) {
+    try {
+      XMLStreamReader reader =
+          XML_INPUT_FACTORY.createXMLStreamReader(new ByteArrayInputStream(document));
+      try {
+        while (reader.hasNext()) {
+          if (reader.next() == XMLStreamConstants.START_ELEMENT) {
+            String locations =
+                reader.getAttributeValue(
+                    XMLConstants.W3C_XML_SCHEMA_INSTANCE_NS_URI, "schemaLocation");
+            if (locations != null) {
+              // pairs of namespace and location
+              for (String location : locations.trim().split("\\s+")) {
+                EMLProfileVersion version = EMLProfileVersion.fromSchemaLocation(location);
+                if (version != null) {
+                  return version;
+                }
+              }
+            }
+            break;
+          }
+        }
+      } finally {
+        reader.close();
+      }
+    } catch (XMLStreamException e) {
+      // reported by the validation
+    }
+    return LATEST_EML_PROFILE;
+  }
+
+  private Schema getSchema(String location) {
+    LoadedSchema loaded = schemas.get(location);
+    if (loaded == null || loaded.isRetryDue()) {
+      // loaded outside of the map as it may download the schema, threads loading the same schema
+      // at the same time keep the first one compiled
+      loaded =
+          schemas.merge(
+              location,
+              loadSchema(location),
+              (old, loadedAgain) -> old.isRetryDue() ? loadedAgain : old);
+    }
+    return loaded.get();
+  }
+
+  private LoadedSchema loadSchema(String location) {
+    SchemaFactory factory = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
+    factory.setResourceResolver(resolver);
+    try {
+      return new LoadedSchema(factory.newSchema(resolver.resolve(location)), null);
+    } catch (SAXException | IllegalStateException e) {
+      return new LoadedSchema(
+          null, new IllegalStateException("Schema " + location + " cannot be loaded", e));
+    }
+  }
+
+  private static Validator newValidator(Schema schema) {
+    Validator validator = schema.newValidator();
+    try {
+      // documents must not make the validator load anything, only the schema does
+      validator.setProperty(XMLConstants.ACCESS_EXTERNAL_DTD, "");
+      validator.setProperty(XMLConstants.ACCESS_EXTERNAL_SCHEMA, "");
+    } catch (SAXNotRecognizedException | SAXNotSupportedException e) {
+      throw new IllegalStateException("XML validator not working on this system", e);
+    }
+    return validator;
+  }
+
+  private static XMLInputFactory newXmlInputFactory() {
+    XMLInputFactory factory = XMLInputFactory.newInstance();
+    factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+    factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    return factory;
+  }
+
+  /** A compiled schema or the failure to load it. */
+  private static class LoadedSchema {
+
+    @Nullable private final Schema schema;
+    @Nullable private final IllegalStateException failure;
+    private final long loaded = System.currentTimeMillis();
+
+    private LoadedSchema(@Nullable Schema schema, @Nullable IllegalStateException failure) {
+      this.schema = schema;
+      this.failure = failure;
+    }
+
+    private boolean isRetryDue() {
+      return failure != null && System.currentTimeMillis() - loaded >= RETRY_FAILED_MS;
+    }
+
+    private Schema get() {
+      if (failure != null) {
+        throw new IllegalStateException(failure.getMessage(), failure.getCause());
+      }
+      return schema;
+    }
+  }
+
+  /** Collects errors and fatal errors, ignoring warnings. */
+  private static class ErrorCollector implements ErrorHandler {
+
+    private final int maxErrors;
+    private final List<ValidationError> errors = new ArrayList<>();
+    private boolean truncated;
+
+    private ErrorCollector(int maxErrors) {
+      this.maxErrors = maxErrors;
+    }
+
+    @Override
+    public void warning(SAXParseException exception) {
+      // not a violation
+    }
+
+    @Override
+    public void error(SAXParseException exception) throws SAXException {
+      add(exception.getLineNumber(), exception.getColumnNumber(), exception.getMessage());
+    }
+
+    @Override
+    public void fatalError(SAXParseException exception) throws SAXException {
+      add(exception.getLineNumber(), exception.getColumnNumber(), exception.getMessage());
+      throw exception;
+    }
+
+    private void add(int line, int column, String message) throws LimitReachedException {
+      if (errors.size() >= maxErrors) {
+        truncated = true;
+        throw new LimitReachedException();
+      }
+      errors.add(new ValidationError(line, column, message));
+    }
+
+    /** Thrown to stop validating once the maximum number of errors has been collected. */
+    private static class LimitReachedException extends SAXException {
+      private LimitReachedException() {
+        super("Maximum number of validation errors reached");
+      }
+    }
+  }
+}
@@ -0,0 +1,248 @@
+/*
+ * Copyright 2020 Global Biodiversity Information Facility (GBIF)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gbif.registry.metadata.validation;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import javax.annotation.Nullable;
+import javax.xml.transform.stream.StreamSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.ls.LSInput;
+import org.w3c.dom.ls.LSResourceResolver;
+
+import com.google.common.io.ByteStreams;
+
+/**
+ * Resolves XML schemas from local copies instead of downloading them, so they can be compiled
+ * without network access.
+ *
+ * <p>A schema is looked up by the host and path of its remote location, first in an optional local
+ * directory and then in a classpath folder. For example {@code
+ * http://rs.gbif.org/schema/eml-gbif-profile/1.1/eml.xsd} is read from {@code
+ * rs.gbif.org/schema/eml-gbif-profile/1.1/eml.xsd}. Imports and includes are resolved against the
+ * remote location of the importing schema, so a mirrored schema tree can be used unchanged. Local
+ * copies are read in full and closed straight away, so the parser never holds them open.
+ *
+ * <p>Schemas without a local copy are downloaded, unless the resolver is offline, in which case
+ * loading them fails.
+ */
+public class SchemaResourceResolver implements LSResourceResolver {
+
+  private static final Logger LOG = LoggerFactory.getLogger(SchemaResourceResolver.class);
+
+  /** Classpath folder with the bundled schemas. */
+  public static final String CLASSPATH_FOLDER = "schemas/";
+
+  @Nullable private final Path directory;
+  private final boolean offline;
+
+  /**
+   * @param directory local copies of the schemas, taking precedence over the bundled ones
+   * @param offline true to fail for schemas without a local copy instead of downloading them
+   */
+  public SchemaResourceResolver(@Nullable Path directory, boolean offline) {
+    this.directory = directory;
+    this.offline = offline;
+  }
+
+  /**
+   * Returns the schema at the given location, read from its local copy if there is one.
+   *
+   * @throws IllegalStateException if there is no local copy and the resolver is offline
+   */
+  public StreamSource resolve(String location) {
+    byte[] localCopy = readLocalCopy(URI.create(location));
+    if (localCopy != null) {
+      return new StreamSource(new ByteArrayInputStream(localCopy), location);
+    }
+    checkOnline(location);
+    return new StreamSource(location);
+  }
+
+  @Override
+  public LSInput resolveResource(
+      String type, String namespaceURI, String publicId, String systemId, String baseURI) {
+    if (systemId == null) {
+      return null;
+    }
+
+    URI location;
+    try {
+      location = baseURI != null ? URI.create(baseURI).resolve(systemId) : URI.create(systemId);
+    } catch (IllegalArgumentException e) {
+      // left to the parser
+      return null;
+    }
+
+    byte[] localCopy = readLocalCopy(location);
+    if (localCopy == null) {
+      checkOnline(location.toString());
+      // the parser downloads it
+      return null;
+    }
+    return new SchemaInput(
+        publicId, location.toString(), baseURI, new ByteArrayInputStream(localCopy));
+  }
+
+  @Nullable
+  private byte[] readLocalCopy(URI location) {
+    String scheme = location.getScheme();
+    if (location.getHost() == null
+        || location.getPath() == null
+        || !("http".equalsIgnoreCase(scheme) || "https".equalsIgnoreCase(scheme))) {
+      return null;
+    }
+    String path = location.getHost() + location.normalize().getPath();
+    if (path.contains("..")) {
+      return null;
+    }
+
+    try {
+      if (directory != null) {
+        Path file = directory.resolve(path);
+        if (Files.isRegularFile(file)) {
+          LOG.debug("Schema {} read from {}", location, file);
+          return Files.readAllBytes(file);
+        }
+      }
+
+      try (InputStream bundled =
+          SchemaResourceResolver.class
+              .getClassLoader()
+              .getResourceAsStream(CLASSPATH_FOLDER + path)) {
+        if (bundled == null) {
+          return null;
+        }
+        LOG.debug("Schema {} read from the classpath", location);
+        return ByteStreams.toByteArray(bundled);
+      }
+    } catch (IOException e) {
+      throw new IllegalStateException("Local copy of schema " + location + " cannot be read", e);
+    }
+  }
+
+  private void checkOnline(String location) {
+    if (offline) {
+      throw new IllegalStateException(
+          "No local copy of schema " + location + " and downloading schemas is disabled");
+    }
+    LOG.warn("No local copy of schema {}, downloading it", location);
+  }
+
+  /** Schema read from a local copy, identified by its remote location. */
+  private static class SchemaInput implements LSInput {
+
+    private String publicId;
+    private String systemId;
+    private String baseURI;
+    private InputStream byteStream;
+
+    private SchemaInput(String publicId, String systemId, String baseURI, InputStream byteStream) {
+      this.publicId = publicId;
+      this.systemId = systemId;
+      this.baseURI = baseURI;
+      this.byteStream = byteStream;
+    }
+
+    @Override
+    public Reader getCharacterStream() {
+      return null;
+    }
+
+    @Override
+    public void setCharacterStream(Reader characterStream) {
+      // only byte streams are used
+    }
+
+    @Override
+    public InputStream getByteStream() {
+      return byteStream;
+    }
+
+    @Override
+    public void setByteStream(InputStream byteStream) {
+      this.byteStream = byteStream;
+    }
+
+    @Override
+    public String getStringData() {
+      return null;
+    }
+
+    @Override
+    public void setStringData(String stringData) {
+      // only byte streams are used
+    }
+
+    @Override
+    public String getSystemId() {
+      return systemId;
+    }
+
+    @Override
+    public void setSystemId(String systemId) {
+      this.systemId = systemId;
+    }
+
+    @Override
+    public String getPublicId() {
+      return publicId;
+    }
+
+    @Override
+    public void setPublicId(String publicId) {
+      this.publicId = publicId;
+    }
+
+    @Override
+    public String getBaseURI() {
+      return baseURI;
+    }
+
+    @Override
+    public void setBaseURI(String baseURI) {
+      this.baseURI = baseURI;
+    }
+
+    @Override
+    public String getEncoding() {
+      return null;
+    }
+
+    @Override
+    public void setEncoding(String encoding) {
+      // detected from the document
+    }
+
+    @Override
+    public boolean getCertifiedText() {
+      return false;
+    }
+
+    @Override
+    public void setCertifiedText(boolean certifiedText) {
+      // not used by schema loading
+    }
+  }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2020 Global Biodiversity Information Facility (GBIF)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gbif.registry.metadata.validation;
+
+import java.util.Objects;
+import java.util.StringJoiner;
+
+/** A schema violation found in a metadata document. */
+public class ValidationError {
+
+  private final int line;
+  private final int column;
+  private final String message;
+
+  public ValidationError(int line, int column, String message) {
+    this.line = line;
+    this.column = column;
+    this.message = message;
+  }
+
+  /** @return line of the violation in the document or -1 if unknown */
+  public int getLine() {
+    return line;
+  }
+
+  /** @return column of the violation in the document or -1 if unknown */
+  public int getColumn() {
+    return column;
+  }
+
+  public String getMessage() {
+    return message;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    ValidationError that = (ValidationError) o;
+    return line == that.line && column == that.column && Objects.equals(message, that.message);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(line, column, message);
+  }
+
+  @Override
+  public String toString() {
+    return new StringJoiner(", ", ValidationError.class.getSimpleName() + "[", "]")
+        .add("line=" + line)
+        .add("column=" + column)
+        .add("message='" + message + "'")
+        .toString();
+  }
+}
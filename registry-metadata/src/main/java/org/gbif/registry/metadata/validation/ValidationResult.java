@@ -0,0 +1,62 @@
+/*
+ * Copyright 2020 Global Biodiversity Information Facility (GBIF)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gbif.registry.metadata.validation;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.StringJoiner;
+
+/** Outcome of the schema validation of a metadata document. */
+public class ValidationResult {
+
+  private final String schemaLocation;
+  private final List<ValidationError> errors;
+  private final boolean truncated;
+
+  public ValidationResult(String schemaLocation, List<ValidationError> errors, boolean truncated) {
+    this.schemaLocation = schemaLocation;
+    this.errors = Collections.unmodifiableList(errors);
+    this.truncated = truncated;
+  }
+
+  /** @return location of the schema the document was validated against */
+  public String getSchemaLocation() {
+    return schemaLocation;
+  }
+
+  /** @return the violations in document order, empty for a valid document */
+  public List<ValidationError> getErrors() {
+    return errors;
+  }
+
+  /** @return true if validation stopped after the maximum number of errors */
+  public boolean isTruncated() {
+    return truncated;
+  }
+
+  public boolean isValid() {
+    return errors.isEmpty();
+  }
+
+  @Override
+  public String toString() {
+    return new StringJoiner(", ", ValidationResult.class.getSimpleName() + "[", "]")
+        .add("schemaLocation='" + schemaLocation + "'")
+        .add("errors=" + errors)
+        .add("truncated=" + truncated)
+        .toString();
+  }
+}
@@ -0,0 +1,20 @@
+#!/bin/bash -eu
+#
+# Copies the GBIF metadata profile schemas into the source tree, where they are committed and
+# bundled as schemas/<host>/<path>, so EML documents are validated without downloading them.
+#
+# Run it from any directory when a profile version is added or a published schema changes, and
+# commit the result. The build itself never downloads the schemas.
+
+SCHEMAS=$(cd "$(dirname "$0")/../resources" && pwd)/schemas
+VERSIONS="1.0 1.0.1 1.0.2 1.1"
+FILES="eml.xsd dc.xsd xml.xsd"
+
+for version in $VERSIONS; do
+  dir=$SCHEMAS/rs.gbif.org/schema/eml-gbif-profile/$version
+  mkdir -p "$dir"
+  for file in $FILES; do
+    curl --fail --silent --show-error --location \
+      --output "$dir/$file" "https://rs.gbif.org/schema/eml-gbif-profile/$version/$file"
+  done
+done
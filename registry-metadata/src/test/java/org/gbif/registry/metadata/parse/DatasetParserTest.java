@@ -40,6 +40,7 @@ import org.gbif.registry.metadata.EMLWriter;
 import org.gbif.registry.metadata.EmlValidator;
 import org.gbif.utils.file.FileUtils;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.StringReader;
@@ -50,14 +51,21 @@ import java.net.URISyntaxException;
 import java.net.URL;
 import java.nio.charset.Charset;
 import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.List;
 import java.util.TimeZone;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.commons.io.input.ReaderInputStream;
 import org.junit.Test;
 
+import com.google.common.io.ByteStreams;
+
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
@@ -1016,4 +1024,54 @@ public class DatasetParserTest {
             FileUtils.classpathStream("eml/3920856d-4923-4276-ae0b-e8b3478df276.xml"));
     assertEquals(License.CC0_1_0, dataset.getLicense());
   }
+
+  @Test
+  public void testBuildReusesDigesterAfterFailure() throws IOException {
+    byte[] document = ByteStreams.toByteArray(FileUtils.classpathStream("eml/ipt_eml.xml"));
+    Dataset expected = DatasetParser.build(document);
+
+    // interrupted parses must not leave anything behind for the next document on this thread
+    DatasetParser.parse(MetadataType.EML, FileUtils.classpathStream("eml/sample-breaking.xml"));
+    try {
+      DatasetParser.build(FileUtils.classpathStream("dc/dc_broken.xml"));
+      fail("IllegalArgumentException expected for a broken document");
+    } catch (IllegalArgumentException e) {
+
+    }
+
+    assertEquals(expected, DatasetParser.build(document));
+    assertEquals(expected, DatasetParser.build(new ByteArrayInputStream(document)));
+  }
+
+  @Test
+  public void testConcurrentBuild() throws Exception {
+    List<String> files =
+        Arrays.asList(
+            "eml/ipt_eml.xml",
+            "eml/download_metadata.xml",
+            "eml/worms_eml2.1.xml",
+            "eml-metadata-profile/sample4-v1.1.xml",
+            "dc/worms_dc.xml");
+    List<Dataset> expected = new ArrayList<>();
+    List<byte[]> documents = new ArrayList<>();
+    for (String file : files) {
+      byte[] document = ByteStreams.toByteArray(FileUtils.classpathStream(file));
+      documents.add(document);
+      expected.add(DatasetParser.build(document));
+    }
+
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<Dataset>> results = new ArrayList<>();
+      for (int i = 0; i < 100; i++) {
+        byte[] document = documents.get(i % documents.size());
+        results.add(executor.submit(() -> DatasetParser.build(document)));
+      }
+      for (int i = 0; i < results.size(); i++) {
+        assertEquals(expected.get(i % documents.size()), results.get(i).get());
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
 }
@@ -0,0 +1,203 @@
+/*
+ * Copyright 2020 Global Biodiversity Information Facility (GBIF)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gbif.registry.metadata.validation;
+
+import org.gbif.registry.metadata.EMLProfileVersion;
+import org.gbif.utils.file.FileUtils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.xml.transform.stream.StreamSource;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.io.ByteStreams;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class MetadataValidatorTest {
+
+  // bundled in the test resources under schemas/example.org/schema/test/1.0, including types.xsd
+  private static final String SCHEMA = "http://example.org/schema/test/1.0/document.xsd";
+
+  private static final String VALID =
+      "<document xmlns=\"http://example.org/schema/test/1.0\">\n"
+          + "  <title>Test</title>\n"
+          + "  <year>2020</year>\n"
+          + "</document>";
+
+  private static final String INVALID =
+      "<document xmlns=\"http://example.org/schema/test/1.0\">\n"
+          + "  <year>1</year>\n"
+          + "  <year>2</year>\n"
+          + "  <year>3</year>\n"
+          + "</document>";
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  private final MetadataValidator validator =
+      new MetadataValidator(new SchemaResourceResolver(null, true), 100);
+
+  @Test
+  public void testValidDocument() {
+    ValidationResult result = validator.validate(SCHEMA, bytes(VALID));
+    assertTrue(result.isValid());
+    assertEquals(SCHEMA, result.getSchemaLocation());
+  }
+
+  @Test
+  public void testInvalidDocument() {
+    ValidationResult result = validator.validate(SCHEMA, bytes(INVALID));
+    assertFalse(result.isValid());
+    assertFalse(result.isTruncated());
+
+    // the missing title, then the value and type of every year
+    assertEquals(7, result.getErrors().size());
+    ValidationError error = result.getErrors().get(0);
+    assertEquals(2, error.getLine());
+    assertEquals(9, error.getColumn());
+    assertTrue(error.getMessage().contains("title"));
+    assertEquals(4, result.getErrors().get(6).getLine());
+  }
+
+  @Test
+  public void testMaxErrors() {
+    MetadataValidator limited = new MetadataValidator(new SchemaResourceResolver(null, true), 2);
+    ValidationResult result = limited.validate(SCHEMA, bytes(INVALID));
+    assertEquals(2, result.getErrors().size());
+    assertTrue(result.isTruncated());
+  }
+
+  @Test
+  public void testDocumentNotWellFormed() {
+    ValidationResult result = validator.validate(SCHEMA, bytes("<document>"));
+    assertFalse(result.isValid());
+    // validation stops at the fatal error
+    ValidationError last = result.getErrors().get(result.getErrors().size() - 1);
+    assertEquals(1, last.getLine());
+    assertTrue(last.getMessage().contains("must start and end"));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testOfflineWithoutLocalCopy() {
+    validator.validate("http://example.org/schema/test/1.0/missing.xsd", bytes(VALID));
+  }
+
+  @Test
+  public void testFailureIsNotRetriedForEveryDocument() {
+    AtomicInteger resolved = new AtomicInteger();
+    SchemaResourceResolver resolver =
+        new SchemaResourceResolver(null, true) {
+          @Override
+          public StreamSource resolve(String location) {
+            resolved.incrementAndGet();
+            return super.resolve(location);
+          }
+        };
+    MetadataValidator failing = new MetadataValidator(resolver, 100);
+    String missing = "http://example.org/schema/test/1.0/missing.xsd";
+
+    for (int i = 0; i < 3; i++) {
+      try {
+        failing.validate(missing, bytes(VALID));
+        fail("Missing schema loaded");
+      } catch (IllegalStateException e) {
+        assertTrue(e.getMessage().contains(missing));
+      }
+    }
+    assertEquals(1, resolved.get());
+  }
+
+  @Test
+  public void testBundledEmlProfiles() {
+    // the profile schemas and their imports are bundled, so they are loaded offline
+    for (EMLProfileVersion version : EMLProfileVersion.values()) {
+      ValidationResult result = validator.validate(version.getSchemaLocation(), bytes(VALID));
+      assertEquals(version.getSchemaLocation(), result.getSchemaLocation());
+      assertFalse(result.isValid());
+    }
+  }
+
+  @Test
+  public void testLocalDirectoryTakesPrecedence() throws IOException {
+    // a copy of the schema accepting any year
+    Path schemas = folder.newFolder("schemas").toPath();
+    Path copy = schemas.resolve("example.org/schema/test/1.0");
+    Files.createDirectories(copy);
+    Files.write(
+        copy.resolve("document.xsd"),
+        bytes(
+            "<xs:schema xmlns:xs=\"http://www.w3.org/2001/XMLSchema\""
+                + " targetNamespace=\"http://example.org/schema/test/1.0\">"
+                + "<xs:element name=\"document\"/></xs:schema>"));
+
+    MetadataValidator local = new MetadataValidator(new SchemaResourceResolver(schemas, true), 100);
+    assertTrue(local.validate(SCHEMA, bytes(INVALID)).isValid());
+  }
+
+  @Test
+  public void testConcurrentValidation() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<ValidationResult>> results = new ArrayList<>();
+      for (int i = 0; i < 100; i++) {
+        byte[] document = bytes(i % 2 == 0 ? VALID : INVALID);
+        results.add(executor.submit(() -> validator.validate(SCHEMA, document)));
+      }
+      for (int i = 0; i < results.size(); i++) {
+        ValidationResult result = results.get(i).get();
+        assertEquals(i % 2 == 0 ? 0 : 7, result.getErrors().size());
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testDetectEmlProfileVersion() throws IOException {
+    assertEquals(EMLProfileVersion.GBIF_1_0, detect("eml-metadata-profile/sample1-v1.0.xml"));
+    // points to eml-gbif-profile.xsd instead of eml.xsd
+    assertEquals(EMLProfileVersion.GBIF_1_0_1, detect("eml-metadata-profile/sample2-v1.0.1.xml"));
+    assertEquals(EMLProfileVersion.GBIF_1_1, detect("eml-metadata-profile/sample4-v1.1.xml"));
+    // no schema location
+    assertEquals(EMLProfileVersion.GBIF_1_1, detect("eml/ipt_eml.xml"));
+    // not well formed
+    assertEquals(EMLProfileVersion.GBIF_1_1, detect("dc/dc_broken.xml"));
+  }
+
+  private static EMLProfileVersion detect(String file) throws IOException {
+    return MetadataValidator.detectEmlProfileVersion(
+        ByteStreams.toByteArray(FileUtils.classpathStream(file)));
+  }
+
+  private static byte[] bytes(String document) {
+    return document.getBytes(StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2020 Global Biodiversity Information Facility (GBIF)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gbif.registry.oaipmh;
+
+import org.dspace.xoai.dataprovider.exceptions.BadResumptionToken;
+import org.dspace.xoai.model.oaipmh.ResumptionToken;
+import org.dspace.xoai.services.api.ResumptionTokenFormat;
+import org.dspace.xoai.services.impl.SimpleResumptionTokenFormat;
+
+/**
+ * Resumption tokens of the {@link SimpleResumptionTokenFormat} followed by the {@link OaipmhCursor}
+ * of the next page, e.g. {@code MToxMDB8Mjp8Mzp8NDp8NTpvYWlfZGM=.100_1602835200000_<uuid>}.
+ *
+ * <p>The cursor lets the {@link OaipmhItemRepository} read the next page directly after the last
+ * record of the previous one instead of skipping offset rows. Tokens without a cursor, as issued
+ * before, remain valid and are served using their offset.
+ */
+public class KeysetResumptionTokenFormat implements ResumptionTokenFormat {
+
+  private static final char CURSOR_SEPARATOR = '.';
+
+  private final ResumptionTokenFormat delegate = new SimpleResumptionTokenFormat();
+
+  @Override
+  public ResumptionToken.Value parse(String resumptionToken) throws BadResumptionToken {
+    String token = resumptionToken;
+    OaipmhCursor cursor = null;
+    int separator = token != null ? token.lastIndexOf(CURSOR_SEPARATOR) : -1;
+    if (separator >= 0) {
+      cursor = OaipmhCursor.decode(token.substring(separator + 1));
+      if (cursor == null) {
+        throw new BadResumptionToken();
+      }
+      token = token.substring(0, separator);
+    }
+
+    ResumptionToken.Value value = delegate.parse(token);
+
+    OaipmhRequestContext context = OaipmhRequestContext.current();
+    if (context != null) {
+      if (value.getMetadataPrefix() != null) {
+        context.setMetadataPrefix(value.getMetadataPrefix());
+      }
+      // a cursor not matching the offset of the token cannot be trusted
+      if (cursor != null && cursor.getOffset() != value.getOffset()) {
+        throw new BadResumptionToken();
+      }
+      context.setCursor(cursor);
+    }
+    return value;
+  }
+
+  @Override
+  public String format(ResumptionToken.Value resumptionToken) {
+    String token = delegate.format(resumptionToken);
+    OaipmhRequestContext context = OaipmhRequestContext.current();
+    OaipmhCursor nextCursor =
+        context != null ? context.getNextCursor(resumptionToken.getOffset()) : null;
+    return nextCursor != null ? token + CURSOR_SEPARATOR + nextCursor.encode() : token;
+  }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2020 Global Biodiversity Information Facility (GBIF)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gbif.registry.oaipmh;
+
+import java.util.Date;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.annotation.Nullable;
+
+/**
+ * Position of a page in a list of records, given by the (datestamp, key) of the last record of the
+ * previous page. The offset of the page is kept to match the cursor with the XOAI paging.
+ */
+public final class OaipmhCursor {
+
+  private static final Pattern CURSOR_PATTERN =
+      Pattern.compile("(\\d+)_(\\d+)_([0-9a-fA-F]{8}(?:-[0-9a-fA-F]{4}){3}-[0-9a-fA-F]{12})");
+
+  private final long offset;
+  private final Date datestamp;
+  private final UUID key;
+
+  public OaipmhCursor(long offset, Date datestamp, UUID key) {
+    this.offset = offset;
+    this.datestamp = datestamp;
+    this.key = key;
+  }
+
+  public long getOffset() {
+    return offset;
+  }
+
+  public Date getDatestamp() {
+    return datestamp;
+  }
+
+  public UUID getKey() {
+    return key;
+  }
+
+  /** Encodes the cursor using URL safe characters only. */
+  public String encode() {
+    return offset + "_" + datestamp.getTime() + "_" + key;
+  }
+
+  /** Decodes an encoded cursor, returning null if the value is not a cursor. */
+  @Nullable
+  public static OaipmhCursor decode(@Nullable String value) {
+    if (value == null) {
+      return null;
+    }
+    Matcher matcher = CURSOR_PATTERN.matcher(value);
+    if (!matcher.matches()) {
+      return null;
+    }
+    try {
+      return new OaipmhCursor(
+          Long.parseLong(matcher.group(1)),
+          new Date(Long.parseLong(matcher.group(2))),
+          UUID.fromString(matcher.group(3)));
+    } catch (IllegalArgumentException e) {
+      return null;
+    }
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    OaipmhCursor that = (OaipmhCursor) o;
+    return offset == that.offset
+        && Objects.equals(datestamp, that.datestamp)
+        && Objects.equals(key, that.key);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(offset, datestamp, key);
+  }
+
+  @Override
+  public String toString() {
+    return encode();
+  }
+}
@@ -28,6 +28,7 @@ import org.dspace.xoai.dataprovider.builder.OAIRequestParametersBuilder;
 import org.dspace.xoai.dataprovider.parameters.OAIRequest;
 import org.dspace.xoai.model.oaipmh.OAIPMH;
 import org.dspace.xoai.services.api.DateProvider;
+import org.dspace.xoai.services.api.ResumptionTokenFormat;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
@@ -42,10 +43,15 @@ public class OaipmhEndpoint {
 
   private final DateProvider dateProvider;
   private final DataProvider dataProvider;
+  private final ResumptionTokenFormat resumptionTokenFormat;
 
-  public OaipmhEndpoint(DateProvider dateProvider, DataProvider dataProvider) {
+  public OaipmhEndpoint(
+      DateProvider dateProvider,
+      DataProvider dataProvider,
+      ResumptionTokenFormat resumptionTokenFormat) {
     this.dateProvider = dateProvider;
     this.dataProvider = dataProvider;
+    this.resumptionTokenFormat = resumptionTokenFormat;
   }
 
   /**
@@ -73,7 +79,14 @@ public class OaipmhEndpoint {
         .withSet(params.getSet())
         .withResumptionToken(params.getResumptionToken());
 
-    byte[] data = handleOAIRequest(reqBuilder.build());
+    // the metadata prefix and page cursor are given to the item repository through the context
+    byte[] data;
+    OaipmhRequestContext.begin(params.getMetadataPrefix());
+    try {
+      data = handleOAIRequest(reqBuilder.build());
+    } finally {
+      OaipmhRequestContext.end();
+    }
 
     return ResponseEntity.status(HttpStatus.OK).contentType(MediaType.APPLICATION_XML).body(data);
   }
@@ -81,7 +94,7 @@ public class OaipmhEndpoint {
   private byte[] handleOAIRequest(OAIRequest request) {
     try {
       OAIPMH oaipmh = dataProvider.handle(request);
-      return OaipmhUtils.write(oaipmh).getBytes(StandardCharsets.UTF_8);
+      return OaipmhUtils.write(oaipmh, resumptionTokenFormat).getBytes(StandardCharsets.UTF_8);
     } catch (Exception e) {
       throw new ServiceUnavailableException("OAI Failed to serialize dataset", e);
     }
@@ -16,10 +16,12 @@
 package org.gbif.registry.oaipmh;
 
 import org.gbif.api.model.registry.Dataset;
+import org.gbif.registry.persistence.mapper.dto.OaipmhRecord;
 
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.stream.Collectors;
 
 import org.dspace.xoai.dataprovider.model.Item;
 import org.dspace.xoai.dataprovider.model.Set;
@@ -28,7 +30,9 @@ import org.dspace.xoai.model.oaipmh.Metadata;
 
 public class OaipmhItem implements Item {
 
-  private Dataset dataset;
+  private String identifier;
+  private Date datestamp;
+  private boolean deleted;
   private Metadata metadata;
   private List<Set> sets;
 
@@ -41,7 +45,9 @@ public class OaipmhItem implements Item {
   }
 
   public OaipmhItem(Dataset dataset, String metadata, List<Set> sets) {
-    this.dataset = dataset;
+    this.identifier = dataset.getKey().toString();
+    this.datestamp = dataset.getModified();
+    this.deleted = dataset.getDeleted() != null;
     this.sets = sets;
 
     if (metadata != null) {
@@ -49,6 +55,20 @@ public class OaipmhItem implements Item {
     }
   }
 
+  /**
+   * Creates a new OaipmhItem instance from a pre-rendered record, with no metadata content if the
+   * record was listed without it.
+   */
+  public OaipmhItem(OaipmhRecord record) {
+    this.identifier = record.getDatasetKey().toString();
+    this.datestamp = record.getDatestamp();
+    this.sets = record.getSetSpecs().stream().map(Set::new).collect(Collectors.toList());
+
+    if (record.getMetadata() != null) {
+      this.metadata = new Metadata(record.getMetadata());
+    }
+  }
+
   @Override
   public List<About> getAbout() {
     return new ArrayList<>();
@@ -61,12 +81,12 @@ public class OaipmhItem implements Item {
 
   @Override
   public String getIdentifier() {
-    return dataset.getKey().toString();
+    return identifier;
   }
 
   @Override
   public Date getDatestamp() {
-    return dataset.getModified();
+    return datestamp;
   }
 
   @Override
@@ -76,6 +96,6 @@ public class OaipmhItem implements Item {
 
   @Override
   public boolean isDeleted() {
-    return dataset.getDeleted() != null;
+    return deleted;
   }
 }
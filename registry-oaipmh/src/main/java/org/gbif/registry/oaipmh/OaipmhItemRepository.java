@@ -18,112 +18,85 @@ package org.gbif.registry.oaipmh;
 import org.gbif.api.exception.ServiceUnavailableException;
 import org.gbif.api.model.common.paging.PagingRequest;
 import org.gbif.api.model.common.paging.PagingResponse;
-import org.gbif.api.model.metrics.cube.OccurrenceCube;
-import org.gbif.api.model.metrics.cube.ReadBuilder;
 import org.gbif.api.model.registry.Dataset;
 import org.gbif.api.model.registry.Organization;
 import org.gbif.api.vocabulary.Country;
 import org.gbif.api.vocabulary.DatasetType;
-import org.gbif.metrics.ws.client.CubeWsClient;
-import org.gbif.registry.metadata.DublinCoreWriter;
-import org.gbif.registry.metadata.EMLWriter;
 import org.gbif.registry.oaipmh.OaipmhSetRepository.SetIdentification;
 import org.gbif.registry.persistence.mapper.DatasetMapper;
-import org.gbif.registry.persistence.mapper.OrganizationMapper;
+import org.gbif.registry.persistence.mapper.dto.OaipmhRecord;
 import org.gbif.registry.service.RegistryDatasetService;
-import org.gbif.ws.util.ExtraMediaTypes;
 
 import java.io.IOException;
-import java.io.StringWriter;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.TimeUnit;
 
-import javax.validation.constraints.NotNull;
+import javax.annotation.Nullable;
 
+import org.apache.commons.lang3.StringUtils;
 import org.dspace.xoai.dataprovider.exceptions.IdDoesNotExistException;
 import org.dspace.xoai.dataprovider.filter.ScopedFilter;
 import org.dspace.xoai.dataprovider.handlers.results.ListItemIdentifiersResult;
 import org.dspace.xoai.dataprovider.handlers.results.ListItemsResults;
 import org.dspace.xoai.dataprovider.model.Item;
 import org.dspace.xoai.dataprovider.model.ItemIdentifier;
-import org.dspace.xoai.dataprovider.model.Set;
 import org.dspace.xoai.dataprovider.repository.ItemRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.google.common.cache.CacheBuilder;
-import com.google.common.cache.CacheLoader;
-import com.google.common.cache.LoadingCache;
-import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 
-import static org.gbif.registry.oaipmh.OaipmhSetRepository.SetType.COUNTRY;
-import static org.gbif.registry.oaipmh.OaipmhSetRepository.SetType.DATASET_TYPE;
-import static org.gbif.registry.oaipmh.OaipmhSetRepository.SetType.INSTALLATION;
-
-/** Implementation of a XOAI ItemRepository for {@link Dataset}. */
+/**
+ * Implementation of a XOAI ItemRepository for {@link Dataset}.
+ *
+ * <p>Once the {@link OaipmhRecordStore} is ready, records are served from it and lists are paged
+ * after the (datestamp, key) of the previous page, see {@link KeysetResumptionTokenFormat}.
+ * Otherwise datasets are rendered when requested.
+ */
 @SuppressWarnings({"UnstableApiUsage", "NullableProblems"})
 public class OaipmhItemRepository implements ItemRepository {
 
   private static final Logger LOG = LoggerFactory.getLogger(OaipmhItemRepository.class);
 
-  private final LoadingCache<UUID, Organization> ORGANIZATION_CACHE =
-      CacheBuilder.newBuilder()
-          .maximumSize(1000)
-          .expireAfterAccess(1, TimeUnit.MINUTES)
-          .build(buildOrganizationCacheLoader());
-
   private final RegistryDatasetService datasetService;
-  private final OrganizationMapper organizationMapper;
   private final DatasetMapper datasetMapper;
-  private final CubeWsClient metricsClient;
-
-  private final EMLWriter emlWriter;
-  private final DublinCoreWriter dublinCoreWriter;
+  private final OaipmhRenderer renderer;
+  private final OaipmhRecordStore recordStore;
 
   public OaipmhItemRepository(
       RegistryDatasetService datasetService,
       DatasetMapper datasetMapper,
-      OrganizationMapper organizationMapper,
-      CubeWsClient metricsClient) {
+      OaipmhRenderer renderer,
+      OaipmhRecordStore recordStore) {
     this.datasetService = datasetService;
     this.datasetMapper = datasetMapper;
-    this.organizationMapper = organizationMapper;
-    this.metricsClient = metricsClient;
-
-    // should eventually be injected
-    emlWriter = EMLWriter.newInstance(false, true);
-    dublinCoreWriter = DublinCoreWriter.newInstance();
-  }
-
-  /** Build a CacheLoader<UUID, Organization> around the organizationMapper instance. */
-  private CacheLoader<UUID, Organization> buildOrganizationCacheLoader() {
-    return new CacheLoader<UUID, Organization>() {
-      @Override
-      public Organization load(UUID key) {
-        return organizationMapper.get(key);
-      }
-    };
+    this.renderer = renderer;
+    this.recordStore = recordStore;
   }
 
   @Override
   public Item getItem(String s) throws IdDoesNotExistException {
-
-    Dataset dataset = null;
-
-    // the fully augmented dataset
+    UUID key;
     try {
-      dataset = datasetService.get(UUID.fromString(s));
+      key = UUID.fromString(s);
     } catch (IllegalArgumentException ignoreEx) {
       throw new IdDoesNotExistException();
     }
 
+    // deleted datasets have no records and are rendered below
+    String metadataPrefix = storedMetadataPrefix();
+    if (metadataPrefix != null) {
+      OaipmhRecord record = recordStore.get(key, metadataPrefix);
+      if (record != null) {
+        return new OaipmhItem(record);
+      }
+    }
+
+    // the fully augmented dataset
+    Dataset dataset = datasetService.get(key);
+
     if (dataset != null) {
       try {
         return toOaipmhItem(dataset);
@@ -180,6 +153,17 @@ public class OaipmhItemRepository implements ItemRepository {
   @Override
   public ListItemIdentifiersResult getItemIdentifiers(
       List<ScopedFilter> list, int offset, int length, String set, Date from, Date until) {
+    String metadataPrefix = storedMetadataPrefix();
+    if (metadataPrefix != null) {
+      List<OaipmhRecord> records =
+          listRecords(metadataPrefix, offset, length, set, from, until, false);
+      List<ItemIdentifier> results = Lists.newArrayListWithCapacity(records.size());
+      for (OaipmhRecord record : records) {
+        results.add(new OaipmhItem(record));
+      }
+      return new ListItemIdentifiersResult(records.size() == length + 1, trim(results, length));
+    }
+
     // ask for length+1 to determine if there are more results
     List<Dataset> datasetList = getDatasetListFromFilters(offset, length + 1, set, from, until);
     List<ItemIdentifier> results = Lists.newArrayListWithCapacity(datasetList.size());
@@ -247,6 +231,16 @@ public class OaipmhItemRepository implements ItemRepository {
   @Override
   public ListItemsResults getItems(
       List<ScopedFilter> list, int offset, int length, String set, Date from, Date until) {
+    String metadataPrefix = storedMetadataPrefix();
+    if (metadataPrefix != null) {
+      List<OaipmhRecord> records =
+          listRecords(metadataPrefix, offset, length, set, from, until, true);
+      List<Item> results = Lists.newArrayListWithCapacity(records.size());
+      for (OaipmhRecord record : records) {
+        results.add(new OaipmhItem(record));
+      }
+      return new ListItemsResults(records.size() == length + 1, trim(results, length));
+    }
 
     // ask for length+1 to determine if there are more results
     List<Dataset> datasetList = getDatasetListFromFilters(offset, length + 1, set, from, until);
@@ -274,93 +268,109 @@ public class OaipmhItemRepository implements ItemRepository {
   }
 
   /**
-   * Build a {@link OaipmhItem} instance from a {@link Dataset} and the {@link Set} it belongs to.
+   * Build a {@link OaipmhItem} instance from a {@link Dataset} and the sets it belongs to,
+   * rendering the dataset in all metadata formats.
    */
   private OaipmhItem toOaipmhItem(Dataset dataset) throws IOException {
-    Organization organization = null;
-    try {
-      organization = ORGANIZATION_CACHE.get(dataset.getPublishingOrganizationKey());
-    } catch (ExecutionException e) {
-      LOG.error("Error while loading Organization from cache fro dataset {}", dataset, e);
-    }
-    List<Set> sets = getSets(organization, dataset);
-    Map<String, Object> additionalProperties = new HashMap<>();
-    additionalProperties.put(
-        DublinCoreWriter.ADDITIONAL_PROPERTY_DC_FORMAT, ExtraMediaTypes.APPLICATION_DWCA);
-
-    // get the occurrence counts for this dataset, only used in DublinCore
-    // This is designed to fail fast (short http timeout) and on failures which are expected to be
-    // exceptional
-    // events, it is simply omitted.  See the Guice RegistryWsSevletListener for the configuration
-    // of the timeout.
-    ReadBuilder readBuilder = new ReadBuilder();
-    readBuilder.at(OccurrenceCube.DATASET_KEY, dataset.getKey());
-    try {
-      Long occurrenceCount =
-          metricsClient.count(ImmutableMap.of("datasetKey", dataset.getKey().toString()));
-      if (occurrenceCount > 0) {
-        additionalProperties.put(DublinCoreWriter.ADDITIONAL_PROPERTY_OCC_COUNT, occurrenceCount);
-      }
-    } catch (Exception ex) {
-      LOG.warn(
-          "Unable to get occurrence count from cubeService for dataset {}. Omitting count.",
-          dataset.getKey(),
-          ex);
-    }
-
-    /*
-     * The XOAI library doesn't provide us with the metadata type (EML / OAI DC), so both must be
-     * produced. An XSLT transform pulls out the one that's required. This is ugly, so see
-     * https://github.com/DSpace/xoai/issues/31
-     */
-    StringWriter xml = new StringWriter();
-
-    xml.write("<root>");
-
-    xml.write("<oaidc>\n");
-    dublinCoreWriter.writeTo(organization, dataset, additionalProperties, xml);
-    xml.write("</oaidc>\n");
-
-    xml.write("<eml>\n");
-    emlWriter.writeTo(dataset, xml);
-    xml.write("</eml>\n");
-
-    xml.write("</root>\n");
-    return new OaipmhItem(dataset, xml.toString(), sets);
+    Organization organization = renderer.getOrganization(dataset);
+    return new OaipmhItem(
+        dataset,
+        renderer.render(dataset, organization, true, true),
+        renderer.getSets(organization, dataset));
   }
 
   private OaipmhItem toOaipmhItemIdentifier(Dataset dataset) {
-    Organization organization = null;
-    try {
-      organization = ORGANIZATION_CACHE.get(dataset.getPublishingOrganizationKey());
-    } catch (ExecutionException e) {
-      LOG.error("Error while loading Organization from cache fro dataset {}", dataset, e);
+    return new OaipmhItem(dataset, renderer.getSets(renderer.getOrganization(dataset), dataset));
+  }
+
+  /**
+   * The metadata prefix of the current request if its records are served from the store, null if
+   * datasets must be rendered.
+   */
+  @Nullable
+  private String storedMetadataPrefix() {
+    OaipmhRequestContext context = OaipmhRequestContext.current();
+    if (context != null
+        && recordStore.isReady()
+        && OaipmhRecordStore.METADATA_PREFIXES.contains(context.getMetadataPrefix())) {
+      return context.getMetadataPrefix();
     }
-    return new OaipmhItem(dataset, getSets(organization, dataset));
+    return null;
   }
 
   /**
-   * Get the list of {@link org.dspace.xoai.dataprovider.model.Set} for a {@link Dataset}.
-   *
-   * @param organization {@link Organization}, can be null
-   * @param dataset non-null {@link Dataset}
-   * @return list of all {@link org.dspace.xoai.dataprovider.model.Set} that the {@link Dataset}
-   *     belongs to. Never null.
+   * Lists length+1 records of the store to determine if there are more results, reading after the
+   * cursor of the requested page if the resumption token had one. The cursor of the next page is
+   * recorded to be written into the resumption token of the response.
    */
-  private List<Set> getSets(Organization organization, @NotNull Dataset dataset) {
-    Country publishingCountry = null;
+  private List<OaipmhRecord> listRecords(
+      String metadataPrefix,
+      int offset,
+      int length,
+      String set,
+      Date from,
+      Date until,
+      boolean withMetadata) {
+    OaipmhRequestContext context = OaipmhRequestContext.current();
+    List<OaipmhRecord> records =
+        recordStore.list(
+            metadataPrefix,
+            toSetSpec(set),
+            from,
+            until,
+            context.getCursor(offset),
+            offset,
+            length + 1,
+            withMetadata);
+
+    if (records.size() == length + 1) {
+      OaipmhRecord last = records.get(length - 1);
+      context.setNextCursor(
+          new OaipmhCursor(offset + length, last.getDatestamp(), last.getDatasetKey()));
+    }
+    return records;
+  }
+
+  /** Removes the extra element only retrieved to determine if there are more results. */
+  private static <T> List<T> trim(List<T> results, int length) {
+    return results.size() > length ? results.subList(0, length) : results;
+  }
 
-    if (organization != null) {
-      publishingCountry = organization.getCountry();
+  /**
+   * The set spec the records of a set name belong to, e.g. country:DK for Country:dk, or null if
+   * the whole root set is requested.
+   */
+  @Nullable
+  private static String toSetSpec(String set) {
+    Optional<SetIdentification> setIdentification = OaipmhSetRepository.parseSetName(set);
+    if (!setIdentification.isPresent()
+        || StringUtils.isBlank(setIdentification.get().getSubSet())) {
+      return null;
     }
 
-    List<Set> sets = Lists.newArrayList();
-    sets.add(new Set(INSTALLATION.getSubsetPrefix() + dataset.getInstallationKey().toString()));
-    sets.add(new Set(DATASET_TYPE.getSubsetPrefix() + dataset.getType().toString()));
-    if (publishingCountry != null) {
-      sets.add(new Set(COUNTRY.getSubsetPrefix() + publishingCountry.getIso2LetterCode()));
+    String subSet = setIdentification.get().getSubSet();
+    OaipmhSetRepository.SetType setType = setIdentification.get().getSetType();
+    try {
+      switch (setType) {
+        case COUNTRY:
+          Country country = Country.fromIsoCode(subSet);
+          if (country != null) {
+            return setType.getSubsetPrefix() + country.getIso2LetterCode();
+          }
+          break;
+        case INSTALLATION:
+          return setType.getSubsetPrefix() + UUID.fromString(subSet);
+        case DATASET_TYPE:
+          DatasetType datasetType = DatasetType.fromString(subSet);
+          if (datasetType != null) {
+            return setType.getSubsetPrefix() + datasetType;
+          }
+          break;
+      }
+    } catch (IllegalArgumentException e) {
+      // matches no record, as the set was validated before
     }
-    return sets;
+    return setType.getSubsetPrefix() + subSet;
   }
 
   /**
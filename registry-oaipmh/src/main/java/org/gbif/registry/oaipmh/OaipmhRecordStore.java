@@ -0,0 +1,211 @@
+/*
+ * Copyright 2020 Global Biodiversity Information Facility (GBIF)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gbif.registry.oaipmh;
+
+import org.gbif.api.model.registry.Dataset;
+import org.gbif.api.model.registry.Organization;
+import org.gbif.registry.persistence.mapper.OaipmhRecordMapper;
+import org.gbif.registry.persistence.mapper.dto.OaipmhRecord;
+import org.gbif.registry.service.RegistryDatasetService;
+
+import java.io.IOException;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import javax.annotation.Nullable;
+
+import org.dspace.xoai.dataprovider.model.Set;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Store of datasets pre-rendered in every OAI-PMH metadata format, with their datestamp and the
+ * sets they belong to, so harvests are served without rendering documents or calling the metrics
+ * service for every record.
+ *
+ * <p>Records are refreshed when datasets change and marked as stale when their publishing
+ * organizations change. A scheduled reconciliation renders, in batches, the datasets whose records
+ * are missing, stale or older than the dataset, which backfills the store and catches changes made
+ * by other instances or missed events. Datasets failing to render are recorded and retried with a
+ * growing delay, so they don't keep the reconciliation from advancing.
+ * Records are only served once a reconciliation found no more than one batch to render.
+ */
+public class OaipmhRecordStore {
+
+  private static final Logger LOG = LoggerFactory.getLogger(OaipmhRecordStore.class);
+
+  static final List<String> METADATA_PREFIXES =
+      ImmutableList.of(OaipmhRenderer.OAI_DC_PREFIX, OaipmhRenderer.EML_PREFIX);
+
+  private final RegistryDatasetService datasetService;
+  private final OaipmhRecordMapper recordMapper;
+  private final OaipmhRenderer renderer;
+  private final boolean enabled;
+  private final int batchSize;
+  private final long failureBackoffMs;
+  private volatile boolean ready;
+
+  public OaipmhRecordStore(
+      RegistryDatasetService datasetService,
+      OaipmhRecordMapper recordMapper,
+      OaipmhRenderer renderer,
+      boolean enabled,
+      int batchSize,
+      long failureBackoffMs) {
+    this.datasetService = datasetService;
+    this.recordMapper = recordMapper;
+    this.renderer = renderer;
+    this.enabled = enabled;
+    this.batchSize = batchSize;
+    this.failureBackoffMs = failureBackoffMs;
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /** Whether records are served from the store. */
+  public boolean isReady() {
+    return enabled && ready;
+  }
+
+  /**
+   * Renders the records of the dataset again, removing them if the dataset is deleted. A failure
+   * to render them is recorded, so the reconciliation retries the dataset later.
+   */
+  public void refresh(UUID datasetKey) {
+    // the fully augmented dataset
+    Dataset dataset = datasetService.get(datasetKey);
+    if (dataset == null || dataset.getDeleted() != null) {
+      recordMapper.delete(datasetKey);
+      recordMapper.clearFailure(datasetKey);
+      return;
+    }
+
+    Organization organization = renderer.getOrganization(dataset);
+    List<String> setSpecs =
+        renderer.getSets(organization, dataset).stream()
+            .map(Set::getSpec)
+            .collect(Collectors.toList());
+    try {
+      for (String metadataPrefix : METADATA_PREFIXES) {
+        OaipmhRecord record = new OaipmhRecord();
+        record.setDatasetKey(datasetKey);
+        record.setMetadataPrefix(metadataPrefix);
+        record.setDatestamp(dataset.getModified());
+        record.setSetSpecs(setSpecs);
+        record.setMetadata(
+            renderer.render(
+                dataset,
+                organization,
+                OaipmhRenderer.OAI_DC_PREFIX.equals(metadataPrefix),
+                OaipmhRenderer.EML_PREFIX.equals(metadataPrefix)));
+        recordMapper.upsert(record);
+      }
+      recordMapper.clearFailure(datasetKey);
+    } catch (IOException e) {
+      // caused by https://github.com/DSpace/xoai/issues/31
+      LOG.error("Failed to serialize dataset {} to DC/EML", datasetKey, e);
+      recordMapper.recordFailure(datasetKey);
+    }
+  }
+
+  /**
+   * Marks the records of all datasets published by the organization as stale, as their sets and
+   * Dublin Core documents depend on it. Large publishers have thousands of datasets, so they are
+   * rendered again by the reconciliation rather than while handling the change.
+   */
+  public void markPublishedByStale(UUID organizationKey) {
+    int marked = recordMapper.markStalePublishedBy(organizationKey);
+    LOG.debug(
+        "OAI-PMH records of {} datasets of organization {} marked as stale",
+        marked,
+        organizationKey);
+  }
+
+  /** Renders a batch of the datasets whose records are missing, stale or out of date. */
+  @Scheduled(
+      initialDelayString = "${oaipmh.recordStore.reconcileIntervalMs:10000}",
+      fixedDelayString = "${oaipmh.recordStore.reconcileIntervalMs:10000}")
+  public void reconcile() {
+    if (!enabled) {
+      return;
+    }
+    Stopwatch stopwatch = Stopwatch.createStarted();
+    int removed = recordMapper.deleteDeleted();
+    List<UUID> stale =
+        recordMapper.listStaleDatasetKeys(
+            METADATA_PREFIXES, METADATA_PREFIXES.size(), failureBackoffMs, batchSize);
+    for (UUID datasetKey : stale) {
+      try {
+        refresh(datasetKey);
+      } catch (RuntimeException e) {
+        LOG.error("Failed to render OAI-PMH records of dataset {}", datasetKey, e);
+        recordMapper.recordFailure(datasetKey);
+      }
+    }
+    if (!stale.isEmpty() || removed > 0) {
+      LOG.info(
+          "OAI-PMH records of {} datasets rendered and {} removed in {}",
+          stale.size(),
+          removed,
+          stopwatch);
+    }
+
+    // datasets failing to render are left out of the next batches until their backoff has passed,
+    // so they don't keep the store from being used
+    if (!ready && stale.size() < batchSize) {
+      LOG.info("OAI-PMH record store is complete and is used to serve harvests");
+      ready = true;
+    }
+  }
+
+  @Nullable
+  public OaipmhRecord get(UUID datasetKey, String metadataPrefix) {
+    return recordMapper.get(datasetKey, metadataPrefix);
+  }
+
+  /**
+   * Lists the records of a page, reading after the cursor when given and skipping offset records
+   * otherwise.
+   */
+  public List<OaipmhRecord> list(
+      String metadataPrefix,
+      @Nullable String setSpec,
+      @Nullable Date from,
+      @Nullable Date until,
+      @Nullable OaipmhCursor cursor,
+      long offset,
+      int limit,
+      boolean withMetadata) {
+    return recordMapper.list(
+        metadataPrefix,
+        setSpec,
+        from,
+        until,
+        cursor != null ? cursor.getDatestamp() : null,
+        cursor != null ? cursor.getKey() : null,
+        offset,
+        limit,
+        withMetadata);
+  }
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright 2020 Global Biodiversity Information Facility (GBIF)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gbif.registry.oaipmh;
+
+import org.gbif.api.model.registry.Dataset;
+import org.gbif.api.model.registry.Organization;
+import org.gbif.api.vocabulary.Country;
+import org.gbif.metrics.ws.client.CubeWsClient;
+import org.gbif.registry.metadata.DublinCoreWriter;
+import org.gbif.registry.metadata.EMLWriter;
+import org.gbif.registry.persistence.mapper.OrganizationMapper;
+import org.gbif.ws.util.ExtraMediaTypes;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+import javax.validation.constraints.NotNull;
+
+import org.dspace.xoai.dataprovider.model.Set;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+
+import static org.gbif.registry.oaipmh.OaipmhSetRepository.SetType.COUNTRY;
+import static org.gbif.registry.oaipmh.OaipmhSetRepository.SetType.DATASET_TYPE;
+import static org.gbif.registry.oaipmh.OaipmhSetRepository.SetType.INSTALLATION;
+
+/** Renders datasets in the Dublin Core and EML metadata formats exposed through OAI-PMH. */
+@SuppressWarnings("UnstableApiUsage")
+public class OaipmhRenderer {
+
+  public static final String OAI_DC_PREFIX = "oai_dc";
+  public static final String EML_PREFIX = "eml";
+
+  private static final Logger LOG = LoggerFactory.getLogger(OaipmhRenderer.class);
+
+  private final LoadingCache<UUID, Organization> organizationCache;
+  private final CubeWsClient metricsClient;
+
+  private final EMLWriter emlWriter;
+  private final DublinCoreWriter dublinCoreWriter;
+
+  public OaipmhRenderer(OrganizationMapper organizationMapper, CubeWsClient metricsClient) {
+    this.metricsClient = metricsClient;
+    this.organizationCache =
+        CacheBuilder.newBuilder()
+            .maximumSize(1000)
+            .expireAfterAccess(1, TimeUnit.MINUTES)
+            .build(
+                new CacheLoader<UUID, Organization>() {
+                  @Override
+                  public Organization load(UUID key) {
+                    return organizationMapper.get(key);
+                  }
+                });
+
+    // should eventually be injected
+    emlWriter = EMLWriter.newInstance(false, true);
+    dublinCoreWriter = DublinCoreWriter.newInstance();
+  }
+
+  /** Gets the publishing organization of the dataset, which may be cached for a minute. */
+  @Nullable
+  public Organization getOrganization(Dataset dataset) {
+    try {
+      return organizationCache.get(dataset.getPublishingOrganizationKey());
+    } catch (ExecutionException | CacheLoader.InvalidCacheLoadException e) {
+      LOG.error("Error while loading Organization from cache fro dataset {}", dataset, e);
+      return null;
+    }
+  }
+
+  /**
+   * Get the list of {@link org.dspace.xoai.dataprovider.model.Set} for a {@link Dataset}.
+   *
+   * @param organization {@link Organization}, can be null
+   * @param dataset non-null {@link Dataset}
+   * @return list of all {@link org.dspace.xoai.dataprovider.model.Set} that the {@link Dataset}
+   *     belongs to. Never null.
+   */
+  public List<Set> getSets(@Nullable Organization organization, @NotNull Dataset dataset) {
+    Country publishingCountry = null;
+
+    if (organization != null) {
+      publishingCountry = organization.getCountry();
+    }
+
+    List<Set> sets = Lists.newArrayList();
+    sets.add(new Set(INSTALLATION.getSubsetPrefix() + dataset.getInstallationKey().toString()));
+    sets.add(new Set(DATASET_TYPE.getSubsetPrefix() + dataset.getType().toString()));
+    if (publishingCountry != null) {
+      sets.add(new Set(COUNTRY.getSubsetPrefix() + publishingCountry.getIso2LetterCode()));
+    }
+    return sets;
+  }
+
+  /**
+   * Renders the dataset in the requested metadata formats.
+   *
+   * <p>The XOAI library doesn't provide us with the metadata type (EML / OAI DC) of the request, so
+   * the formats are wrapped in a root element and the XSLT transform of the requested format pulls
+   * out the one that's required. See https://github.com/DSpace/xoai/issues/31
+   */
+  public String render(
+      Dataset dataset, @Nullable Organization organization, boolean dublinCore, boolean eml)
+      throws IOException {
+    StringWriter xml = new StringWriter();
+
+    xml.write("<root>");
+
+    if (dublinCore) {
+      xml.write("<oaidc>\n");
+      dublinCoreWriter.writeTo(organization, dataset, dublinCoreProperties(dataset), xml);
+      xml.write("</oaidc>\n");
+    }
+
+    if (eml) {
+      xml.write("<eml>\n");
+      emlWriter.writeTo(dataset, xml);
+      xml.write("</eml>\n");
+    }
+
+    xml.write("</root>\n");
+    return xml.toString();
+  }
+
+  private Map<String, Object> dublinCoreProperties(Dataset dataset) {
+    Map<String, Object> additionalProperties = new HashMap<>();
+    additionalProperties.put(
+        DublinCoreWriter.ADDITIONAL_PROPERTY_DC_FORMAT, ExtraMediaTypes.APPLICATION_DWCA);
+
+    // get the occurrence counts for this dataset, only used in DublinCore
+    // This is designed to fail fast (short http timeout) and on failures which are expected to be
+    // exceptional
+    // events, it is simply omitted.  See the Guice RegistryWsSevletListener for the configuration
+    // of the timeout.
+    try {
+      Long occurrenceCount =
+          metricsClient.count(ImmutableMap.of("datasetKey", dataset.getKey().toString()));
+      if (occurrenceCount > 0) {
+        additionalProperties.put(DublinCoreWriter.ADDITIONAL_PROPERTY_OCC_COUNT, occurrenceCount);
+      }
+    } catch (Exception ex) {
+      LOG.warn(
+          "Unable to get occurrence count from cubeService for dataset {}. Omitting count.",
+          dataset.getKey(),
+          ex);
+    }
+    return additionalProperties;
+  }
+}
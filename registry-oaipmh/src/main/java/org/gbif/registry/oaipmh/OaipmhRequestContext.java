@@ -0,0 +1,84 @@
+/*
+ * Copyright 2020 Global Biodiversity Information Facility (GBIF)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gbif.registry.oaipmh;
+
+import javax.annotation.Nullable;
+
+/**
+ * State of the OAI-PMH request being handled by the current thread.
+ *
+ * <p>The XOAI item repository API only receives offsets and is not told the requested metadata
+ * format. The endpoint and the {@link KeysetResumptionTokenFormat} therefore record the metadata
+ * prefix and the cursor of the requested page here, and the {@link OaipmhItemRepository} records
+ * the cursor of the next page, which is written into the resumption token of the response.
+ */
+public final class OaipmhRequestContext {
+
+  private static final ThreadLocal<OaipmhRequestContext> CURRENT = new ThreadLocal<>();
+
+  private String metadataPrefix;
+  private OaipmhCursor cursor;
+  private OaipmhCursor nextCursor;
+
+  private OaipmhRequestContext() {}
+
+  /** Starts the context of a request, which must be ended with {@link #end()}. */
+  public static OaipmhRequestContext begin(@Nullable String metadataPrefix) {
+    OaipmhRequestContext context = new OaipmhRequestContext();
+    context.metadataPrefix = metadataPrefix;
+    CURRENT.set(context);
+    return context;
+  }
+
+  /** The context of the request handled by the current thread, if any. */
+  @Nullable
+  public static OaipmhRequestContext current() {
+    return CURRENT.get();
+  }
+
+  public static void end() {
+    CURRENT.remove();
+  }
+
+  @Nullable
+  public String getMetadataPrefix() {
+    return metadataPrefix;
+  }
+
+  public void setMetadataPrefix(@Nullable String metadataPrefix) {
+    this.metadataPrefix = metadataPrefix;
+  }
+
+  /** The cursor of the requested page, if it was given and starts at the offset. */
+  @Nullable
+  public OaipmhCursor getCursor(long offset) {
+    return cursor != null && cursor.getOffset() == offset ? cursor : null;
+  }
+
+  public void setCursor(@Nullable OaipmhCursor cursor) {
+    this.cursor = cursor;
+  }
+
+  /** The cursor of the next page, if it starts at the offset. */
+  @Nullable
+  public OaipmhCursor getNextCursor(long offset) {
+    return nextCursor != null && nextCursor.getOffset() == offset ? nextCursor : null;
+  }
+
+  public void setNextCursor(@Nullable OaipmhCursor nextCursor) {
+    this.nextCursor = nextCursor;
+  }
+}
@@ -15,8 +15,13 @@
  */
 package org.gbif.registry.oaipmh;
 
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
 import javax.xml.stream.XMLStreamException;
 
+import org.dspace.xoai.model.oaipmh.Granularity;
+import org.dspace.xoai.services.api.ResumptionTokenFormat;
 import org.dspace.xoai.xml.XmlWritable;
 import org.dspace.xoai.xml.XmlWriter;
 
@@ -26,10 +31,27 @@ public final class OaipmhUtils {
 
   private OaipmhUtils() {}
 
+  private static final String XML_HEADER = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n";
+
   /** Add xml header line. */
   protected static String write(final XmlWritable handle)
       throws XMLStreamException, XmlWriteException {
-    return "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
-        + XmlWriter.toString(writer -> writer.write(handle));
+    return XML_HEADER + XmlWriter.toString(writer -> writer.write(handle));
+  }
+
+  /**
+   * Add xml header line, writing resumption tokens with the given format rather than the default
+   * one of the XOAI library.
+   */
+  protected static String write(
+      final XmlWritable handle, ResumptionTokenFormat resumptionTokenFormat)
+      throws XMLStreamException, XmlWriteException {
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    XmlWriter writer =
+        new XmlWriter(
+            output, new XmlWriter.WriterContext(Granularity.Second, resumptionTokenFormat));
+    writer.write(handle);
+    writer.close();
+    return XML_HEADER + new String(output.toByteArray(), StandardCharsets.UTF_8);
   }
 }
@@ -16,9 +16,13 @@
 package org.gbif.registry.oaipmh.config;
 
 import org.gbif.metrics.ws.client.CubeWsClient;
+import org.gbif.registry.oaipmh.KeysetResumptionTokenFormat;
 import org.gbif.registry.oaipmh.OaipmhItemRepository;
+import org.gbif.registry.oaipmh.OaipmhRecordStore;
+import org.gbif.registry.oaipmh.OaipmhRenderer;
 import org.gbif.registry.oaipmh.OaipmhSetRepository;
 import org.gbif.registry.persistence.mapper.DatasetMapper;
+import org.gbif.registry.persistence.mapper.OaipmhRecordMapper;
 import org.gbif.registry.persistence.mapper.OrganizationMapper;
 import org.gbif.registry.service.RegistryDatasetService;
 import org.gbif.ws.client.ClientBuilder;
@@ -44,7 +48,7 @@ import org.dspace.xoai.dataprovider.repository.SetRepository;
 import org.dspace.xoai.model.oaipmh.DeletedRecord;
 import org.dspace.xoai.model.oaipmh.Granularity;
 import org.dspace.xoai.services.api.DateProvider;
-import org.dspace.xoai.services.impl.SimpleResumptionTokenFormat;
+import org.dspace.xoai.services.api.ResumptionTokenFormat;
 import org.dspace.xoai.services.impl.UTCDateProvider;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
@@ -69,14 +73,20 @@ public class RegistryOaipmhConfiguration {
   public Repository repository(
       ItemRepository itemRepository,
       SetRepository setRepository,
-      RepositoryConfiguration repositoryConfiguration) {
+      RepositoryConfiguration repositoryConfiguration,
+      ResumptionTokenFormat resumptionTokenFormat) {
     return new Repository()
         .withItemRepository(itemRepository)
         .withSetRepository(setRepository)
-        .withResumptionTokenFormatter(new SimpleResumptionTokenFormat())
+        .withResumptionTokenFormatter(resumptionTokenFormat)
         .withConfiguration(repositoryConfiguration);
   }
 
+  @Bean
+  public ResumptionTokenFormat resumptionTokenFormat() {
+    return new KeysetResumptionTokenFormat();
+  }
+
   @Bean
   public DataProvider dataProvider(Repository repository) {
     return new DataProvider(context(), repository);
@@ -96,13 +106,13 @@ public class RegistryOaipmhConfiguration {
     return new Context()
         .withMetadataFormat(
             new MetadataFormat()
-                .withPrefix("oai_dc")
+                .withPrefix(OaipmhRenderer.OAI_DC_PREFIX)
                 .withNamespace("http://www.openarchives.org/OAI/2.0/oai_dc/")
                 .withSchemaLocation("http://www.openarchives.org/OAI/2.0/oai_dc.xsd")
                 .withTransformer(xsltTransformer("dc.xslt")))
         .withMetadataFormat(
             new MetadataFormat()
-                .withPrefix("eml")
+                .withPrefix(OaipmhRenderer.EML_PREFIX)
                 .withNamespace("eml://ecoinformatics.org/eml-2.1.1")
                 .withSchemaLocation("http://rs.gbif.org/schema/eml-gbif-profile/1.0.2/eml.xsd")
                 .withTransformer(xsltTransformer("eml.xslt")));
@@ -151,14 +161,31 @@ public class RegistryOaipmhConfiguration {
                 + "</oai_dc:dc>\n");
   }
 
+  @Bean
+  public OaipmhRenderer oaipmhRenderer(
+      OrganizationMapper organizationMapper, CubeWsClient metricsClient) {
+    return new OaipmhRenderer(organizationMapper, metricsClient);
+  }
+
+  @Bean
+  public OaipmhRecordStore oaipmhRecordStore(
+      RegistryDatasetService datasetService,
+      OaipmhRecordMapper recordMapper,
+      OaipmhRenderer renderer,
+      @Value("${oaipmh.recordStore.enabled:false}") boolean enabled,
+      @Value("${oaipmh.recordStore.batchSize:500}") int batchSize,
+      @Value("${oaipmh.recordStore.failureBackoffMs:60000}") long failureBackoffMs) {
+    return new OaipmhRecordStore(
+        datasetService, recordMapper, renderer, enabled, batchSize, failureBackoffMs);
+  }
+
   @Bean
   public ItemRepository itemRepository(
       RegistryDatasetService datasetService,
       DatasetMapper datasetMapper,
-      OrganizationMapper organizationMapper,
-      CubeWsClient metricsClient) {
-    return new OaipmhItemRepository(
-        datasetService, datasetMapper, organizationMapper, metricsClient);
+      OaipmhRenderer renderer,
+      OaipmhRecordStore recordStore) {
+    return new OaipmhItemRepository(datasetService, datasetMapper, renderer, recordStore);
   }
 
   @Bean
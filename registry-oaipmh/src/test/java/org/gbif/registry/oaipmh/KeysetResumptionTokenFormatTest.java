@@ -0,0 +1,102 @@
+/*
+ * Copyright 2020 Global Biodiversity Information Facility (GBIF)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gbif.registry.oaipmh;
+
+import java.util.Date;
+import java.util.UUID;
+
+import org.dspace.xoai.dataprovider.exceptions.BadResumptionToken;
+import org.dspace.xoai.model.oaipmh.ResumptionToken;
+import org.dspace.xoai.services.impl.SimpleResumptionTokenFormat;
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/** Test class for KeysetResumptionTokenFormat */
+public class KeysetResumptionTokenFormatTest {
+
+  private final KeysetResumptionTokenFormat format = new KeysetResumptionTokenFormat();
+
+  @After
+  public void tearDown() {
+    OaipmhRequestContext.end();
+  }
+
+  @Test
+  public void testCursorRoundTrip() throws Exception {
+    OaipmhCursor cursor = new OaipmhCursor(100, new Date(1602835200000L), UUID.randomUUID());
+    OaipmhRequestContext.begin("eml").setNextCursor(cursor);
+    String token =
+        format.format(new ResumptionToken.Value().withOffset(100).withMetadataPrefix("eml"));
+    OaipmhRequestContext.end();
+
+    // the next request only knows the token
+    OaipmhRequestContext context = OaipmhRequestContext.begin(null);
+    ResumptionToken.Value value = format.parse(token);
+    assertEquals(100, value.getOffset());
+    assertEquals("eml", context.getMetadataPrefix());
+    assertEquals(cursor, context.getCursor(100));
+    assertNull(context.getCursor(0));
+  }
+
+  @Test
+  public void testTokenWithoutCursor() throws Exception {
+    ResumptionToken.Value value =
+        new ResumptionToken.Value().withOffset(100).withMetadataPrefix("oai_dc");
+
+    // no cursor is recorded for another page
+    OaipmhRequestContext.begin("oai_dc")
+        .setNextCursor(new OaipmhCursor(200, new Date(), UUID.randomUUID()));
+    String token = format.format(value);
+    assertEquals(new SimpleResumptionTokenFormat().format(value), token);
+
+    // tokens issued before are served by offset
+    OaipmhRequestContext context = OaipmhRequestContext.begin(null);
+    assertEquals(100, format.parse(token).getOffset());
+    assertEquals("oai_dc", context.getMetadataPrefix());
+    assertNull(context.getCursor(100));
+  }
+
+  @Test(expected = BadResumptionToken.class)
+  public void testCursorOfAnotherPage() throws Exception {
+    String token =
+        new SimpleResumptionTokenFormat()
+                .format(new ResumptionToken.Value().withOffset(100).withMetadataPrefix("eml"))
+            + "."
+            + new OaipmhCursor(200, new Date(), UUID.randomUUID()).encode();
+    OaipmhRequestContext.begin(null);
+    format.parse(token);
+  }
+
+  @Test(expected = BadResumptionToken.class)
+  public void testInvalidCursor() throws Exception {
+    String token =
+        new SimpleResumptionTokenFormat()
+                .format(new ResumptionToken.Value().withOffset(100).withMetadataPrefix("eml"))
+            + ".100_abc";
+    format.parse(token);
+  }
+
+  @Test
+  public void testDecodeCursor() {
+    OaipmhCursor cursor = new OaipmhCursor(2, new Date(0), UUID.randomUUID());
+    assertEquals(cursor, OaipmhCursor.decode(cursor.encode()));
+    assertNull(OaipmhCursor.decode("2_0_not-a-uuid"));
+    assertNull(OaipmhCursor.decode(null));
+  }
+}
@@ -65,6 +65,25 @@ public interface DatasetMapper extends BaseNetworkEntityMapper<Dataset> {
       @Nullable @Param("type") DatasetType type,
       @Nullable @Param("page") Pageable page);
 
+  /**
+   * Same as {@link #list} but without the sub resources such as contacts and endpoints, which are
+   * loaded for a whole page at once with the {@link NetworkEntityChildrenMapper}.
+   */
+  List<Dataset> listLight(@Nullable @Param("page") Pageable page);
+
+  /** Same as {@link #search} but without the sub resources, see {@link #listLight}. */
+  List<Dataset> searchLight(
+      @Nullable @Param("query") String query, @Nullable @Param("page") Pageable page);
+
+  /**
+   * Same as {@link #listWithFilter(Country, DatasetType, Pageable)} but without the sub resources,
+   * see {@link #listLight}.
+   */
+  List<Dataset> listWithFilterLight(
+      @Nullable @Param("country") Country country,
+      @Nullable @Param("type") DatasetType type,
+      @Nullable @Param("page") Pageable page);
+
   /**
    * Obtains a list of all datasets using the provided filter(s)
    *
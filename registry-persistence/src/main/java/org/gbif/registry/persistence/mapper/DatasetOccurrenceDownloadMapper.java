@@ -43,7 +43,36 @@ public interface DatasetOccurrenceDownloadMapper {
   List<DatasetOccurrenceDownloadUsage> listByDownload(
       @Param("downloadKey") String downloadKey, @Nullable @Param("page") Pageable page);
 
+  /**
+   * Keyset paging over the usages of a download ordered by dataset key. Like {@link
+   * #listByDownload} the Download objects are not retrieved.
+   *
+   * @param afterDatasetKey only usages of datasets with a greater key are returned, null to start
+   *     from the first one
+   * @param limit maximum number of usages returned
+   */
+  List<DatasetOccurrenceDownloadUsage> listByDownloadAfter(
+      @Param("downloadKey") String downloadKey,
+      @Nullable @Param("afterDatasetKey") UUID afterDatasetKey,
+      @Param("limit") int limit);
+
+  /**
+   * Inserts the usages with a single statement, which suits a few thousand usages. Larger numbers
+   * are copied in through the staging table by {@code DatasetOccurrenceDownloadUsageLoader}.
+   */
   void createUsages(
       @Param("downloadKey") String downloadKey,
       @Param("citationMap") Map<UUID, Long> downloadDataset);
+
+  /** Creates the staging table of the current session the usages are copied into. */
+  void prepareUsagesStaging();
+
+  void clearUsagesStaging();
+
+  /**
+   * Inserts the usages of the staging table for the given download.
+   *
+   * @return the number of inserted usages, leaving out those of unknown datasets
+   */
+  int mergeUsagesStaging(@Param("downloadKey") String downloadKey);
 }
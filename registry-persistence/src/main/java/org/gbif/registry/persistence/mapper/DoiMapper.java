@@ -46,6 +46,20 @@ public interface DoiMapper {
 
   void create(@Param("doi") DOI doi, @Param("type") DoiType type);
 
+  /**
+   * Inserts a new DOI unless it exists already.
+   *
+   * @return 1 if the DOI was inserted, 0 if it existed already
+   */
+  int createIfAbsent(@Param("doi") DOI doi, @Param("type") DoiType type);
+
+  /**
+   * Reserves a block of numbers to encode DOI suffixes from.
+   *
+   * @return the first number of the block
+   */
+  long nextSuffixBlock();
+
   void update(@Param("doi") DOI doi, @Param("doiData") DoiData doiData, @Param("xml") String xml);
 
   void delete(@Param("doi") DOI doi);
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2020 Global Biodiversity Information Facility (GBIF)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gbif.registry.persistence.mapper;
+
+import org.gbif.api.model.common.DOI;
+import org.gbif.registry.domain.doi.DoiRetry;
+
+import java.util.List;
+
+import javax.annotation.Nullable;
+
+import org.apache.ibatis.annotations.Param;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Mapper for {@link DoiRetry} entities, the DOI changes waiting to be sent to DataCite again.
+ *
+ * <p>A due retry is processed by the doi-updater holding its lease, taken with {@link #claimDue}
+ * under an owner token. The owner renews the lease with {@link #renewLease} before sending the
+ * change, then removes the retry with {@link #deleteLeased} once it succeeded or replaces it with
+ * {@link #updateLeased} when it failed again, which also gives the lease back. These only apply
+ * while the owner holds the lease, so the outcome of a retry taken over by another doi-updater or
+ * superseded by a newer change of the same DOI, stored with {@link #upsert}, is dropped.
+ */
+@Repository
+public interface DoiRetryMapper {
+
+  @Nullable
+  DoiRetry get(@Param("doi") DOI doi);
+
+  /**
+   * Inserts the retry or replaces the existing retry of the same DOI. The creation date of a
+   * replaced retry is kept.
+   *
+   * @param retry the retry to store, its dates are ignored
+   * @param delayMs delay before the next attempt, in milliseconds
+   */
+  void upsert(@Param("retry") DoiRetry retry, @Param("delayMs") long delayMs);
+
+  void delete(@Param("doi") DOI doi);
+
+  /**
+   * Replaces the leased retry of a DOI and gives its lease back.
+   *
+   * @param retry the retry to store, its dates are ignored
+   * @param delayMs delay before the next attempt, in milliseconds
+   * @param owner token given when the retry was claimed
+   * @return 1 if the retry was replaced, 0 if the owner does not hold its lease anymore
+   */
+  int updateLeased(
+      @Param("retry") DoiRetry retry, @Param("delayMs") long delayMs, @Param("owner") String owner);
+
+  /**
+   * Deletes the leased retry of a DOI.
+   *
+   * @return 1 if the retry was deleted, 0 if the owner does not hold its lease anymore
+   */
+  int deleteLeased(@Param("doi") DOI doi, @Param("owner") String owner);
+
+  /**
+   * Takes the lease of the pending retries whose next attempt is due, oldest first, skipping the
+   * ones leased by somebody else.
+   *
+   * @param limit maximum number of retries to claim
+   * @param owner token identifying the claim
+   * @param leaseMs duration of the lease, in milliseconds
+   * @return the claimed retries
+   */
+  List<DoiRetry> claimDue(
+      @Param("limit") int limit, @Param("owner") String owner, @Param("leaseMs") long leaseMs);
+
+  /**
+   * Extends the lease of a retry.
+   *
+   * @return 1 if the lease was renewed, 0 if the owner does not hold it anymore
+   */
+  int renewLease(
+      @Param("doi") DOI doi, @Param("owner") String owner, @Param("leaseMs") long leaseMs);
+
+  long count(@Param("state") DoiRetry.State state);
+
+  /**
+   * Returns for how long the oldest due retry has been waiting, in milliseconds.
+   *
+   * @return the delay or null if no retry is due
+   */
+  @Nullable
+  Long getDueLag();
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2020 Global Biodiversity Information Facility (GBIF)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gbif.registry.persistence.mapper;
+
+import org.gbif.registry.persistence.mapper.dto.DownloadRollupPosition;
+import org.gbif.registry.persistence.mapper.dto.DownloadStatisticsDifference;
+
+import java.util.Date;
+import java.util.List;
+
+import javax.annotation.Nullable;
+
+import org.apache.ibatis.annotations.Param;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Mapper maintaining the daily download statistics, rolled up from the successful occurrence
+ * downloads by user country and by dataset.
+ *
+ * <p>The rollup reads the successful downloads after its high-water mark. A ledger records what
+ * every download and every usage of a download added to the statistics, and a download read again
+ * only adds the difference to what it added before. So no download is counted twice, while usages
+ * stored after the download succeeded and corrected numbers of records are still added. A counted
+ * download which is no longer successful is subtracted by the rollup, and a deleted one by a
+ * trigger.
+ */
+@Repository
+public interface DownloadStatisticsRollupMapper {
+
+  @Nullable
+  DownloadRollupPosition getHighWaterMark(@Param("name") String name);
+
+  /** Moves the high-water mark forward, it is never moved back. */
+  void updateHighWaterMark(
+      @Param("name") String name, @Param("position") DownloadRollupPosition position);
+
+  /**
+   * Lists the positions of the successful downloads and of the downloads counted before after the
+   * given one, in order of modification.
+   */
+  List<DownloadRollupPosition> listSuccessfulOrCountedAfter(
+      @Param("after") DownloadRollupPosition after, @Param("limit") int limit);
+
+  /**
+   * Lists the keys of the successful downloads created on the given UTC days, after the given key.
+   *
+   * @param fromDay first day, inclusive
+   * @param toDay last day, exclusive
+   */
+  List<String> listSuccessfulCreatedWithin(
+      @Param("fromDay") Date fromDay,
+      @Param("toDay") Date toDay,
+      @Param("afterKey") String afterKey,
+      @Param("limit") int limit);
+
+  /**
+   * Adds the successful downloads to the ledger if they are not in it yet and locks the entries of
+   * all the downloads until the end of the transaction, so concurrent rollups of the same downloads
+   * run one after the other.
+   */
+  void lockRollup(@Param("downloadKeys") List<String> downloadKeys);
+
+  /** Adds the changes of the downloads since they were last rolled up to the user statistics. */
+  void addUserStatistics(@Param("downloadKeys") List<String> downloadKeys);
+
+  /** Records the current contribution of the downloads to the user statistics in the ledger. */
+  void updateUserRollup(@Param("downloadKeys") List<String> downloadKeys);
+
+  /** Adds the changes of the usages since they were last rolled up to the dataset statistics. */
+  void addDatasetStatistics(@Param("downloadKeys") List<String> downloadKeys);
+
+  void deleteDatasetRollup(@Param("downloadKeys") List<String> downloadKeys);
+
+  /** Records the current usages of the downloads in the ledger. */
+  void insertDatasetRollup(@Param("downloadKeys") List<String> downloadKeys);
+
+  /** Removes the downloads which are no longer successful from the ledger. */
+  void deleteUnsuccessfulRollup(@Param("downloadKeys") List<String> downloadKeys);
+
+  /** Removes the statistics left without downloads on the days of the given downloads. */
+  void deleteEmptyUserStatistics(@Param("downloadKeys") List<String> downloadKeys);
+
+  void deleteEmptyDatasetStatistics(@Param("downloadKeys") List<String> downloadKeys);
+
+  void deleteUserStatistics(@Param("fromDay") Date fromDay, @Param("toDay") Date toDay);
+
+  void deleteDatasetStatistics(@Param("fromDay") Date fromDay, @Param("toDay") Date toDay);
+
+  /** Removes the downloads created on the given UTC days and their usages from the ledger. */
+  void deleteRollup(@Param("fromDay") Date fromDay, @Param("toDay") Date toDay);
+
+  /**
+   * Computes the statistics by user country of the given UTC days from the downloads and lists the
+   * days which differ from the rollup.
+   *
+   * @param fromDay first day, inclusive
+   * @param toDay last day, exclusive
+   */
+  List<DownloadStatisticsDifference> diffUserStatistics(
+      @Param("fromDay") Date fromDay, @Param("toDay") Date toDay);
+
+  /**
+   * Computes the statistics by dataset of the given UTC days from the downloads and lists the days
+   * which differ from the rollup.
+   *
+   * @param fromDay first day, inclusive
+   * @param toDay last day, exclusive
+   */
+  List<DownloadStatisticsDifference> diffDatasetStatistics(
+      @Param("fromDay") Date fromDay, @Param("toDay") Date toDay);
+}
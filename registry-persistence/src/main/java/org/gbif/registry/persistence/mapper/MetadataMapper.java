@@ -18,7 +18,9 @@ package org.gbif.registry.persistence.mapper;
 import org.gbif.api.model.registry.Metadata;
 import org.gbif.api.vocabulary.MetadataType;
 import org.gbif.registry.persistence.mapper.handler.ByteArrayWrapper;
+import org.gbif.registry.persistence.mapper.handler.MetadataDocument;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.UUID;
 
@@ -45,8 +47,46 @@ public interface MetadataMapper {
    */
   ByteArrayWrapper getDocument(@Param("key") int key);
 
-  /** Stores a new metadata document with its source document as a byte array exactly as it was. */
-  int create(@Param("meta") Metadata metadata, @Param("data") byte[] content);
+  /**
+   * Stores a new metadata document with its source document as a byte array exactly as it was.
+   *
+   * @param contentHash hash of the content as computed by {@link MetadataDocument#contentHash}
+   */
+  int create(
+      @Param("meta") Metadata metadata,
+      @Param("data") byte[] content,
+      @Param("contentHash") String contentHash);
+
+  /** Sets the content hash of a metadata document stored before hashes were recorded. */
+  void updateContentHash(@Param("key") int key, @Param("contentHash") String contentHash);
+
+  /**
+   * Return the metadata entry of the given dataset and type whose document has the given content
+   * hash, i.e. an identical document.
+   *
+   * @return the most recent matching metadata or {@code null} if there is none
+   */
+  @Nullable
+  Metadata getByContentHash(
+      @Param("datasetKey") UUID datasetKey,
+      @Param("type") MetadataType type,
+      @Param("contentHash") String contentHash);
+
+  /**
+   * Return the documents of the given dataset and type that have no content hash yet, because
+   * they were stored before hashes were recorded and have not been backfilled.
+   */
+  List<MetadataDocument> listUnhashedDocuments(
+      @Param("datasetKey") UUID datasetKey, @Param("type") MetadataType type);
+
+  /**
+   * Return a page of documents without content hash ordered by key.
+   *
+   * @param afterKey only documents with a greater key are returned, null to start from the first
+   * @param limit maximum number of documents returned
+   */
+  List<MetadataDocument> listUnhashedDocumentsAfter(
+      @Param("afterKey") @Nullable Integer afterKey, @Param("limit") int limit);
 
   void delete(@Param("key") int key);
 
@@ -58,4 +98,21 @@ public interface MetadataMapper {
    * @param type optional metadata type to filter
    */
   List<Metadata> list(@Param("key") UUID datasetKey, @Param("type") @Nullable MetadataType type);
+
+  /**
+   * Return the preferred metadata entry of each of the given datasets, i.e. the first entry that
+   * {@link #list(UUID, MetadataType)} would return for each of them. Datasets without metadata are
+   * not included in the result.
+   *
+   * @param datasetKeys the dataset keys to load the preferred metadata of, must not be empty
+   */
+  List<Metadata> listPreferred(@Param("datasetKeys") Collection<UUID> datasetKeys);
+
+  /**
+   * Return the content of several metadata entries at once.
+   *
+   * @param keys of the metadata records to fetch, must not be empty
+   * @return the documents found, in no particular order
+   */
+  List<MetadataDocument> listDocuments(@Param("keys") Collection<Integer> keys);
 }
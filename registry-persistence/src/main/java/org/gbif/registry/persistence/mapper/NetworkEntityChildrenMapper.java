@@ -0,0 +1,75 @@
+/*
+ * Copyright 2020 Global Biodiversity Information Facility (GBIF)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gbif.registry.persistence.mapper;
+
+import org.gbif.api.model.collections.Address;
+import org.gbif.api.model.collections.Person;
+import org.gbif.api.model.registry.Comment;
+import org.gbif.api.model.registry.Contact;
+import org.gbif.api.model.registry.Endpoint;
+import org.gbif.api.model.registry.Identifier;
+import org.gbif.api.model.registry.MachineTag;
+import org.gbif.api.model.registry.Tag;
+import org.gbif.registry.persistence.mapper.dto.EntityChild;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+import org.apache.ibatis.annotations.Param;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Bulk retrieval of the sub resources of several network or GrSciColl entities, used to populate a
+ * whole page of entities with one query per sub resource type instead of one query per entity.
+ *
+ * <p>The entity parameter is the table prefix of the network entity, e.g. "dataset" for the
+ * dataset_contact join table. It is substituted into the SQL and must never come from user input.
+ */
+@Repository
+public interface NetworkEntityChildrenMapper {
+
+  List<EntityChild<UUID, Contact>> listContacts(
+      @Param("entity") String entity, @Param("keys") Collection<UUID> entityKeys);
+
+  /** Lists the endpoints without their machine tags, see {@link #listEndpointMachineTags}. */
+  List<EntityChild<UUID, Endpoint>> listEndpoints(
+      @Param("entity") String entity, @Param("keys") Collection<UUID> entityKeys);
+
+  List<EntityChild<UUID, MachineTag>> listMachineTags(
+      @Param("entity") String entity, @Param("keys") Collection<UUID> entityKeys);
+
+  List<EntityChild<UUID, Tag>> listTags(
+      @Param("entity") String entity, @Param("keys") Collection<UUID> entityKeys);
+
+  List<EntityChild<UUID, Identifier>> listIdentifiers(
+      @Param("entity") String entity, @Param("keys") Collection<UUID> entityKeys);
+
+  List<EntityChild<UUID, Comment>> listComments(
+      @Param("entity") String entity, @Param("keys") Collection<UUID> entityKeys);
+
+  List<EntityChild<Integer, MachineTag>> listEndpointMachineTags(
+      @Param("keys") Collection<Integer> endpointKeys);
+
+  /**
+   * Lists the contacts of GrSciColl institutions or collections. The mailing addresses of the
+   * persons only have their key, see {@link #listAddresses}.
+   */
+  List<EntityChild<UUID, Person>> listCollectionPersons(
+      @Param("entity") String entity, @Param("keys") Collection<UUID> entityKeys);
+
+  List<Address> listAddresses(@Param("keys") Collection<Integer> addressKeys);
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2020 Global Biodiversity Information Facility (GBIF)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gbif.registry.persistence.mapper;
+
+import org.gbif.registry.persistence.mapper.dto.OaipmhRecord;
+
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+
+import javax.annotation.Nullable;
+
+import org.apache.ibatis.annotations.Param;
+import org.springframework.stereotype.Repository;
+
+/** Mapper for the pre-rendered OAI-PMH records of datasets. */
+@Repository
+public interface OaipmhRecordMapper {
+
+  /** Inserts the record or replaces the existing one of the same dataset and metadata format. */
+  void upsert(@Param("record") OaipmhRecord record);
+
+  /** Deletes the records of the dataset in all metadata formats. */
+  int delete(@Param("datasetKey") UUID datasetKey);
+
+  /** Deletes the records of all deleted datasets. */
+  int deleteDeleted();
+
+  @Nullable
+  OaipmhRecord get(
+      @Param("datasetKey") UUID datasetKey, @Param("metadataPrefix") String metadataPrefix);
+
+  /**
+   * Lists the records of a metadata format ordered by datestamp and dataset key.
+   *
+   * <p>Pages are read after the last (datestamp, dataset key) of the previous page when given,
+   * which costs the same for every page. The offset is only used for positions without such a key.
+   *
+   * @param setSpec set the records must belong to, e.g. country:DK
+   * @param from lower bound datestamp (inclusive)
+   * @param until upper bound datestamp (exclusive)
+   * @param afterDatestamp datestamp of the last record of the previous page
+   * @param afterKey dataset key of the last record of the previous page
+   * @param withMetadata whether to load the rendered documents
+   */
+  List<OaipmhRecord> list(
+      @Param("metadataPrefix") String metadataPrefix,
+      @Nullable @Param("setSpec") String setSpec,
+      @Nullable @Param("from") Date from,
+      @Nullable @Param("until") Date until,
+      @Nullable @Param("afterDatestamp") Date afterDatestamp,
+      @Nullable @Param("afterKey") UUID afterKey,
+      @Param("offset") long offset,
+      @Param("limit") int limit,
+      @Param("withMetadata") boolean withMetadata);
+
+  /**
+   * Lists datasets which are not deleted and miss a record in one of the metadata formats, or
+   * whose records are older than the dataset or marked as stale, ordered by key. Datasets whose
+   * records failed to render are left out until their backoff has passed.
+   *
+   * @param backoffMs delay after the first failure, doubled after every further failure
+   */
+  List<UUID> listStaleDatasetKeys(
+      @Param("metadataPrefixes") List<String> metadataPrefixes,
+      @Param("metadataPrefixCount") int metadataPrefixCount,
+      @Param("backoffMs") long backoffMs,
+      @Param("limit") int limit);
+
+  /** Records a failed attempt to render the records of the dataset. */
+  void recordFailure(@Param("datasetKey") UUID datasetKey);
+
+  /** Forgets the failed attempts to render the records of the dataset. */
+  int clearFailure(@Param("datasetKey") UUID datasetKey);
+
+  /**
+   * Marks the records of the datasets published by the organization as stale, so they are
+   * rendered again by the reconciliation.
+   */
+  int markStalePublishedBy(@Param("organizationKey") UUID organizationKey);
+}
@@ -40,6 +40,12 @@ public interface OccurrenceDownloadMapper {
 
   void update(Download entity);
 
+  /**
+   * Marks a download as modified without changing it, so the download statistics rollup reads it
+   * again, e.g. after its usages were stored.
+   */
+  void updateModified(@Param("key") String key);
+
   void create(Download entity);
 
   List<Download> list(@Nullable @Param("page") Pageable page);
@@ -123,6 +123,19 @@ public interface OrganizationMapper
       @Param("isEndorsed") Boolean isEndorsed,
       @Nullable @Param("page") Pageable page);
 
+  /**
+   * Same as {@link #list} but without the sub resources such as contacts and endpoints, which are
+   * loaded for a whole page at once with the {@link NetworkEntityChildrenMapper}.
+   */
+  List<Organization> listLight(@Nullable @Param("page") Pageable page);
+
+  /** Same as the scoped search but without the sub resources, see {@link #listLight}. */
+  List<Organization> searchLight(
+      @Nullable @Param("query") String query,
+      @Param("country") Country country,
+      @Param("isEndorsed") Boolean isEndorsed,
+      @Nullable @Param("page") Pageable page);
+
   /** Overloaded count to allow a search scoped by country. */
   int count(
       @Nullable @Param("query") String query,
@@ -15,8 +15,14 @@
  */
 package org.gbif.registry.persistence.mapper;
 
+import org.gbif.registry.persistence.mapper.dto.EditorRight;
+import org.gbif.registry.persistence.mapper.dto.EntityOwnership;
+
+import java.util.List;
 import java.util.UUID;
 
+import javax.annotation.Nullable;
+
 import org.apache.ibatis.annotations.Param;
 import org.springframework.stereotype.Repository;
 
@@ -29,4 +35,43 @@ public interface UserRightsMapper {
 
   boolean allowedToDeleteMachineTag(
       @Param("username") String username, @Param("key") int machineTagKey);
+
+  /**
+   * Whether the user has rights on the dataset, its installation, hosting organization, publishing
+   * organization or their endorsing nodes, checked with a single query.
+   */
+  boolean allowedToModifyDataset(@Param("username") String username, @Param("key") UUID key);
+
+  /**
+   * Whether the user has rights on the installation, its hosting organization or its endorsing
+   * node, checked with a single query.
+   */
+  boolean allowedToModifyInstallation(@Param("username") String username, @Param("key") UUID key);
+
+  /**
+   * Whether the user has rights on the organization or its endorsing node, checked with a single
+   * query.
+   */
+  boolean allowedToModifyOrganization(@Param("username") String username, @Param("key") UUID key);
+
+  /** Lists the editor rights of all the users, or only of the given user. */
+  List<EditorRight> listEditorRights(@Nullable @Param("username") String username);
+
+  /**
+   * Lists the publishing organization and installation of all the datasets, or only of the given
+   * dataset. Deleted datasets are included.
+   */
+  List<EntityOwnership> listDatasetOwnership(@Nullable @Param("key") UUID key);
+
+  /**
+   * Lists the hosting organization of all the installations, or only of the given installation.
+   * Deleted installations are included.
+   */
+  List<EntityOwnership> listInstallationOwnership(@Nullable @Param("key") UUID key);
+
+  /**
+   * Lists the endorsing node of all the organizations, or only of the given organization. Deleted
+   * organizations are included.
+   */
+  List<EntityOwnership> listOrganizationOwnership(@Nullable @Param("key") UUID key);
 }
@@ -41,6 +41,19 @@ public interface InstitutionMapper
       @Nullable @Param("alternativeCode") String alternativeCode,
       @Nullable @Param("page") Pageable page);
 
+  /**
+   * Same as {@link #list} but without the sub resources such as contacts and tags, which are loaded
+   * for a whole page at once with the {@code NetworkEntityChildrenMapper}. The addresses only have
+   * their key.
+   */
+  List<Institution> listLight(
+      @Nullable @Param("query") String query,
+      @Nullable @Param("contactKey") UUID contactKey,
+      @Nullable @Param("code") String code,
+      @Nullable @Param("name") String name,
+      @Nullable @Param("alternativeCode") String alternativeCode,
+      @Nullable @Param("page") Pageable page);
+
   long count(
       @Nullable @Param("query") String query,
       @Nullable @Param("contactKey") UUID contactKey,
@@ -16,8 +16,11 @@
 package org.gbif.registry.persistence.mapper.collections;
 
 import org.gbif.api.model.collections.CollectionEntity;
+import org.gbif.registry.persistence.mapper.dto.LookupEntry;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.UUID;
 
 import javax.annotation.Nullable;
 
@@ -30,4 +33,18 @@ public interface LookupMapper<T extends CollectionEntity> {
       @Nullable @Param("identifier") String identifier,
       @Nullable @Param("name") String name,
       @Nullable @Param("alternativeCode") String alternativeCode);
+
+  /**
+   * Gets the entities that are not deleted among the given ones, ordered by key as the lookups.
+   *
+   * @param keys keys of the entities, must not be empty
+   */
+  List<T> getByKeys(@Param("keys") Collection<UUID> keys);
+
+  /**
+   * Lists the fields used to look up the entities that are not deleted.
+   *
+   * @param key key of the only entity to list, or null to list all of them
+   */
+  List<LookupEntry> listLookupEntries(@Nullable @Param("key") UUID key);
 }
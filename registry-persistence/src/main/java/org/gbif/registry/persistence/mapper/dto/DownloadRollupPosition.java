@@ -0,0 +1,50 @@
+/*
+ * Copyright 2020 Global Biodiversity Information Facility (GBIF)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gbif.registry.persistence.mapper.dto;
+
+import java.util.Date;
+
+/**
+ * A position in the occurrence downloads ordered by modification date and key, like the high-water
+ * mark of the download statistics rollup.
+ */
+public class DownloadRollupPosition {
+  private Date modified;
+  private String downloadKey;
+
+  public DownloadRollupPosition() {}
+
+  public DownloadRollupPosition(Date modified, String downloadKey) {
+    this.modified = modified;
+    this.downloadKey = downloadKey;
+  }
+
+  public Date getModified() {
+    return modified;
+  }
+
+  public void setModified(Date modified) {
+    this.modified = modified;
+  }
+
+  public String getDownloadKey() {
+    return downloadKey;
+  }
+
+  public void setDownloadKey(String downloadKey) {
+    this.downloadKey = downloadKey;
+  }
+}
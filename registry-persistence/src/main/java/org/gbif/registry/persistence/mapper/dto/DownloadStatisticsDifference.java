@@ -0,0 +1,93 @@
+/*
+ * Copyright 2020 Global Biodiversity Information Facility (GBIF)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gbif.registry.persistence.mapper.dto;
+
+import java.util.Date;
+import java.util.StringJoiner;
+
+/**
+ * A day of the download statistics whose rollup differs from the statistics computed from the
+ * downloads. The expected or the actual values are null if the day is missing on that side.
+ */
+public class DownloadStatisticsDifference {
+  private Date day;
+  // the user country or the dataset key
+  private String dimension;
+  private Long expectedRecords;
+  private Long actualRecords;
+  private Integer expectedDownloads;
+  private Integer actualDownloads;
+
+  public Date getDay() {
+    return day;
+  }
+
+  public void setDay(Date day) {
+    this.day = day;
+  }
+
+  public String getDimension() {
+    return dimension;
+  }
+
+  public void setDimension(String dimension) {
+    this.dimension = dimension;
+  }
+
+  public Long getExpectedRecords() {
+    return expectedRecords;
+  }
+
+  public void setExpectedRecords(Long expectedRecords) {
+    this.expectedRecords = expectedRecords;
+  }
+
+  public Long getActualRecords() {
+    return actualRecords;
+  }
+
+  public void setActualRecords(Long actualRecords) {
+    this.actualRecords = actualRecords;
+  }
+
+  public Integer getExpectedDownloads() {
+    return expectedDownloads;
+  }
+
+  public void setExpectedDownloads(Integer expectedDownloads) {
+    this.expectedDownloads = expectedDownloads;
+  }
+
+  public Integer getActualDownloads() {
+    return actualDownloads;
+  }
+
+  public void setActualDownloads(Integer actualDownloads) {
+    this.actualDownloads = actualDownloads;
+  }
+
+  @Override
+  public String toString() {
+    return new StringJoiner(", ", DownloadStatisticsDifference.class.getSimpleName() + "[", "]")
+        .add("day=" + day)
+        .add("dimension='" + dimension + "'")
+        .add("expectedRecords=" + expectedRecords)
+        .add("actualRecords=" + actualRecords)
+        .add("expectedDownloads=" + expectedDownloads)
+        .add("actualDownloads=" + actualDownloads)
+        .toString();
+  }
+}
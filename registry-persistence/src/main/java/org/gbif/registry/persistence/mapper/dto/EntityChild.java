@@ -0,0 +1,44 @@
+/*
+ * Copyright 2020 Global Biodiversity Information Facility (GBIF)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gbif.registry.persistence.mapper.dto;
+
+/**
+ * A sub resource of an entity, e.g. a contact of a dataset, together with the key of the entity it
+ * belongs to, so the sub resources of several entities can be retrieved in a single query.
+ *
+ * @param <K> type of the key of the owning entity
+ * @param <T> type of the sub resource
+ */
+public class EntityChild<K, T> {
+  private K entityKey;
+  private T child;
+
+  public K getEntityKey() {
+    return entityKey;
+  }
+
+  public void setEntityKey(K entityKey) {
+    this.entityKey = entityKey;
+  }
+
+  public T getChild() {
+    return child;
+  }
+
+  public void setChild(T child) {
+    this.child = child;
+  }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2020 Global Biodiversity Information Facility (GBIF)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gbif.registry.persistence.mapper.dto;
+
+import java.util.UUID;
+
+/**
+ * The keys of the entities owning a dataset, an installation or an organization, i.e. the
+ * publishing organization and installation of a dataset, the hosting organization of an
+ * installation and the endorsing node of an organization. Keys not applying to the entity type are
+ * null.
+ */
+public class EntityOwnership {
+  private UUID key;
+  private UUID organizationKey;
+  private UUID installationKey;
+  private UUID nodeKey;
+
+  public UUID getKey() {
+    return key;
+  }
+
+  public void setKey(UUID key) {
+    this.key = key;
+  }
+
+  public UUID getOrganizationKey() {
+    return organizationKey;
+  }
+
+  public void setOrganizationKey(UUID organizationKey) {
+    this.organizationKey = organizationKey;
+  }
+
+  public UUID getInstallationKey() {
+    return installationKey;
+  }
+
+  public void setInstallationKey(UUID installationKey) {
+    this.installationKey = installationKey;
+  }
+
+  public UUID getNodeKey() {
+    return nodeKey;
+  }
+
+  public void setNodeKey(UUID nodeKey) {
+    this.nodeKey = nodeKey;
+  }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2020 Global Biodiversity Information Facility (GBIF)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gbif.registry.persistence.mapper.dto;
+
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+
+/** A dataset pre-rendered in one OAI-PMH metadata format, with the sets it belongs to. */
+public class OaipmhRecord {
+  private UUID datasetKey;
+  private String metadataPrefix;
+  private Date datestamp;
+  private List<String> setSpecs;
+  private String metadata;
+
+  public UUID getDatasetKey() {
+    return datasetKey;
+  }
+
+  public void setDatasetKey(UUID datasetKey) {
+    this.datasetKey = datasetKey;
+  }
+
+  public String getMetadataPrefix() {
+    return metadataPrefix;
+  }
+
+  public void setMetadataPrefix(String metadataPrefix) {
+    this.metadataPrefix = metadataPrefix;
+  }
+
+  public Date getDatestamp() {
+    return datestamp;
+  }
+
+  public void setDatestamp(Date datestamp) {
+    this.datestamp = datestamp;
+  }
+
+  public List<String> getSetSpecs() {
+    return setSpecs;
+  }
+
+  public void setSetSpecs(List<String> setSpecs) {
+    this.setSpecs = setSpecs;
+  }
+
+  /** The rendered document, not loaded when listing identifiers only. */
+  public String getMetadata() {
+    return metadata;
+  }
+
+  public void setMetadata(String metadata) {
+    this.metadata = metadata;
+  }
+}
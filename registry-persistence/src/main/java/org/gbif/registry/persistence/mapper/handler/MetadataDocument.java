@@ -0,0 +1,47 @@
+/*
+ * Copyright 2020 Global Biodiversity Information Facility (GBIF)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gbif.registry.persistence.mapper.handler;
+
+import com.google.common.hash.Hashing;
+
+/**
+ * A {@link ByteArrayWrapper} holding the content of a metadata document together with the key of
+ * its metadata record, so several documents can be retrieved in a single query.
+ */
+public class MetadataDocument extends ByteArrayWrapper {
+
+  private static final byte[] EMPTY = new byte[0];
+
+  private int key;
+
+  /**
+   * Computes the hash stored with a metadata document to find identical documents: the hex
+   * encoded SHA-256 of its exact bytes.
+   *
+   * @param content the document content, null is hashed as an empty document
+   */
+  public static String contentHash(byte[] content) {
+    return Hashing.sha256().hashBytes(content != null ? content : EMPTY).toString();
+  }
+
+  public int getKey() {
+    return key;
+  }
+
+  public void setKey(int key) {
+    this.key = key;
+  }
+}
@@ -21,6 +21,7 @@ import org.gbif.api.model.pipelines.PipelineProcess;
 import org.gbif.api.model.pipelines.PipelineStep;
 import org.gbif.api.model.pipelines.StepType;
 import org.gbif.api.model.pipelines.ws.SearchResult;
+import org.gbif.registry.persistence.mapper.dto.PageRow;
 
 import java.time.LocalDateTime;
 import java.util.List;
@@ -97,16 +98,18 @@ public interface PipelineProcessMapper {
       @Param("pipelineExecutionKey") long pipelineExecutionKey, @Param("step") PipelineStep step);
 
   /**
-   * Lists {@link PipelineProcess} based in the search parameters.
+   * Lists {@link PipelineProcess} based in the search parameters, with their dataset title,
+   * executions and steps loaded in the same statement.
    *
-   * <p>It supports paging.
+   * <p>It supports paging. Every row carries the total number of processes matching the
+   * parameters, so {@link #count} is only needed for pages past the last process.
    *
    * @param datasetKey dataset key
    * @param attempt attempt
    * @param page page to specify the offset and the limit
-   * @return list of {@link PipelineProcess}
+   * @return list of {@link PipelineProcess} with the total count
    */
-  List<PipelineProcess> list(
+  List<PageRow<PipelineProcess>> list(
       @Nullable @Param("datasetKey") UUID datasetKey,
       @Nullable @Param("attempt") Integer attempt,
       @Nullable @Param("page") Pageable page);
@@ -123,7 +126,12 @@ public interface PipelineProcessMapper {
       @Nullable @Param("datasetKey") UUID datasetKey,
       @Nullable @Param("attempts") List<Integer> attempts);
 
-  List<SearchResult> search(
+  /**
+   * Searches the pipeline steps matching the parameters. Every row carries the total number of
+   * steps matching the parameters, so {@link #searchCount} is only needed for pages past the last
+   * step.
+   */
+  List<PageRow<SearchResult>> search(
       @Nullable @Param("datasetKey") UUID datasetKey,
       @Nullable @Param("state") PipelineStep.Status state,
       @Nullable @Param("stepType") StepType stepType,
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2020 Global Biodiversity Information Facility (GBIF)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gbif.registry.persistence.mapper.pipelines;
+
+import org.gbif.api.model.common.paging.Pageable;
+import org.gbif.registry.domain.pipelines.RerunJob;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+import javax.annotation.Nullable;
+
+import org.apache.ibatis.annotations.Param;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Mapper for {@link RerunJob} entities.
+ *
+ * <p>A running job is processed by the registry instance holding its lease. The lease is taken with
+ * {@link #claim}, renewed on every {@link #checkpoint} and given back with {@link #release}, so a
+ * job whose instance stopped is taken over once its lease expired. The lease is held by an owner
+ * token given on claim, so a runner whose lease was taken over can neither store its progress nor
+ * release the lease of the new owner.
+ */
+@Repository
+public interface RerunJobMapper {
+
+  /** Inserts a new job. The generated key is set to the job received as parameter. */
+  void create(RerunJob job);
+
+  RerunJob get(@Param("key") long key);
+
+  /** Lists the jobs, most recent first. */
+  List<RerunJob> list(@Nullable @Param("page") Pageable page);
+
+  long count();
+
+  /**
+   * Changes the status of a job if its current status is one of the expected ones.
+   *
+   * @return the number of jobs updated, 0 if the job doesn't exist or has another status
+   */
+  int updateStatus(
+      @Param("key") long key,
+      @Param("status") RerunJob.Status status,
+      @Param("expected") Collection<RerunJob.Status> expected);
+
+  /**
+   * Takes the lease of a running job if nobody holds it.
+   *
+   * @param owner token identifying the runner taking the lease
+   * @return 1 if the lease was taken, 0 otherwise
+   */
+  int claim(
+      @Param("key") long key, @Param("owner") String owner, @Param("leaseMs") long leaseMs);
+
+  /** Lists the keys of the running jobs whose lease is free or expired. */
+  List<Long> listClaimable();
+
+  /**
+   * Stores the progress of a job and renews its lease if the owner still holds it.
+   *
+   * @return 1 if the progress was stored, 0 if the lease is held by another owner
+   */
+  int checkpoint(
+      @Param("key") long key,
+      @Param("owner") String owner,
+      @Param("cursor") UUID cursor,
+      @Param("submitted") long submitted,
+      @Param("skipped") long skipped,
+      @Param("failed") long failed,
+      @Param("leaseMs") long leaseMs);
+
+  /** Gives back the lease of a job if the owner still holds it. */
+  void release(@Param("key") long key, @Param("owner") String owner);
+
+  /**
+   * Lists the keys of the datasets to process after the given one, in key order.
+   *
+   * @param after key of the last dataset processed, null to start from the first one
+   * @param include datasets to restrict the list to, all datasets if empty
+   * @param limit maximum number of keys to return
+   */
+  List<UUID> listDatasetKeys(
+      @Nullable @Param("after") UUID after,
+      @Param("include") Collection<UUID> include,
+      @Param("limit") int limit);
+}
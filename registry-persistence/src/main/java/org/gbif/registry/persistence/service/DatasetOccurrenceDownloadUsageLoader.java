@@ -0,0 +1,132 @@
+/*
+ * Copyright 2020 Global Biodiversity Information Facility (GBIF)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gbif.registry.persistence.service;
+
+import org.gbif.registry.persistence.mapper.DatasetOccurrenceDownloadMapper;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+
+import javax.sql.DataSource;
+
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.UncategorizedSQLException;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Stores the dataset usages of large occurrence downloads.
+ *
+ * <p>The usages are streamed with the PostgreSQL COPY protocol into a session private staging table
+ * and merged into {@code dataset_occurrence_download} with a single statement, so neither the
+ * usages nor the statements inserting them have to be held in memory. The copy and the mapper
+ * statements must share a connection, which the transaction guarantees.
+ */
+@Service
+public class DatasetOccurrenceDownloadUsageLoader {
+
+  private static final Logger LOG =
+      LoggerFactory.getLogger(DatasetOccurrenceDownloadUsageLoader.class);
+
+  private static final String COPY_SQL =
+      "COPY download_usage_staging (dataset_key, number_records) FROM STDIN";
+  // bytes of usages sent to the database at once
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private final DataSource dataSource;
+  private final DatasetOccurrenceDownloadMapper datasetOccurrenceDownloadMapper;
+
+  public DatasetOccurrenceDownloadUsageLoader(
+      DataSource dataSource, DatasetOccurrenceDownloadMapper datasetOccurrenceDownloadMapper) {
+    this.dataSource = dataSource;
+    this.datasetOccurrenceDownloadMapper = datasetOccurrenceDownloadMapper;
+  }
+
+  /**
+   * Stores the usages of a download. Usages of unknown datasets are left out, and a dataset
+   * repeated in the usages keeps its last number.
+   *
+   * @param downloadKey key of the download
+   * @param usages number of records by dataset key, consumed once
+   * @return the number of stored usages
+   */
+  @Transactional
+  public int load(String downloadKey, Iterator<Map.Entry<UUID, Long>> usages) {
+    datasetOccurrenceDownloadMapper.prepareUsagesStaging();
+    datasetOccurrenceDownloadMapper.clearUsagesStaging();
+    long copied = copy(usages);
+    int merged = datasetOccurrenceDownloadMapper.mergeUsagesStaging(downloadKey);
+    // frees the rows, the table lives as long as the pooled connection
+    datasetOccurrenceDownloadMapper.clearUsagesStaging();
+    if (merged < copied) {
+      LOG.warn(
+          "{} of {} usages of download {} refer to unknown or repeated datasets",
+          copied - merged,
+          copied,
+          downloadKey);
+    }
+    return merged;
+  }
+
+  private long copy(Iterator<Map.Entry<UUID, Long>> usages) {
+    Connection connection = DataSourceUtils.getConnection(dataSource);
+    try {
+      CopyIn copyIn = connection.unwrap(PGConnection.class).getCopyAPI().copyIn(COPY_SQL);
+      try {
+        StringBuilder buffer = new StringBuilder(BUFFER_SIZE + 64);
+        while (usages.hasNext()) {
+          Map.Entry<UUID, Long> usage = usages.next();
+          // a missing number is sent as NULL and rejected by the NOT NULL constraint
+          buffer
+              .append(usage.getKey())
+              .append('\t')
+              .append(usage.getValue() != null ? usage.getValue().toString() : "\\N")
+              .append('\n');
+          if (buffer.length() >= BUFFER_SIZE) {
+            write(copyIn, buffer);
+          }
+        }
+        write(copyIn, buffer);
+        return copyIn.endCopy();
+      } finally {
+        if (copyIn.isActive()) {
+          copyIn.cancelCopy();
+        }
+      }
+    } catch (SQLException e) {
+      throw new UncategorizedSQLException("Copying download usages", COPY_SQL, e);
+    } finally {
+      DataSourceUtils.releaseConnection(connection, dataSource);
+    }
+  }
+
+  private static void write(CopyIn copyIn, StringBuilder buffer) throws SQLException {
+    if (buffer.length() > 0) {
+      // UUIDs and numbers are ASCII
+      byte[] bytes = buffer.toString().getBytes(StandardCharsets.US_ASCII);
+      copyIn.writeToCopy(bytes, 0, bytes.length);
+      buffer.setLength(0);
+    }
+  }
+}
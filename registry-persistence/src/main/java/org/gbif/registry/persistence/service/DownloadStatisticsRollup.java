@@ -0,0 +1,132 @@
+/*
+ * Copyright 2020 Global Biodiversity Information Facility (GBIF)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gbif.registry.persistence.service;
+
+import org.gbif.registry.persistence.mapper.DownloadStatisticsRollupMapper;
+import org.gbif.registry.persistence.mapper.dto.DownloadRollupPosition;
+
+import java.util.Date;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import javax.annotation.Nullable;
+
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Adds the occurrence downloads which succeeded to the daily download statistics, one batch at a
+ * time.
+ *
+ * <p>Every batch is added in its own transaction together with the high-water mark it reached, so
+ * an interrupted rollup continues where it stopped. The modification date of a download is taken
+ * when its update starts but the update may be committed later, so a rollup starts a little before
+ * the high-water mark. A download read again only adds its changes since it was last rolled up,
+ * so it is never counted twice while usages stored or records corrected later are still counted.
+ * Storing usages marks their download as modified for that reason. A counted download which is no
+ * longer successful is read again too and subtracted, a deleted one is subtracted by a trigger.
+ */
+@Service
+public class DownloadStatisticsRollup {
+
+  static final String HIGH_WATER_MARK = "download-statistics";
+
+  private final DownloadStatisticsRollupMapper rollupMapper;
+
+  public DownloadStatisticsRollup(DownloadStatisticsRollupMapper rollupMapper) {
+    this.rollupMapper = rollupMapper;
+  }
+
+  /**
+   * Returns the position a rollup starts from.
+   *
+   * @param overlapMs how long before the high-water mark the downloads are read again
+   */
+  public DownloadRollupPosition start(long overlapMs) {
+    DownloadRollupPosition mark = rollupMapper.getHighWaterMark(HIGH_WATER_MARK);
+    long from = mark != null ? Math.max(mark.getModified().getTime() - overlapMs, 0) : 0;
+    // the empty key sorts before all downloads modified at the same time
+    return new DownloadRollupPosition(new Date(from), "");
+  }
+
+  /**
+   * Adds the next batch of successful downloads to the statistics and subtracts the downloads of
+   * the batch which are no longer successful.
+   *
+   * @param after position the batch starts after
+   * @param batchSize maximum number of downloads read
+   * @return the position of the last download read or null if there are no more downloads
+   */
+  @Nullable
+  @Transactional
+  public DownloadRollupPosition rollUp(DownloadRollupPosition after, int batchSize) {
+    List<DownloadRollupPosition> batch =
+        rollupMapper.listSuccessfulOrCountedAfter(after, batchSize);
+    if (batch.isEmpty()) {
+      return null;
+    }
+
+    rollUp(
+        batch.stream().map(DownloadRollupPosition::getDownloadKey).collect(Collectors.toList()));
+
+    DownloadRollupPosition last = batch.get(batch.size() - 1);
+    rollupMapper.updateHighWaterMark(HIGH_WATER_MARK, last);
+    return last;
+  }
+
+  /**
+   * Rebuilds the statistics of a range of UTC days from the downloads, replacing the rollup of
+   * these days. Downloads of these days rolled up concurrently are not counted twice.
+   *
+   * @param fromDay first day, inclusive
+   * @param toDay last day, exclusive
+   * @param batchSize number of downloads added at once
+   * @return the number of downloads added to the statistics
+   */
+  @Transactional
+  public int rebuild(Date fromDay, Date toDay, int batchSize) {
+    rollupMapper.deleteUserStatistics(fromDay, toDay);
+    rollupMapper.deleteDatasetStatistics(fromDay, toDay);
+    rollupMapper.deleteRollup(fromDay, toDay);
+
+    int rolledUp = 0;
+    String afterKey = "";
+    List<String> keys;
+    while (!(keys = rollupMapper.listSuccessfulCreatedWithin(fromDay, toDay, afterKey, batchSize))
+        .isEmpty()) {
+      rollUp(keys);
+      rolledUp += keys.size();
+      afterKey = keys.get(keys.size() - 1);
+    }
+    return rolledUp;
+  }
+
+  /**
+   * Adds the changes of the downloads since they were last rolled up to the statistics, subtracting
+   * the downloads which are no longer successful.
+   */
+  private void rollUp(List<String> downloadKeys) {
+    rollupMapper.lockRollup(downloadKeys);
+    rollupMapper.addUserStatistics(downloadKeys);
+    rollupMapper.updateUserRollup(downloadKeys);
+    rollupMapper.addDatasetStatistics(downloadKeys);
+    rollupMapper.deleteDatasetRollup(downloadKeys);
+    rollupMapper.insertDatasetRollup(downloadKeys);
+    rollupMapper.deleteUnsuccessfulRollup(downloadKeys);
+    rollupMapper.deleteEmptyUserStatistics(downloadKeys);
+    rollupMapper.deleteEmptyDatasetStatistics(downloadKeys);
+  }
+}
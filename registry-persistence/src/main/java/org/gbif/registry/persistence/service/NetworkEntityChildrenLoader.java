@@ -0,0 +1,293 @@
+/*
+ * Copyright 2020 Global Biodiversity Information Facility (GBIF)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gbif.registry.persistence.service;
+
+import org.gbif.api.model.collections.Address;
+import org.gbif.api.model.collections.Collection;
+import org.gbif.api.model.collections.CollectionEntity;
+import org.gbif.api.model.collections.Institution;
+import org.gbif.api.model.collections.Person;
+import org.gbif.api.model.registry.Comment;
+import org.gbif.api.model.registry.Commentable;
+import org.gbif.api.model.registry.Contact;
+import org.gbif.api.model.registry.Contactable;
+import org.gbif.api.model.registry.Dataset;
+import org.gbif.api.model.registry.Endpoint;
+import org.gbif.api.model.registry.Endpointable;
+import org.gbif.api.model.registry.Identifiable;
+import org.gbif.api.model.registry.Identifier;
+import org.gbif.api.model.registry.MachineTag;
+import org.gbif.api.model.registry.MachineTaggable;
+import org.gbif.api.model.registry.NetworkEntity;
+import org.gbif.api.model.registry.Organization;
+import org.gbif.api.model.registry.Tag;
+import org.gbif.api.model.registry.Taggable;
+import org.gbif.registry.persistence.mapper.NetworkEntityChildrenMapper;
+import org.gbif.registry.persistence.mapper.dto.EntityChild;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Populates the sub resources (contacts, endpoints, machine tags, tags, identifiers and comments)
+ * of pages of network entities listed without them, e.g. by {@code DatasetMapper.listLight}, and
+ * likewise the contacts, addresses, machine tags, tags, identifiers and comments of pages of
+ * GrSciColl institutions and collections.
+ *
+ * <p>The result maps used by single entity lookups load every sub resource with a nested select,
+ * which costs 7 statements per listed entity. Loading them in bulk costs 7 statements per page
+ * instead, independent of the page size. The {@code registry.childrenLoading} property switches
+ * list and search pages between both modes so they can be compared.
+ */
+@Service
+public class NetworkEntityChildrenLoader {
+
+  /** How the sub resources of list and search pages are loaded. */
+  public enum Mode {
+    /** With the nested selects of the result maps, i.e. several statements per entity. */
+    NESTED_SELECTS,
+    /** With one statement per sub resource type for the whole page. */
+    BULK
+  }
+
+  // table prefixes of the join tables, e.g. dataset_contact
+  private static final String DATASET = "dataset";
+  private static final String ORGANIZATION = "organization";
+  private static final String INSTITUTION = "institution";
+  private static final String COLLECTION = "collection";
+  private static final String COLLECTION_PERSON = "collection_person";
+
+  private final NetworkEntityChildrenMapper childrenMapper;
+  private final Mode mode;
+
+  public NetworkEntityChildrenLoader(
+      NetworkEntityChildrenMapper childrenMapper,
+      @Value("${registry.childrenLoading:BULK}") Mode mode) {
+    this.childrenMapper = childrenMapper;
+    this.mode = mode;
+  }
+
+  /** @return true if pages should be listed without sub resources and populated by this loader */
+  public boolean isBulkMode() {
+    return mode == Mode.BULK;
+  }
+
+  /**
+   * Populates the sub resources of the given datasets.
+   *
+   * @return the given datasets
+   */
+  public List<Dataset> loadDatasetChildren(List<Dataset> datasets) {
+    return load(DATASET, datasets);
+  }
+
+  /**
+   * Populates the sub resources of the given organizations.
+   *
+   * @return the given organizations
+   */
+  public List<Organization> loadOrganizationChildren(List<Organization> organizations) {
+    return load(ORGANIZATION, organizations);
+  }
+
+  /**
+   * Populates the sub resources of the given institutions, including the sub resources and mailing
+   * addresses of their contacts.
+   *
+   * @return the given institutions
+   */
+  public List<Institution> loadInstitutionChildren(List<Institution> institutions) {
+    loadCollectionEntities(INSTITUTION, institutions);
+    loadAddresses(
+        institutions.stream()
+            .flatMap(i -> Stream.of(i.getAddress(), i.getMailingAddress()))
+            .collect(Collectors.toList()),
+        institutions,
+        (i, addresses) -> {
+          i.setAddress(addresses.apply(i.getAddress()));
+          i.setMailingAddress(addresses.apply(i.getMailingAddress()));
+        });
+    return institutions;
+  }
+
+  /**
+   * Populates the sub resources of the given collections, including the sub resources and mailing
+   * addresses of their contacts.
+   *
+   * @return the given collections
+   */
+  public List<Collection> loadCollectionChildren(List<Collection> collections) {
+    loadCollectionEntities(COLLECTION, collections);
+    loadAddresses(
+        collections.stream()
+            .flatMap(c -> Stream.of(c.getAddress(), c.getMailingAddress()))
+            .collect(Collectors.toList()),
+        collections,
+        (c, addresses) -> {
+          c.setAddress(addresses.apply(c.getAddress()));
+          c.setMailingAddress(addresses.apply(c.getMailingAddress()));
+        });
+    return collections;
+  }
+
+  private <
+          T extends
+              NetworkEntity & Contactable & Endpointable & MachineTaggable & Taggable & Identifiable
+                  & Commentable>
+      List<T> load(String entity, List<T> entities) {
+    if (entities.isEmpty()) {
+      return entities;
+    }
+    List<UUID> keys = entities.stream().map(NetworkEntity::getKey).collect(Collectors.toList());
+
+    Map<UUID, List<Contact>> contacts = group(childrenMapper.listContacts(entity, keys));
+    Map<UUID, List<Endpoint>> endpoints = group(childrenMapper.listEndpoints(entity, keys));
+    Map<UUID, List<MachineTag>> machineTags = group(childrenMapper.listMachineTags(entity, keys));
+    Map<UUID, List<Tag>> tags = group(childrenMapper.listTags(entity, keys));
+    Map<UUID, List<Identifier>> identifiers = group(childrenMapper.listIdentifiers(entity, keys));
+    Map<UUID, List<Comment>> comments = group(childrenMapper.listComments(entity, keys));
+    loadEndpointMachineTags(endpoints);
+
+    for (T e : entities) {
+      e.setContacts(contacts.getOrDefault(e.getKey(), new ArrayList<>()));
+      e.setEndpoints(endpoints.getOrDefault(e.getKey(), new ArrayList<>()));
+      e.setMachineTags(machineTags.getOrDefault(e.getKey(), new ArrayList<>()));
+      e.setTags(tags.getOrDefault(e.getKey(), new ArrayList<>()));
+      e.setIdentifiers(identifiers.getOrDefault(e.getKey(), new ArrayList<>()));
+      e.setComments(comments.getOrDefault(e.getKey(), new ArrayList<>()));
+    }
+    return entities;
+  }
+
+  private void loadEndpointMachineTags(Map<UUID, List<Endpoint>> endpointsByEntity) {
+    List<Endpoint> endpoints =
+        endpointsByEntity.values().stream().flatMap(List::stream).collect(Collectors.toList());
+    if (endpoints.isEmpty()) {
+      return;
+    }
+    Map<Integer, List<MachineTag>> machineTags =
+        group(
+            childrenMapper.listEndpointMachineTags(
+                endpoints.stream().map(Endpoint::getKey).collect(Collectors.toList())));
+    for (Endpoint endpoint : endpoints) {
+      endpoint.setMachineTags(machineTags.getOrDefault(endpoint.getKey(), new ArrayList<>()));
+    }
+  }
+
+  /** Groups the sub resources by entity, keeping the order of the query within each entity. */
+  private static <K, T> Map<K, List<T>> group(List<EntityChild<K, T>> children) {
+    return children.stream()
+        .collect(
+            Collectors.groupingBy(
+                EntityChild::getEntityKey,
+                Collectors.mapping(EntityChild::getChild, Collectors.toList())));
+  }
+
+  private <
+          T extends
+              CollectionEntity & org.gbif.api.model.collections.Contactable & Taggable
+                  & MachineTaggable & Identifiable & Commentable>
+      void loadCollectionEntities(String entity, List<T> entities) {
+    if (entities.isEmpty()) {
+      return;
+    }
+    List<UUID> keys = entities.stream().map(CollectionEntity::getKey).collect(Collectors.toList());
+
+    Map<UUID, List<Person>> contacts = group(childrenMapper.listCollectionPersons(entity, keys));
+    Map<UUID, List<MachineTag>> machineTags = group(childrenMapper.listMachineTags(entity, keys));
+    Map<UUID, List<Tag>> tags = group(childrenMapper.listTags(entity, keys));
+    Map<UUID, List<Identifier>> identifiers = group(childrenMapper.listIdentifiers(entity, keys));
+    Map<UUID, List<Comment>> comments = group(childrenMapper.listComments(entity, keys));
+    loadContactChildren(contacts);
+
+    for (T e : entities) {
+      e.setContacts(contacts.getOrDefault(e.getKey(), new ArrayList<>()));
+      e.setMachineTags(machineTags.getOrDefault(e.getKey(), new ArrayList<>()));
+      e.setTags(tags.getOrDefault(e.getKey(), new ArrayList<>()));
+      e.setIdentifiers(identifiers.getOrDefault(e.getKey(), new ArrayList<>()));
+      e.setComments(comments.getOrDefault(e.getKey(), new ArrayList<>()));
+    }
+  }
+
+  private void loadContactChildren(Map<UUID, List<Person>> contactsByEntity) {
+    List<Person> persons =
+        contactsByEntity.values().stream().flatMap(List::stream).collect(Collectors.toList());
+    if (persons.isEmpty()) {
+      return;
+    }
+    // a person can be the contact of several entities of the page
+    List<UUID> keys = persons.stream().map(Person::getKey).distinct().collect(Collectors.toList());
+
+    Map<UUID, List<MachineTag>> machineTags =
+        group(childrenMapper.listMachineTags(COLLECTION_PERSON, keys));
+    Map<UUID, List<Tag>> tags = group(childrenMapper.listTags(COLLECTION_PERSON, keys));
+    Map<UUID, List<Identifier>> identifiers =
+        group(childrenMapper.listIdentifiers(COLLECTION_PERSON, keys));
+    Map<UUID, List<Comment>> comments = group(childrenMapper.listComments(COLLECTION_PERSON, keys));
+
+    for (Person p : persons) {
+      p.setMachineTags(new ArrayList<>(machineTags.getOrDefault(p.getKey(), new ArrayList<>())));
+      p.setTags(new ArrayList<>(tags.getOrDefault(p.getKey(), new ArrayList<>())));
+      p.setIdentifiers(new ArrayList<>(identifiers.getOrDefault(p.getKey(), new ArrayList<>())));
+      p.setComments(new ArrayList<>(comments.getOrDefault(p.getKey(), new ArrayList<>())));
+    }
+    loadAddresses(
+        persons.stream().map(Person::getMailingAddress).collect(Collectors.toList()),
+        persons,
+        (p, addresses) -> p.setMailingAddress(addresses.apply(p.getMailingAddress())));
+  }
+
+  /**
+   * Replaces the addresses listed with their key only by the complete addresses, which are loaded
+   * with a single statement.
+   *
+   * @param keyOnlyAddresses the addresses to load, null entries are ignored
+   * @param entities the entities whose addresses are replaced
+   * @param setter replaces the addresses of an entity using the given address lookup
+   */
+  private <T> void loadAddresses(
+      List<Address> keyOnlyAddresses, List<T> entities, AddressSetter<T> setter) {
+    List<Integer> keys =
+        keyOnlyAddresses.stream()
+            .filter(Objects::nonNull)
+            .map(Address::getKey)
+            .distinct()
+            .collect(Collectors.toList());
+    if (keys.isEmpty()) {
+      return;
+    }
+    Map<Integer, Address> addresses =
+        childrenMapper.listAddresses(keys).stream()
+            .collect(Collectors.toMap(Address::getKey, Function.identity()));
+    for (T entity : entities) {
+      setter.set(entity, a -> a != null ? addresses.get(a.getKey()) : null);
+    }
+  }
+
+  @FunctionalInterface
+  private interface AddressSetter<T> {
+    void set(T entity, Function<Address, Address> addresses);
+  }
+}
@@ -0,0 +1,324 @@
+/*
+ * Copyright 2020 Global Biodiversity Information Facility (GBIF)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gbif.registry.pipelines;
+
+import org.gbif.api.model.common.paging.Pageable;
+import org.gbif.api.model.common.paging.PagingResponse;
+import org.gbif.api.model.pipelines.RunPipelineResponse;
+import org.gbif.api.model.pipelines.StepType;
+import org.gbif.registry.domain.pipelines.RerunJob;
+import org.gbif.registry.persistence.mapper.pipelines.RerunJobMapper;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+
+import javax.annotation.Nullable;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.RateLimiter;
+
+/**
+ * Runs the rerun jobs of this registry instance.
+ *
+ * <p>A job processes the datasets in batches of {@code pipelines.rerun.batchSize}, in the order of
+ * their keys. The datasets of a batch are rerun on a pool of {@code pipelines.doAllThreads}
+ * threads, and the progress of the job is stored once the whole batch is processed. The status of
+ * the job is checked at the same time, so a pause or a cancellation takes effect at the end of the
+ * current batch.
+ *
+ * <p>A running job is processed by the instance holding its lease, which is renewed on every
+ * checkpoint. The jobs left running by a stopped instance are taken over every {@code
+ * pipelines.rerun.pollIntervalMs} once their lease expired, and continue after the last dataset
+ * processed. Every claim uses a new owner token, and a runner stops as soon as a checkpoint finds
+ * its lease held by another owner.
+ *
+ * <p>The messages published to RabbitMQ are throttled to {@code pipelines.rerun.messagesPerSecond}
+ * for all jobs together, the permits being taken before a dataset is rerun.
+ */
+@Service
+public class DefaultPipelinesRerunJobService implements PipelinesRerunJobService {
+
+  private static final Logger LOG = LoggerFactory.getLogger(DefaultPipelinesRerunJobService.class);
+
+  private enum Outcome {
+    SUBMITTED,
+    SKIPPED,
+    FAILED
+  }
+
+  private final RerunJobMapper mapper;
+  private final RegistryPipelinesHistoryTrackingService historyTrackingService;
+  private final RateLimiter messageRateLimiter;
+  private final int batchSize;
+  private final long leaseMs;
+  private final ExecutorService jobExecutor = Executors.newCachedThreadPool();
+  private final ExecutorService datasetExecutor;
+
+  public DefaultPipelinesRerunJobService(
+      RerunJobMapper mapper,
+      @Lazy RegistryPipelinesHistoryTrackingService historyTrackingService,
+      @Value("${pipelines.doAllThreads}") Integer threadPoolSize,
+      @Value("${pipelines.rerun.batchSize:50}") int batchSize,
+      @Value("${pipelines.rerun.messagesPerSecond:20}") double messagesPerSecond,
+      @Value("${pipelines.rerun.leaseMs:300000}") long leaseMs) {
+    Preconditions.checkArgument(batchSize > 0, "The batch size must be positive");
+    this.mapper = mapper;
+    this.historyTrackingService = historyTrackingService;
+    this.messageRateLimiter = RateLimiter.create(messagesPerSecond);
+    this.batchSize = batchSize;
+    this.leaseMs = leaseMs;
+    this.datasetExecutor =
+        threadPoolSize != null
+            ? Executors.newFixedThreadPool(threadPoolSize)
+            : Executors.newSingleThreadExecutor();
+  }
+
+  @Override
+  public RerunJob submit(
+      Set<StepType> steps,
+      String reason,
+      String user,
+      @Nullable String prefix,
+      @Nullable List<UUID> datasetsToExclude,
+      @Nullable List<UUID> datasetsToInclude,
+      boolean useLastSuccessful) {
+    Objects.requireNonNull(steps, "Steps can't be null");
+    Objects.requireNonNull(reason, "Reason can't be null");
+    Objects.requireNonNull(user, "User can't be null");
+
+    RerunJob job = new RerunJob();
+    job.setSteps(new ArrayList<>(steps));
+    job.setReason(reason);
+    job.setCreatedBy(user);
+    job.setPrefix(prefix);
+    job.setUseLastSuccessful(useLastSuccessful);
+    if (datasetsToExclude != null) {
+      job.setDatasetsToExclude(new ArrayList<>(datasetsToExclude));
+    }
+    if (datasetsToInclude != null) {
+      job.setDatasetsToInclude(new ArrayList<>(datasetsToInclude));
+    }
+    mapper.create(job);
+    LOG.info("Created rerun job {} for steps {}", job.getKey(), steps);
+
+    start(job.getKey());
+    return mapper.get(job.getKey());
+  }
+
+  @Nullable
+  @Override
+  public RerunJob get(long key) {
+    return mapper.get(key);
+  }
+
+  @Override
+  public PagingResponse<RerunJob> list(Pageable page) {
+    return new PagingResponse<>(page, mapper.count(), mapper.list(page));
+  }
+
+  @Nullable
+  @Override
+  public RerunJob pause(long key) {
+    return changeStatus(key, RerunJob.Status.PAUSED, EnumSet.of(RerunJob.Status.RUNNING));
+  }
+
+  @Nullable
+  @Override
+  public RerunJob resume(long key) {
+    RerunJob job =
+        changeStatus(key, RerunJob.Status.RUNNING, EnumSet.of(RerunJob.Status.PAUSED));
+    if (job != null) {
+      // the lease is still held if the job hasn't reached its checkpoint since it was paused, in
+      // which case its current runner simply goes on
+      start(key);
+    }
+    return job;
+  }
+
+  @Nullable
+  @Override
+  public RerunJob cancel(long key) {
+    return changeStatus(
+        key,
+        RerunJob.Status.CANCELLED,
+        EnumSet.of(RerunJob.Status.RUNNING, RerunJob.Status.PAUSED));
+  }
+
+  /** Takes over the running jobs whose runner stopped, e.g. because its instance was restarted. */
+  @Scheduled(
+      initialDelayString = "${pipelines.rerun.pollIntervalMs:60000}",
+      fixedDelayString = "${pipelines.rerun.pollIntervalMs:60000}")
+  public void resumeAbandonedJobs() {
+    mapper.listClaimable().forEach(this::start);
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    // the interrupted jobs are taken over once their lease expired
+    jobExecutor.shutdownNow();
+    datasetExecutor.shutdownNow();
+  }
+
+  @Nullable
+  private RerunJob changeStatus(
+      long key, RerunJob.Status status, Set<RerunJob.Status> expectedStatuses) {
+    if (mapper.updateStatus(key, status, expectedStatuses) == 0) {
+      RerunJob job = mapper.get(key);
+      if (job == null || job.getStatus() == status) {
+        return job;
+      }
+      throw new IllegalArgumentException(
+          "Rerun job " + key + " is " + job.getStatus() + " and cannot become " + status);
+    }
+    LOG.info("Rerun job {} is now {}", key, status);
+    return mapper.get(key);
+  }
+
+  private void start(long key) {
+    String owner = UUID.randomUUID().toString();
+    if (mapper.claim(key, owner, leaseMs) == 1) {
+      jobExecutor.execute(() -> run(key, owner));
+    }
+  }
+
+  private void run(long key, String owner) {
+    try {
+      RerunJob job = mapper.get(key);
+      LOG.info("Running rerun job {} after dataset {}", key, job.getCursor());
+      Set<UUID> excluded = new HashSet<>(job.getDatasetsToExclude());
+
+      RerunJob.Status status = job.getStatus();
+      while (status == RerunJob.Status.RUNNING) {
+        List<UUID> datasetKeys =
+            mapper.listDatasetKeys(job.getCursor(), job.getDatasetsToInclude(), batchSize);
+        if (datasetKeys.isEmpty()) {
+          mapper.updateStatus(key, RerunJob.Status.COMPLETED, EnumSet.of(RerunJob.Status.RUNNING));
+          LOG.info(
+              "Rerun job {} completed: {} submitted, {} skipped, {} failed",
+              key,
+              job.getSubmitted(),
+              job.getSkipped(),
+              job.getFailed());
+          return;
+        }
+
+        List<CompletableFuture<Outcome>> outcomes =
+            datasetKeys.stream()
+                .map(
+                    datasetKey ->
+                        excluded.contains(datasetKey)
+                            ? CompletableFuture.completedFuture(Outcome.SKIPPED)
+                            : CompletableFuture.supplyAsync(
+                                () -> rerun(job, datasetKey), datasetExecutor))
+                .collect(Collectors.toList());
+        for (CompletableFuture<Outcome> outcome : outcomes) {
+          switch (outcome.join()) {
+            case SUBMITTED:
+              job.setSubmitted(job.getSubmitted() + 1);
+              break;
+            case SKIPPED:
+              job.setSkipped(job.getSkipped() + 1);
+              break;
+            default:
+              job.setFailed(job.getFailed() + 1);
+          }
+        }
+        job.setCursor(datasetKeys.get(datasetKeys.size() - 1));
+        int stored =
+            mapper.checkpoint(
+                key,
+                owner,
+                job.getCursor(),
+                job.getSubmitted(),
+                job.getSkipped(),
+                job.getFailed(),
+                leaseMs);
+        if (stored == 0) {
+          // the lease expired and the job was taken over, which continues from its checkpoint
+          LOG.warn("Rerun job {} was taken over, stopping after dataset {}", key, job.getCursor());
+          return;
+        }
+
+        status = mapper.get(key).getStatus();
+      }
+      LOG.info("Rerun job {} stopped after dataset {}: {}", key, job.getCursor(), status);
+    } catch (Exception ex) {
+      // the job is taken over by the next poll
+      LOG.error("Error running rerun job {}", key, ex);
+    } finally {
+      mapper.release(key, owner);
+    }
+  }
+
+  private Outcome rerun(RerunJob job, UUID datasetKey) {
+    try {
+      LOG.debug("Rerun job {}: trying to rerun dataset {}", job.getKey(), datasetKey);
+      // one message is published per step. The permits are taken before publishing, so the
+      // datasets skipped are throttled too.
+      messageRateLimiter.acquire(Math.max(job.getSteps().size(), 1));
+      RunPipelineResponse response =
+          historyTrackingService.runLastAttempt(
+              datasetKey,
+              new HashSet<>(job.getSteps()),
+              job.getReason(),
+              job.getCreatedBy(),
+              job.getPrefix(),
+              job.isUseLastSuccessful());
+
+      if (response.getResponseStatus() == RunPipelineResponse.ResponseStatus.OK) {
+        return Outcome.SUBMITTED;
+      }
+      if (response.getResponseStatus()
+          == RunPipelineResponse.ResponseStatus.PIPELINE_IN_SUBMITTED) {
+        return Outcome.SKIPPED;
+      }
+      LOG.warn(
+          "Rerun job {}: dataset {} failed: {}",
+          job.getKey(),
+          datasetKey,
+          response.getMessage());
+      return Outcome.FAILED;
+    } catch (IllegalArgumentException ex) {
+      // the dataset has never been processed by pipelines
+      LOG.debug("Rerun job {}: skipping dataset {}: {}", job.getKey(), datasetKey, ex.getMessage());
+      return Outcome.SKIPPED;
+    } catch (Exception ex) {
+      LOG.error(
+          "Rerun job {}: error processing dataset {}: {}",
+          job.getKey(),
+          datasetKey,
+          ex.getMessage());
+      return Outcome.FAILED;
+    }
+  }
+}
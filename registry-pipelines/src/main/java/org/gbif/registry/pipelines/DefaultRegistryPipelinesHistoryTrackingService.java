@@ -16,7 +16,6 @@
 package org.gbif.registry.pipelines;
 
 import org.gbif.api.model.common.paging.Pageable;
-import org.gbif.api.model.common.paging.PagingRequest;
 import org.gbif.api.model.common.paging.PagingResponse;
 import org.gbif.api.model.pipelines.PipelineExecution;
 import org.gbif.api.model.pipelines.PipelineProcess;
@@ -38,8 +37,9 @@ import org.gbif.common.messaging.api.messages.PipelinesDwcaMessage;
 import org.gbif.common.messaging.api.messages.PipelinesInterpretedMessage;
 import org.gbif.common.messaging.api.messages.PipelinesVerbatimMessage;
 import org.gbif.common.messaging.api.messages.PipelinesXmlMessage;
+import org.gbif.registry.domain.pipelines.RerunJob;
+import org.gbif.registry.persistence.mapper.dto.PageRow;
 import org.gbif.registry.persistence.mapper.pipelines.PipelineProcessMapper;
-import org.gbif.registry.pipelines.util.PredicateUtils;
 
 import java.io.IOException;
 import java.time.LocalDateTime;
@@ -56,10 +56,7 @@ import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
 import java.util.UUID;
-import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.function.Consumer;
+import java.util.function.LongSupplier;
 import java.util.stream.Collectors;
 
 import javax.annotation.Nullable;
@@ -69,7 +66,6 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
-import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Service;
 
@@ -87,9 +83,6 @@ public class DefaultRegistryPipelinesHistoryTrackingService
   private static final Logger LOG =
       LoggerFactory.getLogger(DefaultRegistryPipelinesHistoryTrackingService.class);
 
-  // Used to iterate over all datasets
-  private static final int PAGE_SIZE = 200;
-
   private static final Comparator<Endpoint> ENDPOINT_COMPARATOR =
       Ordering.compound(
           Lists.newArrayList(
@@ -102,22 +95,19 @@ public class DefaultRegistryPipelinesHistoryTrackingService
 
   private final PipelineProcessMapper mapper;
   private final DatasetService datasetService;
-  private final ExecutorService executorService;
+  private final PipelinesRerunJobService rerunJobService;
 
   public DefaultRegistryPipelinesHistoryTrackingService(
       @Qualifier("registryObjectMapper") ObjectMapper objectMapper,
       @Autowired(required = false) MessagePublisher publisher,
       PipelineProcessMapper mapper,
       @Lazy DatasetService datasetService,
-      @Value("${pipelines.doAllThreads}") Integer threadPoolSize) {
+      PipelinesRerunJobService rerunJobService) {
     this.objectMapper = objectMapper;
     this.publisher = publisher;
     this.mapper = mapper;
     this.datasetService = datasetService;
-    this.executorService =
-        Optional.ofNullable(threadPoolSize)
-            .map(Executors::newFixedThreadPool)
-            .orElse(Executors.newSingleThreadExecutor());
+    this.rerunJobService = rerunJobService;
   }
 
   @Override
@@ -156,58 +146,17 @@ public class DefaultRegistryPipelinesHistoryTrackingService
       List<UUID> datasetsToInclude,
       boolean useLastSuccessful) {
     String prefix = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMddHHmm"));
-    CompletableFuture.runAsync(
-        () ->
-            doOnAllDatasets(
-                datasetKey ->
-                    runLastAttempt(datasetKey, steps, reason, user, prefix, useLastSuccessful),
-                datasetsToExclude,
-                datasetsToInclude),
-        executorService);
+    RerunJob job =
+        rerunJobService.submit(
+            steps, reason, user, prefix, datasetsToExclude, datasetsToInclude, useLastSuccessful);
 
     return RunPipelineResponse.builder()
         .setResponseStatus(RunPipelineResponse.ResponseStatus.OK)
         .setSteps(steps)
+        .setMessage("Rerun job " + job.getKey() + " created")
         .build();
   }
 
-  /** Utility method to run batch jobs on all dataset elements */
-  private void doOnAllDatasets(
-      Consumer<UUID> onDataset, List<UUID> datasetsToExclude, List<UUID> datasetsToInclude) {
-    Consumer<List<UUID>> rerunFn =
-        datasetKeys ->
-            datasetKeys.stream()
-                .filter(PredicateUtils.not(datasetsToExclude::contains))
-                .forEach(
-                    datasetKey ->
-                        CompletableFuture.runAsync(
-                            () -> {
-                              try {
-                                LOG.info("trying to rerun dataset {}", datasetKey);
-                                onDataset.accept(datasetKey);
-                              } catch (Exception ex) {
-                                LOG.error(
-                                    "Error processing dataset {} while rerunning all datasets: {}",
-                                    datasetKey,
-                                    ex.getMessage());
-                              }
-                            },
-                            executorService));
-
-    if (datasetsToInclude != null && !datasetsToInclude.isEmpty()) {
-      rerunFn.accept(datasetsToInclude);
-    } else {
-      PagingRequest pagingRequest = new PagingRequest(0, PAGE_SIZE);
-      PagingResponse<Dataset> response;
-      do {
-        response = datasetService.list(pagingRequest);
-        rerunFn.accept(
-            response.getResults().stream().map(Dataset::getKey).collect(Collectors.toList()));
-        pagingRequest.addOffset(response.getResults().size());
-      } while (!response.isEndOfRecords());
-    }
-  }
-
   private Set<StepType> prioritizeSteps(Set<StepType> steps, Dataset dataset) {
     Set<StepType> newSteps = new HashSet<>();
     if (steps.contains(StepType.TO_VERBATIM)) {
@@ -309,26 +258,21 @@ public class DefaultRegistryPipelinesHistoryTrackingService
 
   @Override
   public PagingResponse<PipelineProcess> history(Pageable pageable) {
-    long count = mapper.count(null, null);
-    List<PipelineProcess> statuses = mapper.list(null, null, pageable);
-
-    // add needed fields for the view
-    statuses.forEach(this::setDatasetTitle);
+    // the dataset titles, executions and steps are loaded in the same statement
+    List<PageRow<PipelineProcess>> rows = mapper.list(null, null, pageable);
+    long count = total(rows, pageable, () -> mapper.count(null, null));
 
-    return new PagingResponse<>(pageable, count, statuses);
+    return new PagingResponse<>(pageable, count, values(rows));
   }
 
   @Override
   public PagingResponse<PipelineProcess> history(UUID datasetKey, Pageable pageable) {
     Objects.requireNonNull(datasetKey, "DatasetKey can't be null");
 
-    long count = mapper.count(datasetKey, null);
-    List<PipelineProcess> statuses = mapper.list(datasetKey, null, pageable);
+    List<PageRow<PipelineProcess>> rows = mapper.list(datasetKey, null, pageable);
+    long count = total(rows, pageable, () -> mapper.count(datasetKey, null));
 
-    // add needed fields for the view
-    statuses.forEach(this::setDatasetTitle);
-
-    return new PagingResponse<>(pageable, count, statuses);
+    return new PagingResponse<>(pageable, count, values(rows));
   }
 
   @Override
@@ -476,11 +420,7 @@ public class DefaultRegistryPipelinesHistoryTrackingService
   public PipelineProcess get(UUID datasetKey, int attempt) {
     Objects.requireNonNull(datasetKey, "DatasetKey can't be null");
 
-    PipelineProcess process = mapper.getByDatasetAndAttempt(datasetKey, attempt);
-
-    setDatasetTitle(process);
-
-    return process;
+    return mapper.getByDatasetAndAttempt(datasetKey, attempt);
   }
 
   @Override
@@ -578,7 +518,7 @@ public class DefaultRegistryPipelinesHistoryTrackingService
       @Nullable String pipelinesVersion,
       @Nullable Pageable page) {
 
-    List<SearchResult> results =
+    List<PageRow<SearchResult>> rows =
         mapper.search(
             datasetKey,
             state,
@@ -591,18 +531,22 @@ public class DefaultRegistryPipelinesHistoryTrackingService
             pipelinesVersion,
             page);
     long count =
-        mapper.searchCount(
-            datasetKey,
-            state,
-            stepType,
-            startedMin,
-            startedMax,
-            finishedMin,
-            finishedMax,
-            rerunReason,
-            pipelinesVersion);
-
-    return new PagingResponse<>(page, count, results);
+        total(
+            rows,
+            page,
+            () ->
+                mapper.searchCount(
+                    datasetKey,
+                    state,
+                    stepType,
+                    startedMin,
+                    startedMax,
+                    finishedMin,
+                    finishedMax,
+                    rerunReason,
+                    pipelinesVersion));
+
+    return new PagingResponse<>(page, count, values(rows));
   }
 
   public Long getNumberRecordsFromMetrics(
@@ -670,12 +614,19 @@ public class DefaultRegistryPipelinesHistoryTrackingService
     return result;
   }
 
-  private void setDatasetTitle(PipelineProcess process) {
-    if (process != null && process.getDatasetKey() != null) {
-      Dataset dataset = datasetService.get(process.getDatasetKey());
-      if (dataset != null) {
-        process.setDatasetTitle(dataset.getTitle());
-      }
+  /**
+   * Returns the total number of results counted along with the page, falling back to the given
+   * count if the page is empty because it starts past the last result.
+   */
+  private static <T> long total(
+      List<PageRow<T>> rows, @Nullable Pageable page, LongSupplier count) {
+    if (!rows.isEmpty()) {
+      return rows.get(0).getTotal();
     }
+    return page == null || page.getOffset() == 0 ? 0 : count.getAsLong();
+  }
+
+  private static <T> List<T> values(List<PageRow<T>> rows) {
+    return rows.stream().map(PageRow::getValue).collect(Collectors.toList());
   }
 }
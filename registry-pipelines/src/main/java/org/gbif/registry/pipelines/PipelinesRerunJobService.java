@@ -0,0 +1,90 @@
+/*
+ * Copyright 2020 Global Biodiversity Information Facility (GBIF)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gbif.registry.pipelines;
+
+import org.gbif.api.model.common.paging.Pageable;
+import org.gbif.api.model.common.paging.PagingResponse;
+import org.gbif.api.model.pipelines.StepType;
+import org.gbif.registry.domain.pipelines.RerunJob;
+
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import javax.annotation.Nullable;
+
+/**
+ * Service to rerun the last attempt of many datasets with persistent, throttled jobs that can be
+ * paused, resumed and cancelled.
+ */
+public interface PipelinesRerunJobService {
+
+  /**
+   * Creates and starts a job rerunning the last attempt of the given datasets.
+   *
+   * @param steps steps to be executed
+   * @param reason textual justification of why it has to be re-executed
+   * @param user the user who is running the job
+   * @param prefix prefix used to reset the indices of the interpreted and indexed steps
+   * @param datasetsToExclude excluded dataset keys
+   * @param datasetsToInclude included dataset keys, all datasets if empty
+   * @param useLastSuccessful if true it uses the latest successful attempt. Otherwise, it uses the
+   *     latest.
+   * @return the job created
+   */
+  RerunJob submit(
+      Set<StepType> steps,
+      String reason,
+      String user,
+      @Nullable String prefix,
+      @Nullable List<UUID> datasetsToExclude,
+      @Nullable List<UUID> datasetsToInclude,
+      boolean useLastSuccessful);
+
+  /** Gets a job with its progress, null if it doesn't exist. */
+  @Nullable
+  RerunJob get(long key);
+
+  /** Lists the jobs, most recent first. */
+  PagingResponse<RerunJob> list(Pageable page);
+
+  /**
+   * Pauses a running job once the datasets being rerun are processed.
+   *
+   * @return the job, null if it doesn't exist
+   * @throws IllegalArgumentException if the job is not running
+   */
+  @Nullable
+  RerunJob pause(long key);
+
+  /**
+   * Resumes a paused job from the last dataset processed.
+   *
+   * @return the job, null if it doesn't exist
+   * @throws IllegalArgumentException if the job is not paused
+   */
+  @Nullable
+  RerunJob resume(long key);
+
+  /**
+   * Cancels a running or paused job.
+   *
+   * @return the job, null if it doesn't exist
+   * @throws IllegalArgumentException if the job is already completed
+   */
+  @Nullable
+  RerunJob cancel(long key);
+}
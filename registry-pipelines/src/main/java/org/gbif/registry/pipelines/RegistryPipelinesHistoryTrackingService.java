@@ -55,7 +55,8 @@ public interface RegistryPipelinesHistoryTrackingService {
       boolean useLastSuccessful);
 
   /**
-   * Executes the last crawl attempt for all datasets.
+   * Executes the last crawl attempt for all datasets with a rerun job, see {@link
+   * PipelinesRerunJobService}.
    *
    * @param steps steps to be executed
    * @param reason textual justification of why it has to be re-executed
@@ -64,7 +65,7 @@ public interface RegistryPipelinesHistoryTrackingService {
    * @param datasetsToInclude included dataset keys
    * @param useLastSuccessful if true it uses the latest successful attempt. Otherwise, it uses the
    *     latest.
-   * @return the response of the execution request
+   * @return the response of the execution request, whose message names the job created
    */
   RunPipelineResponse runLastAttempt(
       Set<StepType> steps,
@@ -16,9 +16,12 @@
 package org.gbif.registry.search.dataset.indexing;
 
 import org.gbif.api.model.checklistbank.DatasetMetrics;
+import org.gbif.api.model.checklistbank.search.NameUsageSearchParameter;
 import org.gbif.api.model.checklistbank.search.NameUsageSearchRequest;
-import org.gbif.api.model.common.search.SearchResponse;
-import org.gbif.api.model.occurrence.Occurrence;
+import org.gbif.api.model.common.paging.PagingRequest;
+import org.gbif.api.model.common.paging.PagingResponse;
+import org.gbif.api.model.common.search.Facet;
+import org.gbif.api.model.common.search.SearchParameter;
 import org.gbif.api.model.occurrence.search.OccurrenceSearchParameter;
 import org.gbif.api.model.occurrence.search.OccurrenceSearchRequest;
 import org.gbif.api.model.registry.Dataset;
@@ -43,18 +46,21 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.EnumSet;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.parsers.SAXParser;
-import javax.xml.parsers.SAXParserFactory;
+import javax.annotation.Nullable;
 
 import org.elasticsearch.action.search.SearchRequest;
 import org.elasticsearch.client.RequestOptions;
@@ -90,8 +96,6 @@ import lombok.extern.slf4j.Slf4j;
 @Lazy
 public class DatasetJsonConverter {
 
-  private static final int MAX_FACET_LIMIT = 1200000;
-
   // Collections
   private static final String PROCESSING_NAMESPACE = "processing.gbif.org";
   private static final String INSTITUTION_TAG_NAME = "institutionCode";
@@ -101,12 +105,16 @@ public class DatasetJsonConverter {
   private static final String GRIDDED_DATASET_NAMESPACE = "griddedDataSet.jwaller.gbif.org";
   private static final String GRIDDED_DATASET_NAME = "griddedDataset";
 
-  private final SAXParserFactory saxFactory = SAXParserFactory.newInstance();
+  // Elasticsearch doesn't highlight beyond the first million characters of a field by default
+  private static final int DEFAULT_FULL_TEXT_MAX_LENGTH = 1_000_000;
+
   private final TimeSeriesExtractor timeSeriesExtractor =
       new TimeSeriesExtractor(1000, 2400, 1800, 2050);
 
   private final List<Consumer<ObjectNode>> consumers = new ArrayList<>();
 
+  private final FullTextExtractor fullTextExtractor;
+
   private ChecklistbankPersistenceService checklistbankPersistenceService;
 
   private final GbifWsClient gbifWsClient;
@@ -117,22 +125,33 @@ public class DatasetJsonConverter {
 
   private final String occurrenceIndex;
 
-  private Long occurrenceCount;
+  // totals of all datasets, fetched once by whichever conversion thread needs them first
+  private volatile Long occurrenceCount;
 
-  private Long nameUsagesCount;
+  private volatile Long nameUsagesCount;
+
+  // installations and organizations loaded by warmUp, looked up one by one while null
+  private volatile Map<String, RegistryEntity> installations;
+
+  private volatile Map<String, RegistryEntity> organizations;
 
   private Long getOccurrenceCount() {
-    if (occurrenceCount == null) {
-      occurrenceCount = gbifWsClient.getOccurrenceRecordCount();
+    Long count = occurrenceCount;
+    if (count == null) {
+      // concurrent threads may fetch it more than once, which is harmless
+      count = gbifWsClient.getOccurrenceRecordCount();
+      occurrenceCount = count;
     }
-    return Optional.ofNullable(occurrenceCount).orElse(1L);
+    return Optional.ofNullable(count).orElse(1L);
   }
 
   private Long getNameUsagesCount() {
-    if (nameUsagesCount == null) {
-      nameUsagesCount = gbifWsClient.speciesSearch(new NameUsageSearchRequest(0, 0)).getCount();
+    Long count = nameUsagesCount;
+    if (count == null) {
+      count = gbifWsClient.speciesSearch(new NameUsageSearchRequest(0, 0)).getCount();
+      nameUsagesCount = count;
     }
-    return Optional.ofNullable(nameUsagesCount).orElse(1L);
+    return Optional.ofNullable(count).orElse(1L);
   }
 
   @Autowired
@@ -141,16 +160,18 @@ public class DatasetJsonConverter {
       @Autowired(required = false) ChecklistbankPersistenceService checklistbankPersistenceService,
       @Qualifier("apiMapper") ObjectMapper mapper,
       @Qualifier("occurrenceEsClient") RestHighLevelClient occurrenceEsClient,
-      @Value("${elasticsearch.occurrence.index}") String occurrenceIndex) {
+      @Value("${elasticsearch.occurrence.index}") String occurrenceIndex,
+      @Value("${indexing.fullTextMaxLength:" + DEFAULT_FULL_TEXT_MAX_LENGTH + "}")
+          int fullTextMaxLength) {
     this.gbifWsClient = gbifWsClient;
     this.checklistbankPersistenceService = checklistbankPersistenceService;
     this.mapper = mapper;
     this.occurrenceEsClient = occurrenceEsClient;
     this.occurrenceIndex = occurrenceIndex;
+    this.fullTextExtractor = new FullTextExtractor(fullTextMaxLength);
     consumers.add(this::metadataConsumer);
     consumers.add(this::addTitles);
     consumers.add(this::enumTransforms);
-    consumers.add(this::addOccurrenceSpeciesCounts);
   }
 
   public static DatasetJsonConverter create(
@@ -163,12 +184,66 @@ public class DatasetJsonConverter {
         checklistbankPersistenceService,
         JacksonObjectMapper.get(),
         occurrenceEsClient,
-        occurrenceIndex);
+        occurrenceIndex,
+        DEFAULT_FULL_TEXT_MAX_LENGTH);
+  }
+
+  /**
+   * Loads all installations and organizations into memory, so converting all datasets doesn't look
+   * them up one by one. Installations and organizations missing from the loaded ones, e.g. created
+   * afterwards, are still looked up.
+   */
+  public void warmUp() {
+    installations =
+        loadAll(
+            gbifWsClient::listInstallations,
+            i -> new RegistryEntity(i.getKey(), i.getTitle(), i.getOrganizationKey(), null));
+    organizations =
+        loadAll(
+            gbifWsClient::listOrganizations,
+            o -> new RegistryEntity(o.getKey(), o.getTitle(), null, o.getCountry()));
+    log.info(
+        "Loaded {} installations and {} organizations", installations.size(), organizations.size());
+  }
+
+  private static <T> Map<String, RegistryEntity> loadAll(
+      Function<PagingRequest, PagingResponse<T>> pager, Function<T, RegistryEntity> mapper) {
+    Map<String, RegistryEntity> entities = new HashMap<>();
+    PagingRequest page = new PagingRequest(0, 1000);
+    PagingResponse<T> response;
+    do {
+      response = pager.apply(page);
+      response.getResults().stream()
+          .map(mapper)
+          .forEach(entity -> entities.put(entity.key.toString(), entity));
+      page.nextPage();
+    } while (!response.isEndOfRecords());
+    return entities;
   }
 
   public ObjectNode convert(Dataset dataset) {
+    return convert(dataset, null);
+  }
+
+  /**
+   * Converts a page of datasets. The occurrence and name usage counts of the page are fetched with
+   * a single facet search each and the datasets are converted concurrently on the given executor.
+   *
+   * @return the converted datasets in the order of the given datasets
+   */
+  public List<ObjectNode> convert(List<Dataset> datasets, Executor executor) {
+    PageCounts pageCounts = getPageCounts(datasets);
+    List<CompletableFuture<ObjectNode>> conversions =
+        datasets.stream()
+            .map(d -> CompletableFuture.supplyAsync(() -> convert(d, pageCounts), executor))
+            .collect(Collectors.toList());
+    return conversions.stream().map(CompletableFuture::join).collect(Collectors.toList());
+  }
+
+  private ObjectNode convert(Dataset dataset, @Nullable PageCounts pageCounts) {
     ObjectNode datasetAsJson = mapper.valueToTree(dataset);
     consumers.forEach(c -> c.accept(datasetAsJson));
+    addOccurrenceSpeciesCounts(datasetAsJson, pageCounts);
     addDecades(dataset, datasetAsJson);
     addKeyword(dataset, datasetAsJson);
     addCountryCoverage(dataset, datasetAsJson);
@@ -189,14 +264,9 @@ public class DatasetJsonConverter {
     try (InputStream stream =
         gbifWsClient.getMetadataDocument(UUID.fromString(dataset.get("key").asText()))) {
       if (stream != null) {
-        FullTextSaxHandler handler = new FullTextSaxHandler();
-        SAXParser p = saxFactory.newSAXParser();
         // parse does close the stream
-        p.parse(stream, handler);
-        dataset.put("metadata", handler.getFullText());
+        dataset.put("metadata", fullTextExtractor.extract(stream));
       }
-    } catch (ParserConfigurationException e) {
-      throw new IllegalStateException("XML Parser not working on this system", e);
     } catch (SAXException e) {
       log.warn("Cannot parse original metadata xml for dataset {}", dataset);
     } catch (Exception e) {
@@ -209,30 +279,27 @@ public class DatasetJsonConverter {
       dataset.put("titleAutocomplete", dataset.get("title").asText());
     }
     if (dataset.has("installationKey")) {
-      Installation installation =
-          gbifWsClient.getInstallation(dataset.get("installationKey").asText());
+      RegistryEntity installation = getInstallation(dataset.get("installationKey").asText());
       if (Objects.nonNull(installation)) {
-        dataset.put("installationTitle", installation.getTitle());
-        dataset.put("installationTitleAutocomplete", installation.getTitle());
-        if (Objects.nonNull(installation.getOrganizationKey())) {
-          Organization hostingOrg =
-              gbifWsClient.getOrganization(installation.getOrganizationKey().toString());
+        dataset.put("installationTitle", installation.title);
+        dataset.put("installationTitleAutocomplete", installation.title);
+        if (Objects.nonNull(installation.organizationKey)) {
+          RegistryEntity hostingOrg = getOrganization(installation.organizationKey.toString());
           if (Objects.nonNull(hostingOrg)) {
-            dataset.put("hostingOrganizationKey", hostingOrg.getKey().toString());
-            dataset.put("hostingOrganizationTitle", hostingOrg.getTitle());
-            dataset.put("hostingOrganizationTitleAutocomplete", hostingOrg.getTitle());
+            dataset.put("hostingOrganizationKey", hostingOrg.key.toString());
+            dataset.put("hostingOrganizationTitle", hostingOrg.title);
+            dataset.put("hostingOrganizationTitleAutocomplete", hostingOrg.title);
           }
         }
       }
     }
     if (dataset.has("publishingOrganizationKey")) {
-      Organization publisher =
-          gbifWsClient.getOrganization(dataset.get("publishingOrganizationKey").asText());
+      RegistryEntity publisher = getOrganization(dataset.get("publishingOrganizationKey").asText());
       if (Objects.nonNull(publisher)) {
-        dataset.put("publishingOrganizationTitle", publisher.getTitle());
-        dataset.put("publishingOrganizationTitleAutocomplete", publisher.getTitle());
-        if (Objects.nonNull(publisher.getCountry())) {
-          dataset.put("publishingCountry", publisher.getCountry().getIso2LetterCode());
+        dataset.put("publishingOrganizationTitle", publisher.title);
+        dataset.put("publishingOrganizationTitleAutocomplete", publisher.title);
+        if (Objects.nonNull(publisher.country)) {
+          dataset.put("publishingCountry", publisher.country.getIso2LetterCode());
         }
       } else {
         dataset.put("publishingCountry", Country.UNKNOWN.getIso2LetterCode());
@@ -240,9 +307,35 @@ public class DatasetJsonConverter {
     }
   }
 
-  private void addRecordCounts(ObjectNode dataset, Long datasetOccurrenceCount) {
+  @Nullable
+  private RegistryEntity getInstallation(String installationKey) {
+    Map<String, RegistryEntity> loaded = installations;
+    if (loaded != null && loaded.containsKey(installationKey)) {
+      return loaded.get(installationKey);
+    }
+    Installation installation = gbifWsClient.getInstallation(installationKey);
+    return Objects.nonNull(installation)
+        ? new RegistryEntity(
+            installation.getKey(), installation.getTitle(), installation.getOrganizationKey(), null)
+        : null;
+  }
+
+  @Nullable
+  private RegistryEntity getOrganization(String organizationKey) {
+    Map<String, RegistryEntity> loaded = organizations;
+    if (loaded != null && loaded.containsKey(organizationKey)) {
+      return loaded.get(organizationKey);
+    }
+    Organization organization = gbifWsClient.getOrganization(organizationKey);
+    return Objects.nonNull(organization)
+        ? new RegistryEntity(
+            organization.getKey(), organization.getTitle(), null, organization.getCountry())
+        : null;
+  }
+
+  private void addRecordCounts(
+      ObjectNode dataset, Long datasetOccurrenceCount, @Nullable Long datasetNameUsagesCount) {
     int scale = 12;
-    String datasetKey = dataset.get("key").textValue();
     dataset.put("occurrenceCount", datasetOccurrenceCount);
 
     double occurrencePercentage =
@@ -257,15 +350,14 @@ public class DatasetJsonConverter {
             BigDecimal.valueOf(occurrencePercentage)
                 .setScale(scale, RoundingMode.HALF_UP)
                 .doubleValue()));
-    DatasetMetrics datasetMetrics = gbifWsClient.getDatasetSpeciesMetrics(datasetKey);
 
-    if (Objects.nonNull(datasetMetrics)) {
-      nameUsagesPercentage = datasetMetrics.getUsagesCount() / getNameUsagesCount().doubleValue();
+    if (Objects.nonNull(datasetNameUsagesCount)) {
+      nameUsagesPercentage = datasetNameUsagesCount / getNameUsagesCount().doubleValue();
       nameUsagesPercentage =
           Double.isInfinite(nameUsagesPercentage) || Double.isNaN(nameUsagesPercentage)
               ? 0D
               : nameUsagesPercentage;
-      dataset.put("nameUsagesCount", datasetMetrics.getUsagesCount());
+      dataset.put("nameUsagesCount", datasetNameUsagesCount);
     } else {
       dataset.put("nameUsagesCount", 0);
     }
@@ -328,50 +420,85 @@ public class DatasetJsonConverter {
     }
   }
 
-  private void addOccurrenceSpeciesCounts(ObjectNode datasetJsonNode) {
+  private void addOccurrenceSpeciesCounts(
+      ObjectNode datasetJsonNode, @Nullable PageCounts pageCounts) {
     String datasetKey = datasetJsonNode.get("key").textValue();
+    if (pageCounts != null) {
+      addRecordCounts(
+          datasetJsonNode,
+          pageCounts.occurrenceCounts.getOrDefault(datasetKey, 0L),
+          pageCounts.nameUsagesCounts.get(datasetKey));
+      return;
+    }
     Long count = gbifWsClient.getDatasetRecordCount(datasetKey);
     if (count == null) {
       log.warn("Datatset {} with 0 count", datasetKey);
     }
-    addRecordCounts(datasetJsonNode, count);
+    addRecordCounts(datasetJsonNode, count, getDatasetNameUsagesCount(datasetKey));
   }
 
-  private void addFacetsData(ObjectNode datasetJsonNode) {
-    String datasetKey = datasetJsonNode.get("key").textValue();
-    Set<OccurrenceSearchParameter> facets =
-        EnumSet.of(
-            OccurrenceSearchParameter.COUNTRY, OccurrenceSearchParameter.CONTINENT,
-            OccurrenceSearchParameter.TAXON_KEY, OccurrenceSearchParameter.YEAR);
-    OccurrenceSearchRequest occurrenceSearchRequest = new OccurrenceSearchRequest();
-    occurrenceSearchRequest.setLimit(0);
-    occurrenceSearchRequest.setOffset(0);
-    occurrenceSearchRequest.setMultiSelectFacets(false);
-    occurrenceSearchRequest.setFacetLimit(MAX_FACET_LIMIT);
-    occurrenceSearchRequest.setFacetMinCount(1);
-    occurrenceSearchRequest.setFacets(facets);
-    occurrenceSearchRequest.addParameter(OccurrenceSearchParameter.DATASET_KEY, datasetKey);
-    SearchResponse<Occurrence, OccurrenceSearchParameter> response =
-        gbifWsClient.occurrenceSearch(occurrenceSearchRequest);
-    addRecordCounts(datasetJsonNode, response.getCount());
-    ArrayNode countryNode = datasetJsonNode.putArray("country");
-    ArrayNode continentNode = datasetJsonNode.putArray("continent");
-    ArrayNode taxonKeyNode = datasetJsonNode.putArray("taxonKey");
-    ArrayNode yearNode = datasetJsonNode.putArray("year");
-    response
-        .getFacets()
-        .forEach(
-            facet -> {
-              if (OccurrenceSearchParameter.COUNTRY == facet.getField()) {
-                facet.getCounts().forEach(count -> countryNode.add(count.getName()));
-              } else if (OccurrenceSearchParameter.CONTINENT == facet.getField()) {
-                facet.getCounts().forEach(count -> continentNode.add(count.getName()));
-              } else if (OccurrenceSearchParameter.TAXON_KEY == facet.getField()) {
-                facet.getCounts().forEach(count -> taxonKeyNode.add(count.getName()));
-              } else if (OccurrenceSearchParameter.YEAR == facet.getField()) {
-                facet.getCounts().forEach(count -> yearNode.add(count.getName()));
-              }
-            });
+  @Nullable
+  private Long getDatasetNameUsagesCount(String datasetKey) {
+    DatasetMetrics datasetMetrics = gbifWsClient.getDatasetSpeciesMetrics(datasetKey);
+    return Objects.nonNull(datasetMetrics) ? (long) datasetMetrics.getUsagesCount() : null;
+  }
+
+  /**
+   * Counts the occurrences and name usages of all datasets of a page with a facet search on the
+   * dataset key each.
+   *
+   * @return the counts or null if they cannot be fetched, they are then fetched per dataset
+   */
+  @Nullable
+  private PageCounts getPageCounts(List<Dataset> datasets) {
+    if (datasets.isEmpty()) {
+      return null;
+    }
+    try {
+      OccurrenceSearchRequest occurrenceSearchRequest = new OccurrenceSearchRequest();
+      occurrenceSearchRequest.setLimit(0);
+      occurrenceSearchRequest.setOffset(0);
+      occurrenceSearchRequest.setMultiSelectFacets(false);
+      occurrenceSearchRequest.setFacetLimit(datasets.size());
+      occurrenceSearchRequest.setFacetMinCount(1);
+      occurrenceSearchRequest.setFacets(EnumSet.of(OccurrenceSearchParameter.DATASET_KEY));
+
+      NameUsageSearchRequest nameUsageSearchRequest = new NameUsageSearchRequest(0, 0);
+      nameUsageSearchRequest.setMultiSelectFacets(false);
+      nameUsageSearchRequest.setFacetLimit(datasets.size());
+      nameUsageSearchRequest.setFacetMinCount(1);
+      nameUsageSearchRequest.setFacets(EnumSet.of(NameUsageSearchParameter.DATASET_KEY));
+
+      boolean anyChecklist = false;
+      for (Dataset dataset : datasets) {
+        String datasetKey = dataset.getKey().toString();
+        occurrenceSearchRequest.addParameter(OccurrenceSearchParameter.DATASET_KEY, datasetKey);
+        if (DatasetType.CHECKLIST == dataset.getType()) {
+          nameUsageSearchRequest.addParameter(NameUsageSearchParameter.DATASET_KEY, datasetKey);
+          anyChecklist = true;
+        }
+      }
+
+      Map<String, Long> occurrenceCounts =
+          facetCounts(gbifWsClient.occurrenceSearch(occurrenceSearchRequest).getFacets());
+      // only checklists have name usages, without any the search would count all usages
+      Map<String, Long> nameUsagesCounts =
+          anyChecklist
+              ? facetCounts(gbifWsClient.speciesSearch(nameUsageSearchRequest).getFacets())
+              : Collections.emptyMap();
+      return new PageCounts(occurrenceCounts, nameUsagesCounts);
+    } catch (Exception ex) {
+      log.warn("Unable to count the records of a page of datasets, counting them one by one", ex);
+      return null;
+    }
+  }
+
+  private static <P extends SearchParameter> Map<String, Long> facetCounts(
+      List<Facet<P>> facets) {
+    Map<String, Long> counts = new HashMap<>();
+    facets.forEach(
+        facet -> facet.getCounts().forEach(count -> counts.put(count.getName(), count.getCount())));
+    return counts;
   }
 
   private void addTaxonKeys(Dataset dataset, ObjectNode datasetObjectNode) {
@@ -518,4 +645,32 @@ public class DatasetJsonConverter {
         .map(agg -> ((Histogram) agg).getBuckets())
         .orElse(Collections.emptyList());
   }
+
+  /** The properties of an installation or organization used by the converter. */
+  private static final class RegistryEntity {
+    private final UUID key;
+    private final String title;
+    // hosting organization of an installation
+    private final UUID organizationKey;
+    // country of an organization
+    private final Country country;
+
+    private RegistryEntity(UUID key, String title, UUID organizationKey, Country country) {
+      this.key = key;
+      this.title = title;
+      this.organizationKey = organizationKey;
+      this.country = country;
+    }
+  }
+
+  /** Occurrence and name usage counts of a page of datasets, by dataset key. */
+  private static final class PageCounts {
+    private final Map<String, Long> occurrenceCounts;
+    private final Map<String, Long> nameUsagesCounts;
+
+    private PageCounts(Map<String, Long> occurrenceCounts, Map<String, Long> nameUsagesCounts) {
+      this.occurrenceCounts = occurrenceCounts;
+      this.nameUsagesCounts = nameUsagesCounts;
+    }
+  }
 }
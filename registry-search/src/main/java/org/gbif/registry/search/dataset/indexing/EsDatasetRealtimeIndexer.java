@@ -22,45 +22,156 @@ import org.gbif.api.util.iterables.Iterables;
 import org.gbif.registry.search.dataset.indexing.es.IndexingConstants;
 import org.gbif.registry.search.dataset.indexing.ws.GbifWsClient;
 
+import java.io.Closeable;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
 
 import org.elasticsearch.action.ActionListener;
 import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.bulk.BackoffPolicy;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkProcessor;
 import org.elasticsearch.action.bulk.BulkRequest;
 import org.elasticsearch.action.bulk.BulkResponse;
 import org.elasticsearch.action.delete.DeleteRequest;
-import org.elasticsearch.action.delete.DeleteResponse;
 import org.elasticsearch.action.index.IndexRequest;
-import org.elasticsearch.action.index.IndexResponse;
 import org.elasticsearch.client.RequestOptions;
 import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.common.unit.ByteSizeUnit;
+import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.common.xcontent.XContentType;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
 
+/**
+ * Indexes dataset changes in Elasticsearch through a {@link BulkProcessor}.
+ *
+ * <p>Changes are queued per dataset key for a debounce window, so a dataset changed many times
+ * during a crawl is converted and indexed once with its latest version. At the end of each window
+ * the queued changes are handed to the bulk processor, which sends them in requests bounded by
+ * number of actions and size and retries requests rejected by a busy cluster (HTTP 429) with an
+ * exponential back-off.
+ */
 @Slf4j
 @Component
-public class EsDatasetRealtimeIndexer implements DatasetRealtimeIndexer {
+public class EsDatasetRealtimeIndexer implements DatasetRealtimeIndexer, Closeable {
 
-  private final RestHighLevelClient restHighLevelClient;
+  private static final String METRICS_PREFIX = "registry.search.realtime.";
 
   private final DatasetJsonConverter datasetJsonConverter;
 
   private final GbifWsClient gbifWsClient;
 
-  private final AtomicInteger pendingUpdates;
+  private final int bulkActions;
+
+  private final BulkProcessor bulkProcessor;
+
+  private final ScheduledExecutorService scheduler;
+
+  // latest change of each dataset waiting for the end of the debounce window
+  private final ConcurrentMap<UUID, Change> queued = new ConcurrentHashMap<>();
+
+  // changes added to the bulk processor, but not sent yet
+  private final AtomicInteger buffered = new AtomicInteger();
+
+  // changes sent or being retried
+  private final AtomicInteger inFlight = new AtomicInteger();
+
+  private final Counter failed;
 
   @Autowired
   public EsDatasetRealtimeIndexer(
       RestHighLevelClient restHighLevelClient,
       DatasetJsonConverter datasetJsonConverter,
-      GbifWsClient gbifWsClient) {
-    this.restHighLevelClient = restHighLevelClient;
+      GbifWsClient gbifWsClient,
+      @Value("${indexing.realtime.debounceMs:1000}") long debounceMillis,
+      @Value("${indexing.realtime.bulkActions:500}") int bulkActions,
+      @Value("${indexing.realtime.bulkSizeMb:5}") long bulkSizeMb,
+      @Value("${indexing.realtime.concurrentRequests:1}") int concurrentRequests,
+      @Value("${indexing.realtime.retry.initialDelayMs:500}") long retryInitialDelayMillis,
+      @Value("${indexing.realtime.retry.maxRetries:5}") int maxRetries,
+      @Autowired(required = false) MeterRegistry meterRegistry) {
+    this(
+        (request, bulkListener) ->
+            restHighLevelClient.bulkAsync(request, RequestOptions.DEFAULT, bulkListener),
+        datasetJsonConverter,
+        gbifWsClient,
+        debounceMillis,
+        bulkActions,
+        bulkSizeMb,
+        concurrentRequests,
+        retryInitialDelayMillis,
+        maxRetries,
+        meterRegistry);
+  }
+
+  /**
+   * Creates an indexer sending the bulk requests to the given consumer instead of a client.
+   *
+   * @param bulkConsumer executes a bulk request and notifies the listener of its outcome
+   */
+  EsDatasetRealtimeIndexer(
+      BiConsumer<BulkRequest, ActionListener<BulkResponse>> bulkConsumer,
+      DatasetJsonConverter datasetJsonConverter,
+      GbifWsClient gbifWsClient,
+      long debounceMillis,
+      int bulkActions,
+      long bulkSizeMb,
+      int concurrentRequests,
+      long retryInitialDelayMillis,
+      int maxRetries,
+      MeterRegistry meterRegistry) {
     this.datasetJsonConverter = datasetJsonConverter;
     this.gbifWsClient = gbifWsClient;
-    pendingUpdates = new AtomicInteger();
+    this.bulkActions = bulkActions;
+    this.bulkProcessor =
+        BulkProcessor.builder(bulkConsumer, new BulkListener())
+            .setBulkActions(bulkActions)
+            .setBulkSize(new ByteSizeValue(bulkSizeMb, ByteSizeUnit.MB))
+            .setConcurrentRequests(concurrentRequests)
+            .setBackoffPolicy(
+                BackoffPolicy.exponentialBackoff(
+                    TimeValue.timeValueMillis(retryInitialDelayMillis), maxRetries))
+            .build();
+
+    if (meterRegistry != null) {
+      Gauge.builder(METRICS_PREFIX + "queued", this, i -> i.queued.size() + i.buffered.get())
+          .description("Dataset changes waiting to be sent to Elasticsearch")
+          .register(meterRegistry);
+      Gauge.builder(METRICS_PREFIX + "inflight", inFlight, AtomicInteger::get)
+          .description("Dataset changes sent to Elasticsearch and not acknowledged yet")
+          .register(meterRegistry);
+      failed =
+          Counter.builder(METRICS_PREFIX + "failed")
+              .description("Dataset changes which could not be indexed")
+              .register(meterRegistry);
+    } else {
+      failed = null;
+    }
+
+    scheduler =
+        Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder()
+                .setNameFormat("dataset-realtime-indexer")
+                .setDaemon(true)
+                .build());
+    scheduler.scheduleWithFixedDelay(
+        this::flush, debounceMillis, debounceMillis, TimeUnit.MILLISECONDS);
   }
 
   private IndexRequest toIndexRequest(Dataset dataset) {
@@ -72,68 +183,28 @@ public class EsDatasetRealtimeIndexer implements DatasetRealtimeIndexer {
         .source(datasetJsonConverter.convertAsJsonString(dataset), XContentType.JSON);
   }
 
+  private DeleteRequest toDeleteRequest(UUID datasetKey) {
+    return new DeleteRequest()
+        .id(datasetKey.toString())
+        .index(IndexingConstants.ALIAS)
+        .type(IndexingConstants.DATASET_RECORD_TYPE);
+  }
+
   @Override
   public void index(Dataset dataset) {
-    pendingUpdates.incrementAndGet();
-    try {
-      restHighLevelClient.indexAsync(
-          toIndexRequest(dataset),
-          RequestOptions.DEFAULT,
-          new ActionListener<IndexResponse>() {
-            @Override
-            public void onResponse(IndexResponse indexResponse) {
-              log.info("Dataset indexed {}, result {}", dataset.getKey(), indexResponse);
-              pendingUpdates.decrementAndGet();
-            }
-
-            @Override
-            public void onFailure(Exception ex) {
-              log.error("Error indexing dataset {}", dataset, ex);
-              pendingUpdates.decrementAndGet();
-            }
-          });
-    } catch (Exception ex) {
-      log.error("Error indexing dataset {}", dataset, ex);
-      pendingUpdates.decrementAndGet();
-    }
+    queued.put(dataset.getKey(), new Change(dataset));
   }
 
+  /**
+   * Queues the datasets while iterating them, handing the queued changes to the bulk processor
+   * whenever they fill a bulk request so large iterables are never held in memory.
+   */
   @Override
   public void index(Iterable<Dataset> datasets) {
-    final AtomicInteger updatesCount = new AtomicInteger();
-    BulkRequest bulkRequest = new BulkRequest();
-
-    datasets.forEach(
-        dataset -> {
-          bulkRequest.add(toIndexRequest(dataset));
-          updatesCount.incrementAndGet();
-        });
-    if (updatesCount.get() > 0) {
-      pendingUpdates.getAndAdd(updatesCount.get());
-      try {
-        restHighLevelClient.bulkAsync(
-            bulkRequest,
-            RequestOptions.DEFAULT,
-            new ActionListener<BulkResponse>() {
-              @Override
-              public void onResponse(BulkResponse bulkItemResponses) {
-                if (bulkItemResponses.hasFailures()) {
-                  log.error(
-                      "Eror indexing datasets indexed {}", bulkItemResponses.buildFailureMessage());
-                } else {
-                  log.info("Datasets indexed");
-                }
-                pendingUpdates.addAndGet(-updatesCount.get());
-              }
-
-              @Override
-              public void onFailure(Exception e) {
-                log.error("Error indexing datasets", e);
-              }
-            });
-      } catch (Exception ex) {
-        log.error("Error indexing datasets", ex);
-        pendingUpdates.addAndGet(-updatesCount.get());
+    for (Dataset dataset : datasets) {
+      index(dataset);
+      if (queued.size() >= bulkActions) {
+        drain();
       }
     }
   }
@@ -200,37 +271,115 @@ public class EsDatasetRealtimeIndexer implements DatasetRealtimeIndexer {
 
   @Override
   public void delete(Dataset dataset) {
-    pendingUpdates.incrementAndGet();
-    DeleteRequest deleteRequest =
-        new DeleteRequest()
-            .id(dataset.getKey().toString())
-            .index(IndexingConstants.ALIAS)
-            .type(IndexingConstants.DATASET_RECORD_TYPE);
+    queued.put(dataset.getKey(), Change.DELETE);
+  }
+
+  /** Changes which are queued, waiting in the bulk processor or sent and not acknowledged yet. */
+  @Override
+  public int getPendingUpdates() {
+    return queued.size() + buffered.get() + inFlight.get();
+  }
+
+  /** Hands the queued changes to the bulk processor. */
+  private void drain() {
+    for (UUID key : queued.keySet()) {
+      // counted before the removal, so the change is never missing from the pending updates
+      buffered.incrementAndGet();
+      // changes queued after the removal wait for the next window
+      Change change = queued.remove(key);
+      if (change == null) {
+        buffered.decrementAndGet();
+        continue;
+      }
+      DocWriteRequest<?> request;
+      try {
+        request = change.isDelete() ? toDeleteRequest(key) : toIndexRequest(change.dataset);
+      } catch (Exception ex) {
+        log.error("Error converting dataset {}", key, ex);
+        buffered.decrementAndGet();
+        increment(failed, 1);
+        continue;
+      }
+      // adding can execute the bulk request straight away, which is why it is counted already
+      bulkProcessor.add(request);
+    }
+  }
+
+  /** Sends all queued changes, ending the current debounce window. */
+  private void flush() {
     try {
-      restHighLevelClient.deleteAsync(
-          deleteRequest,
-          RequestOptions.DEFAULT,
-          new ActionListener<DeleteResponse>() {
-            @Override
-            public void onResponse(DeleteResponse deleteResponse) {
-              log.info("Dataset deleted {}, result {}", dataset.getKey(), deleteResponse);
-              pendingUpdates.decrementAndGet();
-            }
-
-            @Override
-            public void onFailure(Exception ex) {
-              log.error("Error deleting dataset {}", dataset, ex);
-              pendingUpdates.decrementAndGet();
-            }
-          });
+      drain();
+      bulkProcessor.flush();
     } catch (Exception ex) {
-      log.error("Error deleting dataset {}", dataset, ex);
-      pendingUpdates.decrementAndGet();
+      // an exception would cancel the scheduled flushes
+      log.error("Error flushing dataset changes", ex);
     }
   }
 
   @Override
-  public int getPendingUpdates() {
-    return pendingUpdates.get();
+  public void close() {
+    scheduler.shutdown();
+    flush();
+    try {
+      bulkProcessor.awaitClose(30, TimeUnit.SECONDS);
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private static void increment(Counter counter, int amount) {
+    if (counter != null) {
+      counter.increment(amount);
+    }
+  }
+
+  /** Tracks the changes between the bulk processor and Elasticsearch. */
+  private class BulkListener implements BulkProcessor.Listener {
+
+    @Override
+    public void beforeBulk(long executionId, BulkRequest request) {
+      buffered.addAndGet(-request.numberOfActions());
+      inFlight.addAndGet(request.numberOfActions());
+    }
+
+    @Override
+    public void afterBulk(long executionId, BulkRequest request, BulkResponse response) {
+      if (response.hasFailures()) {
+        int failures = 0;
+        for (BulkItemResponse item : response.getItems()) {
+          if (item.isFailed()) {
+            failures++;
+          }
+        }
+        increment(failed, failures);
+        log.error("Error indexing datasets {}", response.buildFailureMessage());
+      } else {
+        log.debug("{} dataset changes indexed", request.numberOfActions());
+      }
+      inFlight.addAndGet(-request.numberOfActions());
+    }
+
+    @Override
+    public void afterBulk(long executionId, BulkRequest request, Throwable failure) {
+      log.error("Error indexing {} dataset changes", request.numberOfActions(), failure);
+      increment(failed, request.numberOfActions());
+      inFlight.addAndGet(-request.numberOfActions());
+    }
+  }
+
+  /** Latest change of a dataset, either the version to index or a deletion. */
+  private static final class Change {
+
+    private static final Change DELETE = new Change(null);
+
+    private final Dataset dataset;
+
+    private Change(Dataset dataset) {
+      this.dataset = dataset;
+    }
+
+    private boolean isDelete() {
+      return dataset == null;
+    }
   }
 }
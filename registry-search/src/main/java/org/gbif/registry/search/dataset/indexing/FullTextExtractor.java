@@ -0,0 +1,70 @@
+/*
+ * Copyright 2020 Global Biodiversity Information Facility (GBIF)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gbif.registry.search.dataset.indexing;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+
+import org.xml.sax.SAXException;
+
+/**
+ * Extracts the full text of metadata documents with a {@link FullTextSaxHandler}, reusing a SAX
+ * parser per thread instead of creating one for every document.
+ */
+public class FullTextExtractor {
+
+  private final int maxLength;
+
+  private final ThreadLocal<SAXParser> parsers;
+
+  /** @param maxLength maximum number of characters extracted from a document */
+  public FullTextExtractor(int maxLength) {
+    this.maxLength = maxLength;
+    SAXParserFactory saxFactory = SAXParserFactory.newInstance();
+    this.parsers =
+        ThreadLocal.withInitial(
+            () -> {
+              try {
+                return saxFactory.newSAXParser();
+              } catch (ParserConfigurationException | SAXException e) {
+                throw new IllegalStateException("XML Parser not working on this system", e);
+              }
+            });
+  }
+
+  /**
+   * Extracts the text of the document, cut at the maximum length.
+   *
+   * @param document the document, closed by the parser
+   * @throws SAXException if the document cannot be parsed
+   */
+  public String extract(InputStream document) throws IOException, SAXException {
+    FullTextSaxHandler handler = new FullTextSaxHandler(maxLength);
+    SAXParser parser = parsers.get();
+    try {
+      parser.parse(document, handler);
+    } catch (FullTextSaxHandler.LimitReachedException e) {
+      // the remaining document is skipped
+    } finally {
+      parser.reset();
+    }
+    return handler.getFullText();
+  }
+}
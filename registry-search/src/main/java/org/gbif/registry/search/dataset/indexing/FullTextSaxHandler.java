@@ -15,46 +15,98 @@
  */
 package org.gbif.registry.search.dataset.indexing;
 
-import java.util.regex.Pattern;
-
 import org.xml.sax.Attributes;
 import org.xml.sax.SAXException;
 import org.xml.sax.helpers.DefaultHandler;
 
 /**
- * A simple metadata sax base handler that collects all character data inside elements into a string
- * buffer, resetting the buffer with every element start and storing the string version of the
- * buffer in this.content when the end of the element is reached.
+ * A simple metadata sax base handler that collects all character data and attribute values of a
+ * document into a single string with words delimited by single spaces.
+ *
+ * <p>Whitespace is normalised while collecting the text, so the text is only held once. Once the
+ * text reaches the maximum length the handler stops collecting and aborts the parsing with a
+ * {@link LimitReachedException}.
  */
 public class FullTextSaxHandler extends DefaultHandler {
 
-  private StringBuffer content;
-  private Pattern normWhitespace = Pattern.compile("[\\s\n\r\t]+");
+  private final int maxLength;
+  private StringBuilder content;
+  // whitespace is only written before the next word, so the text is never padded
+  private boolean pendingSpace;
+
+  public FullTextSaxHandler() {
+    this(Integer.MAX_VALUE);
+  }
+
+  /** @param maxLength maximum number of characters of the collected text */
+  public FullTextSaxHandler(int maxLength) {
+    this.maxLength = maxLength;
+  }
 
   @Override
   public void startDocument() throws SAXException {
     super.startDocument();
-    content = new StringBuffer(" ");
+    content = new StringBuilder();
+    pendingSpace = false;
   }
 
   @Override
-  public void characters(char[] ch, int start, int length) {
-    content.append(ch, start, length);
+  public void characters(char[] ch, int start, int length) throws SAXException {
+    append(ch, start, length);
   }
 
   @Override
   public void startElement(String uri, String localName, String qName, Attributes attributes)
       throws SAXException {
     // as we remove tags we add whitespace to delimit words
-    content.append(" ");
+    pendingSpace = true;
     // add attribute content to the full text
     for (int idx = attributes.getLength(); idx > 0; idx--) {
-      content.append(attributes.getValue(idx - 1));
-      content.append(" ");
+      String value = attributes.getValue(idx - 1);
+      append(value.toCharArray(), 0, value.length());
+      pendingSpace = true;
+    }
+  }
+
+  private void append(char[] ch, int start, int length) throws LimitReachedException {
+    for (int i = start; i < start + length; i++) {
+      char c = ch[i];
+      if (isWhitespace(c)) {
+        pendingSpace = true;
+        continue;
+      }
+      if (pendingSpace && content.length() > 0) {
+        appendChar(' ');
+      }
+      pendingSpace = false;
+      appendChar(c);
     }
   }
 
+  private void appendChar(char c) throws LimitReachedException {
+    if (content.length() >= maxLength) {
+      throw new LimitReachedException();
+    }
+    content.append(c);
+  }
+
+  /** Same characters as the regular expression class \s. */
+  private static boolean isWhitespace(char c) {
+    return c == ' ' || c == '\n' || c == '\t' || c == '\r' || c == '\f' || c == '\u000B';
+  }
+
   public String getFullText() {
-    return normWhitespace.matcher(content.toString()).replaceAll(" ").trim();
+    // a text cut at the limit can end with the space preceding the next word
+    int length = content.length();
+    return length > 0 && content.charAt(length - 1) == ' '
+        ? content.substring(0, length - 1)
+        : content.toString();
+  }
+
+  /** Thrown to stop parsing once the maximum length of the text has been collected. */
+  public static class LimitReachedException extends SAXException {
+    private LimitReachedException() {
+      super("Maximum full text length reached");
+    }
   }
 }
@@ -32,6 +32,7 @@ import org.elasticsearch.action.admin.indices.alias.IndicesAliasesRequest;
 import org.elasticsearch.action.admin.indices.alias.get.GetAliasesRequest;
 import org.elasticsearch.action.admin.indices.create.CreateIndexRequest;
 import org.elasticsearch.action.admin.indices.delete.DeleteIndexRequest;
+import org.elasticsearch.action.admin.indices.refresh.RefreshRequest;
 import org.elasticsearch.action.admin.indices.settings.put.UpdateSettingsRequest;
 import org.elasticsearch.action.bulk.BulkRequest;
 import org.elasticsearch.action.bulk.BulkResponse;
@@ -40,6 +41,7 @@ import org.elasticsearch.client.NodeSelector;
 import org.elasticsearch.client.RequestOptions;
 import org.elasticsearch.client.RestClient;
 import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.client.core.CountRequest;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.xcontent.XContentType;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -151,6 +153,18 @@ public class EsClient implements Closeable {
     return restHighLevelClient.bulk(bulkRequest, RequestOptions.DEFAULT);
   }
 
+  /** Refreshes the index and counts its documents. */
+  public long countDocuments(String indexName) {
+    try {
+      restHighLevelClient.indices().refresh(new RefreshRequest(indexName), RequestOptions.DEFAULT);
+      return restHighLevelClient
+          .count(new CountRequest(indexName), RequestOptions.DEFAULT)
+          .getCount();
+    } catch (IOException ex) {
+      throw new RuntimeException(ex);
+    }
+  }
+
   /** Creates ElasticSearch client using default connection settings. */
   public static RestHighLevelClient provideEsClient(EsClientConfiguration esClientConfiguration) {
     String[] hostsUrl = esClientConfiguration.hosts.split(",");
@@ -40,6 +40,10 @@ public interface GbifWsClient {
 
   PagingResponse<Dataset> listDatasets(PagingRequest pagingRequest);
 
+  PagingResponse<Installation> listInstallations(PagingRequest pagingRequest);
+
+  PagingResponse<Organization> listOrganizations(PagingRequest pagingRequest);
+
   Installation getInstallation(String installationKey);
 
   PagingResponse<Dataset> getInstallationDatasets(
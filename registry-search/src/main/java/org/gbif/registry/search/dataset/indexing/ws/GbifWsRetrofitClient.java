@@ -36,10 +36,12 @@ import java.io.InputStream;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
 import org.cache2k.Cache;
 import org.cache2k.Cache2kBuilder;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Component;
 
@@ -55,22 +57,10 @@ import static org.gbif.registry.search.dataset.indexing.ws.SearchParameterProvid
 public class GbifWsRetrofitClient implements GbifWsClient {
 
   // Uses a cache for installations to avoid too many external calls
-  Cache<String, Installation> installationCache =
-      Cache2kBuilder.of(String.class, Installation.class)
-          .eternal(true)
-          .disableStatistics(true)
-          .permitNullValues(true)
-          .loader(this::loadInstallation)
-          .build();
+  final Cache<String, Installation> installationCache;
 
   // Uses a cache for organizations to avoid too many external calls
-  Cache<String, Organization> organizationCache =
-      Cache2kBuilder.of(String.class, Organization.class)
-          .eternal(true)
-          .disableStatistics(true)
-          .permitNullValues(true)
-          .loader(this::loadOrganization)
-          .build();
+  final Cache<String, Organization> organizationCache;
 
   private final GbifApiService gbifApiService;
 
@@ -82,17 +72,38 @@ public class GbifWsRetrofitClient implements GbifWsClient {
    * Factory method, only need the api base url.
    *
    * @param apiBaseUrl GBIF Api base url, for example: https://api.gbif-dev.orf/v1/ .
+   * @param cacheMaxEntries maximum number of installations and of organizations cached
+   * @param cacheExpiryMinutes time after which cached entries are loaded again, so changes missed
+   *     by the purges are eventually picked up
    */
   @Autowired
   public GbifWsRetrofitClient(
       GbifApiService gbifApiService,
       InstallationService installationService,
       OrganizationService organizationService,
-      DatasetService datasetService) {
+      DatasetService datasetService,
+      @Value("${indexing.cache.maxEntries:10000}") long cacheMaxEntries,
+      @Value("${indexing.cache.expiryMinutes:60}") long cacheExpiryMinutes) {
     this.gbifApiService = gbifApiService;
     this.installationService = installationService;
     this.organizationService = organizationService;
     this.datasetService = datasetService;
+    this.installationCache =
+        Cache2kBuilder.of(String.class, Installation.class)
+            .entryCapacity(cacheMaxEntries)
+            .expireAfterWrite(cacheExpiryMinutes, TimeUnit.MINUTES)
+            .disableStatistics(true)
+            .permitNullValues(true)
+            .loader(this::loadInstallation)
+            .build();
+    this.organizationCache =
+        Cache2kBuilder.of(String.class, Organization.class)
+            .entryCapacity(cacheMaxEntries)
+            .expireAfterWrite(cacheExpiryMinutes, TimeUnit.MINUTES)
+            .disableStatistics(true)
+            .permitNullValues(true)
+            .loader(this::loadOrganization)
+            .build();
   }
 
   private Map<String, String> toQueryMap(PagingRequest pagingRequest) {
@@ -117,6 +128,16 @@ public class GbifWsRetrofitClient implements GbifWsClient {
     return datasetService.list(pagingRequest);
   }
 
+  @Override
+  public PagingResponse<Installation> listInstallations(PagingRequest pagingRequest) {
+    return installationService.list(pagingRequest);
+  }
+
+  @Override
+  public PagingResponse<Organization> listOrganizations(PagingRequest pagingRequest) {
+    return organizationService.list(pagingRequest);
+  }
+
   @Override
   public Installation getInstallation(String installationKey) {
     return installationCache.get(installationKey);
@@ -31,6 +31,14 @@ import org.slf4j.LoggerFactory;
 import org.springframework.context.annotation.Primary;
 import org.springframework.stereotype.Service;
 
+/**
+ * Checks the editor rights of the users, walking the ownership graph of the entities.
+ *
+ * <p>When the {@link EditorRightsClosure} grants the access, it is confirmed with a single query
+ * joining the entity, its owners and the rights of the user, as a right may have been revoked since
+ * the closure was loaded. Otherwise the graph is walked in the database, as the closure may miss a
+ * right granted or an entity moved through another instance: the closure never rejects a check.
+ */
 @Service
 @Primary
 public class EditorAuthorizationServiceImpl implements EditorAuthorizationService {
@@ -41,16 +49,19 @@ public class EditorAuthorizationServiceImpl implements EditorAuthorizationServic
   private final OrganizationMapper organizationMapper;
   private final DatasetMapper datasetMapper;
   private final InstallationMapper installationMapper;
+  private final EditorRightsClosure closure;
 
   public EditorAuthorizationServiceImpl(
       OrganizationMapper organizationMapper,
       DatasetMapper datasetMapper,
       InstallationMapper installationMapper,
-      UserRightsMapper userRightsMapper) {
+      UserRightsMapper userRightsMapper,
+      EditorRightsClosure closure) {
     this.organizationMapper = organizationMapper;
     this.datasetMapper = datasetMapper;
     this.installationMapper = installationMapper;
     this.userRightsMapper = userRightsMapper;
+    this.closure = closure;
   }
 
   @Override
@@ -95,6 +106,10 @@ public class EditorAuthorizationServiceImpl implements EditorAuthorizationServic
     if (name == null) {
       return false;
     }
+    if (closure.canModifyDataset(name, datasetKey)
+        && userRightsMapper.allowedToModifyDataset(name, datasetKey)) {
+      return true;
+    }
     if (allowedToModifyEntity(name, datasetKey)) {
       return true;
     }
@@ -129,6 +144,10 @@ public class EditorAuthorizationServiceImpl implements EditorAuthorizationServic
     if (name == null) {
       return false;
     }
+    if (closure.canModifyOrganization(name, orgKey)
+        && userRightsMapper.allowedToModifyOrganization(name, orgKey)) {
+      return true;
+    }
     if (allowedToModifyEntity(name, orgKey)) {
       return true;
     }
@@ -155,6 +174,10 @@ public class EditorAuthorizationServiceImpl implements EditorAuthorizationServic
     if (name == null) {
       return false;
     }
+    if (closure.canModifyInstallation(name, installationKey)
+        && userRightsMapper.allowedToModifyInstallation(name, installationKey)) {
+      return true;
+    }
     if (allowedToModifyEntity(name, installationKey)) {
       return true;
     }
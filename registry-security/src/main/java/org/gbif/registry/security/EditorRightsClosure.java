@@ -0,0 +1,237 @@
+/*
+ * Copyright 2020 Global Biodiversity Information Facility (GBIF)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gbif.registry.security;
+
+import org.gbif.registry.identity.service.UserChangedEvent;
+import org.gbif.registry.persistence.mapper.UserRightsMapper;
+import org.gbif.registry.persistence.mapper.dto.EditorRight;
+import org.gbif.registry.persistence.mapper.dto.EntityOwnership;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * In-memory copy of the editor rights and of the ownership graph of the datasets, installations and
+ * organizations, so the editor authorization checks are answered with a few hash lookups instead
+ * of walking the graph with database queries.
+ *
+ * <p>A user can edit an entity if the user has rights on the entity or on any of its owners, i.e.
+ * the installation, hosting organization, publishing organization and endorsing nodes of a
+ * dataset. Rather than materializing that closure for every user, which would copy all the
+ * datasets of a node for each of its editors, the owners of the checked entity are looked up in
+ * the graph, which is at most six lookups per check.
+ *
+ * <p>The copy is reloaded periodically and updated in between with {@link #refreshDataset}, {@link
+ * #refreshInstallation}, {@link #refreshOrganization} and user change events. Changes made through
+ * other instances are therefore seen with the delay of the refresh interval at most. As the copy
+ * may still hold a revoked right or miss a new one, callers only use it to pick the checks that
+ * one query can confirm and never reject a check because of it.
+ */
+@Component
+public class EditorRightsClosure {
+
+  private static final Logger LOG = LoggerFactory.getLogger(EditorRightsClosure.class);
+
+  private final UserRightsMapper userRightsMapper;
+  private final boolean enabled;
+  private volatile State state;
+
+  public EditorRightsClosure(
+      UserRightsMapper userRightsMapper,
+      @Value("${security.editorRights.closure.enabled:false}") boolean enabled) {
+    this.userRightsMapper = userRightsMapper;
+    this.enabled = enabled;
+  }
+
+  /** Whether the closure has been loaded and can be used. */
+  public boolean isReady() {
+    return state != null;
+  }
+
+  /** Reloads all the rights and the ownership graph, replacing the current copy. */
+  @Scheduled(fixedDelayString = "${security.editorRights.closure.refreshIntervalMs:60000}")
+  public synchronized void reload() {
+    if (!enabled) {
+      return;
+    }
+    Stopwatch stopwatch = Stopwatch.createStarted();
+    State newState = new State();
+    userRightsMapper.listEditorRights(null).forEach(newState::addRight);
+    newState.datasets.putAll(byKey(userRightsMapper.listDatasetOwnership(null)));
+    newState.installations.putAll(byKey(userRightsMapper.listInstallationOwnership(null)));
+    newState.organizations.putAll(byKey(userRightsMapper.listOrganizationOwnership(null)));
+    state = newState;
+    LOG.debug(
+        "Editor rights loaded with {} datasets, {} installations and {} organizations in {}",
+        newState.datasets.size(),
+        newState.installations.size(),
+        newState.organizations.size(),
+        stopwatch);
+  }
+
+  public synchronized void refreshDataset(UUID key) {
+    refresh(key, userRightsMapper::listDatasetOwnership, s -> s.datasets);
+  }
+
+  public synchronized void refreshInstallation(UUID key) {
+    refresh(key, userRightsMapper::listInstallationOwnership, s -> s.installations);
+  }
+
+  public synchronized void refreshOrganization(UUID key) {
+    refresh(key, userRightsMapper::listOrganizationOwnership, s -> s.organizations);
+  }
+
+  /**
+   * Reloads the rights of the user, which may have been changed along with the account, once the
+   * change is committed.
+   */
+  @TransactionalEventListener(fallbackExecution = true)
+  public synchronized void onUserChanged(UserChangedEvent event) {
+    State current = state;
+    if (current != null && event.getUserName() != null) {
+      Set<UUID> keys =
+          ImmutableSet.copyOf(
+              userRightsMapper.listEditorRights(event.getUserName()).stream()
+                  .map(EditorRight::getKey)
+                  .collect(Collectors.toSet()));
+      if (keys.isEmpty()) {
+        current.rights.remove(event.getUserName());
+      } else {
+        current.rights.put(event.getUserName(), keys);
+      }
+    }
+  }
+
+  private void refresh(
+      UUID key,
+      Function<UUID, List<EntityOwnership>> loader,
+      Function<State, Map<UUID, EntityOwnership>> graphFn) {
+    State current = state;
+    if (current != null && key != null) {
+      Map<UUID, EntityOwnership> graph = graphFn.apply(current);
+      List<EntityOwnership> rows = loader.apply(key);
+      if (rows.isEmpty()) {
+        graph.remove(key);
+      } else {
+        graph.put(key, rows.get(0));
+      }
+    }
+  }
+
+  /** Whether the user has rights on the entity itself. */
+  public boolean hasRight(@Nullable String username, @Nullable UUID key) {
+    return username != null && key != null && rightsOf(username).contains(key);
+  }
+
+  /** Whether the user can edit the organization, directly or through its endorsing node. */
+  public boolean canModifyOrganization(@Nullable String username, @Nullable UUID organizationKey) {
+    if (hasRight(username, organizationKey)) {
+      return true;
+    }
+    EntityOwnership organization = getOrganization(organizationKey);
+    return organization != null && hasRight(username, organization.getNodeKey());
+  }
+
+  /** Whether the user can edit the installation, directly or through its hosting organization. */
+  public boolean canModifyInstallation(@Nullable String username, @Nullable UUID installationKey) {
+    if (hasRight(username, installationKey)) {
+      return true;
+    }
+    EntityOwnership installation = getInstallation(installationKey);
+    return installation != null
+        && canModifyOrganization(username, installation.getOrganizationKey());
+  }
+
+  /**
+   * Whether the user can edit the dataset, directly, through its installation or through its
+   * publishing organization.
+   */
+  public boolean canModifyDataset(@Nullable String username, @Nullable UUID datasetKey) {
+    if (hasRight(username, datasetKey)) {
+      return true;
+    }
+    EntityOwnership dataset = getDataset(datasetKey);
+    return dataset != null
+        && (canModifyInstallation(username, dataset.getInstallationKey())
+            || canModifyOrganization(username, dataset.getOrganizationKey()));
+  }
+
+  @Nullable
+  public EntityOwnership getDataset(@Nullable UUID key) {
+    return get(key, s -> s.datasets);
+  }
+
+  @Nullable
+  public EntityOwnership getInstallation(@Nullable UUID key) {
+    return get(key, s -> s.installations);
+  }
+
+  @Nullable
+  public EntityOwnership getOrganization(@Nullable UUID key) {
+    return get(key, s -> s.organizations);
+  }
+
+  private EntityOwnership get(UUID key, Function<State, Map<UUID, EntityOwnership>> graphFn) {
+    State current = state;
+    return current != null && key != null ? graphFn.apply(current).get(key) : null;
+  }
+
+  private Set<UUID> rightsOf(String username) {
+    State current = state;
+    return current != null
+        ? current.rights.getOrDefault(username, Collections.emptySet())
+        : Collections.emptySet();
+  }
+
+  private static Map<UUID, EntityOwnership> byKey(List<EntityOwnership> rows) {
+    return rows.stream().collect(Collectors.toMap(EntityOwnership::getKey, Function.identity()));
+  }
+
+  /** The loaded copy, replaced as a whole on reloads. */
+  private static class State {
+    private final Map<String, Set<UUID>> rights = new ConcurrentHashMap<>();
+    private final Map<UUID, EntityOwnership> datasets = new ConcurrentHashMap<>();
+    private final Map<UUID, EntityOwnership> installations = new ConcurrentHashMap<>();
+    private final Map<UUID, EntityOwnership> organizations = new ConcurrentHashMap<>();
+
+    private void addRight(EditorRight right) {
+      rights.compute(
+          right.getUsername(),
+          (k, keys) ->
+              keys == null
+                  ? ImmutableSet.of(right.getKey())
+                  : ImmutableSet.<UUID>builder().addAll(keys).add(right.getKey()).build());
+    }
+  }
+}
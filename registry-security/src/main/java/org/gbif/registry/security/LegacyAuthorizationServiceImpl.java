@@ -158,7 +158,12 @@ public class LegacyAuthorizationServiceImpl implements LegacyAuthorizationServic
       LOG.error("Organization key is null");
       return false;
     }
-    // validate installation key belongs to an existing installation
+    // rejected without a query, the credentials must be those of the organization itself
+    if (!organizationKey.equals(authorization.getUserKey())) {
+      return false;
+    }
+
+    // validate organization key belongs to an existing organization
     Organization org = organizationMapper.get(organizationKey);
 
     if (org == null) {
@@ -188,14 +193,14 @@ public class LegacyAuthorizationServiceImpl implements LegacyAuthorizationServic
     }
     // retrieve dataset to ensure it exists
     Dataset dataset = datasetMapper.get(datasetKey);
-
     if (dataset == null) {
       LOG.error("Dataset with key={} does not exist", datasetKey);
       return false;
     }
+    UUID publishingOrganizationKey = dataset.getPublishingOrganizationKey();
 
     // check the dataset belongs to organization
-    if (dataset.getPublishingOrganizationKey().compareTo(authorization.getUserKey()) != 0) {
+    if (publishingOrganizationKey.compareTo(authorization.getUserKey()) != 0) {
       LOG.error("The Dataset is not owned by the organization specified in the credentials");
       return false;
     }
@@ -228,6 +233,11 @@ public class LegacyAuthorizationServiceImpl implements LegacyAuthorizationServic
     if (installationKey == null) {
       return false;
     }
+    // rejected without a query, the credentials must be those of the installation itself
+    if (!installationKey.equals(authorization.getUserKey())) {
+      return false;
+    }
+
     // validate installation key belongs to an existing installation
     Installation installation = installationMapper.get(installationKey);
 
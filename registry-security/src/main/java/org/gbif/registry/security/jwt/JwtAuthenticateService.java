@@ -44,6 +44,16 @@ public class JwtAuthenticateService {
   }
 
   public GbifUser authenticate(String token) throws GbifJwtException {
+    return getUser(getUsername(verify(token)));
+  }
+
+  /**
+   * Validates the token and parses its claims.
+   *
+   * @throws GbifJwtException if the token is expired, not signed with our key or issued by another
+   *     issuer
+   */
+  public Claims verify(String token) throws GbifJwtException {
     // validate and parse the token
     Claims claims;
     try {
@@ -62,12 +72,18 @@ public class JwtAuthenticateService {
     if (claims == null) {
       throw new GbifJwtException(GbifJwtException.JwtErrorCode.INVALID_TOKEN);
     }
+    return claims;
+  }
 
-    String username =
-        Optional.ofNullable(claims.get("userName", String.class))
-            .filter(v -> !v.isEmpty())
-            .orElseThrow(() -> new GbifJwtException(GbifJwtException.JwtErrorCode.INVALID_TOKEN));
+  /** Gets the username claim of a verified token. */
+  public String getUsername(Claims claims) throws GbifJwtException {
+    return Optional.ofNullable(claims.get("userName", String.class))
+        .filter(v -> !v.isEmpty())
+        .orElseThrow(() -> new GbifJwtException(GbifJwtException.JwtErrorCode.INVALID_TOKEN));
+  }
 
+  /** Gets the user of a verified token. */
+  public GbifUser getUser(String username) throws GbifJwtException {
     return Optional.ofNullable(identityService.get(username))
         .orElseThrow(() -> new GbifJwtException(GbifJwtException.JwtErrorCode.INVALID_USERNAME));
   }
@@ -27,6 +27,7 @@ public class JwtConfiguration {
   @NotNull private long expiryTimeInMs;
   @NotNull private String issuer;
   @NotNull private String signingKey;
+  private Long reissueThresholdInMs;
 
   public long getExpiryTimeInMs() {
     return expiryTimeInMs;
@@ -51,4 +52,16 @@ public class JwtConfiguration {
   public void setSigningKey(String signingKey) {
     this.signingKey = signingKey;
   }
+
+  /**
+   * Tokens are only re-issued when they expire within this time. Defaults to the expiry time, i.e.
+   * a new token is issued on every authenticated request.
+   */
+  public long getReissueThresholdInMs() {
+    return reissueThresholdInMs != null ? reissueThresholdInMs : expiryTimeInMs;
+  }
+
+  public void setReissueThresholdInMs(Long reissueThresholdInMs) {
+    this.reissueThresholdInMs = reissueThresholdInMs;
+  }
 }
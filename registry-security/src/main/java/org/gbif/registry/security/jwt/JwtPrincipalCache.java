@@ -0,0 +1,148 @@
+/*
+ * Copyright 2020 Global Biodiversity Information Facility (GBIF)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gbif.registry.security.jwt;
+
+import org.gbif.registry.identity.service.UserChangedEvent;
+
+import java.util.Locale;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
+
+/**
+ * Short lived cache of the principals of the users authenticated with a JWT token, keyed by
+ * username and token issue time, so a client reusing its token is not loaded from the database on
+ * every request.
+ *
+ * <p>Entries of a user are dropped as soon as the user is modified in this instance. Changes made
+ * through other instances are picked up once the entries expire.
+ */
+@Component
+public class JwtPrincipalCache {
+
+  static final String CACHE_NAME = "registry.security.jwt.principals";
+
+  private final Cache<Key, UserDetails> cache;
+
+  public JwtPrincipalCache(
+      @Value("${jwt.principalCache.expirySeconds:60}") long expirySeconds,
+      @Value("${jwt.principalCache.maxEntries:10000}") long maxEntries,
+      @Autowired(required = false) @Nullable MeterRegistry meterRegistry) {
+    this.cache =
+        CacheBuilder.newBuilder()
+            .expireAfterWrite(expirySeconds, TimeUnit.SECONDS)
+            .maximumSize(maxEntries)
+            .recordStats()
+            .build();
+
+    if (meterRegistry != null) {
+      // exposes cache.gets (hit/miss), cache.evictions, cache.puts and cache.size
+      GuavaCacheMetrics.monitor(meterRegistry, cache, CACHE_NAME);
+    }
+  }
+
+  /**
+   * Gets the cached principal of the token, loading it if needed.
+   *
+   * @param username username claim of the token
+   * @param issuedAt issued at claim of the token in milliseconds
+   * @param loader loads the principal in case of a cache miss
+   */
+  public UserDetails get(String username, long issuedAt, PrincipalLoader loader)
+      throws GbifJwtException {
+    try {
+      return cache.get(new Key(username, issuedAt), loader);
+    } catch (ExecutionException | UncheckedExecutionException e) {
+      if (e.getCause() instanceof GbifJwtException) {
+        throw (GbifJwtException) e.getCause();
+      }
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new IllegalStateException(e.getCause());
+    }
+  }
+
+  /** Drops all the cached principals of the user. */
+  public void invalidate(String username) {
+    String normalized = normalize(username);
+    cache.asMap().keySet().removeIf(k -> k.username.equals(normalized));
+  }
+
+  /**
+   * Invalidates once the change is committed, so a concurrent request cannot cache the principal
+   * read before the commit again.
+   */
+  @TransactionalEventListener(fallbackExecution = true)
+  public void onUserChanged(UserChangedEvent event) {
+    invalidate(event.getUserName());
+  }
+
+  /** Usernames are case insensitive, as in the user lookups. */
+  private static String normalize(String username) {
+    return username != null ? username.toLowerCase(Locale.ENGLISH) : null;
+  }
+
+  /** Loads the principal of a token, failing like the JWT authentication does. */
+  @FunctionalInterface
+  public interface PrincipalLoader extends Callable<UserDetails> {
+    @Override
+    UserDetails call() throws GbifJwtException;
+  }
+
+  private static class Key {
+    private final String username;
+    private final long issuedAt;
+
+    private Key(String username, long issuedAt) {
+      this.username = normalize(username);
+      this.issuedAt = issuedAt;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+      Key key = (Key) o;
+      return issuedAt == key.issuedAt && Objects.equals(username, key.username);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(username, issuedAt);
+    }
+  }
+}
@@ -20,9 +20,13 @@ import org.gbif.ws.security.GbifAuthentication;
 import org.gbif.ws.security.GbifAuthenticationToken;
 
 import java.io.IOException;
+import java.util.Date;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Pattern;
 
+import javax.annotation.Nullable;
+
 import javax.servlet.FilterChain;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
@@ -30,6 +34,7 @@ import javax.servlet.http.HttpServletResponse;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
@@ -39,12 +44,21 @@ import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
 
+import io.jsonwebtoken.Claims;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
 import static org.gbif.ws.util.SecurityConstants.HEADER_TOKEN;
 
 /**
  * Filter to validate the JWT tokens.
  *
  * <p>If the token is not present this validation is skipped.
+ *
+ * <p>The principals of the users are cached by {@link JwtPrincipalCache}, and a new token is only
+ * returned when the one used is about to expire, so most requests with a token neither query the
+ * database nor sign a new token.
  */
 @Component
 public class JwtRequestFilter extends OncePerRequestFilter {
@@ -57,14 +71,27 @@ public class JwtRequestFilter extends OncePerRequestFilter {
   private final UserDetailsService userDetailsService;
   private final JwtAuthenticateService jwtAuthenticateService;
   private final JwtIssuanceService jwtIssuanceService;
+  private final JwtPrincipalCache principalCache;
+  private final long reissueThresholdInMs;
+  private final Counter reissuedCounter;
+  private final Timer authenticationTimer;
 
   public JwtRequestFilter(
       @Qualifier("registryUserDetailsService") UserDetailsService userDetailsService,
       JwtAuthenticateService jwtAuthenticateService,
-      JwtIssuanceService jwtIssuanceService) {
+      JwtIssuanceService jwtIssuanceService,
+      JwtPrincipalCache principalCache,
+      JwtConfiguration jwtConfiguration,
+      @Autowired(required = false) @Nullable MeterRegistry meterRegistry) {
     this.userDetailsService = userDetailsService;
     this.jwtAuthenticateService = jwtAuthenticateService;
     this.jwtIssuanceService = jwtIssuanceService;
+    this.principalCache = principalCache;
+    this.reissueThresholdInMs = jwtConfiguration.getReissueThresholdInMs();
+    this.reissuedCounter =
+        meterRegistry != null ? meterRegistry.counter("registry.security.jwt.reissued") : null;
+    this.authenticationTimer =
+        meterRegistry != null ? meterRegistry.timer("registry.security.jwt.authentication") : null;
   }
 
   @Override
@@ -77,30 +104,53 @@ public class JwtRequestFilter extends OncePerRequestFilter {
       // if there is no token in the request we ignore this authentication
       LOG.debug("No JWT token present.");
     } else {
+      final long start = System.nanoTime();
       try {
-        final GbifUser gbifUser = jwtAuthenticateService.authenticate(token.get());
-
-        LOG.debug("JWT successfully validated for user {}", gbifUser.getUserName());
+        final Claims claims = jwtAuthenticateService.verify(token.get());
+        final String username = jwtAuthenticateService.getUsername(claims);
+        final long issuedAt =
+            Optional.ofNullable(claims.getIssuedAt()).map(Date::getTime).orElse(0L);
 
         final UserDetails userDetails =
-            userDetailsService.loadUserByUsername(gbifUser.getUserName());
+            principalCache.get(username, issuedAt, () -> loadUserDetails(username));
+
+        LOG.debug("JWT successfully validated for user {}", userDetails.getUsername());
 
         final GbifAuthentication gbifAuthentication =
             new GbifAuthenticationToken(userDetails, userDetails.getAuthorities());
         SecurityContextHolder.getContext().setAuthentication(gbifAuthentication);
 
-        // refresh the token and add it to the headers
-        final String newToken = jwtIssuanceService.generateJwt(gbifUser.getUserName());
-        response.addHeader(HEADER_TOKEN, newToken);
+        // refresh the token and add it to the headers if it expires soon
+        if (isAboutToExpire(claims)) {
+          final String newToken = jwtIssuanceService.generateJwt(username);
+          response.addHeader(HEADER_TOKEN, newToken);
+          if (reissuedCounter != null) {
+            reissuedCounter.increment();
+          }
+        }
       } catch (GbifJwtException e) {
         LOG.warn("JWT validation failed: {}", e.getErrorCode());
         response.setStatus(HttpStatus.UNAUTHORIZED.value());
+      } finally {
+        if (authenticationTimer != null) {
+          authenticationTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
       }
     }
 
     filterChain.doFilter(request, response);
   }
 
+  private UserDetails loadUserDetails(String username) throws GbifJwtException {
+    final GbifUser gbifUser = jwtAuthenticateService.getUser(username);
+    return userDetailsService.loadUserByUsername(gbifUser.getUserName());
+  }
+
+  private boolean isAboutToExpire(Claims claims) {
+    return claims.getExpiration() == null
+        || claims.getExpiration().getTime() - System.currentTimeMillis() <= reissueThresholdInMs;
+  }
+
   /** Tries to find the token in the {@link HttpHeaders#AUTHORIZATION} header. */
   public Optional<String> findTokenInRequest(HttpServletRequest request) {
     // check header first
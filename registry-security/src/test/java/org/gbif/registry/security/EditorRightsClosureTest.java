@@ -0,0 +1,370 @@
+/*
+ * Copyright 2020 Global Biodiversity Information Facility (GBIF)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gbif.registry.security;
+
+import org.gbif.api.model.registry.Dataset;
+import org.gbif.api.model.registry.Installation;
+import org.gbif.api.model.registry.Organization;
+import org.gbif.registry.identity.service.UserChangedEvent;
+import org.gbif.registry.persistence.mapper.DatasetMapper;
+import org.gbif.registry.persistence.mapper.InstallationMapper;
+import org.gbif.registry.persistence.mapper.OrganizationMapper;
+import org.gbif.registry.persistence.mapper.UserRightsMapper;
+import org.gbif.registry.persistence.mapper.dto.EditorRight;
+import org.gbif.registry.persistence.mapper.dto.EntityOwnership;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Differential test checking the {@link EditorRightsClosure} gives the same answers as the database
+ * walk of {@link EditorAuthorizationServiceImpl} on randomized ownership graphs.
+ */
+public class EditorRightsClosureTest {
+
+  private static final int GRAPHS = 20;
+  private static final List<String> USERS = Arrays.asList("u1", "u2", "u3", "u4");
+
+  private final Map<UUID, Organization> organizations = new HashMap<>();
+  private final Map<UUID, Installation> installations = new HashMap<>();
+  private final Map<UUID, Dataset> datasets = new HashMap<>();
+  private final List<UUID> nodes = new ArrayList<>();
+  private final List<EditorRight> rights = new ArrayList<>();
+
+  private EditorAuthorizationServiceImpl walk;
+  private EditorRightsClosure closure;
+  // checks granted by the closure and confirmed with the database
+  private EditorAuthorizationServiceImpl authorization;
+
+  @Before
+  public void setUp() {
+    UserRightsMapper userRightsMapper = mock(UserRightsMapper.class);
+    DatasetMapper datasetMapper = mock(DatasetMapper.class);
+    InstallationMapper installationMapper = mock(InstallationMapper.class);
+    OrganizationMapper organizationMapper = mock(OrganizationMapper.class);
+
+    when(userRightsMapper.keyExistsForUser(anyString(), any()))
+        .thenAnswer(
+            inv ->
+                rights.stream()
+                    .anyMatch(
+                        r ->
+                            r.getUsername().equals(inv.getArgument(0))
+                                && r.getKey().equals(inv.getArgument(1))));
+    // the single query checks give the answers of the walk
+    when(userRightsMapper.allowedToModifyDataset(anyString(), any()))
+        .thenAnswer(
+            inv -> walk.allowedToModifyDataset(inv.getArgument(0), inv.<UUID>getArgument(1)));
+    when(userRightsMapper.allowedToModifyInstallation(anyString(), any()))
+        .thenAnswer(
+            inv -> walk.allowedToModifyInstallation(inv.getArgument(0), inv.<UUID>getArgument(1)));
+    when(userRightsMapper.allowedToModifyOrganization(anyString(), any()))
+        .thenAnswer(
+            inv -> walk.allowedToModifyOrganization(inv.getArgument(0), inv.<UUID>getArgument(1)));
+    when(userRightsMapper.listEditorRights(any()))
+        .thenAnswer(
+            inv -> {
+              String username = inv.getArgument(0);
+              return rights.stream()
+                  .filter(r -> username == null || r.getUsername().equals(username))
+                  .collect(Collectors.toList());
+            });
+    when(userRightsMapper.listDatasetOwnership(any()))
+        .thenAnswer(inv -> ownership(datasets, inv.getArgument(0), this::datasetOwnership));
+    when(userRightsMapper.listInstallationOwnership(any()))
+        .thenAnswer(
+            inv -> ownership(installations, inv.getArgument(0), this::installationOwnership));
+    when(userRightsMapper.listOrganizationOwnership(any()))
+        .thenAnswer(
+            inv -> ownership(organizations, inv.getArgument(0), this::organizationOwnership));
+    when(datasetMapper.get(any())).thenAnswer(inv -> datasets.get(inv.<UUID>getArgument(0)));
+    when(installationMapper.get(any()))
+        .thenAnswer(inv -> installations.get(inv.<UUID>getArgument(0)));
+    when(organizationMapper.get(any()))
+        .thenAnswer(inv -> organizations.get(inv.<UUID>getArgument(0)));
+
+    // the closure of the walk is disabled, so it only queries the mappers
+    walk =
+        new EditorAuthorizationServiceImpl(
+            organizationMapper,
+            datasetMapper,
+            installationMapper,
+            userRightsMapper,
+            new EditorRightsClosure(userRightsMapper, false));
+    closure = new EditorRightsClosure(userRightsMapper, true);
+    authorization =
+        new EditorAuthorizationServiceImpl(
+            organizationMapper, datasetMapper, installationMapper, userRightsMapper, closure);
+  }
+
+  @Test
+  public void sameAnswersAsWalkTest() {
+    for (long seed = 0; seed < GRAPHS; seed++) {
+      Random random = new Random(seed);
+      randomGraph(random);
+      closure.reload();
+      assertSameAnswers(seed);
+
+      // move entities to other owners and change the rights of a user incrementally
+      Dataset dataset = pick(random, new ArrayList<>(datasets.values()));
+      dataset.setPublishingOrganizationKey(pick(random, new ArrayList<>(organizations.keySet())));
+      dataset.setInstallationKey(pick(random, new ArrayList<>(installations.keySet())));
+      closure.refreshDataset(dataset.getKey());
+
+      Installation installation = pick(random, new ArrayList<>(installations.values()));
+      installation.setOrganizationKey(pick(random, new ArrayList<>(organizations.keySet())));
+      closure.refreshInstallation(installation.getKey());
+
+      Organization organization = pick(random, new ArrayList<>(organizations.values()));
+      organization.setEndorsingNodeKey(random.nextBoolean() ? pick(random, nodes) : null);
+      closure.refreshOrganization(organization.getKey());
+
+      String user = pick(random, USERS);
+      rights.removeIf(r -> r.getUsername().equals(user));
+      addRandomRights(random, user);
+      closure.onUserChanged(new UserChangedEvent(user));
+
+      assertSameAnswers(seed);
+    }
+  }
+
+  @Test
+  public void revokedRightDeniedImmediatelyTest() {
+    randomGraph(new Random(0));
+    rights.clear();
+    Dataset dataset = datasets.values().iterator().next();
+    UUID organizationKey = dataset.getPublishingOrganizationKey();
+    EditorRight right = new EditorRight();
+    right.setUsername("u1");
+    right.setKey(organizationKey);
+    rights.add(right);
+    closure.reload();
+    assertTrue(authorization.allowedToModifyOrganization("u1", organizationKey));
+    assertTrue(authorization.allowedToModifyDataset("u1", dataset.getKey()));
+
+    // revoked in the database, e.g. through another instance, the closure still holds the right
+    rights.clear();
+    assertTrue(closure.canModifyOrganization("u1", organizationKey));
+    assertFalse(authorization.allowedToModifyOrganization("u1", organizationKey));
+    assertFalse(authorization.allowedToModifyDataset("u1", dataset.getKey()));
+  }
+
+  @Test
+  public void grantedBehindTheClosureAllowedTest() {
+    for (long seed = 0; seed < GRAPHS; seed++) {
+      Random random = new Random(seed);
+      randomGraph(random);
+      rights.clear();
+      closure.reload();
+
+      // granted and moved in the database, e.g. through another instance, the closure is not told
+      Dataset dataset = pick(random, new ArrayList<>(datasets.values()));
+      Installation installation = pick(random, new ArrayList<>(installations.values()));
+      Organization organization = pick(random, new ArrayList<>(organizations.values()));
+      dataset.setPublishingOrganizationKey(organization.getKey());
+      EditorRight right = new EditorRight();
+      right.setUsername("u1");
+      right.setKey(organization.getKey());
+      rights.add(right);
+      right = new EditorRight();
+      right.setUsername("u2");
+      right.setKey(installation.getKey());
+      rights.add(right);
+
+      assertFalse(closure.canModifyOrganization("u1", organization.getKey()));
+      assertFalse(closure.canModifyDataset("u1", dataset.getKey()));
+      assertTrue(authorization.allowedToModifyOrganization("u1", organization.getKey()));
+      assertTrue(authorization.allowedToModifyDataset("u1", dataset.getKey()));
+      assertFalse(closure.canModifyInstallation("u2", installation.getKey()));
+      assertTrue(authorization.allowedToModifyInstallation("u2", installation.getKey()));
+      assertAuthorizedAsWalk(seed);
+    }
+  }
+
+  @Test
+  public void notReadyUntilLoadedTest() {
+    randomGraph(new Random(0));
+    EditorRight right = new EditorRight();
+    right.setUsername("u1");
+    right.setKey(nodes.get(0));
+    rights.add(right);
+    assertFalse(closure.isReady());
+    assertFalse(closure.hasRight(right.getUsername(), right.getKey()));
+
+    closure.reload();
+    assertTrue(closure.isReady());
+    assertTrue(closure.hasRight(right.getUsername(), right.getKey()));
+  }
+
+  private void assertSameAnswers(long seed) {
+    for (String user : USERS) {
+      for (UUID key : keys()) {
+        String msg = "Graph " + seed + ", user " + user + ", key " + key;
+        assertEquals(msg, walk.allowedToModifyEntity(user, key), closure.hasRight(user, key));
+        assertEquals(
+            msg,
+            walk.allowedToModifyOrganization(user, key),
+            closure.canModifyOrganization(user, key));
+        assertEquals(
+            msg,
+            walk.allowedToModifyInstallation(user, key),
+            closure.canModifyInstallation(user, key));
+        assertEquals(
+            msg, walk.allowedToModifyDataset(user, key), closure.canModifyDataset(user, key));
+      }
+    }
+    assertAuthorizedAsWalk(seed);
+  }
+
+  /** The checks using the closure give the answers of the walk, even when the closure is stale. */
+  private void assertAuthorizedAsWalk(long seed) {
+    for (String user : USERS) {
+      for (UUID key : keys()) {
+        String msg = "Graph " + seed + ", user " + user + ", key " + key;
+        assertEquals(
+            msg,
+            walk.allowedToModifyOrganization(user, key),
+            authorization.allowedToModifyOrganization(user, key));
+        assertEquals(
+            msg,
+            walk.allowedToModifyInstallation(user, key),
+            authorization.allowedToModifyInstallation(user, key));
+        assertEquals(
+            msg,
+            walk.allowedToModifyDataset(user, key),
+            authorization.allowedToModifyDataset(user, key));
+      }
+    }
+  }
+
+  private List<UUID> keys() {
+    List<UUID> keys = new ArrayList<>();
+    keys.addAll(nodes);
+    keys.addAll(organizations.keySet());
+    keys.addAll(installations.keySet());
+    keys.addAll(datasets.keySet());
+    keys.add(UUID.randomUUID());
+    keys.add(null);
+    return keys;
+  }
+
+  /**
+   * Builds a graph where owners are sometimes missing or refer to unknown entities, as deleted rows
+   * or inconsistent data would.
+   */
+  private void randomGraph(Random random) {
+    nodes.clear();
+    organizations.clear();
+    installations.clear();
+    datasets.clear();
+    rights.clear();
+
+    for (int i = 0; i < 3; i++) {
+      nodes.add(UUID.randomUUID());
+    }
+    for (int i = 0; i < 6; i++) {
+      Organization o = new Organization();
+      o.setKey(UUID.randomUUID());
+      o.setEndorsingNodeKey(random.nextInt(4) > 0 ? pick(random, nodes) : null);
+      organizations.put(o.getKey(), o);
+    }
+    List<UUID> organizationKeys = new ArrayList<>(organizations.keySet());
+    for (int i = 0; i < 6; i++) {
+      Installation inst = new Installation();
+      inst.setKey(UUID.randomUUID());
+      inst.setOrganizationKey(
+          random.nextInt(5) > 0 ? pick(random, organizationKeys) : UUID.randomUUID());
+      installations.put(inst.getKey(), inst);
+    }
+    List<UUID> installationKeys = new ArrayList<>(installations.keySet());
+    for (int i = 0; i < 15; i++) {
+      Dataset d = new Dataset();
+      d.setKey(UUID.randomUUID());
+      d.setInstallationKey(
+          random.nextInt(5) > 0 ? pick(random, installationKeys) : UUID.randomUUID());
+      d.setPublishingOrganizationKey(pick(random, organizationKeys));
+      datasets.put(d.getKey(), d);
+    }
+    USERS.forEach(u -> addRandomRights(random, u));
+  }
+
+  private void addRandomRights(Random random, String user) {
+    List<UUID> all = new ArrayList<>();
+    all.addAll(nodes);
+    all.addAll(organizations.keySet());
+    all.addAll(installations.keySet());
+    all.addAll(datasets.keySet());
+    int count = random.nextInt(4);
+    for (int i = 0; i < count; i++) {
+      EditorRight right = new EditorRight();
+      right.setUsername(user);
+      right.setKey(pick(random, all));
+      rights.add(right);
+    }
+  }
+
+  private static <T> T pick(Random random, List<T> values) {
+    return values.get(random.nextInt(values.size()));
+  }
+
+  private <T> List<EntityOwnership> ownership(
+      Map<UUID, T> entities, UUID key, Function<T, EntityOwnership> fn) {
+    return entities.entrySet().stream()
+        .filter(e -> key == null || e.getKey().equals(key))
+        .map(e -> fn.apply(e.getValue()))
+        .collect(Collectors.toList());
+  }
+
+  private EntityOwnership datasetOwnership(Dataset d) {
+    EntityOwnership o = new EntityOwnership();
+    o.setKey(d.getKey());
+    o.setInstallationKey(d.getInstallationKey());
+    o.setOrganizationKey(d.getPublishingOrganizationKey());
+    return o;
+  }
+
+  private EntityOwnership installationOwnership(Installation i) {
+    EntityOwnership o = new EntityOwnership();
+    o.setKey(i.getKey());
+    o.setOrganizationKey(i.getOrganizationKey());
+    return o;
+  }
+
+  private EntityOwnership organizationOwnership(Organization org) {
+    EntityOwnership o = new EntityOwnership();
+    o.setKey(org.getKey());
+    o.setNodeKey(org.getEndorsingNodeKey());
+    return o;
+  }
+}
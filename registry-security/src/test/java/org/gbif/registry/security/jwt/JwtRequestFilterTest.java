@@ -0,0 +1,171 @@
+/*
+ * Copyright 2020 Global Biodiversity Information Facility (GBIF)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gbif.registry.security.jwt;
+
+import org.gbif.api.model.common.GbifUser;
+import org.gbif.api.service.common.IdentityAccessService;
+import org.gbif.registry.identity.service.UserChangedEvent;
+import org.gbif.ws.security.GbifUserPrincipal;
+
+import javax.servlet.FilterChain;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.userdetails.UserDetailsService;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import static org.gbif.ws.util.SecurityConstants.HEADER_TOKEN;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class JwtRequestFilterTest {
+
+  private static final String USERNAME = "user";
+  private static final String SIGNING_KEY = "03bee45dc7ecfb7f3bdd1f7171add974";
+  private static final long EXPIRY_MS = 30 * 60 * 1000;
+  private static final long REISSUE_THRESHOLD_MS = 5 * 60 * 1000;
+
+  @Mock private IdentityAccessService identityService;
+  @Mock private UserDetailsService userDetailsService;
+  @Mock private FilterChain filterChain;
+
+  private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+  private JwtConfiguration config;
+  private JwtPrincipalCache principalCache;
+  private JwtRequestFilter filter;
+
+  @Before
+  public void setUp() {
+    config = config(EXPIRY_MS);
+    principalCache = new JwtPrincipalCache(60, 100, meterRegistry);
+    filter =
+        new JwtRequestFilter(
+            userDetailsService,
+            new JwtAuthenticateService(config, identityService),
+            new JwtIssuanceServiceImpl(config),
+            principalCache,
+            config,
+            meterRegistry);
+  }
+
+  @After
+  public void tearDown() {
+    SecurityContextHolder.clearContext();
+  }
+
+  @Test
+  public void principalCachedPerTokenTest() throws Exception {
+    mockUser();
+    String token = new JwtIssuanceServiceImpl(config).generateJwt(USERNAME);
+
+    filter(token);
+    filter(token);
+    assertNotNull(SecurityContextHolder.getContext().getAuthentication());
+    verify(identityService, times(1)).get(USERNAME);
+    verify(userDetailsService, times(1)).loadUserByUsername(USERNAME);
+
+    // a change of the user drops the cached principal
+    principalCache.onUserChanged(new UserChangedEvent(USERNAME));
+    filter(token);
+    verify(userDetailsService, times(2)).loadUserByUsername(USERNAME);
+
+    // usernames are case insensitive
+    principalCache.onUserChanged(new UserChangedEvent(USERNAME.toUpperCase()));
+    filter(token);
+    verify(userDetailsService, times(3)).loadUserByUsername(USERNAME);
+
+    assertEquals(
+        1,
+        meterRegistry
+            .get("cache.gets")
+            .tag("cache", JwtPrincipalCache.CACHE_NAME)
+            .tag("result", "hit")
+            .functionCounter()
+            .count(),
+        0);
+  }
+
+  @Test
+  public void tokenOnlyReissuedNearExpiryTest() throws Exception {
+    mockUser();
+    // far from the expiry
+    MockHttpServletResponse response =
+        filter(new JwtIssuanceServiceImpl(config).generateJwt(USERNAME));
+    assertNull(response.getHeader(HEADER_TOKEN));
+
+    // expires within the threshold
+    String expiringToken =
+        new JwtIssuanceServiceImpl(config(REISSUE_THRESHOLD_MS / 2)).generateJwt(USERNAME);
+    response = filter(expiringToken);
+    assertNotNull(response.getHeader(HEADER_TOKEN));
+    assertEquals(1, meterRegistry.get("registry.security.jwt.reissued").counter().count(), 0);
+    assertEquals(2, meterRegistry.get("registry.security.jwt.authentication").timer().count());
+  }
+
+  @Test
+  public void invalidTokenTest() throws Exception {
+    JwtConfiguration otherConfig = config(EXPIRY_MS);
+    otherConfig.setSigningKey("fake");
+
+    MockHttpServletResponse response =
+        filter(new JwtIssuanceServiceImpl(otherConfig).generateJwt(USERNAME));
+
+    assertEquals(HttpStatus.UNAUTHORIZED.value(), response.getStatus());
+    assertNull(response.getHeader(HEADER_TOKEN));
+    verify(filterChain).doFilter(any(), any());
+  }
+
+  private void mockUser() {
+    GbifUser user = new GbifUser();
+    user.setUserName(USERNAME);
+    when(identityService.get(USERNAME)).thenReturn(user);
+    when(userDetailsService.loadUserByUsername(USERNAME)).thenReturn(new GbifUserPrincipal(user));
+  }
+
+  private MockHttpServletResponse filter(String token) throws Exception {
+    MockHttpServletRequest request = new MockHttpServletRequest();
+    request.addHeader(HttpHeaders.AUTHORIZATION, "Bearer " + token);
+    MockHttpServletResponse response = new MockHttpServletResponse();
+    filter.doFilter(request, response, filterChain);
+    return response;
+  }
+
+  private static JwtConfiguration config(long expiryTimeInMs) {
+    JwtConfiguration config = new JwtConfiguration();
+    config.setIssuer("GBIF-REGISTRY");
+    config.setSigningKey(SIGNING_KEY);
+    config.setExpiryTimeInMs(expiryTimeInMs);
+    config.setReissueThresholdInMs(REISSUE_THRESHOLD_MS);
+    return config;
+  }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2020 Global Biodiversity Information Facility (GBIF)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gbif.registry.service;
+
+import org.gbif.registry.persistence.mapper.dto.DownloadRollupPosition;
+import org.gbif.registry.persistence.service.DownloadStatisticsRollup;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.google.common.base.Stopwatch;
+
+/**
+ * Keeps the daily download statistics served by the download statistics endpoints up to date, by
+ * regularly adding the downloads which succeeded since the previous run.
+ *
+ * <p>The first run backfills the statistics from all downloads. Several registry instances may run
+ * the job at the same time, no download is counted twice.
+ */
+@Service
+public class DownloadStatisticsRollupJob {
+
+  private static final Logger LOG = LoggerFactory.getLogger(DownloadStatisticsRollupJob.class);
+
+  private final DownloadStatisticsRollup rollup;
+  private final boolean enabled;
+  private final int batchSize;
+  private final long overlapMs;
+
+  public DownloadStatisticsRollupJob(
+      DownloadStatisticsRollup rollup,
+      @Value("${downloadStatistics.rollup.enabled:true}") boolean enabled,
+      @Value("${downloadStatistics.rollup.batchSize:1000}") int batchSize,
+      @Value("${downloadStatistics.rollup.overlapMs:600000}") long overlapMs) {
+    this.rollup = rollup;
+    this.enabled = enabled;
+    this.batchSize = batchSize;
+    this.overlapMs = overlapMs;
+  }
+
+  @Scheduled(
+      initialDelayString = "${downloadStatistics.rollup.intervalMs:60000}",
+      fixedDelayString = "${downloadStatistics.rollup.intervalMs:60000}")
+  public void run() {
+    if (!enabled) {
+      return;
+    }
+    Stopwatch stopwatch = Stopwatch.createStarted();
+    int batches = 0;
+    try {
+      DownloadRollupPosition position = rollup.start(overlapMs);
+      while ((position = rollup.rollUp(position, batchSize)) != null) {
+        batches++;
+      }
+    } catch (RuntimeException e) {
+      // the next run continues from the last batch added
+      LOG.error("Failed to roll up the download statistics", e);
+    }
+    if (batches > 0) {
+      LOG.debug("Download statistics rolled up in {} batch(es) in {}", batches, stopwatch);
+    }
+  }
+}
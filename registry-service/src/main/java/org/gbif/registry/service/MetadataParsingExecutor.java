@@ -0,0 +1,57 @@
+/*
+ * Copyright 2020 Global Biodiversity Information Facility (GBIF)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gbif.registry.service;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Bounded pool parsing the metadata documents of dataset pages. It is shared by all requests, which
+ * bounds the number of documents parsed concurrently, and is shut down with the application.
+ */
+@Component
+public class MetadataParsingExecutor implements Executor {
+
+  private final ExecutorService executor;
+
+  public MetadataParsingExecutor(@Value("${metadata.parsingThreads:4}") int parsingThreads) {
+    this.executor =
+        Executors.newFixedThreadPool(
+            parsingThreads,
+            new ThreadFactoryBuilder()
+                .setNameFormat("metadata-parser-%d")
+                .setDaemon(true)
+                .build());
+  }
+
+  @Override
+  public void execute(Runnable command) {
+    executor.execute(command);
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    executor.shutdownNow();
+  }
+}
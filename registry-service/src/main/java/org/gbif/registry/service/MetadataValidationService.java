@@ -0,0 +1,47 @@
+/*
+ * Copyright 2020 Global Biodiversity Information Facility (GBIF)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gbif.registry.service;
+
+import org.gbif.api.vocabulary.MetadataType;
+import org.gbif.registry.metadata.validation.ValidationResult;
+
+import javax.annotation.Nullable;
+
+/** Schema validation of uploaded metadata documents. */
+public interface MetadataValidationService {
+
+  /** What to do with a metadata document that is not valid against its schema. */
+  enum Mode {
+    /** Documents are not validated. */
+    OFF,
+    /** Invalid documents are accepted and logged. */
+    WARN,
+    /** Invalid documents are rejected. */
+    STRICT
+  }
+
+  Mode getMode();
+
+  /**
+   * Validates a metadata document against the schema of its type.
+   *
+   * @return the validation result or null if the document was not validated, because validation
+   *     is off, there is no schema for its type or the schema cannot be loaded
+   * @throws IllegalStateException if the schema cannot be loaded in strict mode
+   */
+  @Nullable
+  ValidationResult validate(MetadataType type, byte[] document);
+}
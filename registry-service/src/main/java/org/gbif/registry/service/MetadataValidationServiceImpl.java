@@ -0,0 +1,97 @@
+/*
+ * Copyright 2020 Global Biodiversity Information Facility (GBIF)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gbif.registry.service;
+
+import org.gbif.api.vocabulary.MetadataType;
+import org.gbif.registry.metadata.validation.MetadataValidator;
+import org.gbif.registry.metadata.validation.SchemaResourceResolver;
+import org.gbif.registry.metadata.validation.ValidationResult;
+
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.google.common.base.Strings;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Validates EML documents against the GBIF metadata profile. Dublin Core documents use DC terms
+ * under any root element, there is no schema to validate them against.
+ */
+@Service
+public class MetadataValidationServiceImpl implements MetadataValidationService {
+
+  private static final Logger LOG = LoggerFactory.getLogger(MetadataValidationServiceImpl.class);
+
+  private final Mode mode;
+  private final MetadataValidator validator;
+  private final Timer validationTimer;
+
+  public MetadataValidationServiceImpl(
+      @Value("${metadata.validation.mode:WARN}") Mode mode,
+      @Value("${metadata.validation.schemaDirectory:}") String schemaDirectory,
+      @Value("${metadata.validation.offline:true}") boolean offline,
+      @Value("${metadata.validation.maxErrors:100}") int maxErrors,
+      @Autowired(required = false) @Nullable MeterRegistry meterRegistry) {
+    this.mode = mode;
+    this.validator =
+        new MetadataValidator(
+            new SchemaResourceResolver(
+                Strings.isNullOrEmpty(schemaDirectory) ? null : Paths.get(schemaDirectory),
+                offline),
+            maxErrors);
+    this.validationTimer =
+        meterRegistry != null ? meterRegistry.timer("registry.metadata.validation") : null;
+  }
+
+  @Override
+  public Mode getMode() {
+    return mode;
+  }
+
+  @Nullable
+  @Override
+  public ValidationResult validate(MetadataType type, byte[] document) {
+    if (mode == Mode.OFF || type != MetadataType.EML) {
+      return null;
+    }
+
+    final long start = System.nanoTime();
+    try {
+      return validator.validateEml(document);
+    } catch (IllegalStateException e) {
+      // a document which cannot be validated is not accepted in strict mode
+      if (mode == Mode.STRICT) {
+        throw e;
+      }
+      LOG.error("EML document cannot be validated", e);
+      return null;
+    } finally {
+      if (validationTimer != null) {
+        validationTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+      }
+    }
+  }
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright 2020 Global Biodiversity Information Facility (GBIF)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gbif.registry.service;
+
+import org.gbif.api.model.registry.Citation;
+import org.gbif.api.model.registry.Dataset;
+import org.gbif.registry.metadata.parse.DatasetParser;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.BeanUtils;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Lists;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
+
+/**
+ * Bounded cache of datasets parsed from stored metadata documents, keyed by metadata key.
+ *
+ * <p>Stored metadata documents are never modified, only inserted and deleted, so a parsed document
+ * stays valid for as long as its metadata record exists and entries never need to be refreshed.
+ * The cache is bounded by the summed size of the source documents, which is used as a proxy for
+ * the memory held by the parsed objects.
+ *
+ * <p>Cached instances are shared and are never handed out directly: {@link #get} returns a shallow
+ * copy whose top level properties can be replaced by the caller. Nested collections are shared with
+ * the cached instance and must not be modified.
+ */
+class ParsedMetadataCache {
+
+  private static final Logger LOG = LoggerFactory.getLogger(ParsedMetadataCache.class);
+
+  static final String CACHE_NAME = "registry.metadata.parsed";
+
+  // documents can be several megabytes each, so a page is not loaded at once
+  static final int LOAD_CHUNK_SIZE = 8;
+
+  private final Cache<Integer, ParsedDocument> cache;
+
+  ParsedMetadataCache(long maxDocumentBytes, @Nullable MeterRegistry meterRegistry) {
+    this.cache =
+        CacheBuilder.newBuilder()
+            .maximumWeight(maxDocumentBytes)
+            .weigher((Integer key, ParsedDocument value) -> value.size)
+            .recordStats()
+            .build();
+
+    if (meterRegistry != null) {
+      // exposes cache.gets (hit/miss), cache.evictions, cache.puts and cache.size
+      GuavaCacheMetrics.monitor(meterRegistry, cache, CACHE_NAME);
+    }
+  }
+
+  /**
+   * Returns a copy of the dataset parsed from the given metadata document, parsing and caching the
+   * document if it is not cached yet.
+   *
+   * @param metadataKey key of the stored metadata document
+   * @param documentLoader loads the raw document in case of a cache miss
+   * @return the parsed dataset or null if the document does not exist or cannot be parsed
+   */
+  @Nullable
+  Dataset get(int metadataKey, IntFunction<byte[]> documentLoader) {
+    ParsedDocument parsed = cache.getIfPresent(metadataKey);
+    if (parsed == null) {
+      byte[] document = documentLoader.apply(metadataKey);
+      if (document == null) {
+        return null;
+      }
+      parsed = parse(metadataKey, document);
+      if (parsed == null) {
+        return null;
+      }
+      cache.put(metadataKey, parsed);
+    }
+    return copy(parsed.dataset);
+  }
+
+  /**
+   * Returns copies of the datasets parsed from the given metadata documents. The documents missing
+   * from the cache are loaded in chunks of {@link #LOAD_CHUNK_SIZE}, and each chunk is parsed
+   * concurrently on the given executor before the next one is loaded, so only a few raw documents
+   * are held in memory at any time.
+   *
+   * @param metadataKeys keys of the stored metadata documents
+   * @param documentsLoader loads the raw documents of the given keys in case of cache misses
+   * @param parsingExecutor executor parsing the loaded documents
+   * @return the parsed datasets by metadata key, leaving out missing and unparsable documents
+   */
+  Map<Integer, Dataset> getAll(
+      Collection<Integer> metadataKeys,
+      Function<Collection<Integer>, Map<Integer, byte[]>> documentsLoader,
+      Executor parsingExecutor) {
+    Map<Integer, Dataset> result = new HashMap<>();
+    List<Integer> missing = new ArrayList<>();
+    for (Integer metadataKey : metadataKeys) {
+      ParsedDocument parsed = cache.getIfPresent(metadataKey);
+      if (parsed != null) {
+        result.put(metadataKey, copy(parsed.dataset));
+      } else {
+        missing.add(metadataKey);
+      }
+    }
+
+    for (List<Integer> chunk : Lists.partition(missing, LOAD_CHUNK_SIZE)) {
+      Map<Integer, CompletableFuture<ParsedDocument>> parsing = new HashMap<>();
+      documentsLoader
+          .apply(chunk)
+          .forEach(
+              (metadataKey, document) ->
+                  parsing.put(
+                      metadataKey,
+                      CompletableFuture.supplyAsync(
+                          () -> parse(metadataKey, document), parsingExecutor)));
+
+      parsing.forEach(
+          (metadataKey, future) -> {
+            ParsedDocument parsed = future.join();
+            if (parsed != null) {
+              cache.put(metadataKey, parsed);
+              result.put(metadataKey, copy(parsed.dataset));
+            }
+          });
+    }
+
+    return result;
+  }
+
+  /** Removes the parsed document from the cache, e.g. after it has been deleted. */
+  void invalidate(int metadataKey) {
+    cache.invalidate(metadataKey);
+  }
+
+  @Nullable
+  private static ParsedDocument parse(int metadataKey, byte[] document) {
+    try {
+      return new ParsedDocument(DatasetParser.build(document), document.length);
+    } catch (IOException | IllegalArgumentException e) {
+      // Not sure if we should not propagate an Exception to return a 500 instead
+      LOG.error("Stored metadata document {} cannot be read", metadataKey, e);
+      return null;
+    }
+  }
+
+  private static Dataset copy(Dataset source) {
+    Dataset copy = new Dataset();
+    BeanUtils.copyProperties(source, copy);
+    // the citation text is regenerated on the returned instance, so it cannot be shared
+    if (source.getCitation() != null) {
+      Citation citation = new Citation();
+      BeanUtils.copyProperties(source.getCitation(), citation);
+      copy.setCitation(citation);
+    }
+    return copy;
+  }
+
+  private static class ParsedDocument {
+    private final Dataset dataset;
+    private final int size;
+
+    private ParsedDocument(Dataset dataset, int size) {
+      this.dataset = dataset;
+      // an empty document still takes a cache slot
+      this.size = Math.max(size, 1);
+    }
+  }
+}
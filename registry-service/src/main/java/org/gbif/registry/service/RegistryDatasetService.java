@@ -40,5 +40,8 @@ public interface RegistryDatasetService {
 
   byte[] getMetadataDocument(int metadataKey);
 
+  /** Deletes a metadata document and evicts it from the parsed metadata cache. */
+  void deleteMetadata(int metadataKey);
+
   List<DerivedDatasetUsage> ensureCitationDatasetUsagesValid(Map<String, Long> data);
 }
@@ -33,11 +33,16 @@ import org.gbif.registry.persistence.mapper.DatasetMapper;
 import org.gbif.registry.persistence.mapper.MetadataMapper;
 import org.gbif.registry.persistence.mapper.OrganizationMapper;
 import org.gbif.registry.persistence.mapper.handler.ByteArrayWrapper;
+import org.gbif.registry.persistence.mapper.handler.MetadataDocument;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.TimeUnit;
@@ -50,6 +55,8 @@ import org.owasp.html.HtmlPolicyBuilder;
 import org.owasp.html.PolicyFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import com.google.common.base.Strings;
@@ -58,6 +65,8 @@ import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
 import com.google.common.collect.Lists;
 
+import io.micrometer.core.instrument.MeterRegistry;
+
 @SuppressWarnings("UnstableApiUsage")
 @Service
 public class RegistryDatasetServiceImpl implements RegistryDatasetService {
@@ -82,13 +91,20 @@ public class RegistryDatasetServiceImpl implements RegistryDatasetService {
   private final MetadataMapper metadataMapper;
   private final LoadingCache<UUID, Organization> organizationCache;
   private final LoadingCache<UUID, Set<UUID>> datasetKeysInNetworkCache;
+  private final ParsedMetadataCache parsedMetadataCache;
+  private final MetadataParsingExecutor metadataParsingExecutor;
 
   public RegistryDatasetServiceImpl(
       MetadataMapper metadataMapper,
       OrganizationMapper organizationMapper,
-      DatasetMapper datasetMapper) {
+      DatasetMapper datasetMapper,
+      @Value("${metadata.cache.maxSizeBytes:268435456}") long metadataCacheMaxSizeBytes,
+      MetadataParsingExecutor metadataParsingExecutor,
+      @Autowired(required = false) MeterRegistry meterRegistry) {
     this.metadataMapper = metadataMapper;
     this.datasetMapper = datasetMapper;
+    this.parsedMetadataCache = new ParsedMetadataCache(metadataCacheMaxSizeBytes, meterRegistry);
+    this.metadataParsingExecutor = metadataParsingExecutor;
     this.organizationCache =
         CacheBuilder.newBuilder()
             .expireAfterWrite(5, TimeUnit.MINUTES)
@@ -116,7 +132,7 @@ public class RegistryDatasetServiceImpl implements RegistryDatasetService {
   @NullToNotFound
   @Override
   public Dataset get(UUID key) {
-    Dataset dataset = merge(getPreferredMetadataDataset(key), datasetMapper.get(key));
+    Dataset dataset = merge(getCachedPreferredMetadataDataset(key), datasetMapper.get(key));
     if (dataset == null) {
       return null;
     }
@@ -140,15 +156,23 @@ public class RegistryDatasetServiceImpl implements RegistryDatasetService {
   }
 
   /**
-   * Augments a list of datasets with information from their preferred metadata document.
+   * Augments a list of datasets with information from their preferred metadata document. The
+   * documents of the whole page are loaded in bulk and parsed concurrently.
    *
    * @return a the same paging response with a new list of augmented dataset instances
    */
   @Override
   public PagingResponse<Dataset> augmentWithMetadata(PagingResponse<Dataset> resp) {
-    List<Dataset> augmented = Lists.newArrayList();
+    Set<UUID> keys =
+        resp.getResults().stream()
+            .map(Dataset::getKey)
+            .filter(Objects::nonNull)
+            .collect(Collectors.toSet());
+    Map<UUID, Dataset> metadataDatasets = getCachedPreferredMetadataDatasets(keys);
+
+    List<Dataset> augmented = Lists.newArrayListWithCapacity(resp.getResults().size());
     for (Dataset d : resp.getResults()) {
-      augmented.add(setGeneratedCitation(merge(getPreferredMetadataDataset(d.getKey()), d)));
+      augmented.add(setGeneratedCitation(merge(metadataDatasets.get(d.getKey()), d)));
     }
     resp.setResults(augmented);
     return resp;
@@ -273,7 +297,64 @@ public class RegistryDatasetServiceImpl implements RegistryDatasetService {
   }
 
   /**
-   * Returns the parsed, preferred metadata document as a dataset.
+   * Returns the parsed, preferred metadata document as a dataset, served from the parsed metadata
+   * cache. Only the top level properties of the returned dataset may be modified.
+   */
+  @Nullable
+  private Dataset getCachedPreferredMetadataDataset(UUID key) {
+    Dataset result = null;
+    List<Metadata> docs = listMetadata(key, null);
+    if (!docs.isEmpty()) {
+      // the list is sorted by priority already, just pick the first!
+      result = parsedMetadataCache.get(docs.get(0).getKey(), this::getMetadataDocument);
+    }
+
+    return result;
+  }
+
+  /**
+   * Returns the parsed, preferred metadata documents of several datasets at once, served from the
+   * parsed metadata cache. The preferred metadata of all datasets is looked up with a single query,
+   * and all documents missing from the cache are loaded with another one and parsed concurrently.
+   *
+   * @return the parsed datasets by dataset key, leaving out datasets without a readable document
+   */
+  private Map<UUID, Dataset> getCachedPreferredMetadataDatasets(Collection<UUID> keys) {
+    if (keys.isEmpty()) {
+      return Collections.emptyMap();
+    }
+
+    Map<UUID, Integer> preferredMetadataKeys =
+        metadataMapper.listPreferred(keys).stream()
+            .collect(Collectors.toMap(Metadata::getDatasetKey, Metadata::getKey));
+    if (preferredMetadataKeys.isEmpty()) {
+      return Collections.emptyMap();
+    }
+
+    Map<Integer, Dataset> parsed =
+        parsedMetadataCache.getAll(
+            preferredMetadataKeys.values(), this::getMetadataDocuments, metadataParsingExecutor);
+
+    Map<UUID, Dataset> result = new HashMap<>();
+    preferredMetadataKeys.forEach(
+        (datasetKey, metadataKey) -> {
+          Dataset dataset = parsed.get(metadataKey);
+          if (dataset != null) {
+            result.put(datasetKey, dataset);
+          }
+        });
+    return result;
+  }
+
+  private Map<Integer, byte[]> getMetadataDocuments(Collection<Integer> metadataKeys) {
+    return metadataMapper.listDocuments(metadataKeys).stream()
+        .filter(document -> document.getData() != null)
+        .collect(Collectors.toMap(MetadataDocument::getKey, MetadataDocument::getData));
+  }
+
+  /**
+   * Returns the parsed, preferred metadata document as a dataset. The document is always parsed
+   * again, so the returned instance can be freely modified.
    */
   @Nullable
   @Override
@@ -310,6 +391,12 @@ public class RegistryDatasetServiceImpl implements RegistryDatasetService {
     return document.getData();
   }
 
+  @Override
+  public void deleteMetadata(int metadataKey) {
+    metadataMapper.delete(metadataKey);
+    parsedMetadataCache.invalidate(metadataKey);
+  }
+
   @Override
   public List<DerivedDatasetUsage> ensureCitationDatasetUsagesValid(Map<String, Long> data) {
     LOG.debug("Ensure citation dataset usages {}", data);
@@ -0,0 +1,339 @@
+/*
+ * Copyright 2020 Global Biodiversity Information Facility (GBIF)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gbif.registry.service.collections.lookup.index;
+
+import org.gbif.registry.persistence.mapper.dto.LookupEntry;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import com.google.common.base.CharMatcher;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.collect.Sets;
+
+/**
+ * In-memory index of the institutions or collections by the normalized values used to look them
+ * up: code, name, identifiers and alternative codes.
+ *
+ * <p>The values are normalized in the same way as in the lookup queries of the mappers, so a probe
+ * returns the same keys as the corresponding query, ordered by key and limited to {@link
+ * #MAX_RESULTS} as well. The only known difference is the removal of accents, which the database
+ * does with the {@code unaccent} dictionary whereas the index strips the combining marks of the
+ * canonically decomposed name and replaces the common letters without decomposition, like
+ * {@code ø} or {@code ß}, as the dictionary does. Rarer letters can still differ.
+ *
+ * <p>Probes are lock free. Changes are serialized and every bucket is replaced by an immutable
+ * copy, so a probe never sees a partially updated bucket.
+ */
+public class LookupIndex {
+
+  /** Same limit as the lookup queries. */
+  static final int MAX_RESULTS = 20;
+
+  private static final CharMatcher SPACE = CharMatcher.is(' ');
+  private static final Pattern IDENTIFIER_PREFIX =
+      Pattern.compile("http://|https://|urn:uuid:|urn:lsid:");
+  private static final Pattern DIACRITICS = Pattern.compile("\\p{M}");
+  private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+  // lower case letters without canonical decomposition, replaced as in the unaccent dictionary
+  private static final Map<String, String> UNDECOMPOSED_LETTERS =
+      ImmutableMap.<String, String>builder()
+          .put("æ", "ae")
+          .put("œ", "oe")
+          .put("ø", "o")
+          .put("ß", "ss")
+          .put("ł", "l")
+          .put("đ", "d")
+          .put("ð", "d")
+          .put("ħ", "h")
+          .put("ı", "i")
+          .build();
+  private static final Pattern UNDECOMPOSED_LETTER =
+      Pattern.compile("[" + String.join("", UNDECOMPOSED_LETTERS.keySet()) + "]");
+
+  /** Same order as the {@code uuid} type of the database, unlike {@link UUID#compareTo}. */
+  private static final Comparator<UUID> KEY_ORDER = Comparator.comparing(UUID::toString);
+
+  private volatile State state;
+
+  /** Whether the index has been built and can be probed. */
+  public boolean isReady() {
+    return state != null;
+  }
+
+  /** Replaces the content of the index with the given entries. */
+  public synchronized void rebuild(Collection<LookupEntry> entries) {
+    State newState = new State();
+    entries.forEach(e -> newState.put(IndexedValues.of(e)));
+    state = newState;
+  }
+
+  /** Indexes or re-indexes the given entry. Ignored until the index has been built. */
+  public synchronized void put(LookupEntry entry) {
+    if (state != null) {
+      state.remove(entry.getKey());
+      state.put(IndexedValues.of(entry));
+    }
+  }
+
+  /** Removes the entity from the index. Ignored until the index has been built. */
+  public synchronized void remove(UUID key) {
+    if (state != null) {
+      state.remove(key);
+    }
+  }
+
+  public int size() {
+    State current = state;
+    return current != null ? current.values.size() : 0;
+  }
+
+  public List<UUID> findByCode(String code) {
+    return find(s -> s.byCode, normalizeCode(code));
+  }
+
+  public List<UUID> findByIdentifier(String identifier) {
+    return find(s -> s.byIdentifier, normalizeIdentifier(identifier));
+  }
+
+  public List<UUID> findByName(String name) {
+    return find(s -> s.byName, normalizeName(name));
+  }
+
+  public List<UUID> findByAlternativeCode(String alternativeCode) {
+    return find(s -> s.byAlternativeCode, normalizeCode(alternativeCode));
+  }
+
+  public List<UUID> findByCodeAndIdentifier(String code, String identifier) {
+    State current = checkReady();
+    Set<UUID> byCode = current.byCode.getOrDefault(normalizeCode(code), Collections.emptySet());
+    Set<UUID> byIdentifier =
+        current.byIdentifier.getOrDefault(
+            normalizeIdentifier(identifier), Collections.emptySet());
+    return limit(Sets.intersection(byCode, byIdentifier));
+  }
+
+  /**
+   * Compares the index with the given entries, usually freshly read from the database.
+   *
+   * @param entries all the entries that should be in the index
+   * @return the differences found
+   */
+  public LookupIndexConsistency checkConsistency(String entityType, List<LookupEntry> entries) {
+    LookupIndexConsistency consistency = new LookupIndexConsistency(entityType);
+    consistency.setDatabaseCount(entries.size());
+
+    State current = state;
+    if (current == null) {
+      return consistency;
+    }
+    consistency.setReady(true);
+
+    Map<UUID, IndexedValues> indexed = new HashMap<>(current.values);
+    consistency.setIndexedCount(indexed.size());
+    for (LookupEntry entry : entries) {
+      IndexedValues inIndex = indexed.remove(entry.getKey());
+      if (inIndex == null) {
+        consistency.getMissing().add(entry.getKey());
+      } else if (!inIndex.equals(IndexedValues.of(entry))) {
+        consistency.getOutdated().add(entry.getKey());
+      }
+    }
+    // whatever is left is not in the database anymore
+    consistency.getStale().addAll(indexed.keySet());
+
+    return consistency;
+  }
+
+  private List<UUID> find(Function<State, Map<String, Set<UUID>>> bucketsFn, String value) {
+    return limit(bucketsFn.apply(checkReady()).getOrDefault(value, Collections.emptySet()));
+  }
+
+  private State checkReady() {
+    State current = state;
+    if (current == null) {
+      throw new IllegalStateException("The lookup index has not been built");
+    }
+    return current;
+  }
+
+  /** The first keys of a bucket or of the intersection of buckets, which are sorted by key. */
+  private static List<UUID> limit(Set<UUID> keys) {
+    return keys.stream().limit(MAX_RESULTS).collect(Collectors.toList());
+  }
+
+  /** Same as {@code trim(code)} in the database, which only trims spaces. */
+  static String normalizeCode(String code) {
+    return code != null ? SPACE.trimFrom(code) : null;
+  }
+
+  /** Same as the {@code regexp_replace} of the identifiers, which only removes the first prefix. */
+  static String normalizeIdentifier(String identifier) {
+    return identifier != null
+        ? IDENTIFIER_PREFIX.matcher(SPACE.trimFrom(identifier)).replaceFirst("")
+        : null;
+  }
+
+  /** Lower case name without accents and whitespaces. */
+  static String normalizeName(String name) {
+    if (name == null) {
+      return null;
+    }
+    String unaccented =
+        DIACRITICS
+            .matcher(Normalizer.normalize(name.toLowerCase(Locale.ENGLISH), Normalizer.Form.NFD))
+            .replaceAll("");
+    Matcher letters = UNDECOMPOSED_LETTER.matcher(unaccented);
+    StringBuffer replaced = new StringBuffer();
+    while (letters.find()) {
+      letters.appendReplacement(replaced, UNDECOMPOSED_LETTERS.get(letters.group()));
+    }
+    letters.appendTail(replaced);
+    return WHITESPACE.matcher(replaced).replaceAll("");
+  }
+
+  /** The buckets of the index, replaced as a whole on rebuilds. */
+  private static class State {
+    private final Map<UUID, IndexedValues> values = new ConcurrentHashMap<>();
+    private final Map<String, Set<UUID>> byCode = new ConcurrentHashMap<>();
+    private final Map<String, Set<UUID>> byName = new ConcurrentHashMap<>();
+    private final Map<String, Set<UUID>> byIdentifier = new ConcurrentHashMap<>();
+    private final Map<String, Set<UUID>> byAlternativeCode = new ConcurrentHashMap<>();
+
+    private void put(IndexedValues v) {
+      values.put(v.key, v);
+      add(byCode, v.code, v.key);
+      add(byName, v.name, v.key);
+      v.identifiers.forEach(id -> add(byIdentifier, id, v.key));
+      v.alternativeCodes.forEach(code -> add(byAlternativeCode, code, v.key));
+    }
+
+    private void remove(UUID key) {
+      IndexedValues v = values.remove(key);
+      if (v != null) {
+        remove(byCode, v.code, key);
+        remove(byName, v.name, key);
+        v.identifiers.forEach(id -> remove(byIdentifier, id, key));
+        v.alternativeCodes.forEach(code -> remove(byAlternativeCode, code, key));
+      }
+    }
+
+    private static void add(Map<String, Set<UUID>> buckets, String value, UUID key) {
+      if (value != null) {
+        buckets.compute(
+            value,
+            (k, keys) ->
+                keys == null
+                    ? ImmutableSortedSet.orderedBy(KEY_ORDER).add(key).build()
+                    : ImmutableSortedSet.orderedBy(KEY_ORDER).addAll(keys).add(key).build());
+      }
+    }
+
+    private static void remove(Map<String, Set<UUID>> buckets, String value, UUID key) {
+      if (value != null) {
+        buckets.computeIfPresent(
+            value,
+            (k, keys) -> {
+              Set<UUID> remaining =
+                  ImmutableSortedSet.copyOf(
+                      KEY_ORDER,
+                      keys.stream().filter(k2 -> !k2.equals(key)).collect(Collectors.toList()));
+              return remaining.isEmpty() ? null : remaining;
+            });
+      }
+    }
+  }
+
+  /** The normalized values of an entity. */
+  private static class IndexedValues {
+    private final UUID key;
+    private final String code;
+    private final String name;
+    private final Set<String> identifiers;
+    private final Set<String> alternativeCodes;
+
+    private IndexedValues(
+        UUID key,
+        String code,
+        String name,
+        Set<String> identifiers,
+        Set<String> alternativeCodes) {
+      this.key = key;
+      this.code = code;
+      this.name = name;
+      this.identifiers = identifiers;
+      this.alternativeCodes = alternativeCodes;
+    }
+
+    private static IndexedValues of(LookupEntry entry) {
+      List<String> identifiers =
+          entry.getIdentifiers() != null ? entry.getIdentifiers() : new ArrayList<>();
+      Set<String> alternativeCodes =
+          entry.getAlternativeCodes() != null
+              ? entry.getAlternativeCodes().keySet()
+              : Collections.emptySet();
+      return new IndexedValues(
+          entry.getKey(),
+          normalizeCode(entry.getCode()),
+          normalizeName(entry.getName()),
+          identifiers.stream()
+              .filter(id -> !Strings.isNullOrEmpty(id))
+              .map(LookupIndex::normalizeIdentifier)
+              .collect(Collectors.toSet()),
+          // alternative codes are matched as stored
+          ImmutableSet.copyOf(alternativeCodes));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+      IndexedValues that = (IndexedValues) o;
+      return Objects.equals(key, that.key)
+          && Objects.equals(code, that.code)
+          && Objects.equals(name, that.name)
+          && Objects.equals(identifiers, that.identifiers)
+          && Objects.equals(alternativeCodes, that.alternativeCodes);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(key, code, name, identifiers, alternativeCodes);
+    }
+  }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2020 Global Biodiversity Information Facility (GBIF)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gbif.registry.service.collections.lookup.index;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/** Result of comparing a {@link LookupIndex} with the database. */
+public class LookupIndexConsistency {
+
+  private final String entityType;
+  private boolean ready;
+  private int indexedCount;
+  private int databaseCount;
+  private final List<UUID> missing = new ArrayList<>();
+  private final List<UUID> stale = new ArrayList<>();
+  private final List<UUID> outdated = new ArrayList<>();
+
+  public LookupIndexConsistency(String entityType) {
+    this.entityType = entityType;
+  }
+
+  public String getEntityType() {
+    return entityType;
+  }
+
+  /** Whether the index has been built. */
+  public boolean isReady() {
+    return ready;
+  }
+
+  public void setReady(boolean ready) {
+    this.ready = ready;
+  }
+
+  public int getIndexedCount() {
+    return indexedCount;
+  }
+
+  public void setIndexedCount(int indexedCount) {
+    this.indexedCount = indexedCount;
+  }
+
+  public int getDatabaseCount() {
+    return databaseCount;
+  }
+
+  public void setDatabaseCount(int databaseCount) {
+    this.databaseCount = databaseCount;
+  }
+
+  /** Keys of the entities in the database that are not indexed. */
+  public List<UUID> getMissing() {
+    return missing;
+  }
+
+  /** Keys of the indexed entities that are deleted or do not exist in the database. */
+  public List<UUID> getStale() {
+    return stale;
+  }
+
+  /** Keys of the entities whose indexed values differ from the ones in the database. */
+  public List<UUID> getOutdated() {
+    return outdated;
+  }
+
+  public boolean isConsistent() {
+    return ready && missing.isEmpty() && stale.isEmpty() && outdated.isEmpty();
+  }
+}
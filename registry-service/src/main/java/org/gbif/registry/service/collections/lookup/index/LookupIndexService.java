@@ -0,0 +1,134 @@
+/*
+ * Copyright 2020 Global Biodiversity Information Facility (GBIF)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gbif.registry.service.collections.lookup.index;
+
+import org.gbif.api.model.collections.Collection;
+import org.gbif.api.model.collections.Institution;
+import org.gbif.registry.persistence.mapper.collections.CollectionMapper;
+import org.gbif.registry.persistence.mapper.collections.InstitutionMapper;
+import org.gbif.registry.persistence.mapper.collections.LookupMapper;
+import org.gbif.registry.persistence.mapper.dto.LookupEntry;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import com.google.common.base.Stopwatch;
+
+/**
+ * Holds the {@link LookupIndex} of the institutions and the collections.
+ *
+ * <p>The indexes are only built when enabled in the configuration. Until then they are not ready
+ * and the matchers keep querying the database. Once built, they have to be kept up to date by
+ * calling {@link #refresh} every time an institution or a collection changes.
+ */
+@Service
+public class LookupIndexService {
+
+  private static final Logger LOG = LoggerFactory.getLogger(LookupIndexService.class);
+
+  private final InstitutionMapper institutionMapper;
+  private final CollectionMapper collectionMapper;
+  private final boolean enabled;
+  private final LookupIndex institutionIndex = new LookupIndex();
+  private final LookupIndex collectionIndex = new LookupIndex();
+
+  public LookupIndexService(
+      InstitutionMapper institutionMapper,
+      CollectionMapper collectionMapper,
+      @Value("${grscicoll.lookup.index.enabled:false}") boolean enabled) {
+    this.institutionMapper = institutionMapper;
+    this.collectionMapper = collectionMapper;
+    this.enabled = enabled;
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  public LookupIndex getInstitutionIndex() {
+    return institutionIndex;
+  }
+
+  public LookupIndex getCollectionIndex() {
+    return collectionIndex;
+  }
+
+  /** Builds the indexes, if enabled, once the application has started. */
+  @EventListener(ApplicationReadyEvent.class)
+  public void build() {
+    if (!enabled) {
+      return;
+    }
+    build(institutionIndex, institutionMapper, Institution.class);
+    build(collectionIndex, collectionMapper, Collection.class);
+  }
+
+  private void build(LookupIndex index, LookupMapper<?> mapper, Class<?> entityClass) {
+    Stopwatch stopwatch = Stopwatch.createStarted();
+    // the index lock is held while reading so no concurrent change is lost
+    synchronized (index) {
+      index.rebuild(mapper.listLookupEntries(null));
+    }
+    LOG.info(
+        "{} lookup index built with {} entries in {}",
+        entityClass.getSimpleName(),
+        index.size(),
+        stopwatch);
+  }
+
+  /**
+   * Re-reads the entity from the database and updates its index entry, removing it if the entity
+   * has been deleted. Entities other than institutions and collections are ignored.
+   */
+  public void refresh(Class<?> entityClass, UUID key) {
+    if (!enabled) {
+      return;
+    }
+    if (Institution.class.equals(entityClass)) {
+      refresh(institutionIndex, institutionMapper, key);
+    } else if (Collection.class.equals(entityClass)) {
+      refresh(collectionIndex, collectionMapper, key);
+    }
+  }
+
+  private void refresh(LookupIndex index, LookupMapper<?> mapper, UUID key) {
+    synchronized (index) {
+      List<LookupEntry> entries = mapper.listLookupEntries(key);
+      if (entries.isEmpty()) {
+        index.remove(key);
+      } else {
+        index.put(entries.get(0));
+      }
+    }
+  }
+
+  /** Compares both indexes with the database. */
+  public List<LookupIndexConsistency> checkConsistency() {
+    return Arrays.asList(
+        institutionIndex.checkConsistency(
+            Institution.class.getSimpleName(), institutionMapper.listLookupEntries(null)),
+        collectionIndex.checkConsistency(
+            Collection.class.getSimpleName(), collectionMapper.listLookupEntries(null)));
+  }
+}
@@ -31,6 +31,7 @@ import org.gbif.api.vocabulary.Country;
 import org.gbif.registry.persistence.mapper.collections.BaseMapper;
 import org.gbif.registry.persistence.mapper.collections.LookupMapper;
 import org.gbif.registry.service.collections.lookup.Matches;
+import org.gbif.registry.service.collections.lookup.index.LookupIndex;
 
 import java.util.Arrays;
 import java.util.Collections;
@@ -71,46 +72,66 @@ public abstract class BaseMatcher<
   private static final Logger LOG = LoggerFactory.getLogger(BaseMatcher.class);
 
   private final DatasetService datasetService;
+  private final LookupIndex lookupIndex;
 
-  protected BaseMatcher(DatasetService datasetService) {
+  /**
+   * @param lookupIndex index probed instead of querying the lookup mapper once it is ready
+   */
+  protected BaseMatcher(DatasetService datasetService, LookupIndex lookupIndex) {
     this.datasetService = datasetService;
+    this.lookupIndex = lookupIndex;
   }
 
   protected List<T> findByCodeAndId(String code, String id) {
     if (!Strings.isNullOrEmpty(code) && !Strings.isNullOrEmpty(id)) {
-      return getLookupMapper().lookup(code, id, null, null);
+      return lookupIndex.isReady()
+          ? getByKeys(lookupIndex.findByCodeAndIdentifier(code, id))
+          : getLookupMapper().lookup(code, id, null, null);
     }
     return Collections.emptyList();
   }
 
   protected List<T> findByAlternativeCode(String alternativeCode) {
     if (!Strings.isNullOrEmpty(alternativeCode)) {
-      return getLookupMapper().lookup(null, null, null, alternativeCode);
+      return lookupIndex.isReady()
+          ? getByKeys(lookupIndex.findByAlternativeCode(alternativeCode))
+          : getLookupMapper().lookup(null, null, null, alternativeCode);
     }
     return Collections.emptyList();
   }
 
   protected List<T> findByCode(String code) {
     if (!Strings.isNullOrEmpty(code)) {
-      return getLookupMapper().lookup(code, null, null, null);
+      return lookupIndex.isReady()
+          ? getByKeys(lookupIndex.findByCode(code))
+          : getLookupMapper().lookup(code, null, null, null);
     }
     return Collections.emptyList();
   }
 
   protected List<T> findByName(String code) {
     if (!Strings.isNullOrEmpty(code)) {
-      return getLookupMapper().lookup(null, null, code, null);
+      return lookupIndex.isReady()
+          ? getByKeys(lookupIndex.findByName(code))
+          : getLookupMapper().lookup(null, null, code, null);
     }
     return Collections.emptyList();
   }
 
   protected List<T> findByIdentifier(String id) {
     if (!Strings.isNullOrEmpty(id)) {
-      return getLookupMapper().lookup(null, id, null, null);
+      return lookupIndex.isReady()
+          ? getByKeys(lookupIndex.findByIdentifier(id))
+          : getLookupMapper().lookup(null, id, null, null);
     }
     return Collections.emptyList();
   }
 
+  /** Gets the entities found in the index with a single query, skipping just deleted ones. */
+  private List<T> getByKeys(List<UUID> keys) {
+    return keys.isEmpty() ? Collections.emptyList() : getLookupMapper().getByKeys(keys);
+  }
+
   protected List<T> findByKey(String keyAsString) {
     UUID key = null;
     try {
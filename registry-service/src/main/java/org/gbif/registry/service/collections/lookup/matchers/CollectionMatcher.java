@@ -24,6 +24,7 @@ import org.gbif.registry.persistence.mapper.collections.BaseMapper;
 import org.gbif.registry.persistence.mapper.collections.CollectionMapper;
 import org.gbif.registry.persistence.mapper.collections.LookupMapper;
 import org.gbif.registry.service.collections.lookup.Matches;
+import org.gbif.registry.service.collections.lookup.index.LookupIndexService;
 
 import java.util.Arrays;
 import java.util.HashMap;
@@ -55,8 +56,11 @@ public class CollectionMatcher extends BaseMatcher<Collection> {
   private final CollectionMapper collectionMapper;
 
   @Autowired
-  public CollectionMatcher(CollectionMapper collectionMapper, DatasetService datasetService) {
-    super(datasetService);
+  public CollectionMatcher(
+      CollectionMapper collectionMapper,
+      DatasetService datasetService,
+      LookupIndexService lookupIndexService) {
+    super(datasetService, lookupIndexService.getCollectionIndex());
     this.collectionMapper = collectionMapper;
   }
 
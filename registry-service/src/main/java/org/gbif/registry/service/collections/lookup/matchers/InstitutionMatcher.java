@@ -24,6 +24,7 @@ import org.gbif.registry.persistence.mapper.collections.BaseMapper;
 import org.gbif.registry.persistence.mapper.collections.InstitutionMapper;
 import org.gbif.registry.persistence.mapper.collections.LookupMapper;
 import org.gbif.registry.service.collections.lookup.Matches;
+import org.gbif.registry.service.collections.lookup.index.LookupIndexService;
 
 import java.util.Arrays;
 import java.util.HashMap;
@@ -53,8 +54,11 @@ public class InstitutionMatcher extends BaseMatcher<Institution> {
   private final InstitutionMapper institutionMapper;
 
   @Autowired
-  public InstitutionMatcher(InstitutionMapper institutionMapper, DatasetService datasetService) {
-    super(datasetService);
+  public InstitutionMatcher(
+      InstitutionMapper institutionMapper,
+      DatasetService datasetService,
+      LookupIndexService lookupIndexService) {
+    super(datasetService, lookupIndexService.getInstitutionIndex());
     this.institutionMapper = institutionMapper;
   }
 
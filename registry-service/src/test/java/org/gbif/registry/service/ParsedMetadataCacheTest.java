@@ -0,0 +1,173 @@
+/*
+ * Copyright 2020 Global Biodiversity Information Facility (GBIF)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gbif.registry.service;
+
+import org.gbif.api.model.registry.Dataset;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+
+import org.junit.jupiter.api.Test;
+
+import com.google.common.base.Strings;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/** Tests the hits, invalidation and weight bound of the {@link ParsedMetadataCache}. */
+public class ParsedMetadataCacheTest {
+
+  private static final long LARGE = 1024 * 1024;
+
+  private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+  private final Map<Integer, byte[]> documents = new HashMap<>();
+  private final AtomicInteger loads = new AtomicInteger();
+  private final IntFunction<byte[]> loader =
+      key -> {
+        loads.incrementAndGet();
+        return documents.get(key);
+      };
+
+  @Test
+  public void testHits() {
+    ParsedMetadataCache cache = new ParsedMetadataCache(LARGE, meterRegistry);
+    documents.put(1, eml("Title 1", 0));
+
+    Dataset first = cache.get(1, loader);
+    first.setTitle("Changed by the caller");
+    Dataset second = cache.get(1, loader);
+
+    assertEquals(1, loads.get());
+    assertEquals(1, count("hit"));
+    assertEquals(1, count("miss"));
+    // callers get copies, so they cannot change the cached dataset
+    assertNotSame(first, second);
+    assertEquals("Title 1", second.getTitle());
+  }
+
+  @Test
+  public void testBulkLoadUsesCachedDocuments() {
+    ParsedMetadataCache cache = new ParsedMetadataCache(LARGE, meterRegistry);
+    for (int key = 1; key <= 20; key++) {
+      documents.put(key, eml("Title " + key, 0));
+    }
+    cache.get(1, loader);
+    AtomicInteger loaded = new AtomicInteger();
+
+    Map<Integer, Dataset> datasets =
+        cache.getAll(
+            documents.keySet(),
+            keys -> {
+              assertTrue(keys.size() <= ParsedMetadataCache.LOAD_CHUNK_SIZE);
+              loaded.addAndGet(keys.size());
+              Map<Integer, byte[]> chunk = new HashMap<>();
+              keys.forEach(key -> chunk.put(key, documents.get(key)));
+              return chunk;
+            },
+            Runnable::run);
+
+    assertEquals(20, datasets.size());
+    assertEquals(19, loaded.get());
+    assertEquals("Title 20", datasets.get(20).getTitle());
+  }
+
+  @Test
+  public void testDeletedDocumentInvalidated() {
+    ParsedMetadataCache cache = new ParsedMetadataCache(LARGE, meterRegistry);
+    documents.put(1, eml("Title 1", 0));
+    cache.get(1, loader);
+
+    documents.remove(1);
+    cache.invalidate(1);
+
+    assertNull(cache.get(1, loader));
+    assertEquals(2, loads.get());
+  }
+
+  @Test
+  public void testAddedDocumentLoaded() {
+    ParsedMetadataCache cache = new ParsedMetadataCache(LARGE, meterRegistry);
+    documents.put(1, eml("Title 1", 0));
+    cache.get(1, loader);
+
+    // stored documents are never modified, a new version is added with a new key
+    documents.put(2, eml("Title 2", 0));
+
+    assertEquals("Title 2", cache.get(2, loader).getTitle());
+    assertEquals("Title 1", cache.get(1, loader).getTitle());
+    assertEquals(2, loads.get());
+  }
+
+  @Test
+  public void testEvictionByWeight() {
+    byte[] document = eml("Title", 1000);
+    ParsedMetadataCache cache = new ParsedMetadataCache(10L * document.length, meterRegistry);
+    for (int key = 1; key <= 20; key++) {
+      documents.put(key, document);
+      cache.get(key, loader);
+    }
+
+    // the weight is split among the segments of the cache, which hold at most 10 documents in all
+    double size = meterRegistry.get("cache.size").gauge().value();
+    assertTrue(size > 0 && size <= 10, "Cached documents: " + size);
+    assertTrue(meterRegistry.get("cache.evictions").functionCounter().count() >= 10);
+  }
+
+  @Test
+  public void testDocumentHeavierThanCacheNotKept() {
+    byte[] document = eml("Title", 1000);
+    ParsedMetadataCache cache = new ParsedMetadataCache(document.length - 1, meterRegistry);
+    documents.put(1, document);
+
+    assertEquals("Title", cache.get(1, loader).getTitle());
+    assertEquals("Title", cache.get(1, loader).getTitle());
+    assertEquals(2, loads.get());
+  }
+
+  @Test
+  public void testUnparsableDocumentNotCached() {
+    ParsedMetadataCache cache = new ParsedMetadataCache(LARGE, meterRegistry);
+    documents.put(1, "not xml".getBytes(StandardCharsets.UTF_8));
+
+    assertNull(cache.get(1, loader));
+    assertNull(cache.get(1, loader));
+    assertEquals(2, loads.get());
+    assertTrue(cache.getAll(Arrays.asList(1, 2), keys -> documents, Runnable::run).isEmpty());
+  }
+
+  private double count(String result) {
+    return meterRegistry.get("cache.gets").tag("result", result).functionCounter().count();
+  }
+
+  /** A minimal EML document, padded with a comment to weigh more. */
+  private static byte[] eml(String title, int padding) {
+    return ("<eml:eml xmlns:eml=\"eml://ecoinformatics.org/eml-2.1.1\" "
+            + "packageId=\"p\" system=\"s\"><!--"
+            + Strings.repeat(" ", padding)
+            + "--><dataset><title>"
+            + title
+            + "</title></dataset></eml:eml>")
+        .getBytes(StandardCharsets.UTF_8);
+  }
+}
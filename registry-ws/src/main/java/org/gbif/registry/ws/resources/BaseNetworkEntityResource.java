@@ -210,7 +210,8 @@ public class BaseNetworkEntityResource<T extends NetworkEntity> implements Netwo
   @Override
   public PagingResponse<T> list(Pageable page) {
     page = page == null ? new PagingRequest() : page;
-    return withMyBatis.list(mapper, page);
+    long total = mapper.count();
+    return new PagingResponse<>(page.getOffset(), page.getLimit(), total, listPage(page));
   }
 
   @Override
@@ -218,7 +219,25 @@ public class BaseNetworkEntityResource<T extends NetworkEntity> implements Netwo
     page = page == null ? new PagingRequest() : page;
     // trim and handle null from given input
     String q = query != null ? Strings.emptyToNull(CharMatcher.WHITESPACE.trimFrom(query)) : query;
-    return withMyBatis.search(mapper, q, page);
+    long total = mapper.count(q);
+    return new PagingResponse<>(page.getOffset(), page.getLimit(), total, searchPage(q, page));
+  }
+
+  /**
+   * Lists a page of entities with their sub resources. Subclasses can override it to load the sub
+   * resources of the whole page at once.
+   */
+  protected List<T> listPage(Pageable page) {
+    return mapper.list(page);
+  }
+
+  /**
+   * Searches a page of entities with their sub resources, see {@link #listPage}.
+   *
+   * @param query the trimmed query or null
+   */
+  protected List<T> searchPage(@Nullable String query, Pageable page) {
+    return mapper.search(query, page);
   }
 
   @Override
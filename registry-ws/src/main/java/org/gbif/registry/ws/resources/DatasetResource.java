@@ -56,6 +56,7 @@ import org.gbif.registry.domain.ws.DatasetRequestSearchParams;
 import org.gbif.registry.events.EventManager;
 import org.gbif.registry.metadata.EMLWriter;
 import org.gbif.registry.metadata.parse.DatasetParser;
+import org.gbif.registry.metadata.validation.ValidationResult;
 import org.gbif.registry.persistence.WithMyBatis;
 import org.gbif.registry.persistence.mapper.ContactMapper;
 import org.gbif.registry.persistence.mapper.DatasetMapper;
@@ -64,19 +65,25 @@ import org.gbif.registry.persistence.mapper.IdentifierMapper;
 import org.gbif.registry.persistence.mapper.MetadataMapper;
 import org.gbif.registry.persistence.mapper.NetworkMapper;
 import org.gbif.registry.persistence.mapper.TagMapper;
+import org.gbif.registry.persistence.mapper.handler.MetadataDocument;
 import org.gbif.registry.persistence.service.MapperServiceLocator;
+import org.gbif.registry.persistence.service.NetworkEntityChildrenLoader;
 import org.gbif.registry.security.EditorAuthorizationService;
+import org.gbif.registry.service.MetadataValidationService;
 import org.gbif.registry.service.RegistryDatasetService;
+import org.gbif.registry.ws.InvalidMetadataException;
 import org.gbif.ws.NotFoundException;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.StringWriter;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.net.URI;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Date;
 import java.util.List;
@@ -85,6 +92,7 @@ import java.util.concurrent.CompletableFuture;
 import java.util.function.Consumer;
 
 import javax.annotation.Nullable;
+import javax.servlet.http.HttpServletResponse;
 import javax.validation.Valid;
 import javax.validation.constraints.NotNull;
 import javax.validation.groups.Default;
@@ -109,10 +117,13 @@ import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.ServletWebRequest;
 
 import com.google.common.base.Strings;
 import com.google.common.io.ByteStreams;
-import com.google.common.io.CharStreams;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
@@ -132,6 +143,10 @@ public class DatasetResource extends BaseNetworkEntityResource<Dataset>
 
   private static final int ALL_DATASETS_LIMIT = 200;
 
+  static final String METADATA_UPLOADS_METRIC = "registry.metadata.uploads";
+
+  private final EMLWriter emlWriter = EMLWriter.newInstance();
+
   private final RegistryDatasetService registryDatasetService;
   private final DatasetSearchService searchService;
   private final MetadataMapper metadataMapper;
@@ -145,9 +160,13 @@ public class DatasetResource extends BaseNetworkEntityResource<Dataset>
   private final DataCiteMetadataBuilderService metadataBuilderService;
   private final DoiIssuingService doiIssuingService;
   private final WithMyBatis withMyBatis;
+  private final MetadataValidationService metadataValidationService;
 
   // The messagePublisher can be optional
   private final MessagePublisher messagePublisher;
+  private final NetworkEntityChildrenLoader childrenLoader;
+  private final Counter deduplicatedUploads;
+  private final Counter storedUploads;
 
   public DatasetResource(
       MapperServiceLocator mapperServiceLocator,
@@ -159,7 +178,10 @@ public class DatasetResource extends BaseNetworkEntityResource<Dataset>
       DataCiteMetadataBuilderService metadataBuilderService,
       DoiIssuingService doiIssuingService,
       WithMyBatis withMyBatis,
-      @Autowired(required = false) MessagePublisher messagePublisher) {
+      NetworkEntityChildrenLoader childrenLoader,
+      MetadataValidationService metadataValidationService,
+      @Autowired(required = false) MessagePublisher messagePublisher,
+      @Autowired(required = false) @Nullable MeterRegistry meterRegistry) {
     super(
         mapperServiceLocator.getDatasetMapper(),
         mapperServiceLocator,
@@ -181,6 +203,23 @@ public class DatasetResource extends BaseNetworkEntityResource<Dataset>
     this.doiIssuingService = doiIssuingService;
     this.messagePublisher = messagePublisher;
     this.withMyBatis = withMyBatis;
+    this.childrenLoader = childrenLoader;
+    this.metadataValidationService = metadataValidationService;
+    this.deduplicatedUploads = uploadsCounter(meterRegistry, "deduplicated");
+    this.storedUploads = uploadsCounter(meterRegistry, "stored");
+  }
+
+  @Nullable
+  private static Counter uploadsCounter(@Nullable MeterRegistry meterRegistry, String result) {
+    return meterRegistry != null
+        ? Counter.builder(METADATA_UPLOADS_METRIC).tag("result", result).register(meterRegistry)
+        : null;
+  }
+
+  private static void increment(@Nullable Counter counter) {
+    if (counter != null) {
+      counter.increment();
+    }
   }
 
   @GetMapping("search")
@@ -235,13 +274,22 @@ public class DatasetResource extends BaseNetworkEntityResource<Dataset>
   @Override
   public PagingResponse<Dataset> listByCountry(Country country, DatasetType type, Pageable page) {
     long total = datasetMapper.countWithFilter(country, type);
-    return pagingResponse(page, total, datasetMapper.listWithFilter(country, type, page));
+    return pagingResponse(page, total, listWithFilter(country, type, page));
   }
 
   @Override
   public PagingResponse<Dataset> listByType(DatasetType type, Pageable page) {
     long total = datasetMapper.countWithFilter(null, type);
-    return pagingResponse(page, total, datasetMapper.listWithFilter(null, type, page));
+    return pagingResponse(page, total, listWithFilter(null, type, page));
+  }
+
+  private List<Dataset> listWithFilter(
+      @Nullable Country country, @Nullable DatasetType type, Pageable page) {
+    if (childrenLoader.isBulkMode()) {
+      return childrenLoader.loadDatasetChildren(
+          datasetMapper.listWithFilterLight(country, type, page));
+    }
+    return datasetMapper.listWithFilter(country, type, page);
   }
 
   @Override
@@ -256,33 +304,63 @@ public class DatasetResource extends BaseNetworkEntityResource<Dataset>
   }
 
   @Override
-  public InputStream getMetadataDocument(UUID datasetKey) {
-    byte[] bytes = getMetadataDocumentAsBytes(datasetKey);
-
-    if (bytes != null) {
-      return new ByteArrayInputStream(bytes);
+  protected List<Dataset> listPage(Pageable page) {
+    if (childrenLoader.isBulkMode()) {
+      return childrenLoader.loadDatasetChildren(datasetMapper.listLight(page));
     }
+    return super.listPage(page);
+  }
 
-    return null;
+  @Override
+  protected List<Dataset> searchPage(@Nullable String query, Pageable page) {
+    if (childrenLoader.isBulkMode()) {
+      return childrenLoader.loadDatasetChildren(datasetMapper.searchLight(query, page));
+    }
+    return super.searchPage(query, page);
   }
 
-  @GetMapping(value = "{key}/document", produces = MediaType.APPLICATION_XML_VALUE)
-  public byte[] getMetadataDocumentAsBytes(@PathVariable("key") UUID datasetKey) {
+  @Override
+  public InputStream getMetadataDocument(UUID datasetKey) {
     // the fully augmented dataset
     Dataset dataset = get(datasetKey);
     if (dataset != null) {
-      // generate new EML
-      try {
-        StringWriter eml = new StringWriter();
-        EMLWriter.write(dataset, eml);
-        return eml.toString().getBytes(StandardCharsets.UTF_8);
-      } catch (Exception e) {
+      ByteArrayOutputStream eml = new ByteArrayOutputStream();
+      try (Writer writer = new OutputStreamWriter(eml, StandardCharsets.UTF_8)) {
+        writeEml(dataset, writer);
+      } catch (IOException e) {
         throw new ServiceUnavailableException("Failed to serialize dataset " + datasetKey, e);
       }
+      return new ByteArrayInputStream(eml.toByteArray());
     }
+
     return null;
   }
 
+  /**
+   * Generates the EML document of the fully augmented dataset straight into the response. The
+   * document depends on several entities without a common modification date, so it has no ETag.
+   */
+  @GetMapping(value = "{key}/document", produces = MediaType.APPLICATION_XML_VALUE)
+  public void streamMetadataDocument(
+      @PathVariable("key") UUID datasetKey, HttpServletResponse response) throws IOException {
+    Dataset dataset = get(datasetKey);
+    if (dataset != null) {
+      response.setContentType(MediaType.APPLICATION_XML_VALUE);
+      response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+      writeEml(dataset, response.getWriter());
+    }
+  }
+
+  private void writeEml(Dataset dataset, Writer writer) {
+    try {
+      emlWriter.writeTo(dataset, writer);
+      writer.flush();
+    } catch (Exception e) {
+      // only a response that is not committed yet can still be turned into an error
+      throw new ServiceUnavailableException("Failed to serialize dataset " + dataset.getKey(), e);
+    }
+  }
+
   @PostMapping(value = "{key}/document", consumes = MediaType.APPLICATION_XML_VALUE)
   @Secured({ADMIN_ROLE, EDITOR_ROLE})
   public Metadata insertMetadata(
@@ -314,29 +392,34 @@ public class DatasetResource extends BaseNetworkEntityResource<Dataset>
     MetadataType type;
     try (InputStream in = new ByteArrayInputStream(data)) {
       type = DatasetParser.detectParserType(in);
-      // TODO: should we not also validate the EML/DC document ???
     } catch (IOException e) {
       throw new IllegalArgumentException("Unreadable document", e);
     }
 
     // first, determine if this document is already stored, returning it with no action
     // we do this, because updating metadata when nothing has changed, results in registry change
-    // events being
-    // propagated which can trigger crawlers which will run an update etc.
-    List<Metadata> existingDocs = listMetadata(datasetKey, type);
-    for (Metadata existing : existingDocs) {
-      try (InputStream in = getMetadataDocument(existing.getKey())) {
-        String existingContent =
-            CharStreams.toString(new InputStreamReader(in, StandardCharsets.UTF_8));
-        if (existingContent != null) {
-          if (existingContent.equals(new String(data))) {
-            LOG.debug("This metadata document already exists - returning existing");
-            return existing;
-          }
-        }
-      } catch (Exception e) {
-        // swallow - we'll delete it anyway
+    // events being propagated which can trigger crawlers which will run an update etc.
+    // The hash lookup comes before the schema validation, which is far more expensive and would
+    // not change the outcome as nothing is stored again.
+    String contentHash = MetadataDocument.contentHash(data);
+    Metadata existingDoc = findIdenticalMetadata(datasetKey, type, data, contentHash);
+    if (existingDoc != null) {
+      LOG.debug("This metadata document already exists - returning existing");
+      increment(deduplicatedUploads);
+      return existingDoc;
+    }
+
+    // validate the new document against its schema, only rejecting it in strict mode
+    ValidationResult validation = metadataValidationService.validate(type, data);
+    if (validation != null && !validation.isValid()) {
+      if (metadataValidationService.getMode() == MetadataValidationService.Mode.STRICT) {
+        throw new InvalidMetadataException(validation);
       }
+      LOG.warn(
+          "Metadata document of dataset {} is not valid against {}: {}",
+          datasetKey,
+          validation.getSchemaLocation(),
+          validation.getErrors());
     }
 
     // persist metadata & data, which we know is not already stored
@@ -347,11 +430,12 @@ public class DatasetResource extends BaseNetworkEntityResource<Dataset>
     metadata.setType(type);
     metadata.setCreatedBy(user);
     metadata.setModifiedBy(user);
-    for (Metadata existing : existingDocs) {
+    for (Metadata existing : listMetadata(datasetKey, type)) {
       deleteMetadata(existing.getKey());
     }
-    int metaKey = metadataMapper.create(metadata, data);
+    int metaKey = metadataMapper.create(metadata, data, contentHash);
     metadata.setKey(metaKey);
+    increment(storedUploads);
 
     // check if we should update our registered base information
     if (dataset.isLockedForAutoUpdate()) {
@@ -373,6 +457,30 @@ public class DatasetResource extends BaseNetworkEntityResource<Dataset>
     return metadata;
   }
 
+  /**
+   * Finds a stored document of the given dataset and type identical to the uploaded one. Documents
+   * stored before content hashes were recorded are compared byte by byte and get their hash on a
+   * match, until the metadata-content-hash command has backfilled them all.
+   *
+   * @return the metadata of the identical document or null if there is none
+   */
+  @Nullable
+  private Metadata findIdenticalMetadata(
+      UUID datasetKey, MetadataType type, byte[] data, String contentHash) {
+    Metadata existing = metadataMapper.getByContentHash(datasetKey, type, contentHash);
+    if (existing != null) {
+      return existing;
+    }
+
+    for (MetadataDocument document : metadataMapper.listUnhashedDocuments(datasetKey, type)) {
+      if (Arrays.equals(data, document.getData())) {
+        metadataMapper.updateContentHash(document.getKey(), contentHash);
+        return metadataMapper.get(document.getKey());
+      }
+    }
+    return null;
+  }
+
   /**
    * When we get a new Metadata document, this method is responsible to preserve the GBIF properties
    * on the dataset object to make sure they are not overwritten.
@@ -735,20 +843,50 @@ public class DatasetResource extends BaseNetworkEntityResource<Dataset>
   @Override
   @NullToNotFound
   public InputStream getMetadataDocument(int key) {
-    return new ByteArrayInputStream(getMetadataDocumentAsBytes(key));
+    byte[] document = registryDatasetService.getMetadataDocument(key);
+    return document != null ? new ByteArrayInputStream(document) : null;
   }
 
-  // TODO: 05/04/2020 change API to return byte[]?
+  /**
+   * Writes a stored metadata document to the response. Stored documents are never modified, so the
+   * ETag is derived from the metadata key and modification date and a matching If-None-Match
+   * header is answered with a 304 without loading the document.
+   */
   @GetMapping(value = "metadata/{key}/document", produces = MediaType.APPLICATION_XML_VALUE)
-  @NullToNotFound("/dataset/metadata/{key}/document")
-  public byte[] getMetadataDocumentAsBytes(@PathVariable int key) {
-    return registryDatasetService.getMetadataDocument(key);
+  public void streamMetadataDocument(
+      @PathVariable int key, ServletWebRequest request, HttpServletResponse response)
+      throws IOException {
+    Metadata metadata = metadataMapper.get(key);
+    if (metadata == null) {
+      throw new NotFoundException(
+          "Metadata " + key + " not existing", URI.create("/dataset/metadata/{key}/document"));
+    }
+    if (request.checkNotModified(metadataETag(metadata))) {
+      // answered with a 304
+      return;
+    }
+
+    byte[] document = registryDatasetService.getMetadataDocument(key);
+    if (document == null) {
+      // deleted in the meantime
+      throw new NotFoundException(
+          "Metadata " + key + " not existing", URI.create("/dataset/metadata/{key}/document"));
+    }
+    response.setContentType(MediaType.APPLICATION_XML_VALUE);
+    response.setContentLength(document.length);
+    response.getOutputStream().write(document);
+  }
+
+  /** Strong ETag of a stored metadata document. */
+  private static String metadataETag(Metadata metadata) {
+    Date modified = metadata.getModified() != null ? metadata.getModified() : metadata.getCreated();
+    return "\"" + metadata.getKey() + "-" + (modified != null ? modified.getTime() : 0) + "\"";
   }
 
   @DeleteMapping("metadata/{key}")
   @Override
   public void deleteMetadata(@PathVariable("key") int metadataKey) {
-    metadataMapper.delete(metadataKey);
+    registryDatasetService.deleteMetadata(metadataKey);
   }
 
   @GetMapping("deleted")
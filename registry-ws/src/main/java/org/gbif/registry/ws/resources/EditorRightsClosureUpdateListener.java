@@ -0,0 +1,80 @@
+/*
+ * Copyright 2020 Global Biodiversity Information Facility (GBIF)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gbif.registry.ws.resources;
+
+import org.gbif.api.model.registry.Dataset;
+import org.gbif.api.model.registry.Installation;
+import org.gbif.api.model.registry.NetworkEntity;
+import org.gbif.api.model.registry.Organization;
+import org.gbif.registry.events.CreateEvent;
+import org.gbif.registry.events.DeleteEvent;
+import org.gbif.registry.events.EventManager;
+import org.gbif.registry.events.UpdateEvent;
+import org.gbif.registry.security.EditorRightsClosure;
+
+import java.util.UUID;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.google.common.eventbus.Subscribe;
+
+/**
+ * Keeps the ownership graph of the {@link EditorRightsClosure} up to date, re-reading the owners of
+ * every created, updated or deleted dataset, installation and organization.
+ */
+@SuppressWarnings("UnstableApiUsage")
+@Component
+public class EditorRightsClosureUpdateListener {
+
+  private final EditorRightsClosure closure;
+
+  public EditorRightsClosureUpdateListener(
+      EditorRightsClosure closure,
+      EventManager eventManager,
+      @Value("${security.editorRights.closure.enabled:false}") boolean enabled) {
+    this.closure = closure;
+    if (enabled) {
+      eventManager.register(this);
+    }
+  }
+
+  @Subscribe
+  public final <T extends NetworkEntity> void created(CreateEvent<T> event) {
+    refresh(event.getObjectClass(), event.getNewObject().getKey());
+  }
+
+  @Subscribe
+  public final <T extends NetworkEntity> void updated(UpdateEvent<T> event) {
+    refresh(event.getObjectClass(), event.getNewObject().getKey());
+  }
+
+  @Subscribe
+  public final <T extends NetworkEntity> void deleted(DeleteEvent<T> event) {
+    // deleted entities stay in the graph, as they are still checked when undeleting them
+    refresh(event.getObjectClass(), event.getOldObject().getKey());
+  }
+
+  private void refresh(Class<?> objectClass, UUID key) {
+    if (Dataset.class.equals(objectClass)) {
+      closure.refreshDataset(key);
+    } else if (Installation.class.equals(objectClass)) {
+      closure.refreshInstallation(key);
+    } else if (Organization.class.equals(objectClass)) {
+      closure.refreshOrganization(key);
+    }
+  }
+}
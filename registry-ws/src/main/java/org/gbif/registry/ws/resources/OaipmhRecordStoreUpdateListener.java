@@ -0,0 +1,81 @@
+/*
+ * Copyright 2020 Global Biodiversity Information Facility (GBIF)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gbif.registry.ws.resources;
+
+import org.gbif.api.model.registry.Dataset;
+import org.gbif.api.model.registry.NetworkEntity;
+import org.gbif.api.model.registry.Organization;
+import org.gbif.registry.events.ChangedComponentEvent;
+import org.gbif.registry.events.CreateEvent;
+import org.gbif.registry.events.DeleteEvent;
+import org.gbif.registry.events.EventManager;
+import org.gbif.registry.events.UpdateEvent;
+import org.gbif.registry.oaipmh.OaipmhRecordStore;
+
+import org.springframework.stereotype.Component;
+
+import com.google.common.eventbus.Subscribe;
+
+/**
+ * Keeps the pre-rendered records of the {@link OaipmhRecordStore} up to date, rendering created,
+ * updated and deleted datasets and datasets with changed components such as contacts again. The
+ * records of the datasets of updated publishing organizations are marked as stale and rendered by
+ * the reconciliation.
+ */
+@SuppressWarnings("UnstableApiUsage")
+@Component
+public class OaipmhRecordStoreUpdateListener {
+
+  private final OaipmhRecordStore recordStore;
+
+  public OaipmhRecordStoreUpdateListener(
+      OaipmhRecordStore recordStore, EventManager eventManager) {
+    this.recordStore = recordStore;
+    if (recordStore.isEnabled()) {
+      eventManager.register(this);
+    }
+  }
+
+  @Subscribe
+  public final <T extends NetworkEntity> void created(CreateEvent<T> event) {
+    if (Dataset.class.equals(event.getObjectClass())) {
+      recordStore.refresh(event.getNewObject().getKey());
+    }
+  }
+
+  @Subscribe
+  public final <T extends NetworkEntity> void updated(UpdateEvent<T> event) {
+    if (Dataset.class.equals(event.getObjectClass())) {
+      recordStore.refresh(event.getNewObject().getKey());
+    } else if (Organization.class.equals(event.getObjectClass())) {
+      recordStore.markPublishedByStale(event.getNewObject().getKey());
+    }
+  }
+
+  @Subscribe
+  public final <T extends NetworkEntity> void deleted(DeleteEvent<T> event) {
+    if (Dataset.class.equals(event.getObjectClass())) {
+      recordStore.refresh(event.getOldObject().getKey());
+    }
+  }
+
+  @Subscribe
+  public final void updatedComponent(ChangedComponentEvent event) {
+    if (Dataset.class.equals(event.getTargetClass())) {
+      recordStore.refresh(event.getTargetEntityKey());
+    }
+  }
+}
@@ -34,10 +34,15 @@ import org.gbif.registry.doi.DoiIssuingService;
 import org.gbif.registry.doi.DownloadDoiDataCiteHandlingService;
 import org.gbif.registry.persistence.mapper.DatasetOccurrenceDownloadMapper;
 import org.gbif.registry.persistence.mapper.OccurrenceDownloadMapper;
+import org.gbif.registry.persistence.service.DatasetOccurrenceDownloadUsageLoader;
 import org.gbif.registry.ws.provider.PartialDate;
 import org.gbif.ws.WebApplicationException;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.util.Date;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -45,7 +50,6 @@ import java.util.Optional;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.UUID;
-import java.util.stream.Collectors;
 
 import javax.validation.constraints.NotNull;
 import javax.validation.groups.Default;
@@ -72,8 +76,12 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.google.common.base.Preconditions;
-import com.google.common.collect.Iterators;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Maps;
 
 import static org.gbif.registry.security.UserRoles.ADMIN_ROLE;
 import static org.gbif.registry.security.util.DownloadSecurityUtils.checkUserIsInSecurityContext;
@@ -87,13 +95,16 @@ public class OccurrenceDownloadResource implements OccurrenceDownloadService {
 
   private final OccurrenceDownloadMapper occurrenceDownloadMapper;
   private final DatasetOccurrenceDownloadMapper datasetOccurrenceDownloadMapper;
+  private final DatasetOccurrenceDownloadUsageLoader datasetUsageLoader;
   private final IdentityAccessService identityService;
   private final DoiIssuingService doiIssuingService;
   private final DownloadDoiDataCiteHandlingService doiDataCiteHandlingService;
 
-  // Page size to iterate over dataset usages
+  // Largest number of dataset usages inserted with a single statement, more are copied in
   private static final int BATCH_SIZE = 5_000;
 
+  private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
   private static final Logger LOG = LoggerFactory.getLogger(OccurrenceDownloadResource.class);
 
   private static final Marker NOTIFY_ADMIN = MarkerFactory.getMarker("NOTIFY_ADMIN");
@@ -101,11 +112,13 @@ public class OccurrenceDownloadResource implements OccurrenceDownloadService {
   public OccurrenceDownloadResource(
       OccurrenceDownloadMapper occurrenceDownloadMapper,
       DatasetOccurrenceDownloadMapper datasetOccurrenceDownloadMapper,
+      DatasetOccurrenceDownloadUsageLoader datasetUsageLoader,
       DoiIssuingService doiIssuingService,
       @Lazy DownloadDoiDataCiteHandlingService doiDataCiteHandlingService,
       @Qualifier("baseIdentityAccessService") IdentityAccessService identityService) {
     this.occurrenceDownloadMapper = occurrenceDownloadMapper;
     this.datasetOccurrenceDownloadMapper = datasetOccurrenceDownloadMapper;
+    this.datasetUsageLoader = datasetUsageLoader;
     this.doiIssuingService = doiIssuingService;
     this.doiDataCiteHandlingService = doiDataCiteHandlingService;
     this.identityService = identityService;
@@ -241,18 +254,64 @@ public class OccurrenceDownloadResource implements OccurrenceDownloadService {
     throw new WebApplicationException("Download was not found", HttpStatus.NOT_FOUND);
   }
 
-  @PostMapping(value = "{key}/datasets", consumes = MediaType.APPLICATION_JSON_VALUE)
   @Transactional
   @Secured(ADMIN_ROLE)
   @Override
-  public void createUsages(
-      @PathVariable("key") String downloadKey, @RequestBody Map<UUID, Long> datasetCitations) {
-    Iterators.partition(datasetCitations.entrySet().iterator(), BATCH_SIZE)
-        .forEachRemaining(
-            batch ->
-                datasetOccurrenceDownloadMapper.createUsages(
-                    downloadKey,
-                    batch.stream().collect(Collectors.toMap(Entry::getKey, Entry::getValue))));
+  public void createUsages(String downloadKey, Map<UUID, Long> datasetCitations) {
+    if (datasetCitations.size() > BATCH_SIZE) {
+      datasetUsageLoader.load(downloadKey, datasetCitations.entrySet().iterator());
+    } else if (!datasetCitations.isEmpty()) {
+      datasetOccurrenceDownloadMapper.createUsages(downloadKey, datasetCitations);
+    }
+    // the usages may be stored after the download was added to the statistics
+    occurrenceDownloadMapper.updateModified(downloadKey);
+  }
+
+  /**
+   * Stores the dataset usages of a download, posted as a JSON object of record counts by dataset
+   * key. The object is parsed while it is copied into the database, so downloads with millions of
+   * datasets are never held in memory. A dataset repeated in the object keeps its last number.
+   */
+  @PostMapping(value = "{key}/datasets", consumes = MediaType.APPLICATION_JSON_VALUE)
+  @Transactional
+  @Secured(ADMIN_ROLE)
+  public void createUsagesStreaming(@PathVariable("key") String downloadKey, InputStream body)
+      throws IOException {
+    try (JsonParser parser = JSON_FACTORY.createParser(body)) {
+      if (parser.nextToken() != JsonToken.START_OBJECT) {
+        throw new WebApplicationException(
+            "Dataset usages must be an object of record counts by dataset key",
+            HttpStatus.BAD_REQUEST);
+      }
+      datasetUsageLoader.load(downloadKey, parseUsages(parser));
+    }
+    occurrenceDownloadMapper.updateModified(downloadKey);
+  }
+
+  /** Iterates over the record counts by dataset key of the object the parser is positioned in. */
+  private static Iterator<Entry<UUID, Long>> parseUsages(JsonParser parser) {
+    return new AbstractIterator<Entry<UUID, Long>>() {
+      @Override
+      protected Entry<UUID, Long> computeNext() {
+        try {
+          if (parser.nextToken() != JsonToken.FIELD_NAME) {
+            return endOfData();
+          }
+          UUID datasetKey = UUID.fromString(parser.getCurrentName());
+          if (parser.nextToken() != JsonToken.VALUE_NUMBER_INT) {
+            throw new WebApplicationException(
+                "Number of records of dataset " + datasetKey + " is not a number",
+                HttpStatus.BAD_REQUEST);
+          }
+          return Maps.immutableEntry(datasetKey, parser.getLongValue());
+        } catch (IllegalArgumentException e) {
+          throw new WebApplicationException(
+              "Invalid dataset key: " + e.getMessage(), HttpStatus.BAD_REQUEST);
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      }
+    };
   }
 
   @Override
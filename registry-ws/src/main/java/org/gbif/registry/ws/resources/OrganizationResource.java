@@ -36,6 +36,7 @@ import org.gbif.registry.persistence.mapper.DatasetMapper;
 import org.gbif.registry.persistence.mapper.InstallationMapper;
 import org.gbif.registry.persistence.mapper.OrganizationMapper;
 import org.gbif.registry.persistence.service.MapperServiceLocator;
+import org.gbif.registry.persistence.service.NetworkEntityChildrenLoader;
 import org.gbif.registry.security.EditorAuthorizationService;
 import org.gbif.registry.security.SecurityContextCheck;
 import org.gbif.registry.ws.surety.OrganizationEndorsementService;
@@ -101,13 +102,15 @@ public class OrganizationResource extends BaseNetworkEntityResource<Organization
   private final InstallationMapper installationMapper;
   private final OrganizationEndorsementService<UUID> organizationEndorsementService;
   private final EditorAuthorizationService userAuthService;
+  private final NetworkEntityChildrenLoader childrenLoader;
 
   public OrganizationResource(
       MapperServiceLocator mapperServiceLocator,
       OrganizationEndorsementService<UUID> organizationEndorsementService,
       EventManager eventManager,
       EditorAuthorizationService userAuthService,
-      WithMyBatis withMyBatis) {
+      WithMyBatis withMyBatis,
+      NetworkEntityChildrenLoader childrenLoader) {
     super(
         mapperServiceLocator.getOrganizationMapper(),
         mapperServiceLocator,
@@ -120,6 +123,7 @@ public class OrganizationResource extends BaseNetworkEntityResource<Organization
     this.installationMapper = mapperServiceLocator.getInstallationMapper();
     this.organizationEndorsementService = organizationEndorsementService;
     this.userAuthService = userAuthService;
+    this.childrenLoader = childrenLoader;
   }
 
   @GetMapping("{key}")
@@ -230,11 +234,20 @@ public class OrganizationResource extends BaseNetworkEntityResource<Organization
             : request.getQ();
     long total = organizationMapper.count(query, country, request.getIsEndorsed());
     page = page == null ? new PagingRequest() : page;
-    return new PagingResponse<>(
-        page.getOffset(),
-        page.getLimit(),
-        total,
-        organizationMapper.search(query, country, request.getIsEndorsed(), page));
+    List<Organization> organizations =
+        childrenLoader.isBulkMode()
+            ? childrenLoader.loadOrganizationChildren(
+                organizationMapper.searchLight(query, country, request.getIsEndorsed(), page))
+            : organizationMapper.search(query, country, request.getIsEndorsed(), page);
+    return new PagingResponse<>(page.getOffset(), page.getLimit(), total, organizations);
+  }
+
+  @Override
+  protected List<Organization> listPage(Pageable page) {
+    if (childrenLoader.isBulkMode()) {
+      return childrenLoader.loadOrganizationChildren(organizationMapper.listLight(page));
+    }
+    return super.listPage(page);
   }
 
   @GetMapping("{key}/hostedDataset")
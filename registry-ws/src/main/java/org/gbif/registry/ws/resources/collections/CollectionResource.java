@@ -30,6 +30,7 @@ import org.gbif.registry.persistence.mapper.MachineTagMapper;
 import org.gbif.registry.persistence.mapper.TagMapper;
 import org.gbif.registry.persistence.mapper.collections.AddressMapper;
 import org.gbif.registry.persistence.mapper.collections.CollectionMapper;
+import org.gbif.registry.persistence.service.NetworkEntityChildrenLoader;
 import org.gbif.registry.security.EditorAuthorizationService;
 
 import java.util.List;
@@ -59,6 +60,7 @@ public class CollectionResource extends ExtendedCollectionEntityResource<Collect
     implements CollectionService {
 
   private final CollectionMapper collectionMapper;
+  private final NetworkEntityChildrenLoader childrenLoader;
 
   public CollectionResource(
       CollectionMapper collectionMapper,
@@ -69,7 +71,8 @@ public class CollectionResource extends ExtendedCollectionEntityResource<Collect
       CommentMapper commentMapper,
       EventManager eventManager,
       EditorAuthorizationService userAuthService,
-      WithMyBatis withMyBatis) {
+      WithMyBatis withMyBatis,
+      NetworkEntityChildrenLoader childrenLoader) {
     super(
         collectionMapper,
         addressMapper,
@@ -83,6 +86,7 @@ public class CollectionResource extends ExtendedCollectionEntityResource<Collect
         userAuthService,
         withMyBatis);
     this.collectionMapper = collectionMapper;
+    this.childrenLoader = childrenLoader;
   }
 
   @GetMapping("{key}")
@@ -106,11 +110,14 @@ public class CollectionResource extends ExtendedCollectionEntityResource<Collect
     query = query != null ? Strings.emptyToNull(CharMatcher.WHITESPACE.trimFrom(query)) : query;
     long total =
         collectionMapper.count(institutionKey, contactKey, query, code, name, alternativeCode);
-    return new PagingResponse<>(
-        page,
-        total,
-        collectionMapper.list(
-            institutionKey, contactKey, query, code, name, alternativeCode, page));
+    List<Collection> collections =
+        childrenLoader.isBulkMode()
+            ? childrenLoader.loadCollectionChildren(
+                collectionMapper.listLight(
+                    institutionKey, contactKey, query, code, name, alternativeCode, page))
+            : collectionMapper.list(
+                institutionKey, contactKey, query, code, name, alternativeCode, page);
+    return new PagingResponse<>(page, total, collections);
   }
 
   @GetMapping("deleted")
@@ -30,6 +30,7 @@ import org.gbif.registry.persistence.mapper.MachineTagMapper;
 import org.gbif.registry.persistence.mapper.TagMapper;
 import org.gbif.registry.persistence.mapper.collections.AddressMapper;
 import org.gbif.registry.persistence.mapper.collections.InstitutionMapper;
+import org.gbif.registry.persistence.service.NetworkEntityChildrenLoader;
 import org.gbif.registry.security.EditorAuthorizationService;
 
 import java.util.List;
@@ -59,6 +60,7 @@ public class InstitutionResource extends ExtendedCollectionEntityResource<Instit
     implements InstitutionService {
 
   private final InstitutionMapper institutionMapper;
+  private final NetworkEntityChildrenLoader childrenLoader;
 
   public InstitutionResource(
       InstitutionMapper institutionMapper,
@@ -69,7 +71,8 @@ public class InstitutionResource extends ExtendedCollectionEntityResource<Instit
       CommentMapper commentMapper,
       EditorAuthorizationService userAuthService,
       EventManager eventManager,
-      WithMyBatis withMyBatis) {
+      WithMyBatis withMyBatis,
+      NetworkEntityChildrenLoader childrenLoader) {
     super(
         institutionMapper,
         addressMapper,
@@ -83,6 +86,7 @@ public class InstitutionResource extends ExtendedCollectionEntityResource<Instit
         userAuthService,
         withMyBatis);
     this.institutionMapper = institutionMapper;
+    this.childrenLoader = childrenLoader;
   }
 
   @GetMapping("{key}")
@@ -104,8 +108,12 @@ public class InstitutionResource extends ExtendedCollectionEntityResource<Instit
     page = page == null ? new PagingRequest() : page;
     query = query != null ? Strings.emptyToNull(CharMatcher.WHITESPACE.trimFrom(query)) : query;
     long total = institutionMapper.count(query, contactKey, code, name, alternativeCode);
-    return new PagingResponse<>(
-        page, total, institutionMapper.list(query, contactKey, code, name, alternativeCode, page));
+    List<Institution> institutions =
+        childrenLoader.isBulkMode()
+            ? childrenLoader.loadInstitutionChildren(
+                institutionMapper.listLight(query, contactKey, code, name, alternativeCode, page))
+            : institutionMapper.list(query, contactKey, code, name, alternativeCode, page);
+    return new PagingResponse<>(page, total, institutions);
   }
 
   @GetMapping("deleted")
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2020 Global Biodiversity Information Facility (GBIF)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gbif.registry.ws.resources.collections;
+
+import org.gbif.api.model.collections.CollectionEntity;
+import org.gbif.api.model.registry.Identifier;
+import org.gbif.registry.events.EventManager;
+import org.gbif.registry.events.collections.ChangedCollectionEntityComponentEvent;
+import org.gbif.registry.events.collections.CreateCollectionEntityEvent;
+import org.gbif.registry.events.collections.DeleteCollectionEntityEvent;
+import org.gbif.registry.events.collections.UpdateCollectionEntityEvent;
+import org.gbif.registry.service.collections.lookup.index.LookupIndexService;
+
+import org.springframework.stereotype.Component;
+
+import com.google.common.eventbus.Subscribe;
+
+/**
+ * Keeps the GrSciColl lookup indexes up to date. Every change re-reads the lookup fields of the
+ * changed entity, so the indexes always reflect the database regardless of the event content.
+ */
+@SuppressWarnings("UnstableApiUsage")
+@Component
+public class LookupIndexUpdateListener {
+
+  private final LookupIndexService lookupIndexService;
+
+  public LookupIndexUpdateListener(
+      LookupIndexService lookupIndexService, EventManager eventManager) {
+    this.lookupIndexService = lookupIndexService;
+    if (lookupIndexService.isEnabled()) {
+      eventManager.register(this);
+    }
+  }
+
+  @Subscribe
+  public final <T extends CollectionEntity> void created(CreateCollectionEntityEvent<T> event) {
+    lookupIndexService.refresh(event.getObjectClass(), event.getNewObject().getKey());
+  }
+
+  @Subscribe
+  public final <T extends CollectionEntity> void updated(UpdateCollectionEntityEvent<T> event) {
+    lookupIndexService.refresh(event.getObjectClass(), event.getNewObject().getKey());
+  }
+
+  @Subscribe
+  public final <T extends CollectionEntity> void deleted(DeleteCollectionEntityEvent<T> event) {
+    lookupIndexService.refresh(event.getObjectClass(), event.getOldObject().getKey());
+  }
+
+  @Subscribe
+  public final void updatedComponent(ChangedCollectionEntityComponentEvent event) {
+    // identifiers are indexed too
+    if (Identifier.class.equals(event.getComponentClass())) {
+      lookupIndexService.refresh(event.getTargetClass(), event.getTargetEntityKey());
+    }
+  }
+}
@@ -19,25 +19,34 @@ import org.gbif.api.model.collections.lookup.LookupParams;
 import org.gbif.api.model.collections.lookup.LookupResult;
 import org.gbif.api.vocabulary.Country;
 import org.gbif.registry.service.collections.lookup.DefaultLookupService;
+import org.gbif.registry.service.collections.lookup.index.LookupIndexConsistency;
+import org.gbif.registry.service.collections.lookup.index.LookupIndexService;
 
+import java.util.List;
 import java.util.UUID;
 
 import javax.annotation.Nullable;
 
 import org.springframework.http.MediaType;
+import org.springframework.security.access.annotation.Secured;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import static org.gbif.registry.security.UserRoles.GRSCICOLL_ADMIN_ROLE;
+
 @RestController
 @RequestMapping(value = "grscicoll/lookup", produces = MediaType.APPLICATION_JSON_VALUE)
 public class LookupResource {
 
   private final DefaultLookupService lookupService;
+  private final LookupIndexService lookupIndexService;
 
-  public LookupResource(DefaultLookupService lookupService) {
+  public LookupResource(
+      DefaultLookupService lookupService, LookupIndexService lookupIndexService) {
     this.lookupService = lookupService;
+    this.lookupIndexService = lookupIndexService;
   }
 
   @GetMapping
@@ -64,4 +73,14 @@ public class LookupResource {
 
     return lookupService.lookup(params);
   }
+
+  /**
+   * Compares the in-memory lookup indexes with the database. It reads all the institutions and
+   * collections, so it is restricted to admins.
+   */
+  @GetMapping("index/consistency")
+  @Secured(GRSCICOLL_ADMIN_ROLE)
+  public List<LookupIndexConsistency> checkIndexConsistency() {
+    return lookupIndexService.checkConsistency();
+  }
 }
@@ -15,6 +15,7 @@
  */
 package org.gbif.registry.ws.resources.pipelines;
 
+import org.gbif.api.annotation.NullToNotFound;
 import org.gbif.api.model.common.paging.Pageable;
 import org.gbif.api.model.common.paging.PagingResponse;
 import org.gbif.api.model.pipelines.PipelineExecution;
@@ -27,6 +28,8 @@ import org.gbif.api.model.pipelines.ws.PipelineStepParameters;
 import org.gbif.api.model.pipelines.ws.RunAllParams;
 import org.gbif.api.model.pipelines.ws.SearchResult;
 import org.gbif.api.service.pipelines.PipelinesHistoryService;
+import org.gbif.registry.domain.pipelines.RerunJob;
+import org.gbif.registry.pipelines.PipelinesRerunJobService;
 import org.gbif.registry.pipelines.RegistryPipelinesHistoryTrackingService;
 import org.gbif.registry.ws.util.DateUtils;
 
@@ -68,9 +71,13 @@ import static org.gbif.registry.security.UserRoles.EDITOR_ROLE;
 public class PipelinesHistoryResource implements PipelinesHistoryService {
 
   private final RegistryPipelinesHistoryTrackingService historyTrackingService;
+  private final PipelinesRerunJobService rerunJobService;
 
-  public PipelinesHistoryResource(RegistryPipelinesHistoryTrackingService historyTrackingService) {
+  public PipelinesHistoryResource(
+      RegistryPipelinesHistoryTrackingService historyTrackingService,
+      PipelinesRerunJobService rerunJobService) {
     this.historyTrackingService = historyTrackingService;
+    this.rerunJobService = rerunJobService;
   }
 
   /** Lists the history of all pipelines. */
@@ -166,6 +173,9 @@ public class PipelinesHistoryResource implements PipelinesHistoryService {
    * Runs the last attempt for all datasets. Parameters 'steps' and 'reason' are required, but they
    * will be validated in PipelinesHistoryResource#checkRunInputParams so here they are specified as
    * optional fields.
+   *
+   * <p>The datasets are rerun by a job whose key is given in the message of the response, see
+   * {@link #getRerunJob}.
    */
   @PostMapping(value = "run", consumes = MediaType.APPLICATION_JSON_VALUE)
   @Secured({ADMIN_ROLE, EDITOR_ROLE})
@@ -186,6 +196,45 @@ public class PipelinesHistoryResource implements PipelinesHistoryService {
         useLastSuccessful);
   }
 
+  /** Lists the jobs created to run the last attempt of many datasets, most recent first. */
+  @GetMapping("run/jobs")
+  @Secured({ADMIN_ROLE, EDITOR_ROLE})
+  public PagingResponse<RerunJob> listRerunJobs(Pageable pageable) {
+    return rerunJobService.list(pageable);
+  }
+
+  /** Gets a job created to run the last attempt of many datasets, with its progress. */
+  @GetMapping("run/jobs/{jobKey}")
+  @Secured({ADMIN_ROLE, EDITOR_ROLE})
+  @NullToNotFound("/pipelines/history/run/jobs/{jobKey}")
+  public RerunJob getRerunJob(@PathVariable("jobKey") long jobKey) {
+    return rerunJobService.get(jobKey);
+  }
+
+  /** Pauses a running job once the datasets being rerun are processed. */
+  @PostMapping("run/jobs/{jobKey}/pause")
+  @Secured({ADMIN_ROLE, EDITOR_ROLE})
+  @NullToNotFound("/pipelines/history/run/jobs/{jobKey}")
+  public RerunJob pauseRerunJob(@PathVariable("jobKey") long jobKey) {
+    return rerunJobService.pause(jobKey);
+  }
+
+  /** Resumes a paused job from the last dataset processed. */
+  @PostMapping("run/jobs/{jobKey}/resume")
+  @Secured({ADMIN_ROLE, EDITOR_ROLE})
+  @NullToNotFound("/pipelines/history/run/jobs/{jobKey}")
+  public RerunJob resumeRerunJob(@PathVariable("jobKey") long jobKey) {
+    return rerunJobService.resume(jobKey);
+  }
+
+  /** Cancels a running or paused job. */
+  @PostMapping("run/jobs/{jobKey}/cancel")
+  @Secured({ADMIN_ROLE, EDITOR_ROLE})
+  @NullToNotFound("/pipelines/history/run/jobs/{jobKey}")
+  public RerunJob cancelRerunJob(@PathVariable("jobKey") long jobKey) {
+    return rerunJobService.cancel(jobKey);
+  }
+
   /**
    * Restart last failed pipelines step for a dataset. Parameters 'steps' and 'reason' are required,
    * but they will be validated in PipelinesHistoryResource#checkRunInputParams so here they are